@@ -123,6 +123,56 @@ public class ElementTest {
         Assert.assertEquals(0, e.getPathElementList(new String[] { "bogus" } ).size());
     }
 
+    @Test
+    public void compactJson() throws Exception {
+        compact(new Element.JSONElement(MailConstants.SEARCH_RESPONSE));
+    }
+
+    @Test
+    public void compactXml() throws Exception {
+        compact(new Element.XMLElement(MailConstants.SEARCH_RESPONSE));
+    }
+
+    private void compact(Element response) throws Exception {
+        for (int i = 1; i <= 3; i++) {
+            Element m = response.addNonUniqueElement(MailConstants.E_MSG).addAttribute(MailConstants.A_ID, i);
+            m.addAttribute(MailConstants.E_SUBJECT, "subject " + i, Element.Disposition.CONTENT);
+            m.addNonUniqueElement(MailConstants.E_EMAIL).addAttribute(MailConstants.A_ADDRESS, "user" + i + "@example.com");
+        }
+        response.addAttribute(MailConstants.A_QUERY_MORE, false);
+        String expected = response.toString();
+        String expectedPretty = response.prettyPrint();
+
+        for (Element m : response.listElements(MailConstants.E_MSG)) {
+            Element compacted = m.compact();
+            Assert.assertNotSame(m, compacted);
+            Assert.assertNull("compacted element is detached", m.getParent());
+            Assert.assertSame(response, compacted.getParent());
+        }
+        Assert.assertEquals("serialized children", expected, response.toString());
+        Assert.assertEquals("pretty-printed serialized children", expectedPretty, response.prettyPrint());
+        Assert.assertEquals("UTF-8 output", expected, new String(response.toUTF8(), StandardCharsets.UTF_8));
+
+        // reading falls back to the element tree, in place
+        Element second = response.listElements(MailConstants.E_MSG).get(1);
+        Assert.assertEquals("2", second.getAttribute(MailConstants.A_ID));
+        Assert.assertEquals("subject 2", second.getAttribute(MailConstants.E_SUBJECT));
+        Assert.assertEquals("user2@example.com",
+                second.getElement(MailConstants.E_EMAIL).getAttribute(MailConstants.A_ADDRESS));
+        Assert.assertEquals("thawed child", expected, response.toString());
+
+        // ... as does modifying it
+        Element third = response.listElements(MailConstants.E_MSG).get(2);
+        third.addAttribute(MailConstants.A_FLAGS, "u");
+        Assert.assertEquals("u", response.listElements(MailConstants.E_MSG).get(2).getAttribute(MailConstants.A_FLAGS));
+        Assert.assertFalse("modified child is marshaled", expected.equals(response.toString()));
+        Assert.assertEquals(3, response.listElements(MailConstants.E_MSG).size());
+
+        // standalone elements are left alone
+        Element standalone = response.getFactory().createElement(MailConstants.E_MSG);
+        Assert.assertSame(standalone, standalone.compact());
+    }
+
     private static final String xmlContainingMixed = "<a><b foo=\"bar\">doo<c/>wop</b></a>";
     @Test
     public void flatten() throws Exception {
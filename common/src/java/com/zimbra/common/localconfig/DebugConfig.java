@@ -171,6 +171,7 @@ public final class DebugConfig {
             value("debug_imap_total_nonserialized_session_footprint_limit", Integer.MAX_VALUE);
     public static final boolean imapTerminateSessionOnClose = value("imap_terminate_session_on_close", false);
     public static final boolean imapSerializeSessionOnClose = value("imap_serialize_session_on_close", true);
+    public static final boolean imapPreloadFolderOnSelect = value("debug_imap_preload_folder_on_select", true);
 
     /** For QA only. bug 57279 */
     public static final boolean allowModifyingDeprecatedAttributes =
@@ -164,6 +164,13 @@ public final class LC {
     @Supported
     public static final KnownKey zimbra_mailbox_galsync_cache = KnownKey.newKey(10000);
 
+    // byte budget (KB) for the off-heap item cache shared by all loaded mailboxes; 0 disables it
+    public static final KnownKey zimbra_mailbox_offheap_cache_size_kb = KnownKey.newKey(65536);
+
+    // write item metadata in the binary format rather than BEncoding; every server sharing the database and memcached
+    // must be able to read it before this is turned on
+    public static final KnownKey zimbra_mailbox_metadata_binary_encoding = KnownKey.newKey(false);
+
     @Supported
     public static final KnownKey zimbra_mailbox_change_checkpoint_frequency = KnownKey.newKey(100);
 
@@ -175,12 +182,19 @@ public final class LC {
 
     public static final KnownKey zimbra_mailbox_lock_readwrite = KnownKey.newKey(true);
 
+    // lets read-only mailbox accessors validate an optimistic stamp instead of taking the read lock
+    @Reloadable
+    public static final KnownKey zimbra_mailbox_lock_optimistic_read = KnownKey.newKey(true);
+
     @Supported
     public static final KnownKey zimbra_index_threads = KnownKey.newKey(10);
 
     @Supported
     public static final KnownKey zimbra_reindex_threads = KnownKey.newKey(10);
 
+    // threads shared by all mailboxes for fetching and tokenizing items during batch indexing; 0 tokenizes inline
+    public static final KnownKey zimbra_index_tokenizer_threads = KnownKey.newKey(4);
+
     @Supported
     public static final KnownKey zimbra_index_max_readers = KnownKey.newKey(35);
 
@@ -482,6 +496,14 @@ public final class LC {
     public static final KnownKey ldap_cache_reverseproxylookup_server_maxsize = KnownKey.newKey(100);
     public static final KnownKey ldap_cache_reverseproxylookup_server_maxage = KnownKey.newKey(15);
 
+    // reload cached LDAP entries in the background once they are within this percentage of ldap_cache_*_maxage
+    // of expiring, so that hot entries never expire on a request thread; 0 disables
+    public static final KnownKey ldap_cache_refresh_ahead_percent = KnownKey.newKey(20);
+    public static final KnownKey ldap_cache_refresh_threads = KnownKey.newKey(2);
+
+    // max number of names or ids per OR-filter search in Provisioning.getAccounts
+    public static final KnownKey ldap_account_bulk_lookup_batch_size = KnownKey.newKey(100);
+
     // This combination will consume 128M (128K per target) of memory if the cache is full
     public static final KnownKey acl_cache_target_maxsize = KnownKey.newKey(1024);
     public static final KnownKey acl_cache_target_maxage = KnownKey.newKey(15);
@@ -664,6 +686,15 @@ public final class LC {
     @Supported
     public static final KnownKey calendar_cache_range_months = KnownKey.newKey(3);
     public static final KnownKey calendar_cache_max_stale_items = KnownKey.newKey(10);
+    // recompute a changed calendar item's cached summary in the background after the change is committed, rather
+    // than only marking it stale and recomputing on the next read
+    public static final KnownKey calendar_cache_apply_changes = KnownKey.newKey(true);
+    // expand simple DAILY/WEEKLY rules with primitive date arithmetic instead of java.util.Calendar
+    public static final KnownKey calendar_recurrence_compiled_expansion = KnownKey.newKey(true);
+    // total number of instances held in the memo of recent recurrence expansions; 0 disables the memo
+    public static final KnownKey calendar_recurrence_expansion_memo_instances = KnownKey.newKey(500000);
+    // calendar members remembered by the CalDAV sync-collection index, across all collections; 0 disables it
+    public static final KnownKey caldav_sync_index_max_entries = KnownKey.newKey(200000);
     public static final KnownKey calendar_exchange_form_auth_url = KnownKey.newKey("/exchweb/bin/auth/owaauth.dll");
     public static final KnownKey calendar_item_get_max_retries = KnownKey.newKey(100);
 
@@ -698,6 +729,7 @@ public final class LC {
     public static final KnownKey imap_throttle_acct_limit = KnownKey.newKey(5000);
     public static final KnownKey imap_throttle_command_limit = KnownKey.newKey(25);
     public static final KnownKey imap_throttle_fetch = KnownKey.newKey(true);
+    public static final KnownKey imap_zero_copy_fetch = KnownKey.newKey(true);
     public static final KnownKey data_source_imap_reuse_connections = KnownKey.newKey(false);
 
     @Supported
@@ -811,6 +843,8 @@ public final class LC {
     public static final KnownKey search_disable_database_hints = KnownKey.newKey(false);
     public static final KnownKey search_dbfirst_term_percentage_cutoff = KnownKey.newKey(0.8F);
     public static final KnownKey search_tagged_item_count_join_query_cutoff = KnownKey.newKey(1000); //beyond this limit server will not use join in the query while fetching unread items
+    // hits of recent search results kept per mailbox to serve later pages and repeated searches; 0 to disable
+    public static final KnownKey search_result_cache_hits = KnownKey.newKey(2000);
 
     public static final KnownKey zmstat_interval = KnownKey.newKey(30);
     public static final KnownKey zmstat_disk_interval = KnownKey.newKey(600);
@@ -871,6 +905,18 @@ public final class LC {
     @Supported
     @Reloadable
     public static final KnownKey zimbra_enable_text_extraction = KnownKey.newKey(true);
+    // number of threads extracting attachment text off the indexing thread; 0 to always extract inline
+    public static final KnownKey zimbra_attachment_extraction_threads = KnownKey.newKey(4);
+    // seconds to wait for the text of a single attachment before indexing it without its text
+    public static final KnownKey zimbra_attachment_extraction_timeout_sec = KnownKey.newKey(60);
+    // attachments larger than this are extracted inline rather than copied into memory for the pool; 0 for no limit
+    public static final KnownKey zimbra_attachment_extraction_max_part_size_kb = KnownKey.newKey(10240);
+    // parts smaller than this are extracted inline unless their handler runs externally
+    public static final KnownKey zimbra_attachment_extraction_inline_max_kb = KnownKey.newKey(64);
+    // size of the cache of extracted attachment text, keyed by attachment digest; 0 to disable
+    public static final KnownKey zimbra_attachment_extraction_cache_size_kb = KnownKey.newKey(16384);
+    // size of the cache of defanged HTML message bodies returned by GetMsg; 0 to disable
+    public static final KnownKey zimbra_defang_cache_size_kb = KnownKey.newKey(8192);
 
     /**
      * {@code true} to use Zimbra's SMTP client implementation
@@ -1062,11 +1108,19 @@ public final class LC {
     public static final KnownKey freebusy_exchange_cn2 = KnownKey.newKey(null);
     public static final KnownKey freebusy_exchange_cn3 = KnownKey.newKey(null);
     public static final KnownKey freebusy_disable_nodata_status = KnownKey.newKey(false);
+    // number of accounts whose free/busy index is kept in memory; 0 disables the index
+    public static final KnownKey freebusy_index_max_accounts = KnownKey.newKey(5000);
+    // days ahead of today covered by the free/busy index; queries reaching further compute free/busy directly
+    public static final KnownKey freebusy_index_window_days = KnownKey.newKey(60);
+    // max number of concurrent free/busy lookups of accounts on other mailbox servers
+    public static final KnownKey freebusy_remote_lookup_threads = KnownKey.newKey(8);
 
     public static final KnownKey notes_enabled = KnownKey.newKey(false);
 
     public static final KnownKey zimbra_lmtp_validate_messages = KnownKey.newKey(true);
     public static final KnownKey zimbra_lmtp_max_line_length = KnownKey.newKey(10240);
+    // number of threads shared by all LMTP sessions for delivering to multiple local mailboxes in parallel; 0 to deliver serially
+    public static final KnownKey zimbra_lmtp_delivery_threads = KnownKey.newKey(8);
 
     public static final KnownKey data_source_scheduling_enabled = KnownKey.newKey(true);
     public static final KnownKey data_source_eas_sync_email = KnownKey.newKey(true);
@@ -1203,6 +1257,10 @@ public final class LC {
 
     // Remove this in 8.0.
     public static final KnownKey filter_null_env_sender_for_dsn_redirect = KnownKey.newKey(true);
+    // number of distinct parsed Sieve scripts shared by all accounts whose script text is identical; 0 disables sharing
+    public static final KnownKey filter_shared_script_cache_size = KnownKey.newKey(1000);
+    // number of compiled Sieve :matches patterns kept for reuse across deliveries
+    public static final KnownKey filter_pattern_cache_size = KnownKey.newKey(10000);
 
     //appliance
     public static final KnownKey zimbra_vami_user = KnownKey.newKey("vmware");
@@ -18,8 +18,10 @@ package com.zimbra.common.soap;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
-import java.io.UnsupportedEncodingException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -466,18 +468,47 @@ public abstract class Element implements Cloneable {
 
     // dumping the element hierarchy
     public byte[] toUTF8() {
+        // encode as we go rather than building the whole document as a String first
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
         try {
-            return toString().getBytes("utf-8");
-        } catch (UnsupportedEncodingException e) {
-            // should *never* happen since UTF-8 and UTF-16 cover the exact same character space
-            return null;
+            Writer writer = new OutputStreamWriter(bytes, Charsets.UTF_8);
+            marshal(writer);
+            writer.flush();
+        } catch (IOException e) {
+            // should really not happen when writing to memory, just log it
+            ZimbraLog.soap.error("Caught IOException: ", e);
         }
+        return bytes.toByteArray();
     }
 
     public void output(Appendable out) throws IOException {
         marshal(out);
     }
 
+    /**
+     * Replaces this finished child element in its parent by its serialized form, and returns the replacement.
+     * <p>
+     * Intended for the many similar children of large responses (search hits, sync items): the serialized form is a
+     * small fraction of the size of the element tree, and it is written out verbatim when the response is marshaled.
+     * If the replacement is read or modified later on, it is parsed back and the parsed tree takes its place in the
+     * parent again.  Elements without a parent are returned unchanged.
+     */
+    public Element compact() {
+        if (mParent == null || !(this instanceof JSONElement || this instanceof XMLElement)) {
+            return this;
+        }
+        SerializedElement serialized = new SerializedElement(this);
+        mParent.replaceChild(this, serialized);
+        serialized.mParent = mParent;
+        mParent = null;
+        return serialized;
+    }
+
+    /** Puts {@code replacement} in the place of {@code child} among this element's children. */
+    protected void replaceChild(Element child, Element replacement) throws ContainerException {
+        throw new ContainerException("cannot replace children of " + getClass().getSimpleName());
+    }
+
     public abstract String prettyPrint();
 
     public abstract String prettyPrint(boolean safe);
@@ -1049,6 +1080,25 @@ public abstract class Element implements Cloneable {
             return kvp;
         }
 
+        @Override
+        protected void replaceChild(Element child, Element replacement) throws ContainerException {
+            Object obj = mAttributes.get(child.getName());
+            if (obj == child) {
+                mAttributes.put(child.getName(), replacement);
+                return;
+            } else if (obj instanceof List<?>) {
+                @SuppressWarnings("unchecked")
+                List<Object> content = (List<Object>) obj;
+                for (ListIterator<Object> lit = content.listIterator(); lit.hasNext(); ) {
+                    if (lit.next() == child) {
+                        lit.set(replacement);
+                        return;
+                    }
+                }
+            }
+            throw new ContainerException("wrong parent");
+        }
+
         @Override
         protected void detach(Element elt) throws ContainerException {
             if (elt == null)
@@ -1478,6 +1528,8 @@ public abstract class Element implements Cloneable {
                         ((JSONElement) value).marshal(out, indent, safe);
                     } else if (value instanceof FileBackedElement) {
                         ((FileBackedElement) value).marshal(out);
+                    } else if (value instanceof SerializedElement) {
+                        ((SerializedElement) value).marshal(out, indent, safe);
                     } else if (value instanceof Element) {
                         out.append('"').append(StringUtil.jsEncode(value)).append('"');
                     } else if (!(value instanceof List<?>)) {
@@ -1493,6 +1545,8 @@ public abstract class Element implements Cloneable {
                                 Object child = lit.next();
                                 if (child instanceof JSONElement) {
                                     ((JSONElement) child).marshal(out, lindent, safe);
+                                } else if (child instanceof SerializedElement) {
+                                    ((SerializedElement) child).marshal(out, lindent, safe);
                                 } else if (child instanceof JSONKeyValuePair) {
                                     out.append(child.toString());
                                 } else {
@@ -1649,7 +1703,7 @@ public abstract class Element implements Cloneable {
                         "cannot add children to element containing text - <" +
                         this.getName() + ">, trying to add <" + elt.getName() + ">");
             }
-            assert(elt instanceof XMLElement || elt instanceof FileBackedElement);
+            assert(elt instanceof XMLElement || elt instanceof FileBackedElement || elt instanceof SerializedElement);
             if (mChildren == null) {
                 mChildren = new ArrayList<Element>();
             }
@@ -1725,6 +1779,19 @@ public abstract class Element implements Cloneable {
             return name;
         }
 
+        @Override
+        protected void replaceChild(Element child, Element replacement) throws ContainerException {
+            if (mChildren != null) {
+                for (ListIterator<Element> lit = mChildren.listIterator(); lit.hasNext(); ) {
+                    if (lit.next() == child) {
+                        lit.set(replacement);
+                        return;
+                    }
+                }
+            }
+            throw new ContainerException("wrong parent");
+        }
+
         @Override
         protected void detach(Element elt) throws ContainerException {
             super.detach(elt);
@@ -1988,6 +2055,8 @@ public abstract class Element implements Cloneable {
                     for (Element child : mChildren) {
                         if (child instanceof XMLElement) {
                             ((XMLElement) child).marshal(out, indent < 0 ? -1 : indent + INDENT_SIZE, safe);
+                        } else if (child instanceof SerializedElement) {
+                            ((SerializedElement) child).marshal(out, indent < 0 ? -1 : indent + INDENT_SIZE, safe);
                         } else if (child instanceof FileBackedElement) {
                             child.marshal(out);
                         } else {
@@ -2049,6 +2118,216 @@ public abstract class Element implements Cloneable {
         return false;
     }
 
+    /**
+     * Serialized form of a finished {@link JSONElement} or {@link XMLElement}, created by {@link Element#compact}.
+     * Any read or write access parses it back into a tree, which replaces it in the parent and takes over from then on.
+     */
+    static final class SerializedElement extends Element {
+        private final boolean json;
+        private String serialized;
+        private Element tree;
+
+        SerializedElement(Element elt) {
+            json = elt instanceof JSONElement;
+            mName = elt.mName;
+            mPrefix = elt.mPrefix;
+            mNamespaces = elt.mNamespaces;
+            serialized = elt.toString();
+        }
+
+        private Element parse() {
+            try {
+                Element elt = json ? JSONElement.parseElement(new JSONElement.JSRequest(serialized), QName.get(mName),
+                        JSONElement.mFactory) : parseXML(serialized);
+                elt.mParent = mParent;
+                return elt;
+            } catch (SoapParseException e) {
+                throw new ContainerException("unable to parse serialized element <" + mName + ">: " + e.getMessage());
+            } catch (XmlParseException e) {
+                throw new ContainerException("unable to parse serialized element <" + mName + ">: " + e.getMessage());
+            }
+        }
+
+        /** Returns the element as a tree, putting the tree in the place of this element in its parent. */
+        private Element tree() {
+            if (tree == null) {
+                tree = parse();
+                if (mParent != null) {
+                    mParent.replaceChild(this, tree);
+                }
+                serialized = null;
+            }
+            return tree;
+        }
+
+        void marshal(Appendable out, int indent, boolean safe) throws IOException {
+            if (tree == null && indent < 0 && !safe) {
+                out.append(serialized);
+                return;
+            }
+            // pretty-printing and masking need a tree, but there's no point in keeping a parsed one around
+            Element elt = tree != null ? tree : parse();
+            if (elt instanceof JSONElement) {
+                ((JSONElement) elt).marshal(out, indent, safe);
+            } else {
+                ((XMLElement) elt).marshal(out, indent, safe);
+            }
+        }
+
+        @Override
+        public void marshal(Appendable out) throws IOException {
+            marshal(out, -1, false);
+        }
+
+        @Override
+        public String toString() {
+            return tree != null ? tree.toString() : serialized;
+        }
+
+        @Override
+        public ElementFactory getFactory() {
+            return json ? JSONElement.mFactory : XMLElement.mFactory;
+        }
+
+        @Override
+        public void destroy() {
+            if (tree != null) {
+                tree.destroy();
+            }
+        }
+
+        @Override
+        public Element getParent() {
+            return tree != null ? tree.getParent() : mParent;
+        }
+
+        @Override
+        public Element detach() throws ContainerException {
+            return tree().detach();
+        }
+
+        @Override
+        public Element addNonUniqueElement(String name) throws ContainerException {
+            return tree().addNonUniqueElement(name);
+        }
+
+        @Override
+        public Element addNonUniqueElement(QName qname) throws ContainerException {
+            return tree().addNonUniqueElement(qname);
+        }
+
+        @Override
+        public Element addNonUniqueElement(Element elt) throws ContainerException {
+            return tree().addNonUniqueElement(elt);
+        }
+
+        @Override
+        public Element addUniqueElement(String name) throws ContainerException {
+            return tree().addUniqueElement(name);
+        }
+
+        @Override
+        public Element addUniqueElement(QName qname) throws ContainerException {
+            return tree().addUniqueElement(qname);
+        }
+
+        @Override
+        public Element addUniqueElement(Element elt) throws ContainerException {
+            return tree().addUniqueElement(elt);
+        }
+
+        @Override
+        public Element setText(String content) throws ContainerException {
+            return tree().setText(content);
+        }
+
+        @Override
+        public Element addAttribute(String key, String value, Disposition disp) throws ContainerException {
+            return tree().addAttribute(key, value, disp);
+        }
+
+        @Override
+        public Element addAttribute(String key, long value, Disposition disp) throws ContainerException {
+            return tree().addAttribute(key, value, disp);
+        }
+
+        @Override
+        public Element addAttribute(String key, double value, Disposition disp) throws ContainerException {
+            return tree().addAttribute(key, value, disp);
+        }
+
+        @Override
+        public Element addAttribute(String key, boolean value, Disposition disp) throws ContainerException {
+            return tree().addAttribute(key, value, disp);
+        }
+
+        @Override
+        public KeyValuePair addKeyValuePair(String key, String value, String eltname, String attrname)
+        throws ContainerException {
+            return tree().addKeyValuePair(key, value, eltname, attrname);
+        }
+
+        @Override
+        public Element clone() {
+            return tree != null ? tree.clone() : parse().clone();
+        }
+
+        @Override
+        public Element getOptionalElement(String name) {
+            return tree().getOptionalElement(name);
+        }
+
+        @Override
+        public Element getOptionalElement(QName qname) {
+            return tree().getOptionalElement(qname);
+        }
+
+        @Override
+        public Set<Attribute> listAttributes() {
+            return tree().listAttributes();
+        }
+
+        @Override
+        public List<Element> listElements(String name) {
+            return tree().listElements(name);
+        }
+
+        @Override
+        public boolean hasChildren() {
+            return tree().hasChildren();
+        }
+
+        @Override
+        public List<KeyValuePair> listKeyValuePairs(String eltname, String attrname) {
+            return tree().listKeyValuePairs(eltname, attrname);
+        }
+
+        @Override
+        public String getText() {
+            return tree().getText();
+        }
+
+        @Override
+        String getRawText() {
+            return tree().getRawText();
+        }
+
+        @Override
+        public String getAttribute(String key, String defaultValue) {
+            return tree().getAttribute(key, defaultValue);
+        }
+
+        @Override
+        public String prettyPrint() {
+            return tree != null ? tree.prettyPrint() : parse().prettyPrint();
+        }
+
+        @Override
+        public String prettyPrint(boolean safe) {
+            return tree != null ? tree.prettyPrint(safe) : parse().prettyPrint(safe);
+        }
+    }
+
     /**
      * Read-only {@link Element} backed by a file. Use this for encoding a big XML document which can't fit in memory.
      * The backed file must consist of a raw element already encoded.
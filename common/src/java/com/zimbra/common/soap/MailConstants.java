@@ -902,6 +902,7 @@ public final class MailConstants {
     public static final String E_QUERY = "query";
     public static final String E_HIT_MIMEPART = "hp";
     public static final String E_SUGEST = "suggest";
+    public static final String E_EXPLAIN = "explain";
     public static final String A_QUERY = "query";
     public static final String A_GROUPBY = "groupBy";
     public static final String A_SEARCH_TYPES = "types";
@@ -921,6 +922,7 @@ public final class MailConstants {
     public static final String A_IN_DUMPSTER = "inDumpster";
     public static final String A_WARMUP = "warmup";
     public static final String A_QUICK = "quick";
+    public static final String A_EXPLAIN = "explain";
     public static final String A_SCORE = "score";
     public static final String E_HIT = "hit";
 
@@ -148,6 +148,14 @@ public class SearchMultiMailboxRequest implements SearchParameters {
     @XmlAttribute(name = MailConstants.A_QUICK /* quick */, required = false)
     private ZmBoolean quick;
 
+    /**
+     * @zm-api-field-tag explain
+     * @zm-api-field-description If set, the response's <b>&lt;info></b> element describes how each part of the
+     *                           query was executed: its execute mode and estimated hit counts.
+     */
+    @XmlAttribute(name = MailConstants.A_EXPLAIN /* explain */, required = false)
+    private ZmBoolean explain;
+
     // Based on SortBy which is NOT an enum and appears to support runtime construction
     /**
      * @zm-api-field-tag sort-by
@@ -385,6 +393,11 @@ public class SearchMultiMailboxRequest implements SearchParameters {
         this.quick = ZmBoolean.fromBool(quick);
     }
 
+    @Override
+    public void setExplain(Boolean explain) {
+        this.explain = ZmBoolean.fromBool(explain);
+    }
+
     @Override
     public void setSortBy(String sortBy) {
         this.sortBy = sortBy;
@@ -543,6 +556,11 @@ public class SearchMultiMailboxRequest implements SearchParameters {
         return ZmBoolean.toBool(quick);
     }
 
+    @Override
+    public Boolean getExplain() {
+        return ZmBoolean.toBool(explain);
+    }
+
     @Override
     public String getSortBy() {
         return sortBy;
@@ -636,7 +654,8 @@ public class SearchMultiMailboxRequest implements SearchParameters {
         return helper.add("includeTagDeleted", includeTagDeleted).add("includeTagMuted", includeTagMuted)
                 .add("allowableTaskStatus", allowableTaskStatus).add("calItemExpandStart", calItemExpandStart)
                 .add("calItemExpandEnd", calItemExpandEnd).add("query", query).add("inDumpster", inDumpster)
-                .add("searchTypes", searchTypes).add("groupBy", groupBy).add("quick", quick).add("sortBy", sortBy)
+                .add("searchTypes", searchTypes).add("groupBy", groupBy).add("quick", quick).add("explain", explain)
+                .add("sortBy", sortBy)
                 .add("fetch", fetch).add("markRead", markRead).add("maxInlinedLength", maxInlinedLength)
                 .add("wantHtml", wantHtml).add("neuterImages", neuterImages).add("wantRecipients", wantRecipients)
                 .add("prefetch", prefetch).add("resultMode", resultMode).add("field", field).add("limit", limit)
@@ -138,6 +138,14 @@ public class MailSearchParams implements SearchParameters {
     @XmlAttribute(name=MailConstants.A_QUICK /* quick */, required=false)
     private ZmBoolean quick;
 
+    /**
+     * @zm-api-field-tag explain
+     * @zm-api-field-description If set, the response's <b>&lt;info></b> element describes how each part of the
+     * query was executed: its execute mode and estimated hit counts.
+     */
+    @XmlAttribute(name=MailConstants.A_EXPLAIN /* explain */, required=false)
+    private ZmBoolean explain;
+
     // Based on SortBy which is NOT an enum and appears to support runtime construction
     /**
      * @zm-api-field-tag sort-by
@@ -421,6 +429,8 @@ public class MailSearchParams implements SearchParameters {
     @Override
     public void setQuick(Boolean quick) { this.quick = ZmBoolean.fromBool(quick); }
     @Override
+    public void setExplain(Boolean explain) { this.explain = ZmBoolean.fromBool(explain); }
+    @Override
     public void setSortBy(String sortBy) { this.sortBy = sortBy; }
     @Override
     public void setFetch(String fetch) { this.fetch = fetch; }
@@ -487,6 +497,8 @@ public class MailSearchParams implements SearchParameters {
     @Override
     public Boolean getQuick() { return ZmBoolean.toBool(quick); }
     @Override
+    public Boolean getExplain() { return ZmBoolean.toBool(explain); }
+    @Override
     public String getSortBy() { return sortBy; }
     @Override
     public String getFetch() { return fetch; }
@@ -548,6 +560,7 @@ public class MailSearchParams implements SearchParameters {
             .add("searchTypes", searchTypes)
             .add("groupBy", groupBy)
             .add("quick", quick)
+            .add("explain", explain)
             .add("sortBy", sortBy)
             .add("fetch", fetch)
             .add("markRead", markRead)
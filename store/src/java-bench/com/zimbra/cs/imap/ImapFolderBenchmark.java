@@ -0,0 +1,113 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.imap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.zimbra.cs.account.Account;
+import com.zimbra.cs.mailbox.BenchmarkUtil;
+import com.zimbra.cs.mailbox.MailItem;
+import com.zimbra.cs.mailbox.Mailbox;
+import com.zimbra.cs.mailbox.MailboxTestUtil;
+import com.zimbra.cs.store.MockStoreManager;
+
+/**
+ * UID and sequence-number lookups in a large {@link ImapFolder}, plus a round trip through the serialized columnar
+ * form used by the IMAP session caches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImapFolderBenchmark {
+    @Param({ "1000", "100000" })
+    public int messages;
+
+    private ImapFolder i4folder;
+    private final List<ImapMessage> sequence = new ArrayList<ImapMessage>();
+    private byte[] encoded;
+    private int maxUid;
+    private final Random random = new Random(0);
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkUtil.initServer(MockStoreManager.class);
+        Mailbox mbox = BenchmarkUtil.createMailbox("bench@zimbra.com");
+        Account acct = mbox.getAccount();
+        i4folder = new ImapFolder(new ImapPath("INBOX", new ImapCredentials(acct)), (byte) 0, null);
+        int uid = 100;
+        for (int i = 0; i < messages; i++) {
+            // leave occasional gaps in the UID sequence, as expunges would
+            uid += (i % 7 == 0) ? 3 : 1;
+            ImapMessage i4msg = new ImapMessage(uid, MailItem.Type.MESSAGE, uid, 0, null);
+            i4folder.cache(i4msg, false);
+            sequence.add(i4msg);
+        }
+        maxUid = uid;
+        encoded = encode();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        MailboxTestUtil.clearData();
+    }
+
+    @Benchmark
+    public ImapMessage getByImapId() {
+        return i4folder.getByImapId(100 + random.nextInt(maxUid - 100) + 1);
+    }
+
+    @Benchmark
+    public ImapMessage getBySequence() {
+        return i4folder.getBySequence(random.nextInt(messages) + 1);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImapMessageColumns.of(sequence).encode(new DataOutputStream(baos));
+        return baos.toByteArray();
+    }
+
+    @Benchmark
+    public List<ImapMessage> decode() throws IOException {
+        return ImapMessageColumns.decode(new DataInputStream(new ByteArrayInputStream(encoded))).toMessages();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.index;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.zimbra.cs.mailbox.BenchmarkUtil;
+import com.zimbra.cs.mailbox.DeliveryOptions;
+import com.zimbra.cs.mailbox.MailItem;
+import com.zimbra.cs.mailbox.Mailbox;
+import com.zimbra.cs.mailbox.MailboxTestUtil;
+import com.zimbra.cs.mime.ParsedMessage;
+import com.zimbra.cs.store.MockStoreManager;
+
+/**
+ * Lucene index search over a mailbox populated from the message corpus, and index-on-delivery throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class LuceneIndexBenchmark {
+    @Param({ "in:inbox", "test", "from:zimbra", "has:attachment" })
+    public String query;
+
+    private Mailbox mbox;
+    private List<byte[]> corpus;
+    private DeliveryOptions dopt;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkUtil.initServer(MockStoreManager.class);
+        mbox = BenchmarkUtil.createMailbox("bench@zimbra.com");
+        corpus = BenchmarkUtil.loadCorpus();
+        dopt = new DeliveryOptions().setFolderId(Mailbox.ID_FOLDER_INBOX);
+        for (byte[] raw : corpus) {
+            mbox.addMessage(null, new ParsedMessage(raw, false), dopt, null);
+        }
+        MailboxTestUtil.index(mbox);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        MailboxTestUtil.clearData();
+    }
+
+    @Benchmark
+    public void search(Blackhole bh) throws Exception {
+        ZimbraQueryResults results = mbox.index.search(null, query, EnumSet.of(MailItem.Type.MESSAGE),
+                SortBy.DATE_DESC, 100);
+        try {
+            while (results.hasNext()) {
+                bh.consume(results.getNext());
+            }
+        } finally {
+            results.close();
+        }
+    }
+
+    @Benchmark
+    public void addAndIndex(Blackhole bh) throws Exception {
+        byte[] raw = corpus.get(next++ % corpus.size());
+        bh.consume(mbox.addMessage(null, new ParsedMessage(raw, false), dopt, null));
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.mailbox;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import com.zimbra.cs.account.Account;
+import com.zimbra.cs.account.Provisioning;
+import com.zimbra.cs.store.StoreManager;
+import com.zimbra.cs.volume.Volume;
+import com.zimbra.cs.volume.VolumeManager;
+
+/**
+ * Shared setup for the JMH benchmarks under {@code src/java-bench}.  Builds on the unit test environment
+ * ({@link MailboxTestUtil}): in-memory HSQLDB, mock provisioning, and whatever {@link StoreManager} the benchmark asks
+ * for.  Run with {@code ant bench} from the store directory.
+ * <p>
+ * System properties:
+ * <ul>
+ *  <li>{@code zimbra.bench.store.dir} - message volume path for file-based stores, e.g. a directory on tmpfs</li>
+ *  <li>{@code zimbra.bench.corpus.dir} - directory of RFC 822 messages, {@code data/TestMailRaw} by default</li>
+ * </ul>
+ */
+public final class BenchmarkUtil {
+
+    private BenchmarkUtil() {
+    }
+
+    public static void initServer(Class<? extends StoreManager> storeManagerClass) throws Exception {
+        System.setProperty("zimbra.native.required", "false");
+        MailboxTestUtil.initServer(storeManagerClass);
+        MailboxTestUtil.clearData();
+
+        String storeDir = System.getProperty("zimbra.bench.store.dir");
+        if (storeDir != null) {
+            new File(storeDir).mkdirs();
+            VolumeManager mgr = VolumeManager.getInstance();
+            Volume vol = Volume.builder(mgr.getCurrentMessageVolume()).setPath(storeDir, false).build();
+            mgr.update(vol, true);
+        }
+    }
+
+    public static Mailbox createMailbox(String name) throws Exception {
+        Account acct = Provisioning.getInstance().createAccount(name, "secret", new HashMap<String, Object>());
+        return MailboxManager.getInstance().getMailboxByAccount(acct);
+    }
+
+    /**
+     * Loads the message corpus, in file name order so that runs are comparable.
+     */
+    public static List<byte[]> loadCorpus() throws IOException {
+        File dir = new File(System.getProperty("zimbra.bench.corpus.dir", "data/TestMailRaw"));
+        File[] files = dir.listFiles();
+        if (files == null || files.length == 0) {
+            throw new IOException("no messages in " + dir.getAbsolutePath());
+        }
+        Arrays.sort(files);
+        List<byte[]> corpus = new ArrayList<byte[]>(files.length);
+        for (File file : files) {
+            if (file.isFile()) {
+                corpus.add(Files.readAllBytes(file.toPath()));
+            }
+        }
+        return corpus;
+    }
+}
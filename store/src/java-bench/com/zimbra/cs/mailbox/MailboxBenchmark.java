@@ -0,0 +1,71 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.mailbox;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.zimbra.cs.mime.ParsedMessage;
+import com.zimbra.cs.store.file.FileBlobStore;
+
+/**
+ * Delivery into a mailbox backed by HSQLDB and a {@link FileBlobStore}.  Point {@code zimbra.bench.store.dir} at
+ * tmpfs to take the disk out of the numbers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class MailboxBenchmark {
+    private static final DeliveryOptions DELIVERY = new DeliveryOptions().setFolderId(Mailbox.ID_FOLDER_INBOX);
+
+    private Mailbox mbox;
+    private List<byte[]> corpus;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkUtil.initServer(FileBlobStore.class);
+        mbox = BenchmarkUtil.createMailbox("bench@zimbra.com");
+        corpus = BenchmarkUtil.loadCorpus();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        MailboxTestUtil.clearData();
+    }
+
+    @Benchmark
+    public Message addMessage() throws Exception {
+        byte[] raw = corpus.get(next++ % corpus.size());
+        return mbox.addMessage(null, new ParsedMessage(raw, false), DELIVERY, null);
+    }
+}
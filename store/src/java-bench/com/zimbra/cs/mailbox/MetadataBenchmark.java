@@ -0,0 +1,83 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.mailbox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.zimbra.cs.mime.ParsedMessage;
+import com.zimbra.cs.store.MockStoreManager;
+
+/**
+ * {@link Metadata} encoding and decoding, using the serialized form of messages delivered from the corpus.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetadataBenchmark {
+    private final List<String> encoded = new ArrayList<String>();
+    private final List<Metadata> decoded = new ArrayList<Metadata>();
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkUtil.initServer(MockStoreManager.class);
+        Mailbox mbox = BenchmarkUtil.createMailbox("bench@zimbra.com");
+        DeliveryOptions dopt = new DeliveryOptions().setFolderId(Mailbox.ID_FOLDER_INBOX);
+        for (byte[] raw : BenchmarkUtil.loadCorpus()) {
+            Message msg = mbox.addMessage(null, new ParsedMessage(raw, false), dopt, null);
+            Metadata meta = msg.serializeUnderlyingData();
+            encoded.add(meta.toString());
+            decoded.add(meta);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        MailboxTestUtil.clearData();
+    }
+
+    @Benchmark
+    public void decode(Blackhole bh) throws Exception {
+        for (String s : encoded) {
+            bh.consume(new Metadata(s));
+        }
+    }
+
+    @Benchmark
+    public void encode(Blackhole bh) {
+        for (Metadata meta : decoded) {
+            bh.consume(meta.toString());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.mime;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.internet.MimeMessage;
+import javax.mail.util.SharedByteArrayInputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.zimbra.common.zmime.ZMimeParser;
+import com.zimbra.cs.mailbox.BenchmarkUtil;
+import com.zimbra.cs.util.JMSession;
+
+/**
+ * MIME parsing of the message corpus: the raw {@link ZMimeParser} pass, and a full {@link ParsedMessage} analysis as
+ * done on delivery.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class MimeParserBenchmark {
+    private List<byte[]> corpus;
+
+    @Setup
+    public void setUp() throws Exception {
+        corpus = BenchmarkUtil.loadCorpus();
+    }
+
+    @Benchmark
+    public void parse(Blackhole bh) throws Exception {
+        for (byte[] raw : corpus) {
+            MimeMessage mm = ZMimeParser.parse(JMSession.getSession(), new SharedByteArrayInputStream(raw));
+            bh.consume(mm);
+        }
+    }
+
+    @Benchmark
+    public void analyze(Blackhole bh) throws Exception {
+        for (byte[] raw : corpus) {
+            ParsedMessage pm = new ParsedMessage(raw, false);
+            bh.consume(pm.getMessageParts());
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.zimbra.common.soap.Element;
+import com.zimbra.common.soap.MailConstants;
+
+/**
+ * Building and serializing a {@code SearchResponse}-shaped SOAP {@link Element} tree, in both JSON and XML.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ElementBenchmark {
+    @Param({ "json", "xml" })
+    public String format;
+
+    @Param({ "100", "1000" })
+    public int hits;
+
+    private Element response;
+
+    @Setup
+    public void setUp() {
+        response = build();
+    }
+
+    private Element build() {
+        Element resp = "json".equals(format) ? new Element.JSONElement(MailConstants.SEARCH_RESPONSE) :
+            new Element.XMLElement(MailConstants.SEARCH_RESPONSE);
+        for (int i = 0; i < hits; i++) {
+            Element m = resp.addNonUniqueElement(MailConstants.E_MSG);
+            m.addAttribute(MailConstants.A_ID, 1000 + i);
+            m.addAttribute(MailConstants.A_CONV_ID, -(1000 + i));
+            m.addAttribute(MailConstants.A_DATE, 1400000000000L + i * 60000L);
+            m.addAttribute(MailConstants.A_SIZE, 4096 + i);
+            m.addAttribute(MailConstants.A_FLAGS, (i & 1) == 0 ? "u" : "a");
+            Element e = m.addNonUniqueElement(MailConstants.E_EMAIL);
+            e.addAttribute(MailConstants.A_ADDRESS, "sender" + i + "@example.com");
+            e.addAttribute(MailConstants.A_PERSONAL, "Sender \"" + i + "\" <Example>");
+            e.addAttribute(MailConstants.A_ADDRESS_TYPE, "f");
+            m.addNonUniqueElement(MailConstants.E_SUBJECT).setText("Re: quarterly report & status update #" + i);
+            m.addNonUniqueElement(MailConstants.E_FRAG).setText(
+                "Hi all, attached is the latest draft of the report. Let me know if you have <comments> by Friday.");
+        }
+        return resp;
+    }
+
+    @Benchmark
+    public String serialize() {
+        return response.toString();
+    }
+
+    @Benchmark
+    public String buildAndSerialize() {
+        return build().toString();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.account;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.zimbra.common.account.ProvisioningConstants;
+import com.zimbra.cs.mailbox.MailboxTestUtil;
+
+/**
+ * Unit test for the parsed attribute values in {@link Entry}.
+ */
+public final class EntryTest {
+
+    @BeforeClass
+    public static void init() throws Exception {
+        MailboxTestUtil.initProvisioning();
+    }
+
+    private static Cos cos(int maxContacts, String pollingInterval) {
+        Map<String, Object> attrs = new HashMap<String, Object>();
+        attrs.put(Provisioning.A_zimbraContactMaxNumEntries, Integer.toString(maxContacts));
+        attrs.put(Provisioning.A_zimbraPrefMailPollingInterval, pollingInterval);
+        attrs.put(Provisioning.A_zimbraFeatureMailEnabled, ProvisioningConstants.FALSE);
+        return new MockCos("cos", "cos-id", attrs, Provisioning.getInstance());
+    }
+
+    @Test
+    public void typedGetters() throws Exception {
+        Cos cos = cos(100, "5m");
+        Map<String, Object> attrs = new HashMap<String, Object>();
+        attrs.put(Provisioning.A_zimbraMailQuota, "1048576");
+        Account acct = new Account("typed@zimbra.com", "typed-id", attrs, cos.getAccountDefaults(),
+                Provisioning.getInstance());
+
+        Assert.assertEquals(100, acct.getIntAttr(Provisioning.A_zimbraContactMaxNumEntries, -1));
+        Assert.assertEquals(300000L, acct.getTimeInterval(Provisioning.A_zimbraPrefMailPollingInterval, -1));
+        Assert.assertFalse(acct.getBooleanAttr(Provisioning.A_zimbraFeatureMailEnabled, true));
+        Assert.assertEquals(1048576L, acct.getLongAttr(Provisioning.A_zimbraMailQuota, -1));
+        Assert.assertEquals(-1, acct.getIntAttr("zimbraNoSuchAttribute", -1));
+        Assert.assertEquals(-2, acct.getIntAttr("zimbraNoSuchAttribute", -2));
+
+        // modifying the entry replaces the parsed values
+        attrs = new HashMap<String, Object>(attrs);
+        attrs.put(Provisioning.A_zimbraMailQuota, "2048");
+        attrs.put(Provisioning.A_zimbraContactMaxNumEntries, "not a number");
+        acct.setAttrs(attrs);
+        Assert.assertEquals(2048L, acct.getLongAttr(Provisioning.A_zimbraMailQuota, -1));
+        Assert.assertEquals(-1, acct.getIntAttr(Provisioning.A_zimbraContactMaxNumEntries, -1));
+    }
+
+    @Test
+    public void inheritedChange() throws Exception {
+        Cos cos = cos(100, "5m");
+        Account acct = new Account("inherit@zimbra.com", "inherit-id", new HashMap<String, Object>(),
+                cos.getAccountDefaults(), Provisioning.getInstance());
+        Assert.assertEquals(100, acct.getIntAttr(Provisioning.A_zimbraContactMaxNumEntries, -1));
+        Assert.assertEquals(1, acct.getMultiAttrSet(Provisioning.A_zimbraPrefMailPollingInterval).size());
+
+        // the COS refills its account defaults map in place; the account never hears about it directly
+        Map<String, Object> cosAttrs = new HashMap<String, Object>(cos.getAttrs(false));
+        cosAttrs.put(Provisioning.A_zimbraContactMaxNumEntries, "250");
+        cosAttrs.remove(Provisioning.A_zimbraPrefMailPollingInterval);
+        cos.setAttrs(cosAttrs);
+        Assert.assertEquals(250, acct.getIntAttr(Provisioning.A_zimbraContactMaxNumEntries, -1));
+        Assert.assertTrue(acct.getMultiAttrSet(Provisioning.A_zimbraPrefMailPollingInterval).isEmpty());
+    }
+
+    @Test
+    public void rawAttrsChange() throws Exception {
+        Map<String, Object> attrs = new HashMap<String, Object>();
+        attrs.put(Provisioning.A_zimbraMailQuota, "1024");
+        Account acct = new Account("raw@zimbra.com", "raw-id", attrs, null, Provisioning.getInstance());
+        Assert.assertEquals(1024L, acct.getLongAttr(Provisioning.A_zimbraMailQuota, -1));
+
+        // getAttrs hands out a copy, so modifying it doesn't touch the entry
+        acct.getAttrs(false, false).put(Provisioning.A_zimbraMailQuota, "2048");
+        Assert.assertEquals(1024L, acct.getLongAttr(Provisioning.A_zimbraMailQuota, -1));
+        Assert.assertEquals("1024", acct.getAttr(Provisioning.A_zimbraMailQuota));
+
+        acct.getRawAttrs().put(Provisioning.A_zimbraMailQuota, "4096");
+        acct.attrsChanged();
+        Assert.assertEquals(4096L, acct.getLongAttr(Provisioning.A_zimbraMailQuota, -1));
+    }
+
+    @Test
+    public void unrelatedDefaultsChange() throws Exception {
+        Cos cos = cos(100, "5m");
+        Cos other = cos(10, "1m");
+        Account acct = new Account("unrelated@zimbra.com", "unrelated-id", new HashMap<String, Object>(),
+                cos.getAccountDefaults(), Provisioning.getInstance());
+        Account otherAcct = new Account("other@zimbra.com", "other-id", new HashMap<String, Object>(),
+                other.getAccountDefaults(), Provisioning.getInstance());
+        Assert.assertEquals(100, acct.getIntAttr(Provisioning.A_zimbraContactMaxNumEntries, -1));
+        Assert.assertEquals(10, otherAcct.getIntAttr(Provisioning.A_zimbraContactMaxNumEntries, -1));
+        Set<String> intervals = acct.getMultiAttrSet(Provisioning.A_zimbraPrefMailPollingInterval);
+
+        // refilling another COS leaves this account's parsed values alone
+        Map<String, Object> otherAttrs = new HashMap<String, Object>(other.getAttrs(false));
+        otherAttrs.put(Provisioning.A_zimbraContactMaxNumEntries, "20");
+        other.setAttrs(otherAttrs);
+        Assert.assertSame(intervals, acct.getMultiAttrSet(Provisioning.A_zimbraPrefMailPollingInterval));
+        Assert.assertEquals(20, otherAcct.getIntAttr(Provisioning.A_zimbraContactMaxNumEntries, -1));
+    }
+}
@@ -227,7 +227,7 @@ public final class MockProvisioning extends Provisioning {
                        if (add) {
                            map.put(realKey, value);
                        } else {
-                           return;
+                           break;
                        }
                     } else {
                         List<Object> list = null;
@@ -255,6 +255,7 @@ public final class MockProvisioning extends Provisioning {
                 map.remove(attr.getKey());
             }
         }
+        entry.setAttrs(map);
     }
 
     @Override
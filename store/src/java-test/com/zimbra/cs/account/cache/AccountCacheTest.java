@@ -0,0 +1,154 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.account.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.zimbra.cs.account.Account;
+import com.zimbra.cs.account.Provisioning;
+import com.zimbra.cs.account.cache.EntryRefresherTest.BlockingReloader;
+import com.zimbra.cs.mailbox.MailboxTestUtil;
+import com.zimbra.cs.stats.ZimbraPerf;
+
+/**
+ * Unit test for {@link AccountCache}.
+ */
+public final class AccountCacheTest {
+
+    /** Max age of the refresh tests; hits in the last 200ms of it trigger a reload. */
+    private static final long TTL = 1000;
+
+    private final ZimbraPerf.LdapCacheStats stats = new ZimbraPerf.LdapCacheStats(null);
+
+    @BeforeClass
+    public static void init() throws Exception {
+        MailboxTestUtil.initProvisioning();
+    }
+
+    @After
+    public void tearDown() {
+        EntryRefresher.setReloader(null);
+    }
+
+    private static Account account(String name, String id, String... aliases) {
+        Map<String, Object> attrs = new HashMap<String, Object>();
+        attrs.put(Provisioning.A_zimbraMailAlias, aliases);
+        return new Account(name, id, attrs, null, Provisioning.getInstance());
+    }
+
+    @Test
+    public void lookup() {
+        AccountCache cache = new AccountCache(10, TTL, stats);
+        Account acct = account("lookup@zimbra.com", "lookup-id", "alias@zimbra.com");
+        cache.put(acct);
+
+        Assert.assertSame(acct, cache.getById("lookup-id"));
+        Assert.assertSame(acct, cache.getByName("Lookup@Zimbra.com"));
+        Assert.assertSame(acct, cache.getByName("alias@zimbra.com"));
+        Assert.assertNull(cache.getById("other-id"));
+        Assert.assertEquals(1, cache.getSize());
+        Assert.assertEquals(3, stats.hits.getCount());
+        // the alias lookup misses the name map first
+        Assert.assertEquals(2, stats.misses.getCount());
+
+        cache.remove(acct);
+        Assert.assertNull(cache.getById("lookup-id"));
+        Assert.assertNull(cache.getByName("alias@zimbra.com"));
+        Assert.assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void expiry() throws Exception {
+        AccountCache cache = new AccountCache(10, 50, stats);
+        Account acct = account("expiry@zimbra.com", "expiry-id");
+        cache.put(acct);
+        Assert.assertSame(acct, cache.getById("expiry-id"));
+
+        Thread.sleep(100);
+        Assert.assertNull(cache.getById("expiry-id"));
+        Assert.assertNull("a stale entry is removed from every map", cache.getByName("expiry@zimbra.com"));
+        Assert.assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void refreshAhead() throws Exception {
+        BlockingReloader reloader = new BlockingReloader(false);
+        EntryRefresher.setReloader(reloader);
+        AccountCache cache = new AccountCache(10, TTL, stats);
+        Account acct = account("refresh@zimbra.com", "refresh-id");
+        cache.put(acct);
+
+        Assert.assertSame(acct, cache.getById("refresh-id"));
+        Assert.assertEquals("not close to expiry yet", 0, reloader.reloaded.get());
+
+        Thread.sleep(TTL - 150);
+        Assert.assertSame(acct, cache.getById("refresh-id"));
+        EntryRefresherTest.awaitReloads(stats.loads, 1);
+        Assert.assertEquals(1, reloader.reloaded.get());
+
+        // the entry was re-put with a fresh lifetime, so it is neither stale nor refreshed again
+        Thread.sleep(200);
+        Assert.assertSame(acct, cache.getById("refresh-id"));
+        Thread.sleep(50);
+        Assert.assertEquals(1, reloader.reloaded.get());
+    }
+
+    @Test
+    public void removeDuringRefresh() throws Exception {
+        BlockingReloader reloader = new BlockingReloader(true);
+        EntryRefresher.setReloader(reloader);
+        AccountCache cache = new AccountCache(10, TTL, stats);
+        Account acct = account("remove@zimbra.com", "remove-id");
+        cache.put(acct);
+
+        Thread.sleep(TTL - 150);
+        Assert.assertSame(acct, cache.getById("remove-id"));
+        reloader.started.await();
+        cache.remove(acct);
+        reloader.release.countDown();
+        EntryRefresherTest.awaitReloads(stats.loads, 1);
+
+        Assert.assertNull("the reload does not bring back a removed entry", cache.getById("remove-id"));
+        Assert.assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void replaceDuringRefresh() throws Exception {
+        BlockingReloader reloader = new BlockingReloader(true);
+        EntryRefresher.setReloader(reloader);
+        AccountCache cache = new AccountCache(10, TTL, stats);
+        Account acct = account("replace@zimbra.com", "replace-id");
+        cache.put(acct);
+
+        Thread.sleep(TTL - 150);
+        Assert.assertSame(acct, cache.getById("replace-id"));
+        reloader.started.await();
+        Account newer = account("replace@zimbra.com", "replace-id");
+        cache.replace(newer);
+        reloader.release.countDown();
+        EntryRefresherTest.awaitReloads(stats.loads, 1);
+
+        Assert.assertSame("the reload does not overwrite a newer entry", newer, cache.getById("replace-id"));
+        Assert.assertSame(newer, cache.getByName("replace@zimbra.com"));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.account.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.zimbra.common.account.Key.DomainBy;
+import com.zimbra.cs.account.Domain;
+import com.zimbra.cs.account.Provisioning;
+import com.zimbra.cs.account.cache.DomainCache.GetFromDomainCacheOption;
+import com.zimbra.cs.account.cache.EntryRefresherTest.BlockingReloader;
+import com.zimbra.cs.mailbox.MailboxTestUtil;
+import com.zimbra.cs.stats.ZimbraPerf;
+
+/**
+ * Unit test for {@link DomainCache}.
+ */
+public final class DomainCacheTest {
+
+    private static final long TTL = 1000;
+
+    private final ZimbraPerf.LdapCacheStats stats = new ZimbraPerf.LdapCacheStats(null);
+
+    @BeforeClass
+    public static void init() throws Exception {
+        MailboxTestUtil.initProvisioning();
+    }
+
+    @After
+    public void tearDown() {
+        EntryRefresher.setReloader(null);
+    }
+
+    private static Domain domain(String name, String id, String vhost) {
+        Map<String, Object> attrs = new HashMap<String, Object>();
+        attrs.put(Provisioning.A_zimbraVirtualHostname, vhost);
+        return new Domain(name, id, attrs, null, Provisioning.getInstance());
+    }
+
+    @Test
+    public void lookup() throws Exception {
+        DomainCache cache = new DomainCache(10, 50, 10, 50, stats);
+        Domain domain = domain("zimbra.com", "domain-id", "mail.zimbra.com");
+        cache.put(DomainBy.name, "zimbra.com", domain);
+        cache.put(DomainBy.name, "missing.com", null);
+
+        Assert.assertSame(domain, cache.getById("domain-id", GetFromDomainCacheOption.POSITIVE));
+        Assert.assertSame(domain, cache.getByVirtualHostname("Mail.Zimbra.com", GetFromDomainCacheOption.POSITIVE));
+        Assert.assertNull(cache.getByName("missing.com", GetFromDomainCacheOption.POSITIVE));
+        Assert.assertTrue(cache.getByName("missing.com", GetFromDomainCacheOption.BOTH)
+                instanceof DomainCache.NonExistingDomain);
+        Assert.assertEquals(2, stats.hits.getCount());
+        Assert.assertEquals(2, stats.misses.getCount());
+
+        Thread.sleep(100);
+        Assert.assertNull("expired", cache.getByName("zimbra.com", GetFromDomainCacheOption.POSITIVE));
+        Assert.assertNull(cache.getByVirtualHostname("mail.zimbra.com", GetFromDomainCacheOption.POSITIVE));
+        Assert.assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void removeDuringRefresh() throws Exception {
+        BlockingReloader reloader = new BlockingReloader(true);
+        EntryRefresher.setReloader(reloader);
+        DomainCache cache = new DomainCache(10, TTL, 10, TTL, stats);
+        Domain domain = domain("refresh.com", "refresh-id", "mail.refresh.com");
+        cache.put(DomainBy.id, "refresh-id", domain);
+
+        Thread.sleep(TTL - 150);
+        Assert.assertSame(domain, cache.getByName("refresh.com", GetFromDomainCacheOption.POSITIVE));
+        reloader.started.await();
+        cache.remove(domain);
+        reloader.release.countDown();
+        EntryRefresherTest.awaitReloads(stats.loads, 1);
+
+        Assert.assertNull(cache.getById("refresh-id", GetFromDomainCacheOption.POSITIVE));
+        Assert.assertNull(cache.getByVirtualHostname("mail.refresh.com", GetFromDomainCacheOption.POSITIVE));
+    }
+}
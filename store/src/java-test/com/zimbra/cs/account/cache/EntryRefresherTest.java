@@ -0,0 +1,152 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.account.cache;
+
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.zimbra.common.service.ServiceException;
+import com.zimbra.common.stats.StopWatch;
+import com.zimbra.cs.account.Account;
+import com.zimbra.cs.account.Entry;
+import com.zimbra.cs.account.Provisioning;
+import com.zimbra.cs.mailbox.MailboxTestUtil;
+
+/**
+ * Unit test for {@link EntryRefresher}.
+ */
+public final class EntryRefresherTest {
+
+    @BeforeClass
+    public static void init() throws Exception {
+        MailboxTestUtil.initProvisioning();
+    }
+
+    @After
+    public void tearDown() {
+        EntryRefresher.setReloader(null);
+    }
+
+    /** Counts reloads, holding each one until {@link #release} is counted down. */
+    static final class BlockingReloader implements EntryRefresher.Reloader {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release;
+        final AtomicInteger reloaded = new AtomicInteger();
+
+        BlockingReloader(boolean block) {
+            release = new CountDownLatch(block ? 1 : 0);
+        }
+
+        @Override
+        public void reload(Entry entry) {
+            reloaded.incrementAndGet();
+            started.countDown();
+            Uninterruptibles.awaitUninterruptibly(release);
+        }
+    }
+
+    /** Waits for the given number of reloads to finish. */
+    static void awaitReloads(StopWatch timer, long count) throws InterruptedException {
+        for (int i = 0; i < 500 && timer.getCount() < count; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(count, timer.getCount());
+    }
+
+    private static Runnable counter(final AtomicInteger count) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                count.incrementAndGet();
+            }
+        };
+    }
+
+    @Test
+    public void window() {
+        // ldap_cache_refresh_ahead_percent defaults to 20
+        Assert.assertEquals(200, EntryRefresher.window(1000));
+        Assert.assertEquals(0, EntryRefresher.window(0));
+    }
+
+    @Test
+    public void refresh() throws Exception {
+        BlockingReloader reloader = new BlockingReloader(false);
+        EntryRefresher.setReloader(reloader);
+        Account acct = new Account("refresh@zimbra.com", "refresh-id", new HashMap<String, Object>(), null,
+                Provisioning.getInstance());
+        AtomicBoolean pending = new AtomicBoolean();
+        AtomicInteger succeeded = new AtomicInteger();
+        StopWatch timer = new StopWatch();
+
+        EntryRefresher.refresh(acct, pending, timer, counter(succeeded));
+        awaitReloads(timer, 1);
+        Assert.assertEquals(1, reloader.reloaded.get());
+        Assert.assertEquals(1, succeeded.get());
+        Assert.assertFalse("pending flag is cleared", pending.get());
+
+        // only one reload at a time per cache entry
+        pending.set(true);
+        EntryRefresher.refresh(acct, pending, timer, counter(succeeded));
+        Thread.sleep(50);
+        Assert.assertEquals(1, reloader.reloaded.get());
+        Assert.assertEquals(1, timer.getCount());
+    }
+
+    @Test
+    public void failure() throws Exception {
+        EntryRefresher.setReloader(new EntryRefresher.Reloader() {
+            @Override
+            public void reload(Entry entry) throws ServiceException {
+                throw ServiceException.FAILURE("directory unavailable", null);
+            }
+        });
+        Account acct = new Account("failure@zimbra.com", "failure-id", new HashMap<String, Object>(), null,
+                Provisioning.getInstance());
+        AtomicBoolean pending = new AtomicBoolean();
+        AtomicInteger succeeded = new AtomicInteger();
+        StopWatch timer = new StopWatch();
+
+        EntryRefresher.refresh(acct, pending, timer, counter(succeeded));
+        awaitReloads(timer, 1);
+        Assert.assertEquals("the entry is left to expire", 0, succeeded.get());
+        Assert.assertFalse(pending.get());
+    }
+
+    @Test
+    public void noReloader() throws Exception {
+        Account acct = new Account("none@zimbra.com", "none-id", new HashMap<String, Object>(), null,
+                Provisioning.getInstance());
+        AtomicBoolean pending = new AtomicBoolean();
+        AtomicInteger succeeded = new AtomicInteger();
+        StopWatch timer = new StopWatch();
+
+        EntryRefresher.refresh(acct, pending, timer, counter(succeeded));
+        Thread.sleep(50);
+        Assert.assertEquals(0, timer.getCount());
+        Assert.assertEquals(0, succeeded.get());
+        Assert.assertFalse(pending.get());
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.account.cache;
+
+import java.util.HashMap;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.zimbra.cs.account.Provisioning;
+import com.zimbra.cs.account.Server;
+import com.zimbra.cs.account.cache.EntryRefresherTest.BlockingReloader;
+import com.zimbra.cs.mailbox.MailboxTestUtil;
+import com.zimbra.cs.stats.ZimbraPerf;
+
+/**
+ * Unit test for {@link NamedEntryCache}.
+ */
+public final class NamedEntryCacheTest {
+
+    private static final long TTL = 1000;
+
+    private final ZimbraPerf.LdapCacheStats stats = new ZimbraPerf.LdapCacheStats(null);
+
+    @BeforeClass
+    public static void init() throws Exception {
+        MailboxTestUtil.initProvisioning();
+    }
+
+    @After
+    public void tearDown() {
+        EntryRefresher.setReloader(null);
+    }
+
+    private static Server server(String name, String id) {
+        return new Server(name, id, new HashMap<String, Object>(), null, Provisioning.getInstance());
+    }
+
+    @Test
+    public void lookup() throws Exception {
+        NamedEntryCache<Server> cache = new NamedEntryCache<Server>(10, 50, stats);
+        Server server = server("mail.zimbra.com", "server-id");
+        cache.put(server);
+
+        Assert.assertSame(server, cache.getById("server-id"));
+        Assert.assertSame(server, cache.getByName("Mail.Zimbra.com"));
+        Assert.assertNull(cache.getByName("other.zimbra.com"));
+        Assert.assertEquals(2, stats.hits.getCount());
+        Assert.assertEquals(1, stats.misses.getCount());
+
+        Thread.sleep(100);
+        Assert.assertNull("expired", cache.getByName("mail.zimbra.com"));
+        Assert.assertNull(cache.getById("server-id"));
+        Assert.assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void removeDuringRefresh() throws Exception {
+        BlockingReloader reloader = new BlockingReloader(true);
+        EntryRefresher.setReloader(reloader);
+        NamedEntryCache<Server> cache = new NamedEntryCache<Server>(10, TTL, stats);
+        Server server = server("refresh.zimbra.com", "refresh-id");
+        cache.put(server);
+
+        Thread.sleep(TTL - 150);
+        Assert.assertSame(server, cache.getById("refresh-id"));
+        reloader.started.await();
+        cache.remove("refresh.zimbra.com", "refresh-id");
+        reloader.release.countDown();
+        EntryRefresherTest.awaitReloads(stats.loads, 1);
+
+        Assert.assertNull(cache.getById("refresh-id"));
+        Assert.assertNull(cache.getByName("refresh.zimbra.com"));
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.dav.resource;
+
+import java.util.HashMap;
+import java.util.UUID;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.zimbra.cs.account.MockProvisioning;
+import com.zimbra.cs.account.Provisioning;
+import com.zimbra.cs.mailbox.Folder;
+import com.zimbra.cs.mailbox.MailItem;
+import com.zimbra.cs.mailbox.Mailbox;
+import com.zimbra.cs.mailbox.MailboxManager;
+import com.zimbra.cs.mailbox.MailboxTestUtil;
+
+/**
+ * Unit test for {@link CollectionSyncIndex}.
+ */
+public final class CollectionSyncIndexTest {
+
+    @BeforeClass
+    public static void init() throws Exception {
+        MailboxTestUtil.initServer();
+        Provisioning prov = Provisioning.getInstance();
+        prov.createAccount("test@zimbra.com", "secret", new HashMap<String, Object>());
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        MailboxTestUtil.clearData();
+    }
+
+    private static int addAppointment(Mailbox mbox, String uid) throws Exception {
+        long now = System.currentTimeMillis();
+        return MailboxTestUtil.addAppointment(mbox, Mailbox.ID_FOLDER_CALENDAR, uid, now, now + 30 * 60 * 1000).calItemId;
+    }
+
+    private void changesSince(boolean trackSync) throws Exception {
+        Mailbox mbox = MailboxManager.getInstance().getMailboxByAccountId(MockProvisioning.DEFAULT_ACCOUNT_ID);
+        if (trackSync) {
+            mbox.beginTrackingSync();
+        }
+        Folder folder = mbox.getFolderById(null, Mailbox.ID_FOLDER_CALENDAR);
+        String uid1 = UUID.randomUUID().toString();
+        int id1 = addAppointment(mbox, uid1);
+        addAppointment(mbox, UUID.randomUUID().toString());
+
+        CollectionSyncIndex index = new CollectionSyncIndex(1000);
+        CollectionSyncIndex.Delta full = index.getDelta(mbox, folder, "");
+        Assert.assertEquals(2, full.changed.size());
+        Assert.assertTrue(full.removed.isEmpty());
+
+        mbox.delete(null, id1, MailItem.Type.APPOINTMENT);
+        String uid3 = UUID.randomUUID().toString();
+        addAppointment(mbox, uid3);
+
+        CollectionSyncIndex.Delta delta = index.getDelta(mbox, folder, full.token);
+        Assert.assertEquals(1, delta.changed.size());
+        Assert.assertEquals(uid3, delta.changed.get(0).uid);
+        Assert.assertEquals(1, delta.removed.size());
+        Assert.assertEquals(uid1, delta.removed.get(0).uid);
+
+        CollectionSyncIndex.Delta none = index.getDelta(mbox, folder, delta.token);
+        Assert.assertTrue(none.changed.isEmpty());
+        Assert.assertTrue(none.removed.isEmpty());
+
+        // the original token still reports everything since then
+        Assert.assertEquals(1, index.getDelta(mbox, folder, full.token).removed.size());
+    }
+
+    @Test
+    public void reconcile() throws Exception {
+        changesSince(false);
+    }
+
+    @Test
+    public void tombstones() throws Exception {
+        changesSince(true);
+    }
+
+    @Test
+    public void invalidToken() throws Exception {
+        Mailbox mbox = MailboxManager.getInstance().getMailboxByAccountId(MockProvisioning.DEFAULT_ACCOUNT_ID);
+        Folder folder = mbox.getFolderById(null, Mailbox.ID_FOLDER_CALENDAR);
+        addAppointment(mbox, UUID.randomUUID().toString());
+
+        CollectionSyncIndex index = new CollectionSyncIndex(1000);
+        String token = index.getDelta(mbox, folder, null).token;
+        Assert.assertNull("other folder", index.getDelta(mbox, folder, CollectionSyncIndex.toToken(Mailbox.ID_FOLDER_TASKS, 1)));
+        Assert.assertNull("garbage", index.getDelta(mbox, folder, "http://example.com/sync/1"));
+
+        // a token older than the index can't be answered
+        addAppointment(mbox, UUID.randomUUID().toString());
+        Assert.assertNull(new CollectionSyncIndex(1000).getDelta(mbox, folder, token));
+        Assert.assertNotNull(index.getDelta(mbox, folder, token));
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.fb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.zimbra.cs.account.MockProvisioning;
+import com.zimbra.cs.account.Provisioning;
+import com.zimbra.cs.fb.FreeBusy.FBInstance;
+import com.zimbra.cs.fb.FreeBusy.Interval;
+import com.zimbra.cs.mailbox.DeliveryOptions;
+import com.zimbra.cs.mailbox.Flag;
+import com.zimbra.cs.mailbox.Folder;
+import com.zimbra.cs.mailbox.MailItem;
+import com.zimbra.cs.mailbox.Mailbox;
+import com.zimbra.cs.mailbox.MailboxManager;
+import com.zimbra.cs.mailbox.MailboxTestUtil;
+import com.zimbra.cs.mailbox.Message;
+import com.zimbra.cs.mailbox.calendar.IcalXmlStrMap;
+import com.zimbra.cs.mailbox.calendar.cache.CalSummaryCache.CalendarDataResult;
+import com.zimbra.cs.mime.ParsedMessage;
+
+/**
+ * Unit test for {@link FreeBusyIndex}.
+ */
+public final class FreeBusyIndexTest {
+
+    @BeforeClass
+    public static void init() throws Exception {
+        MailboxTestUtil.initServer();
+        Provisioning prov = Provisioning.getInstance();
+        prov.createAccount("test@zimbra.com", "secret", new HashMap<String, Object>());
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        MailboxTestUtil.clearData();
+    }
+
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private static void addAppointment(Mailbox mbox) throws Exception {
+        long now = System.currentTimeMillis();
+        MailboxTestUtil.addAppointment(mbox, Mailbox.ID_FOLDER_CALENDAR, UUID.randomUUID().toString(),
+                now, now + HOUR / 2);
+    }
+
+    /**
+     * Checks that the free/busy computed through the index for {@code [start, end)} matches the one computed straight
+     * from the calendar summary cache, and returns the busy intervals.
+     */
+    private static List<Interval> assertSameBusy(Mailbox mbox, long start, long end) throws Exception {
+        FreeBusy indexed = LocalFreeBusyProvider.getFreeBusyList(mbox.getAccount(), false, mbox, "test", start, end,
+                FreeBusyQuery.CALENDAR_FOLDER_ALL, null);
+        Assert.assertTrue(FreeBusyIndex.getInstance().isIndexed(mbox.getAccountId()));
+
+        FreeBusy.IntervalList expected = new FreeBusy.IntervalList(start, end);
+        for (CalendarDataResult result : mbox.getAllCalendarsSummaryForRange(null, MailItem.Type.APPOINTMENT,
+                start, end)) {
+            FreeBusyIndex.FolderIntervals.of(result.data).addTo(expected, start, end, -1);
+        }
+
+        Iterator<Interval> actual = indexed.iterator();
+        List<Interval> busy = new ArrayList<Interval>();
+        for (Interval exp : expected) {
+            Assert.assertTrue(actual.hasNext());
+            Interval act = actual.next();
+            Assert.assertEquals(exp.getStart(), act.getStart());
+            Assert.assertEquals(exp.getEnd(), act.getEnd());
+            Assert.assertEquals(exp.getStatus(), act.getStatus());
+            Assert.assertEquals(new ArrayList<FBInstance>(exp.getInstances()),
+                    new ArrayList<FBInstance>(act.getInstances()));
+            if (!IcalXmlStrMap.FBTYPE_FREE.equals(act.getStatus())) {
+                busy.add(act);
+            }
+        }
+        Assert.assertFalse(actual.hasNext());
+        return busy;
+    }
+
+    private static void lookup(Mailbox mbox) throws Exception {
+        long now = System.currentTimeMillis();
+        Assert.assertNotNull(FreeBusyIndex.getInstance().lookup(mbox, now, now + 60 * 60 * 1000));
+        Assert.assertTrue(FreeBusyIndex.getInstance().isIndexed(mbox.getAccountId()));
+    }
+
+    @Test
+    public void unrelatedChanges() throws Exception {
+        Mailbox mbox = MailboxManager.getInstance().getMailboxByAccountId(MockProvisioning.DEFAULT_ACCOUNT_ID);
+        lookup(mbox);
+
+        // delivering and reading mail changes the inbox's counts, not any calendar
+        DeliveryOptions dopt = new DeliveryOptions().setFolderId(Mailbox.ID_FOLDER_INBOX).setFlags(Flag.BITMASK_UNREAD);
+        Message msg = mbox.addMessage(null, new ParsedMessage("From: test1@zimbra.com".getBytes(), false), dopt, null);
+        mbox.alterTag(null, msg.getId(), MailItem.Type.MESSAGE, Flag.FlagInfo.UNREAD, false, null);
+        mbox.createFolder(null, "notes", new Folder.FolderOptions().setDefaultView(MailItem.Type.MESSAGE));
+        Assert.assertTrue(FreeBusyIndex.getInstance().isIndexed(mbox.getAccountId()));
+    }
+
+    @Test
+    public void sameBusyAsSummary() throws Exception {
+        Mailbox mbox = MailboxManager.getInstance().getMailboxByAccountId(MockProvisioning.DEFAULT_ACCOUNT_ID);
+        long start = (System.currentTimeMillis() / (24 * HOUR) + 1) * 24 * HOUR;
+        long end = start + 24 * HOUR;
+        Assert.assertTrue(assertSameBusy(mbox, start, end).isEmpty());
+
+        String uid = UUID.randomUUID().toString();
+        MailboxTestUtil.addAppointment(mbox, Mailbox.ID_FOLDER_CALENDAR, uid, start + 9 * HOUR, start + 10 * HOUR);
+        List<Interval> busy = assertSameBusy(mbox, start, end);
+        Assert.assertEquals(1, busy.size());
+        Assert.assertEquals(start + 9 * HOUR, busy.get(0).getStart());
+
+        MailboxTestUtil.addAppointment(mbox, Mailbox.ID_FOLDER_CALENDAR, UUID.randomUUID().toString(),
+                start + 11 * HOUR, start + 12 * HOUR);
+        Assert.assertEquals(2, assertSameBusy(mbox, start, end).size());
+
+        // moving an appointment moves its busy interval
+        MailboxTestUtil.addAppointment(mbox, Mailbox.ID_FOLDER_CALENDAR, uid, start + 14 * HOUR, start + 15 * HOUR);
+        busy = assertSameBusy(mbox, start, end);
+        Assert.assertEquals(2, busy.size());
+        Assert.assertEquals(start + 11 * HOUR, busy.get(0).getStart());
+        Assert.assertEquals(start + 14 * HOUR, busy.get(1).getStart());
+        Assert.assertEquals(start + 15 * HOUR, busy.get(1).getEnd());
+    }
+
+    @Test
+    public void calendarChanges() throws Exception {
+        Mailbox mbox = MailboxManager.getInstance().getMailboxByAccountId(MockProvisioning.DEFAULT_ACCOUNT_ID);
+        String accountId = mbox.getAccountId();
+
+        lookup(mbox);
+        addAppointment(mbox);
+        Assert.assertFalse(FreeBusyIndex.getInstance().isIndexed(accountId));
+
+        lookup(mbox);
+        mbox.alterTag(null, Mailbox.ID_FOLDER_CALENDAR, MailItem.Type.FOLDER, Flag.FlagInfo.EXCLUDE_FREEBUSY, true,
+                null);
+        Assert.assertFalse(FreeBusyIndex.getInstance().isIndexed(accountId));
+
+        lookup(mbox);
+        Folder folder = mbox.createFolder(null, "team",
+                new Folder.FolderOptions().setDefaultView(MailItem.Type.APPOINTMENT));
+        Assert.assertFalse(FreeBusyIndex.getInstance().isIndexed(accountId));
+
+        lookup(mbox);
+        mbox.move(null, folder.getId(), MailItem.Type.FOLDER, Mailbox.ID_FOLDER_TRASH);
+        Assert.assertFalse(FreeBusyIndex.getInstance().isIndexed(accountId));
+
+        lookup(mbox);
+        mbox.delete(null, folder.getId(), MailItem.Type.FOLDER);
+        Assert.assertFalse(FreeBusyIndex.getInstance().isIndexed(accountId));
+    }
+}
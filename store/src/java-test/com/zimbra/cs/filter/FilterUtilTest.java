@@ -21,6 +21,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -218,4 +219,13 @@ public class FilterUtilTest {
         String regex = FilterUtil.sieveToJavaRegex("coyote@**.com");
         Assert.assertEquals("coyote@(.*?)(.*)\\.com", regex);
     }
+
+    @Test
+    public void testCompileSievePattern() {
+        Pattern p = FilterUtil.compileSievePattern("coyote@(.*)\\.com", 0);
+        Assert.assertSame(p, FilterUtil.compileSievePattern("coyote@(.*)\\.com", 0));
+        Assert.assertNotSame(p, FilterUtil.compileSievePattern("coyote@(.*)\\.com", Pattern.CASE_INSENSITIVE));
+        Assert.assertTrue(p.matcher("coyote@acme.com").matches());
+        Assert.assertFalse(p.matcher("COYOTE@acme.com").matches());
+    }
 }
@@ -24,6 +24,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Set;
@@ -35,6 +37,7 @@ import org.junit.Test;
 import com.zimbra.common.mime.MimeConstants;
 import com.zimbra.common.util.ByteUtil;
 import com.zimbra.common.util.StringUtil;
+import com.zimbra.common.util.TruncatingWriter;
 import com.zimbra.cs.account.Account;
 import com.zimbra.cs.account.Provisioning;
 import com.zimbra.cs.mailbox.MailboxTestUtil;
@@ -1431,4 +1434,34 @@ public class DefangFilterTest {
         Assert.assertTrue(!result.contains("'''''"));
         
     }
+
+    /**
+     * Defanging into a truncating writer stops once the limit is reached
+     * @throws Exception
+     */
+    @Test
+    public void testTruncatedOutput() throws Exception {
+        StringBuilder html = new StringBuilder("<html><body>");
+        for (int i = 0; i < 1000; i++) {
+            html.append("<p>paragraph ").append(i).append("</p>");
+        }
+        html.append("</body></html>");
+
+        StringWriter sw = new StringWriter();
+        TruncatingWriter tw = new TruncatingWriter(sw, 101);
+        DefangFactory.getDefanger(MimeConstants.CT_TEXT_HTML).defang(new StringReader(html.toString()), true, tw);
+        Assert.assertTrue(tw.wasTruncated());
+        Assert.assertEquals(101, sw.toString().length());
+    }
+
+    @Test
+    public void testDefangCache() throws Exception {
+        DefangCache cache = new DefangCache(1024);
+        String key = DefangCache.getKey("digest", "2", true, 100, "utf-8");
+        Assert.assertNull(cache.get(key));
+        cache.put(key, "<p>defanged</p>", false);
+        Assert.assertEquals("<p>defanged</p>", cache.get(key).getContent());
+        Assert.assertNull(cache.get(DefangCache.getKey("digest", "2", false, 100, "utf-8")));
+        Assert.assertFalse(new DefangCache(0).isEnabled());
+    }
 }
@@ -1,5 +1,10 @@
 package com.zimbra.cs.imap;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Set;
 
@@ -12,6 +17,7 @@ import org.junit.Test;
 
 import com.zimbra.cs.account.Account;
 import com.zimbra.cs.account.Provisioning;
+import com.zimbra.cs.mailbox.Flag;
 import com.zimbra.cs.mailbox.MailItem.Type;
 import com.zimbra.cs.mailbox.Mailbox;
 import com.zimbra.cs.mailbox.MailboxManager;
@@ -42,6 +48,40 @@ public class ImapFolderTest {
         MailboxTestUtil.clearData();
     }
 
+    @Test
+    public void serializeColumns() throws Exception {
+        ImapCredentials creds = new ImapCredentials(acct, ImapCredentials.EnabledHack.NONE);
+        ImapPath path = new ImapPath("trash", creds);
+
+        ImapFolder i4folder = new ImapFolder(path, (byte) 0, null);
+        i4folder.cache(new ImapMessage(1, Type.MESSAGE, 11, Flag.BITMASK_UNREAD, null), true);
+        i4folder.cache(new ImapMessage(2, Type.CONTACT, 12, 0, new String[] { "foo" }), false);
+        i4folder.cache(new ImapMessage(300, Type.MESSAGE, 13, Flag.BITMASK_FLAGGED, new String[] { "foo" }), false);
+        i4folder.cache(new ImapMessage(4, Type.MESSAGE, 1000, 0, new String[] { "foo", "bar" }), false);
+        i4folder.markMessageExpunged(i4folder.getBySequence(2));
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ObjectOutputStream oout = new ObjectOutputStream(bout);
+        oout.writeObject(i4folder);
+        oout.close();
+        ImapFolder copy = (ImapFolder) new ObjectInputStream(new ByteArrayInputStream(bout.toByteArray())).readObject();
+
+        Assert.assertEquals(4, copy.getSize());
+        for (int seq = 1; seq <= 4; seq++) {
+            ImapMessage expected = i4folder.getBySequence(seq, true);
+            ImapMessage actual = copy.getBySequence(seq, true);
+            Assert.assertEquals(expected.msgId, actual.msgId);
+            Assert.assertEquals(expected.imapUid, actual.imapUid);
+            Assert.assertEquals(expected.sequence, actual.sequence);
+            Assert.assertEquals(expected.flags, actual.flags);
+            Assert.assertEquals(expected.sflags, actual.sflags);
+            Assert.assertEquals(expected.getType(), actual.getType());
+            Assert.assertTrue(Arrays.equals(expected.tags, actual.tags));
+        }
+        Assert.assertNull("expunged", copy.getBySequence(2));
+        Assert.assertEquals(300, copy.getByImapId(13).msgId);
+    }
+
     @Test
     public void testGetSubsequence() throws Exception {
         ImapCredentials creds = new ImapCredentials(acct, ImapCredentials.EnabledHack.NONE);
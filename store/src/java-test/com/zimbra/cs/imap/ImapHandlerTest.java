@@ -3,7 +3,11 @@ package com.zimbra.cs.imap;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 
@@ -16,6 +20,7 @@ import org.junit.Test;
 import org.junit.rules.MethodRule;
 import org.junit.rules.TestName;
 
+import com.google.common.base.Charsets;
 import com.zimbra.common.localconfig.LC;
 import com.zimbra.common.mailbox.FolderStore;
 import com.zimbra.common.service.ServiceException;
@@ -27,7 +32,10 @@ import com.zimbra.cs.mailbox.MailboxManager;
 import com.zimbra.cs.mailbox.MailboxTestUtil;
 import com.zimbra.cs.mailbox.Message;
 import com.zimbra.cs.mailbox.SearchFolder;
+import com.zimbra.cs.server.FileRegionOutput;
 import com.zimbra.cs.server.ServerThrottle;
+import com.zimbra.cs.store.StoreManager;
+import com.zimbra.cs.store.file.FileBlobStore;
 import com.zimbra.cs.util.ZTestWatchman;
 import com.zimbra.qa.unittest.TestUtil;
 
@@ -43,6 +51,8 @@ public class ImapHandlerTest {
     @BeforeClass
     public static void init() throws Exception {
         LC.imap_use_ehcache.setDefault(false);
+        //don't fail test even if native libraries not installed
+        System.setProperty("zimbra.native.required", "false");
         MailboxTestUtil.initServer();
         String[] hosts = {"localhost", "127.0.0.1"};
         ServerThrottle.configureThrottle(new ImapConfig(false).getProtocol(), 100, 100, Arrays.asList(hosts), Arrays.asList(hosts));
@@ -243,6 +253,93 @@ public class ImapHandlerTest {
         Assert.assertEquals("Output of SEARCH", "* SEARCH 2\r\nsearchtag OK SEARCH completed\r\n", baos.toString());
     }
 
+    /** Copies each file region into the output, the way the peer would see it. */
+    static final class FileRegionRecorder extends ByteArrayOutputStream implements FileRegionOutput {
+        private final boolean supported;
+        int regions = 0;
+
+        FileRegionRecorder(boolean supported) {
+            this.supported = supported;
+        }
+
+        @Override
+        public boolean isFileRegionSupported() {
+            return supported;
+        }
+
+        @Override
+        public void writeFileRegion(FileChannel channel, long position, long count) throws IOException {
+            regions++;
+            try {
+                ByteBuffer buf = ByteBuffer.allocate((int) count);
+                while (buf.hasRemaining()) {
+                    if (channel.read(buf, position + buf.position()) < 0) {
+                        break;
+                    }
+                }
+                write(buf.array(), 0, buf.position());
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * FETCHes BODY[] of a message stored on a file volume and checks the literal sent to the client.
+     */
+    private FileRegionRecorder fetchEntireMessage(boolean regionsSupported) throws Exception {
+        StoreManager originalStoreManager = StoreManager.getInstance();
+        StoreManager.setInstance(new FileBlobStore());
+        StoreManager.getInstance().startup();
+        try {
+            Account acct = Provisioning.getInstance().getAccount("12aa345b-2b47-44e6-8cb8-7fdfa18c1a9f");
+            Mailbox mbox = MailboxManager.getInstance().getMailboxByAccount(acct);
+            Message msg = TestUtil.addMessage(mbox, "Message zero copy");
+            ImapHandler handler = new MockImapHandler();
+            ImapCredentials creds = new ImapCredentials(acct, ImapCredentials.EnabledHack.NONE);
+            ImapPath pathInbox = new MockImapPath(null, mbox.getFolderById(null, Mailbox.ID_FOLDER_INBOX), creds);
+            handler.setCredentials(creds);
+            handler.setSelectedFolder(pathInbox, (byte) 0);
+
+            FileRegionRecorder output = new FileRegionRecorder(regionsSupported);
+            handler.output = output;
+            List<ImapPartSpecifier> parts = Collections.singletonList(new ImapPartSpecifier("BODY", "", ""));
+            Assert.assertTrue(handler.doFETCH("fetchtag", "1", 0, parts, false, -1));
+            String literal = "BODY[] {" + msg.getSize() + "}\r\n" + new String(msg.getContent(), Charsets.UTF_8) + ")";
+            Assert.assertTrue("Output of FETCH: " + output, output.toString().contains(literal));
+            Assert.assertTrue(output.toString().endsWith("fetchtag OK FETCH completed\r\n"));
+
+            mbox.delete(null, msg.getId(), MailItem.Type.MESSAGE);
+            return output;
+        } finally {
+            StoreManager.getInstance().shutdown();
+            StoreManager.setInstance(originalStoreManager);
+        }
+    }
+
+    @Test
+    public void testFetchFileRegion() throws Exception {
+        FileRegionRecorder output = fetchEntireMessage(true);
+        Assert.assertEquals("message sent as a file region", 1, output.regions);
+    }
+
+    @Test
+    public void testFetchFileRegionUnsupported() throws Exception {
+        // e.g. once the connection is encrypted
+        FileRegionRecorder output = fetchEntireMessage(false);
+        Assert.assertEquals("message copied through the stream", 0, output.regions);
+    }
+
+    @Test
+    public void testFetchFileRegionDisabled() throws Exception {
+        LC.imap_zero_copy_fetch.setDefault(false);
+        try {
+            FileRegionRecorder output = fetchEntireMessage(true);
+            Assert.assertEquals("message copied through the stream", 0, output.regions);
+        } finally {
+            LC.imap_zero_copy_fetch.setDefault(true);
+        }
+    }
 
     class MockImapPath extends ImapPath {
 
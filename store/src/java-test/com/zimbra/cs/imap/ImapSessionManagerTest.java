@@ -0,0 +1,138 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.imap;
+
+import java.util.HashMap;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.zimbra.common.localconfig.LC;
+import com.zimbra.cs.account.Account;
+import com.zimbra.cs.account.Provisioning;
+import com.zimbra.cs.mailbox.Flag;
+import com.zimbra.cs.mailbox.Folder;
+import com.zimbra.cs.mailbox.MailItem;
+import com.zimbra.cs.mailbox.Mailbox;
+import com.zimbra.cs.mailbox.MailboxManager;
+import com.zimbra.cs.mailbox.MailboxTestUtil;
+import com.zimbra.cs.mailbox.Message;
+import com.zimbra.qa.unittest.TestUtil;
+
+/**
+ * Unit test for the folder preload of {@link ImapSessionManager}.
+ */
+public final class ImapSessionManagerTest {
+
+    private Mailbox mbox;
+    private ImapMailboxStore imapStore;
+
+    @BeforeClass
+    public static void init() throws Exception {
+        LC.imap_use_ehcache.setDefault(false);
+        MailboxTestUtil.initServer();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        MailboxTestUtil.clearData();
+        HashMap<String, Object> attrs = new HashMap<String, Object>();
+        attrs.put(Provisioning.A_zimbraId, "5c3b4f4e-6a5e-4f6c-8f2c-0d1b8f6a2e31");
+        Account acct = Provisioning.getInstance().createAccount("preload@zimbra.com", "secret", attrs);
+        mbox = MailboxManager.getInstance().getMailboxByAccount(acct);
+        imapStore = ImapMailboxStore.get(mbox);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        MailboxTestUtil.clearData();
+    }
+
+    private ImapSessionManager.FolderPreload preload(int folderId) throws Exception {
+        Folder folder = mbox.getFolderById(null, folderId);
+        ImapSessionManager.FolderPreload preload =
+                ImapSessionManager.getInstance().preloadFolder(null, imapStore, folder, folderId);
+        Assert.assertNotNull(preload);
+        return preload;
+    }
+
+    private boolean isCurrent(ImapSessionManager.FolderPreload preload, int folderId) throws Exception {
+        mbox.lock(true);
+        try {
+            return preload.isCurrent(mbox.getFolderById(null, folderId));
+        } finally {
+            mbox.unlock();
+        }
+    }
+
+    @Test
+    public void preload() throws Exception {
+        Folder folder = mbox.createFolder(null, "preload",
+                new Folder.FolderOptions().setDefaultView(MailItem.Type.MESSAGE));
+        for (int i = 1; i <= 3; i++) {
+            TestUtil.addMessage(mbox, folder.getId(), "preload " + i, System.currentTimeMillis());
+        }
+        ImapSessionManager.FolderPreload preload = preload(folder.getId());
+        Assert.assertNull("read from the database", preload.cacheKey);
+        Assert.assertEquals(3, preload.i4list.size());
+        Assert.assertTrue(isCurrent(preload, folder.getId()));
+
+        // changes to other folders don't affect this one
+        TestUtil.addMessage(mbox, Mailbox.ID_FOLDER_INBOX, "elsewhere", System.currentTimeMillis());
+        mbox.createFolder(null, "sibling", new Folder.FolderOptions().setDefaultView(MailItem.Type.MESSAGE));
+        Assert.assertTrue("still current after changes elsewhere in the mailbox", isCurrent(preload, folder.getId()));
+    }
+
+    @Test
+    public void discardAfterAdd() throws Exception {
+        Folder folder = mbox.createFolder(null, "add",
+                new Folder.FolderOptions().setDefaultView(MailItem.Type.MESSAGE));
+        TestUtil.addMessage(mbox, folder.getId(), "first", System.currentTimeMillis());
+        ImapSessionManager.FolderPreload preload = preload(folder.getId());
+        Assert.assertEquals(1, preload.i4list.size());
+
+        TestUtil.addMessage(mbox, folder.getId(), "second", System.currentTimeMillis());
+        Assert.assertFalse("stale after a message is added", isCurrent(preload, folder.getId()));
+    }
+
+    @Test
+    public void discardAfterFlagChange() throws Exception {
+        Folder folder = mbox.createFolder(null, "flags",
+                new Folder.FolderOptions().setDefaultView(MailItem.Type.MESSAGE));
+        Message msg = TestUtil.addMessage(mbox, folder.getId(), "flagged", System.currentTimeMillis());
+        ImapSessionManager.FolderPreload preload = preload(folder.getId());
+
+        mbox.alterTag(null, msg.getId(), MailItem.Type.MESSAGE, Flag.FlagInfo.FLAGGED, true, null);
+        Assert.assertFalse("stale after a flag change", isCurrent(preload, folder.getId()));
+    }
+
+    @Test
+    public void discardAfterDelete() throws Exception {
+        Folder folder = mbox.createFolder(null, "delete",
+                new Folder.FolderOptions().setDefaultView(MailItem.Type.MESSAGE));
+        Message msg = TestUtil.addMessage(mbox, folder.getId(), "deleted", System.currentTimeMillis());
+        TestUtil.addMessage(mbox, folder.getId(), "kept", System.currentTimeMillis());
+        ImapSessionManager.FolderPreload preload = preload(folder.getId());
+        Assert.assertEquals(2, preload.i4list.size());
+
+        mbox.delete(null, msg.getId(), MailItem.Type.MESSAGE);
+        Assert.assertFalse("stale after a message is removed", isCurrent(preload, folder.getId()));
+    }
+}
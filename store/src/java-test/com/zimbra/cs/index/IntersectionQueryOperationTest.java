@@ -18,6 +18,9 @@ package com.zimbra.cs.index;
 
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -32,6 +35,7 @@ import com.zimbra.cs.mailbox.MailItem;
 import com.zimbra.cs.mailbox.Mailbox;
 import com.zimbra.cs.mailbox.MailboxManager;
 import com.zimbra.cs.mailbox.MailboxTestUtil;
+import com.zimbra.cs.mailbox.Message;
 import com.zimbra.cs.mailbox.OperationContext;
 import com.zimbra.cs.mime.ParsedMessage;
 
@@ -54,6 +58,44 @@ public final class IntersectionQueryOperationTest {
         MailboxTestUtil.clearData();
     }
 
+    /**
+     * ANDed DB operations merge into one, and ORs are distributed over the AND, so use a DB operation that won't merge
+     * to keep the intersection multi-operation through optimize().
+     */
+    private static final class UncombinedDBQueryOperation extends DBQueryOperation {
+        @Override
+        protected QueryOperation combineOps(QueryOperation other, boolean union) {
+            return null;
+        }
+    }
+
+    private static Set<Integer> hits(Mailbox mbox, QueryOperation op) throws Exception {
+        SearchParams params = new SearchParams();
+        params.setTypes(EnumSet.of(MailItem.Type.MESSAGE));
+        params.setSortBy(SortBy.DATE_DESC);
+        Set<Integer> ids = new HashSet<Integer>();
+        ZimbraQueryResults results = op.run(mbox, params, 100);
+        try {
+            while (results.hasNext()) {
+                ids.add(results.getNext().getItemId());
+            }
+        } finally {
+            results.close();
+        }
+        return ids;
+    }
+
+    private static IntersectionQueryOperation inboxAndTag(Mailbox mbox) throws Exception {
+        DBQueryOperation inbox = new UncombinedDBQueryOperation();
+        inbox.addInFolder(mbox.getFolderById(null, Mailbox.ID_FOLDER_INBOX), true);
+        DBQueryOperation tag = new UncombinedDBQueryOperation();
+        tag.addTag(mbox.getTagByName(null, "foo"), true);
+        IntersectionQueryOperation and = new IntersectionQueryOperation();
+        and.addQueryOp(inbox);
+        and.addQueryOp(tag);
+        return and;
+    }
+
     @Test
     public void optimize() throws Exception {
         Mailbox mbox = MailboxManager.getInstance().getMailboxByAccountId(MockProvisioning.DEFAULT_ACCOUNT_ID);
@@ -85,4 +127,67 @@ public final class IntersectionQueryOperationTest {
         Assert.assertEquals("", query.toQueryString());
     }
 
+    @Test
+    public void orderByEstimate() throws Exception {
+        Mailbox mbox = MailboxManager.getInstance().getMailboxByAccountId(MockProvisioning.DEFAULT_ACCOUNT_ID);
+        DeliveryOptions dopt = new DeliveryOptions().setFolderId(Mailbox.ID_FOLDER_INBOX);
+        Message msg = mbox.addMessage(null, new ParsedMessage("From: test1@zimbra.com".getBytes(), false), dopt, null);
+        mbox.addMessage(null, new ParsedMessage("From: test2@zimbra.com".getBytes(), false), dopt, null);
+        mbox.addMessage(null, new ParsedMessage("From: test3@zimbra.com".getBytes(), false), dopt, null);
+        Message sent = mbox.addMessage(null, new ParsedMessage("From: test4@zimbra.com".getBytes(), false),
+                new DeliveryOptions().setFolderId(Mailbox.ID_FOLDER_SENT), null);
+        mbox.alterTag(null, msg.getId(), MailItem.Type.MESSAGE, "foo", true, null);
+        mbox.alterTag(null, sent.getId(), MailItem.Type.MESSAGE, "foo", true, null);
+        MailboxTestUtil.index(mbox);
+
+        Set<Integer> unordered = hits(mbox, inboxAndTag(mbox));
+        Assert.assertEquals(1, unordered.size());
+        Assert.assertTrue(unordered.contains(msg.getId()));
+
+        IntersectionQueryOperation and = inboxAndTag(mbox);
+        Assert.assertEquals(3, and.operations.get(0).estimateHitCount(mbox));
+        QueryOperation optimized = and.optimize(mbox);
+        Assert.assertSame(and, optimized);
+        Assert.assertEquals(2, and.operations.size());
+        Assert.assertEquals("the tag has fewer hits than the inbox", 2, and.operations.get(0).estimateHitCount(mbox));
+        Assert.assertEquals(3, and.operations.get(1).estimateHitCount(mbox));
+        Assert.assertEquals(unordered, hits(mbox, optimized));
+    }
+
+    @Test
+    public void estimate() throws Exception {
+        Mailbox mbox = MailboxManager.getInstance().getMailboxByAccountId(MockProvisioning.DEFAULT_ACCOUNT_ID);
+        DeliveryOptions dopt = new DeliveryOptions().setFolderId(Mailbox.ID_FOLDER_INBOX);
+        Message msg = mbox.addMessage(null, new ParsedMessage("From: test1@zimbra.com".getBytes(), false), dopt, null);
+        mbox.addMessage(null, new ParsedMessage("From: test2@zimbra.com".getBytes(), false), dopt, null);
+        mbox.addMessage(null, new ParsedMessage("From: test3@zimbra.com".getBytes(), false), dopt, null);
+        mbox.alterTag(null, msg.getId(), MailItem.Type.MESSAGE, "foo", true, null);
+        MailboxTestUtil.index(mbox);
+
+        DBQueryOperation inbox = new DBQueryOperation();
+        inbox.addInFolder(mbox.getFolderById(null, Mailbox.ID_FOLDER_INBOX), true);
+        Assert.assertEquals(3, inbox.estimateHitCount(mbox));
+        DBQueryOperation tag = new DBQueryOperation();
+        tag.addTag(mbox.getTagByName(null, "foo"), true);
+        Assert.assertEquals(1, tag.estimateHitCount(mbox));
+        IntersectionQueryOperation and = new IntersectionQueryOperation();
+        and.addQueryOp(inbox);
+        and.addQueryOp(tag);
+        Assert.assertEquals(1, and.estimateHitCount(mbox));
+        Assert.assertEquals(-1, new DBQueryOperation().estimateHitCount(mbox));
+
+        SearchParams params = new SearchParams();
+        params.setQueryString("in:inbox");
+        params.setTypes(EnumSet.of(MailItem.Type.MESSAGE));
+        params.setSortBy(SortBy.NONE);
+        params.setExplain(true);
+        ZimbraQuery query = new ZimbraQuery(new OperationContext(mbox), SoapProtocol.Soap12, mbox, params);
+        ZimbraQueryResults results = query.execute();
+        Assert.assertTrue(results.hasNext());
+        List<QueryInfo> info = results.getResultInfo();
+        Assert.assertEquals(1, info.size());
+        Assert.assertTrue(info.get(0).toString(), info.get(0).toString().startsWith("EXPLAIN(NO_LUCENE,3,-1,"));
+        results.close();
+    }
+
 }
@@ -16,6 +16,21 @@
  */
 package com.zimbra.cs.index;
 
+import java.util.Collections;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zimbra.common.mailbox.ContactConstants;
+import com.zimbra.cs.account.MockProvisioning;
+import com.zimbra.cs.mailbox.Mailbox;
+import com.zimbra.cs.mailbox.MailboxManager;
+import com.zimbra.cs.mime.ParsedContact;
+
 /**
  * Unit test for {@link LuceneIndex}.
  */
@@ -27,4 +42,52 @@ public final class LuceneIndexTest extends AbstractIndexStoreTest {
         // Default for LC.zimbra_class_index_store_factory.value() is USUALLY this
         return "com.zimbra.cs.index.LuceneIndex$Factory";
     }
+
+    private static void createContact(Mailbox mbox, String email) throws Exception {
+        mbox.createContact(null, new ParsedContact(Collections.singletonMap(ContactConstants.A_email, email)),
+                Mailbox.ID_FOLDER_CONTACTS, null);
+    }
+
+    @Test
+    public void refreshSearcher() throws Exception {
+        Mailbox mbox = MailboxManager.getInstance().getMailboxByAccountId(MockProvisioning.DEFAULT_ACCOUNT_ID);
+        createContact(mbox, "first@zimbra.com");
+        mbox.index.indexDeferredItems();
+
+        IndexStore index = mbox.index.getIndexStore();
+        ZimbraIndexSearcher searcher = index.openSearcher();
+        int numDocs = searcher.getIndexReader().numDocs();
+        searcher.close();
+
+        // committing the indexer reopens the cached searcher, so the next search sees the new contact
+        createContact(mbox, "second@zimbra.com");
+        mbox.index.indexDeferredItems();
+        ZimbraIndexSearcher refreshed = index.openSearcher();
+        Assert.assertNotSame(searcher, refreshed);
+        Assert.assertEquals(numDocs + 1, refreshed.getIndexReader().numDocs());
+        refreshed.close();
+    }
+
+    @Test
+    public void refreshSearcherClosedWriter() throws Exception {
+        Mailbox mbox = MailboxManager.getInstance().getMailboxByAccountId(MockProvisioning.DEFAULT_ACCOUNT_ID);
+        createContact(mbox, "first@zimbra.com");
+        mbox.index.indexDeferredItems();
+
+        LuceneIndex index = (LuceneIndex) mbox.index.getIndexStore();
+        ZimbraIndexSearcher searcher = index.openSearcher();
+        int numDocs = searcher.getIndexReader().numDocs();
+        searcher.close();
+
+        IndexWriter closed = new IndexWriter(new RAMDirectory(),
+                new IndexWriterConfig(LuceneIndex.VERSION, new StandardAnalyzer(LuceneIndex.VERSION)));
+        closed.close();
+        // the searcher is evicted rather than failing the indexer's close
+        index.refreshSearcher(closed);
+
+        ZimbraIndexSearcher reopened = index.openSearcher();
+        Assert.assertNotSame(searcher, reopened);
+        Assert.assertEquals(numDocs, reopened.getIndexReader().numDocs());
+        reopened.close();
+    }
 }
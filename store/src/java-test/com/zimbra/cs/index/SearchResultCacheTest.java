@@ -0,0 +1,189 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.index;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.zimbra.common.soap.SoapProtocol;
+import com.zimbra.cs.account.MockProvisioning;
+import com.zimbra.cs.account.Provisioning;
+import com.zimbra.cs.mailbox.DeliveryOptions;
+import com.zimbra.cs.mailbox.MailItem;
+import com.zimbra.cs.mailbox.Mailbox;
+import com.zimbra.cs.mailbox.MailboxManager;
+import com.zimbra.cs.mailbox.MailboxTestUtil;
+import com.zimbra.cs.mailbox.OperationContext;
+import com.zimbra.cs.mime.ParsedMessage;
+import com.zimbra.soap.type.CursorInfo;
+
+/**
+ * Unit test for {@link SearchResultCache}.
+ */
+public final class SearchResultCacheTest {
+
+    @BeforeClass
+    public static void init() throws Exception {
+        MailboxTestUtil.initServer();
+        Provisioning prov = Provisioning.getInstance();
+        prov.createAccount("test@zimbra.com", "secret", new HashMap<String, Object>());
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        MailboxTestUtil.clearData();
+    }
+
+    private static ZimbraQuery query(Mailbox mbox, String queryString, boolean explain) throws Exception {
+        return query(mbox, queryString, explain, null);
+    }
+
+    private static ZimbraQuery query(Mailbox mbox, String queryString, boolean explain, CursorInfo cursor)
+            throws Exception {
+        SearchParams params = new SearchParams();
+        params.setQueryString(queryString);
+        params.setTypes(EnumSet.of(MailItem.Type.MESSAGE));
+        params.setSortBy(SortBy.DATE_DESC);
+        params.setExplain(explain);
+        if (cursor != null) {
+            params.parseCursor(cursor, mbox.getAccountId());
+        }
+        return new ZimbraQuery(new OperationContext(mbox), SoapProtocol.Soap12, mbox, params);
+    }
+
+    /** Returns a cursor pointing at the given message, as a client paging through the results would send. */
+    private static CursorInfo cursor(Mailbox mbox, int id) throws Exception {
+        return new CursorInfo(String.valueOf(id), String.valueOf(mbox.getMessageById(null, id).getDate()), null);
+    }
+
+    private static List<Integer> ids(ZimbraQueryResults results) throws Exception {
+        List<Integer> ids = new ArrayList<Integer>();
+        try {
+            while (results.hasNext()) {
+                ids.add(results.getNext().getItemId());
+            }
+        } finally {
+            results.close();
+        }
+        return ids;
+    }
+
+    @Test
+    public void cache() throws Exception {
+        Mailbox mbox = MailboxManager.getInstance().getMailboxByAccountId(MockProvisioning.DEFAULT_ACCOUNT_ID);
+        DeliveryOptions dopt = new DeliveryOptions().setFolderId(Mailbox.ID_FOLDER_INBOX);
+        for (int i = 0; i < 5; i++) {
+            mbox.addMessage(null, new ParsedMessage(("From: test" + i + "@zimbra.com").getBytes(), false), dopt, null);
+        }
+        MailboxTestUtil.index(mbox);
+        List<Integer> expected = ids(query(mbox, "in:inbox", false).execute());
+        Assert.assertEquals(5, expected.size());
+
+        SearchResultCache cache = new SearchResultCache(100);
+        int changeId = mbox.getLastChangeID();
+
+        // the first page is recorded along with the page after it
+        ZimbraQueryResults results = cache.search(query(mbox, "in:inbox", false), changeId, true);
+        Assert.assertEquals(expected.get(0).intValue(), results.getNext().getItemId());
+        results.close();
+        Assert.assertEquals(1, cache.size());
+
+        // replaying runs past the recorded prefix and completes the entry
+        Assert.assertEquals(expected, ids(cache.search(query(mbox, "in:inbox", false), changeId, true)));
+        Assert.assertEquals(expected, ids(cache.search(query(mbox, "in:inbox", false), changeId, true)));
+        results = cache.search(query(mbox, "in:inbox", false), changeId, true);
+        Assert.assertEquals(expected.get(3).intValue(), results.skipToHit(3).getItemId());
+        Assert.assertEquals(expected.get(4).intValue(), results.getNext().getItemId());
+        Assert.assertNull(results.getNext());
+        results.close();
+
+        // a different query or change ID misses
+        Assert.assertEquals(expected, ids(cache.search(query(mbox, "in:inbox", false), changeId + 1, true)));
+        Assert.assertEquals(2, cache.size());
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+
+        // explain output comes from running the query
+        Assert.assertEquals(expected, ids(cache.search(query(mbox, "in:inbox", true), changeId, true)));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void cursor() throws Exception {
+        Mailbox mbox = MailboxManager.getInstance().getMailboxByAccountId(MockProvisioning.DEFAULT_ACCOUNT_ID);
+        DeliveryOptions dopt = new DeliveryOptions().setFolderId(Mailbox.ID_FOLDER_INBOX);
+        for (int i = 0; i < 10; i++) {
+            mbox.addMessage(null, new ParsedMessage(("From: test" + i + "@zimbra.com").getBytes(), false), dopt, null);
+        }
+        MailboxTestUtil.index(mbox);
+        List<Integer> expected = ids(query(mbox, "in:inbox", false).execute());
+        Assert.assertEquals(10, expected.size());
+
+        // entries hold at most 4 hits
+        SearchResultCache cache = new SearchResultCache(16);
+        int changeId = mbox.getLastChangeID();
+        ZimbraQueryResults results = cache.search(query(mbox, "in:inbox", false), changeId, true);
+        Assert.assertEquals(expected.get(0).intValue(), results.getNext().getItemId());
+        Assert.assertEquals(expected.get(1).intValue(), results.getNext().getItemId());
+        results.close();
+        Assert.assertEquals(1, cache.size());
+
+        // a cursor inside the recorded prefix replays it
+        CursorInfo inside = cursor(mbox, expected.get(1));
+        results = cache.search(query(mbox, "in:inbox", false, inside), changeId, true);
+        Assert.assertTrue(results instanceof CachedQueryResults);
+        results.close();
+
+        // a cursor past the end of the prefix runs the query with the cursor's range constraint
+        CursorInfo past = cursor(mbox, expected.get(6));
+        results = cache.search(query(mbox, "in:inbox", false, past), changeId, true);
+        Assert.assertFalse(results instanceof CachedQueryResults);
+        Assert.assertEquals(ids(query(mbox, "in:inbox", false, past).execute()), ids(results));
+
+        // once the entry has reached its size limit, even a cursor inside it runs the query
+        Assert.assertEquals(expected, ids(cache.search(query(mbox, "in:inbox", false), changeId, true)));
+        results = cache.search(query(mbox, "in:inbox", false, inside), changeId, true);
+        Assert.assertFalse(results instanceof CachedQueryResults);
+        Assert.assertEquals(ids(query(mbox, "in:inbox", false, inside).execute()), ids(results));
+    }
+
+    @Test
+    public void invalidate() throws Exception {
+        Mailbox mbox = MailboxManager.getInstance().getMailboxByAccountId(MockProvisioning.DEFAULT_ACCOUNT_ID);
+        DeliveryOptions dopt = new DeliveryOptions().setFolderId(Mailbox.ID_FOLDER_INBOX);
+        mbox.addMessage(null, new ParsedMessage("From: test1@zimbra.com".getBytes(), false), dopt, null);
+        MailboxTestUtil.index(mbox);
+
+        SearchParams params = new SearchParams();
+        params.setQueryString("in:inbox");
+        params.setTypes(EnumSet.of(MailItem.Type.MESSAGE));
+        params.setSortBy(SortBy.DATE_DESC);
+        Assert.assertEquals(1, ids(mbox.index.search(new OperationContext(mbox), params)).size());
+        Assert.assertEquals(1, ids(mbox.index.search(new OperationContext(mbox), params)).size());
+
+        mbox.addMessage(null, new ParsedMessage("From: test2@zimbra.com".getBytes(), false), dopt, null);
+        MailboxTestUtil.index(mbox);
+        Assert.assertEquals(2, ids(mbox.index.search(new OperationContext(mbox), params)).size());
+    }
+}
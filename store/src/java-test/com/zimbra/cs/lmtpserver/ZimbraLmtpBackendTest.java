@@ -0,0 +1,102 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.lmtpserver;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.zimbra.cs.account.Account;
+import com.zimbra.cs.account.Provisioning;
+import com.zimbra.cs.mailbox.MailItem;
+import com.zimbra.cs.mailbox.Mailbox;
+import com.zimbra.cs.mailbox.MailboxManager;
+import com.zimbra.cs.mailbox.MailboxTestUtil;
+import com.zimbra.cs.mailbox.Message;
+
+/**
+ * Unit test for {@link ZimbraLmtpBackend}.
+ */
+public final class ZimbraLmtpBackendTest {
+
+    private static final String[] CHARSETS = new String[] { "koi8-r", "windows-1251", "iso-8859-1", "koi8-r",
+        "windows-1251", "iso-8859-1" };
+
+    @BeforeClass
+    public static void init() throws Exception {
+        MailboxTestUtil.initServer();
+        Provisioning prov = Provisioning.getInstance();
+        for (int i = 0; i < CHARSETS.length; i++) {
+            Map<String, Object> attrs = new HashMap<String, Object>();
+            attrs.put(Provisioning.A_zimbraPrefMailDefaultCharset, CHARSETS[i]);
+            prov.createAccount("rcpt" + i + "@zimbra.com", "secret", attrs);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        MailboxTestUtil.clearData();
+    }
+
+    /**
+     * Each mailbox decodes the undeclared 8-bit subject with its own default charset, even when the mailboxes are
+     * delivered to in parallel.
+     */
+    @Test
+    public void parallelCharsets() throws Exception {
+        // "Privet" in KOI8-R, with no charset declared anywhere in the message
+        byte[] subject = new byte[] { (byte) 0xf0, (byte) 0xd2, (byte) 0xc9, (byte) 0xd7, (byte) 0xc5, (byte) 0xd4 };
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        raw.write("From: sender@example.com\r\nTo: rcpt0@zimbra.com\r\nSubject: ".getBytes("us-ascii"));
+        raw.write(subject);
+        raw.write("\r\n\r\nbody\r\n".getBytes("us-ascii"));
+        byte[] content = raw.toByteArray();
+
+        ZimbraLmtpBackend backend = new ZimbraLmtpBackend(LmtpConfig.getInstance());
+        int count = 5;
+        for (int n = 0; n < count; n++) {
+            LmtpEnvelope env = new LmtpEnvelope();
+            env.setSender(new LmtpAddress("<sender@example.com>", null, null));
+            for (int i = 0; i < CHARSETS.length; i++) {
+                env.addLocalRecipient(new LmtpAddress("<rcpt" + i + "@zimbra.com>", null, null));
+            }
+            backend.deliver(env, new ByteArrayInputStream(content), content.length);
+            for (LmtpAddress recipient : env.getLocalRecipients()) {
+                Assert.assertEquals(recipient.getEmailAddress(), LmtpReply.DELIVERY_OK, recipient.getDeliveryStatus());
+            }
+        }
+
+        for (int i = 0; i < CHARSETS.length; i++) {
+            Account account = Provisioning.getInstance().getAccountByName("rcpt" + i + "@zimbra.com");
+            Mailbox mbox = MailboxManager.getInstance().getMailboxByAccount(account);
+            List<MailItem> msgs = mbox.getItemList(null, MailItem.Type.MESSAGE, Mailbox.ID_FOLDER_INBOX);
+            Assert.assertEquals(count, msgs.size());
+            String expected = new String(subject, Charset.forName(CHARSETS[i]));
+            for (MailItem msg : msgs) {
+                Assert.assertEquals(CHARSETS[i], expected, ((Message) msg).getSubject());
+            }
+        }
+    }
+}
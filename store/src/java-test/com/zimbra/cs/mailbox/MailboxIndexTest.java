@@ -0,0 +1,162 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.mailbox;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for the tokenizer window of {@link MailboxIndex}.
+ */
+public final class MailboxIndexTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static Callable<Integer> task(final int value, final long sleep) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                Thread.sleep(sleep);
+                return value;
+            }
+        };
+    }
+
+    @Test
+    public void order() throws Exception {
+        MailboxIndex.OrderedWindow<Integer> window = new MailboxIndex.OrderedWindow<Integer>(executor, 4);
+        int next = 0;
+        int submitted = 0;
+        while (submitted < 20 || !window.isEmpty()) {
+            while (submitted < 20 && !window.isFull()) {
+                // later tasks finish first
+                window.submit(task(submitted, 20 - submitted));
+                submitted++;
+            }
+            Assert.assertEquals(next++, window.next().intValue());
+        }
+        Assert.assertEquals(20, next);
+    }
+
+    @Test
+    public void limit() throws Exception {
+        MailboxIndex.OrderedWindow<Integer> window = new MailboxIndex.OrderedWindow<Integer>(executor, 2);
+        window.submit(task(1, 0));
+        Assert.assertFalse(window.isFull());
+        window.submit(task(2, 0));
+        Assert.assertTrue(window.isFull());
+        Assert.assertEquals(1, window.next().intValue());
+        Assert.assertFalse(window.isFull());
+
+        // inline, one at a time
+        window = new MailboxIndex.OrderedWindow<Integer>(null, 8);
+        window.submit(task(3, 0));
+        Assert.assertTrue(window.isFull());
+        Assert.assertEquals(3, window.next().intValue());
+        Assert.assertTrue(window.isEmpty());
+    }
+
+    private static Callable<Integer> failing() {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                throw new IllegalStateException("cannot tokenize");
+            }
+        };
+    }
+
+    private static void assertFailed(MailboxIndex.OrderedWindow<Integer> window) throws Exception {
+        try {
+            window.next();
+            Assert.fail("the failed task should have been reported");
+        } catch (ExecutionException expected) {
+            Assert.assertTrue(expected.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void failure() throws Exception {
+        MailboxIndex.OrderedWindow<Integer> window = new MailboxIndex.OrderedWindow<Integer>(executor, 4);
+        window.submit(task(1, 10));
+        window.submit(failing());
+        window.submit(task(3, 0));
+        Assert.assertEquals(1, window.next().intValue());
+        assertFailed(window);
+        // the tasks after it are unaffected
+        Assert.assertEquals(3, window.next().intValue());
+        Assert.assertTrue(window.isEmpty());
+    }
+
+    @Test
+    public void failureInline() throws Exception {
+        MailboxIndex.OrderedWindow<Integer> window = new MailboxIndex.OrderedWindow<Integer>(null, 4);
+        window.submit(failing());
+        assertFailed(window);
+        window.submit(task(2, 0));
+        Assert.assertEquals(2, window.next().intValue());
+    }
+
+    @Test
+    public void cancel() throws Exception {
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger ran = new AtomicInteger();
+        try {
+            MailboxIndex.OrderedWindow<Integer> window = new MailboxIndex.OrderedWindow<Integer>(single, 4);
+            for (int i = 0; i < 4; i++) {
+                window.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        started.countDown();
+                        release.await();
+                        return ran.incrementAndGet();
+                    }
+                });
+            }
+            started.await();
+            window.cancel();
+            Assert.assertTrue(window.isEmpty());
+            release.countDown();
+        } finally {
+            single.shutdown();
+        }
+        Assert.assertTrue(single.awaitTermination(10, TimeUnit.SECONDS));
+        // only the task that had already started ran to completion
+        Assert.assertEquals(1, ran.get());
+    }
+}
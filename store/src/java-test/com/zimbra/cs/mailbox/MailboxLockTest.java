@@ -75,6 +75,32 @@ public class MailboxLockTest {
         }
     }
 
+    @Test
+    public void optimisticRead() throws ServiceException {
+        Mailbox mbox = MailboxManager.getInstance().getMailboxByAccountId(MockProvisioning.DEFAULT_ACCOUNT_ID);
+        long stamp = mbox.lock.tryOptimisticRead();
+        Assert.assertTrue(mbox.lock.validate(stamp));
+
+        // readers don't invalidate the stamp
+        mbox.lock.lock(false);
+        mbox.lock.release();
+        Assert.assertTrue(mbox.lock.validate(stamp));
+
+        // a nested write hold invalidates it, and no new stamp is handed out until the outermost release
+        mbox.lock.lock(true);
+        mbox.lock.lock(true);
+        Assert.assertEquals(0L, mbox.lock.tryOptimisticRead());
+        mbox.lock.release();
+        Assert.assertEquals(0L, mbox.lock.tryOptimisticRead());
+        mbox.lock.release();
+        Assert.assertFalse(mbox.lock.validate(stamp));
+        Assert.assertFalse(mbox.lock.validate(0L));
+
+        stamp = mbox.lock.tryOptimisticRead();
+        Assert.assertTrue(mbox.lock.validate(stamp));
+        Assert.assertEquals(Mailbox.ID_FOLDER_INBOX, mbox.getFolderById(null, Mailbox.ID_FOLDER_INBOX).getId());
+    }
+
     @Test
     public void nestedWrite() throws ServiceException {
         Mailbox mbox = MailboxManager.getInstance().getMailboxByAccountId(MockProvisioning.DEFAULT_ACCOUNT_ID);
@@ -37,6 +37,9 @@ import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 
 import com.google.common.base.Strings;
+import com.zimbra.common.calendar.ICalTimeZone;
+import com.zimbra.common.calendar.ParsedDateTime;
+import com.zimbra.common.calendar.ZCalendar.ZComponent;
 import com.zimbra.common.calendar.ZCalendar.ZVCalendar;
 import com.zimbra.common.localconfig.LC;
 import com.zimbra.common.mime.ContentDisposition;
@@ -59,6 +62,7 @@ import com.zimbra.cs.index.IndexStore;
 import com.zimbra.cs.index.elasticsearch.ElasticSearchConnector;
 import com.zimbra.cs.index.elasticsearch.ElasticSearchIndex;
 import com.zimbra.cs.mailbox.calendar.Invite;
+import com.zimbra.cs.mailbox.calendar.ZOrganizer;
 import com.zimbra.cs.mime.Mime;
 import com.zimbra.cs.mime.ParsedMessage;
 import com.zimbra.cs.store.MockStoreManager;
@@ -344,4 +348,26 @@ public final class MailboxTestUtil {
 
         return invites.get(0);
     }
+
+    /**
+     * Adds an appointment organized by the mailbox's owner.  Adding another one with the same
+     * {@code uid} reschedules it.
+     */
+    public static Mailbox.AddInviteData addAppointment(Mailbox mbox, int folderId, String uid,
+                long start, long end) throws Exception {
+        Account acct = mbox.getAccount();
+        ZVCalendar calendar = new ZVCalendar();
+        calendar.addComponent(new ZComponent("VEVENT"));
+        Invite invite = generateInvite(acct, "appointment", calendar);
+        ICalTimeZone tz = invite.getTimeZoneMap().getLocalTimeZone();
+        invite.setDtStart(ParsedDateTime.fromUTCTime(start, tz));
+        invite.setDtEnd(ParsedDateTime.fromUTCTime(end, tz));
+        invite.setOrganizer(new ZOrganizer(acct.getName(), null));
+        invite.setUid(uid);
+        invite.setMethod("REQUEST");
+        invite.setName("appointment");
+        invite.setIsOrganizer(true);
+        invite.setItemType(MailItem.Type.APPOINTMENT);
+        return mbox.addInvite(null, invite, folderId);
+    }
 }
@@ -0,0 +1,91 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.mailbox;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link MetadataCodec}.
+ */
+public final class MetadataCodecTest {
+
+    private static Metadata sample() {
+        Metadata acl = new Metadata().put("g", "474b7021-cef6-469d-b5fb-54c96117efd1").put("r", 1L).put("gt", 1L);
+        MetadataList grants = new MetadataList().add(acl).add("plain").add(-42L);
+        return new Metadata()
+            .put(Metadata.FN_TOTAL_SIZE, 7596456L)
+            .put(Metadata.FN_MODSEQ, 628L)
+            .put(Metadata.FN_FRAGMENT, "café ☃ fragment")
+            .put("customKey", 1.5)
+            .put(Metadata.FN_DRAFT, true)
+            .put(Metadata.FN_RIGHTS_MAP, new Metadata().put("en", grants))
+            .put(Metadata.FN_ENTRIES, grants);
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        Metadata meta = sample();
+        Metadata decoded = new Metadata(MetadataCodec.encodeToString(meta.map));
+        Assert.assertEquals(7596456L, decoded.getLong(Metadata.FN_TOTAL_SIZE));
+        Assert.assertEquals(628, decoded.getInt(Metadata.FN_MODSEQ, 0));
+        Assert.assertEquals("café ☃ fragment", decoded.get(Metadata.FN_FRAGMENT));
+        Assert.assertEquals(1.5, decoded.getDouble("customKey"), 0.0);
+        Assert.assertTrue(decoded.getBool(Metadata.FN_DRAFT));
+
+        MetadataList grants = decoded.getMap(Metadata.FN_RIGHTS_MAP).getList("en");
+        Assert.assertEquals(3, grants.size());
+        Assert.assertEquals("474b7021-cef6-469d-b5fb-54c96117efd1", grants.getMap(0).get("g"));
+        Assert.assertEquals(1L, grants.getMap(0).getLong("gt"));
+        Assert.assertEquals("plain", grants.get(1));
+        Assert.assertEquals(-42L, grants.getLong(2));
+
+        // same decoded types as BEncoding
+        Metadata legacy = new Metadata(meta.toString());
+        Assert.assertEquals(legacy.prettyPrint(), decoded.prettyPrint());
+    }
+
+    @Test
+    public void lazyNested() throws Exception {
+        Metadata decoded = new Metadata(sample().encode(), null);
+        Assert.assertTrue(decoded.map.get(Metadata.FN_RIGHTS_MAP) instanceof MetadataCodec.Encoded);
+
+        // re-encoding an undecoded slice copies it verbatim
+        Metadata reencoded = new Metadata(decoded.encode(), null);
+        Assert.assertEquals(3, reencoded.getMap(Metadata.FN_RIGHTS_MAP).getList("en").size());
+
+        // legacy encoding expands slices first
+        Metadata legacy = new Metadata(decoded.toString());
+        Assert.assertEquals(3, legacy.getMap(Metadata.FN_RIGHTS_MAP).getList("en").size());
+        Assert.assertEquals(3, legacy.getList(Metadata.FN_ENTRIES).size());
+    }
+
+    @Test
+    public void list() throws Exception {
+        MetadataList list = new MetadataList().add(1).add("two").add(new Metadata().put("k", "v"));
+        MetadataList decoded = new MetadataList(MetadataCodec.encodeToString(list.list));
+        Assert.assertEquals(1, decoded.getInt(0));
+        Assert.assertEquals("two", decoded.get(1));
+        Assert.assertEquals("v", decoded.getMap(2).get("k"));
+    }
+
+    @Test(expected = MailServiceException.class)
+    public void corrupt() throws Exception {
+        String encoded = MetadataCodec.encodeToString(sample().map);
+        new Metadata(encoded.substring(0, encoded.length() - 8));
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.mailbox;
+
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.zimbra.cs.account.MockProvisioning;
+import com.zimbra.cs.account.Provisioning;
+
+/**
+ * Unit test for {@link OffHeapItemCache}.
+ */
+public final class OffHeapItemCacheTest {
+
+    @BeforeClass
+    public static void init() throws Exception {
+        MailboxTestUtil.initServer();
+        Provisioning prov = Provisioning.getInstance();
+        prov.createAccount("test@zimbra.com", "secret", new HashMap<String, Object>());
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        MailboxTestUtil.clearData();
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        Mailbox mbox = MailboxManager.getInstance().getMailboxByAccountId(MockProvisioning.DEFAULT_ACCOUNT_ID);
+        Message msg = mbox.addMessage(null, MailboxTestUtil.generateMessage("off-heap"), MailboxTest.STANDARD_DELIVERY_OPTIONS, null);
+
+        OffHeapItemCache cache = new OffHeapItemCache(1024 * 1024);
+        int generation = cache.newGeneration();
+        cache.put(generation, msg);
+        Assert.assertEquals(1, cache.size());
+        Assert.assertTrue(cache.weightedSize() > 0);
+
+        Assert.assertNull("other generation", cache.take(cache.newGeneration(), mbox, msg.getId()));
+
+        MailItem item = cache.take(generation, mbox, msg.getId());
+        Assert.assertNotNull(item);
+        Assert.assertTrue(item instanceof Message);
+        Assert.assertNotSame(msg, item);
+        Assert.assertEquals(msg.getId(), item.getId());
+        Assert.assertEquals(msg.getUuid(), item.getUuid());
+        Assert.assertEquals(msg.getFolderId(), item.getFolderId());
+        Assert.assertEquals(msg.getSubject(), item.getSubject());
+        Assert.assertEquals(msg.getDigest(), item.getDigest());
+        Assert.assertEquals(msg.getModifiedSequence(), item.getModifiedSequence());
+
+        Assert.assertNull("take removes the entry", cache.take(generation, mbox, msg.getId()));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void removeChildren() throws Exception {
+        Mailbox mbox = MailboxManager.getInstance().getMailboxByAccountId(MockProvisioning.DEFAULT_ACCOUNT_ID);
+        int rootId = mbox.addMessage(null, MailboxTestUtil.generateMessage("spilled"), MailboxTest.STANDARD_DELIVERY_OPTIONS, null).getId();
+        DeliveryOptions dopt = new DeliveryOptions().setFolderId(Mailbox.ID_FOLDER_INBOX).setConversationId(-rootId);
+        Message reply = mbox.addMessage(null, MailboxTestUtil.generateMessage("Re: spilled"), dopt, null);
+        Message root = mbox.getMessageById(null, rootId);
+        Message other = mbox.addMessage(null, MailboxTestUtil.generateMessage("unrelated"), MailboxTest.STANDARD_DELIVERY_OPTIONS, null);
+        int convId = reply.getConversationId();
+        Assert.assertEquals(convId, root.getParentId());
+
+        OffHeapItemCache cache = new OffHeapItemCache(1024 * 1024);
+        int generation = cache.newGeneration();
+        cache.put(generation, root);
+        cache.put(generation, reply);
+        cache.put(generation, other);
+        Assert.assertTrue("other generation", cache.removeChildren(cache.newGeneration(), convId).isEmpty());
+
+        List<Integer> removed = cache.removeChildren(generation, convId);
+        Assert.assertEquals(2, removed.size());
+        Assert.assertTrue(removed.contains(rootId));
+        Assert.assertTrue(removed.contains(reply.getId()));
+        Assert.assertNull(cache.take(generation, mbox, reply.getId()));
+        Assert.assertNotNull("unrelated items stay", cache.take(generation, mbox, other.getId()));
+        Assert.assertEquals(0, cache.size());
+
+        // taking an item drops it from its parent's children
+        cache.put(generation, reply);
+        Assert.assertNotNull(cache.take(generation, mbox, reply.getId()));
+        Assert.assertTrue(cache.removeChildren(generation, convId).isEmpty());
+    }
+
+    @Test
+    public void reuseBuffers() throws Exception {
+        Mailbox mbox = MailboxManager.getInstance().getMailboxByAccountId(MockProvisioning.DEFAULT_ACCOUNT_ID);
+        Message msg = mbox.addMessage(null, MailboxTestUtil.generateMessage("off-heap"), MailboxTest.STANDARD_DELIVERY_OPTIONS, null);
+
+        OffHeapItemCache cache = new OffHeapItemCache(1024 * 1024);
+        int generation = cache.newGeneration();
+        cache.remove(generation, msg.getId());
+        Assert.assertEquals("nothing spilled", 0, cache.pooledBytes());
+
+        cache.put(generation, msg);
+        long size = cache.weightedSize();
+        Assert.assertNotNull(cache.take(generation, mbox, msg.getId()));
+        Assert.assertEquals("taken buffer is pooled", size, cache.pooledBytes());
+
+        cache.put(generation, msg);
+        Assert.assertEquals("pooled buffer is reused", 0, cache.pooledBytes());
+        Assert.assertEquals(size, cache.weightedSize());
+        cache.put(generation, msg);
+        Assert.assertEquals("replaced buffer is pooled", size, cache.pooledBytes());
+        cache.remove(generation, msg.getId());
+        Assert.assertEquals("removed buffer is pooled", 2 * size, cache.pooledBytes());
+        Assert.assertEquals(0, cache.size());
+
+        MailItem item = cache.take(generation, mbox, msg.getId());
+        Assert.assertNull(item);
+        cache.put(generation, msg);
+        item = cache.take(generation, mbox, msg.getId());
+        Assert.assertEquals("reused buffer holds only the new item", msg.getSubject(), item.getSubject());
+    }
+
+    @Test
+    public void disabled() throws Exception {
+        Mailbox mbox = MailboxManager.getInstance().getMailboxByAccountId(MockProvisioning.DEFAULT_ACCOUNT_ID);
+        Message msg = mbox.addMessage(null, MailboxTestUtil.generateMessage("off-heap"), MailboxTest.STANDARD_DELIVERY_OPTIONS, null);
+
+        OffHeapItemCache cache = new OffHeapItemCache(0);
+        Assert.assertFalse(cache.isEnabled());
+        int generation = cache.newGeneration();
+        cache.put(generation, msg);
+        Assert.assertNull(cache.take(generation, mbox, msg.getId()));
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.mailbox.calendar;
+
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.zimbra.common.calendar.ICalTimeZone;
+import com.zimbra.common.calendar.ParsedDateTime;
+import com.zimbra.common.calendar.TimeZoneMap;
+import com.zimbra.cs.mailbox.MailboxTestUtil;
+
+/**
+ * Unit test for {@link ZRecur} expansion.
+ */
+public final class ZRecurTest {
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    private static ICalTimeZone tz;
+    private static TimeZoneMap tzmap;
+
+    @BeforeClass
+    public static void init() throws Exception {
+        MailboxTestUtil.initServer();
+        tz = new ICalTimeZone("America/New_York",
+                -5 * 3600000, "16010101T020000", "FREQ=YEARLY;WKST=MO;INTERVAL=1;BYMONTH=11;BYDAY=1SU", "EST",
+                -4 * 3600000, "16010101T020000", "FREQ=YEARLY;WKST=MO;INTERVAL=1;BYMONTH=3;BYDAY=2SU", "EDT");
+        tzmap = new TimeZoneMap(tz);
+    }
+
+    private static ParsedDateTime dtStart(String value) throws Exception {
+        return ParsedDateTime.parse(value, tzmap, tz, tz);
+    }
+
+    private static void assertSameExpansion(String rule, String start, long rangeStart, long rangeEnd)
+            throws Exception {
+        ZRecur recur = new ZRecur(rule, tzmap);
+        ParsedDateTime dtStart = dtStart(start);
+        List<Date> general = recur.expandRecurrenceOverRange(dtStart, rangeStart, rangeEnd, false, false);
+        List<Date> compiled = recur.expandRecurrenceOverRange(dtStart, rangeStart, rangeEnd, true, false);
+        Assert.assertEquals(rule + " from " + start, general, compiled);
+    }
+
+    @Test
+    public void compiled() throws Exception {
+        String[] rules = {
+            "FREQ=DAILY",
+            "FREQ=DAILY;INTERVAL=3;COUNT=50",
+            "FREQ=DAILY;BYDAY=MO,TU,WE,TH,FR",
+            "FREQ=WEEKLY",
+            "FREQ=WEEKLY;BYDAY=MO,WE,FR",
+            "FREQ=WEEKLY;INTERVAL=2;BYDAY=SU,TU,TH;UNTIL=20170630T035959Z",
+            "FREQ=WEEKLY;COUNT=10;BYDAY=SA"
+        };
+        String[] starts = { "20150105T090000", "20151028T233000", "20160311T000000" };
+        long rangeStart = dtStart("20160101T000000").getUtcTime();
+        for (String rule : rules) {
+            for (String start : starts) {
+                // across both DST transitions of 2016, and from the beginning of the series
+                assertSameExpansion(rule, start, rangeStart, rangeStart + 366 * DAY);
+                assertSameExpansion(rule, start, rangeStart + 60 * DAY, rangeStart + 100 * DAY);
+                assertSameExpansion(rule, start, 0, rangeStart);
+            }
+        }
+    }
+
+    @Test
+    public void repeatedHour() throws Exception {
+        // 01:30 occurs twice on the first Sunday of November; the general expansion's choice is kept
+        assertSameExpansion("FREQ=DAILY", "20161020T013000", 0, dtStart("20161120T000000").getUtcTime());
+        assertSameExpansion("FREQ=WEEKLY;BYDAY=SU", "20161020T013000", 0, dtStart("20161120T000000").getUtcTime());
+    }
+
+    @Test
+    public void memo() throws Exception {
+        ZRecur recur = new ZRecur("FREQ=WEEKLY;BYDAY=MO,WE,FR", tzmap);
+        ParsedDateTime dtStart = dtStart("20150105T090000");
+        long rangeStart = dtStart("20160101T000000").getUtcTime();
+        long rangeEnd = rangeStart + 31 * DAY;
+
+        List<Date> first = recur.expandRecurrenceOverRange(dtStart, rangeStart, rangeEnd);
+        Assert.assertEquals(13, first.size());
+        first.clear();  // callers may modify the returned list
+        List<Date> second = recur.expandRecurrenceOverRange(dtStart, rangeStart, rangeEnd);
+        Assert.assertEquals(recur.expandRecurrenceOverRange(dtStart, rangeStart, rangeEnd, false, false), second);
+
+        // same rule and range, different series
+        List<Date> other = recur.expandRecurrenceOverRange(dtStart("20150105T100000"), rangeStart, rangeEnd);
+        Assert.assertEquals(13, other.size());
+        Assert.assertEquals(new Date(second.get(0).getTime() + 3600 * 1000), other.get(0));
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.mailbox.calendar.cache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zimbra.cs.mailbox.MailItem;
+
+/**
+ * Unit test for {@link CalendarData}.
+ */
+public final class CalendarDataTest {
+    private static final long HOUR = 60 * 60 * 1000L;
+    private static final long DAY = 24 * HOUR;
+
+    private static CalendarItemData item(int id, long... starts) {
+        FullInstanceData defaultData = new FullInstanceData(null, starts.length > 0 ? starts[0] : 0, HOUR, 0, 0,
+                null, null, null, 1, 0, 0, 0, 0, null, null, null, null, null, null, null,
+                "item " + id, null, null, null, null, null, null, null, null, null, null, null, null, null);
+        CalendarItemData data = new CalendarItemData(MailItem.Type.APPOINTMENT, 10, id, "", new String[0], "",
+                1, 1, 0, 0, 0, "uid-" + id, starts.length > 1, false, true, null, defaultData);
+        long min = 0, max = 0;
+        for (long start : starts) {
+            data.addInstance(new InstanceData(null, start, HOUR, null, null, null, null, null, defaultData));
+            min = min == 0 ? start : Math.min(min, start);
+            max = Math.max(max, start + HOUR);
+        }
+        data.setActualRange(min, max);
+        return data;
+    }
+
+    private static List<Integer> ids(CalendarData calData) {
+        List<Integer> ids = new ArrayList<Integer>();
+        for (Iterator<CalendarItemData> it = calData.calendarItemIterator(); it.hasNext(); ) {
+            ids.add(it.next().getCalItemId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void subRange() {
+        CalendarData calData = new CalendarData(10, 1, 0, 30 * DAY);
+        calData.addCalendarItem(item(300, 20 * DAY));
+        calData.addCalendarItem(item(100, 2 * DAY));
+        calData.addCalendarItem(item(200, 1 * DAY, 8 * DAY, 15 * DAY, 22 * DAY));
+        calData.addCalendarItem(item(400, 9 * DAY));
+
+        Assert.assertEquals("all, in item order", ids(calData), ids(calData.getSubRange(-DAY, 31 * DAY)));
+        Assert.assertEquals("[200, 400]", ids(calData.getSubRange(7 * DAY, 14 * DAY)).toString());
+        Assert.assertEquals("[300, 200]", ids(calData.getSubRange(19 * DAY, 23 * DAY)).toString());
+        Assert.assertEquals("[]", ids(calData.getSubRange(3 * DAY, 7 * DAY)).toString());
+        // window end is exclusive, window start matches instance end
+        Assert.assertEquals("[]", ids(calData.getSubRange(2 * DAY + HOUR, 8 * DAY)).toString());
+
+        CalendarItemData sub = calData.getSubRange(7 * DAY, 16 * DAY).getCalendarItemData(200);
+        Assert.assertEquals(2, sub.getNumInstances());
+    }
+
+    @Test
+    public void withItem() {
+        CalendarData calData = new CalendarData(10, 1, 0, 30 * DAY);
+        calData.addCalendarItem(item(100, 2 * DAY));
+        calData.addCalendarItem(item(200, 5 * DAY));
+        calData.markItemStale(200);
+        calData.markItemStale(300);
+
+        CalendarData replaced = calData.withItem(200, item(200, 25 * DAY));
+        Assert.assertEquals("[100, 200]", ids(replaced).toString());
+        Assert.assertEquals("[200]", ids(replaced.getSubRange(20 * DAY, 30 * DAY)).toString());
+        Assert.assertFalse(replaced.isItemStale(200));
+        Assert.assertTrue(replaced.isItemStale(300));
+        Assert.assertEquals("original untouched", "[100, 200]", ids(calData.getSubRange(0, 10 * DAY)).toString());
+
+        Assert.assertEquals("[100]", ids(calData.withItem(200, null)).toString());
+        Assert.assertEquals("[100, 200, 300]", ids(calData.withItem(300, item(300, DAY))).toString());
+    }
+
+    @Test
+    public void extend() {
+        long boundary = 10 * DAY;
+        CalendarData cached = new CalendarData(10, 1, 0, boundary);
+        cached.addCalendarItem(item(100, 2 * DAY));
+        cached.addCalendarItem(item(200, 3 * DAY, boundary - HOUR / 2));
+
+        CalendarData extension = new CalendarData(10, 1, boundary, 20 * DAY);
+        extension.addCalendarItem(item(200, boundary - HOUR / 2, 17 * DAY));
+        extension.addCalendarItem(item(300, 12 * DAY));
+
+        CalendarData extended = cached.extend(extension);
+        Assert.assertEquals(0, extended.getRangeStart());
+        Assert.assertEquals(20 * DAY, extended.getRangeEnd());
+        Assert.assertEquals(1, extended.getModSeq());
+        Assert.assertEquals("[100, 200, 300]", ids(extended).toString());
+
+        CalendarItemData merged = extended.getCalendarItemData(200);
+        Assert.assertEquals("straddling instance kept once", 3, merged.getNumInstances());
+        Assert.assertEquals(3 * DAY, merged.getActualRangeStart());
+        Assert.assertEquals(17 * DAY + HOUR, merged.getActualRangeEnd());
+        Assert.assertEquals("[200, 300]", ids(extended.getSubRange(11 * DAY, 18 * DAY)).toString());
+    }
+
+    @Test
+    public void extendKeepsStaleItems() {
+        CalendarData cached = new CalendarData(10, 1, 0, 10 * DAY);
+        cached.addCalendarItem(item(100, 2 * DAY));
+        cached.markItemStale(100);
+        CalendarData extension = new CalendarData(10, 1, 10 * DAY, 20 * DAY);
+        extension.addCalendarItem(item(300, 12 * DAY));
+        extension.markItemStale(300);
+
+        CalendarData extended = cached.extend(extension);
+        Assert.assertTrue(extended.isItemStale(100));
+        Assert.assertTrue(extended.isItemStale(300));
+
+        // marked in the old instance after the extension was computed, as a concurrent commit would
+        cached.markItemStale(200);
+        Assert.assertFalse(extended.isItemStale(200));
+        extended.markItemsStale(cached);
+        Assert.assertTrue(extended.isItemStale(200));
+        Assert.assertEquals(3, extended.getNumStaleItems());
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.mime;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.util.ByteArrayDataSource;
+
+import org.apache.lucene.document.Document;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zimbra.common.localconfig.LC;
+import com.zimbra.cs.convert.AttachmentInfo;
+import com.zimbra.cs.convert.ConversionException;
+
+/**
+ * Unit test for {@link AttachmentExtractor}.
+ */
+public final class AttachmentExtractorTest {
+
+    private static final AtomicInteger extractions = new AtomicInteger();
+
+    private static class ExternalHandler extends MimeHandler {
+        ExternalHandler(String content) {
+            init(new ByteArrayDataSource(content.getBytes(), "application/pdf"));
+            setContentType("application/pdf");
+            setPartName("2");
+        }
+
+        @Override
+        protected boolean runsExternally() {
+            return true;
+        }
+
+        @Override
+        protected void addFields(Document doc) {
+        }
+
+        @Override
+        protected String getContentImpl() throws MimeHandlerException {
+            extractions.incrementAndGet();
+            return "extracted";
+        }
+
+        @Override
+        public String convert(AttachmentInfo doc, String urlPart) {
+            return null;
+        }
+
+        @Override
+        public boolean doConversion() {
+            return false;
+        }
+    }
+
+    /**
+     * Blocks extraction until the latch is released.
+     */
+    private static final class BlockingHandler extends ExternalHandler {
+        private final CountDownLatch release;
+
+        BlockingHandler(String content, CountDownLatch release) {
+            super(content);
+            this.release = release;
+        }
+
+        @Override
+        protected String getContentImpl() throws MimeHandlerException {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new MimeHandlerException("interrupted", e);
+            }
+            return super.getContentImpl();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        LC.zimbra_attachment_extraction_timeout_sec.setDefault(60);
+        LC.zimbra_attachment_extraction_max_part_size_kb.setDefault(10240);
+    }
+
+    @Test
+    public void sameContentExtractedOnce() throws Exception {
+        AttachmentExtractor extractor = new AttachmentExtractor(2, 1024 * 1024);
+        extractions.set(0);
+
+        MimeHandler handler = new ExternalHandler("same attachment");
+        Assert.assertTrue(extractor.isDeferred(handler));
+        Assert.assertEquals("extracted", extractor.await(handler, extractor.submit(handler)));
+
+        handler = new ExternalHandler("same attachment");
+        Assert.assertEquals("extracted", extractor.await(handler, extractor.submit(handler)));
+        Assert.assertEquals(1, extractions.get());
+        Assert.assertEquals(1, extractor.getCacheSize());
+
+        handler = new ExternalHandler("another attachment");
+        Assert.assertEquals("extracted", extractor.await(handler, extractor.submit(handler)));
+        Assert.assertEquals(2, extractions.get());
+    }
+
+    @Test
+    public void disabled() throws Exception {
+        AttachmentExtractor extractor = new AttachmentExtractor(0, 0);
+        Assert.assertFalse(extractor.isDeferred(new ExternalHandler("attachment")));
+    }
+
+    @Test
+    public void timeout() throws Exception {
+        LC.zimbra_attachment_extraction_timeout_sec.setDefault(1);
+        AttachmentExtractor extractor = new AttachmentExtractor(1, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            MimeHandler handler = new BlockingHandler("slow attachment", release);
+            AttachmentExtractor.Extraction extraction = extractor.submit(handler);
+            try {
+                extractor.await(handler, extraction);
+                Assert.fail("extraction should have timed out");
+            } catch (MimeHandlerException expected) {
+                Assert.assertTrue(ConversionException.isTemporaryCauseOf(expected));
+            }
+            Assert.assertTrue(extraction.isCancelled());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void sharedTimeout() throws Exception {
+        LC.zimbra_attachment_extraction_timeout_sec.setDefault(1);
+        AttachmentExtractor extractor = new AttachmentExtractor(1, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            MimeHandler first = new BlockingHandler("shared attachment", release);
+            MimeHandler second = new BlockingHandler("shared attachment", release);
+            AttachmentExtractor.Extraction extraction = extractor.submit(first);
+            Assert.assertSame(extraction, extractor.submit(second));
+            try {
+                extractor.await(first, extraction);
+                Assert.fail("extraction should have timed out");
+            } catch (MimeHandlerException expected) {
+            }
+            // the other caller is still waiting, so the extraction carries on
+            Assert.assertFalse(extraction.isCancelled());
+            release.countDown();
+            Assert.assertEquals("extracted", extractor.await(second, extraction));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void sizeBudget() throws Exception {
+        LC.zimbra_attachment_extraction_max_part_size_kb.setDefault(1);
+        AttachmentExtractor extractor = new AttachmentExtractor(1, 0);
+        extractions.set(0);
+
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 2048; i++) {
+            content.append('x');
+        }
+        try {
+            extractor.submit(new ExternalHandler(content.toString()));
+            Assert.fail("part should have exceeded the size budget");
+        } catch (MimeHandlerException expected) {
+        }
+        Assert.assertEquals(0, extractions.get());
+
+        // a part known to be over the budget is extracted inline instead
+        MimeHandler large = new ExternalHandler(content.toString());
+        large.setSize(content.length());
+        Assert.assertFalse(extractor.isDeferred(large));
+        Assert.assertEquals("extracted", large.getContent());
+        Assert.assertEquals(1, extractions.get());
+
+        MimeHandler handler = new ExternalHandler("small attachment");
+        Assert.assertEquals("extracted", extractor.await(handler, extractor.submit(handler)));
+    }
+
+    @Test
+    public void saturation() throws Exception {
+        AttachmentExtractor extractor = new AttachmentExtractor(1, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        List<MimeHandler> handlers = new ArrayList<MimeHandler>();
+        List<AttachmentExtractor.Extraction> running = new ArrayList<AttachmentExtractor.Extraction>();
+        try {
+            // one running and 16 queued
+            for (int i = 0; i < 17; i++) {
+                MimeHandler handler = new BlockingHandler("attachment " + i, release);
+                handlers.add(handler);
+                running.add(extractor.submit(handler));
+            }
+            try {
+                extractor.submit(new BlockingHandler("one too many", release));
+                Assert.fail("the pool should have been full");
+            } catch (MimeHandlerException expected) {
+                // indexed again later rather than without its text
+                Assert.assertTrue(ConversionException.isTemporaryCauseOf(expected));
+            }
+        } finally {
+            release.countDown();
+        }
+        for (int i = 0; i < running.size(); i++) {
+            Assert.assertEquals("extracted", extractor.await(handlers.get(i), running.get(i)));
+        }
+        // the rejected part isn't left registered for others to join
+        MimeHandler handler = new ExternalHandler("one too many");
+        Assert.assertEquals("extracted", extractor.await(handler, extractor.submit(handler)));
+    }
+}
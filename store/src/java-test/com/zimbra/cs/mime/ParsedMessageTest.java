@@ -152,4 +152,96 @@ public final class ParsedMessageTest {
         pm = new ParsedMessage(raw, false);
         Assert.assertFalse("normal message fragment", pm.getFragment(null).equals(msgWasEncrypted));
     }
+
+    @Test
+    public void singlePassParts() throws Exception {
+        byte[] raw = ("From: sender@example.com\r\n" +
+            "Subject: multipart\r\n" +
+            "Content-Type: multipart/mixed; boundary=\"BOUNDARY\"\r\n" +
+            "\r\n" +
+            "--BOUNDARY\r\n" +
+            "Content-Type: text/plain\r\n" +
+            "\r\n" +
+            "body\r\n" +
+            "--BOUNDARY\r\n" +
+            "Content-Type: application/octet-stream; name=\"a.bin\"\r\n" +
+            "\r\n" +
+            "data\r\n" +
+            "--BOUNDARY--\r\n").getBytes();
+        ParsedMessage pm = new ParsedMessage(raw, false);
+        Assert.assertSame("no converter applies", pm.getOriginalMessage(), pm.getMimeMessage());
+        Assert.assertEquals(3, pm.getMessageParts().size());
+        Assert.assertTrue(pm.hasAttachments());
+        Assert.assertSame("in-memory content is not copied", raw, pm.getRawData());
+
+        raw = ("From: sender@example.com\r\n" +
+            "Subject: uuencoded\r\n" +
+            "\r\n" +
+            "see attached\r\n" +
+            "\r\n" +
+            "begin 644 abc.txt\r\n" +
+            "#86)C\r\n" +
+            "`\r\n" +
+            "end\r\n").getBytes();
+        pm = new ParsedMessage(raw, false);
+        Assert.assertNotSame("uuencoded content is still converted", pm.getOriginalMessage(), pm.getMimeMessage());
+        Assert.assertTrue(pm.getMessageParts().size() > 1);
+        Assert.assertTrue(pm.hasAttachments());
+    }
+
+    @Test
+    public void updateMimeMessage() throws Exception {
+        byte[] raw = ("From: sender@example.com\r\n" +
+            "Subject: multipart\r\n" +
+            "Content-Type: multipart/mixed; boundary=\"BOUNDARY\"\r\n" +
+            "\r\n" +
+            "--BOUNDARY\r\n" +
+            "Content-Type: text/plain\r\n" +
+            "\r\n" +
+            "body\r\n" +
+            "--BOUNDARY\r\n" +
+            "Content-Type: application/octet-stream; name=\"a.bin\"\r\n" +
+            "\r\n" +
+            "data\r\n" +
+            "--BOUNDARY--\r\n").getBytes();
+        ParsedMessage pm = new ParsedMessage(raw, false);
+        Assert.assertEquals(3, pm.getMessageParts().size());
+        Assert.assertTrue(pm.hasAttachments());
+
+        // the part list from before the update describes the old message
+        pm.getMimeMessage().setText("no longer multipart");
+        pm.getMimeMessage().saveChanges();
+        pm.updateMimeMessage();
+        List<MPartInfo> parts = pm.getMessageParts();
+        Assert.assertEquals(1, parts.size());
+        Assert.assertSame(pm.getMimeMessage(), parts.get(0).getMimePart());
+        Assert.assertFalse(pm.hasAttachments());
+    }
+
+    @Test
+    public void copyForDelivery() throws Exception {
+        byte[] raw = ("From: sender@example.com\r\n" +
+            "To: rcpt@example.com\r\n" +
+            "Subject: Re: shared\r\n" +
+            "Message-ID: <copy@example.com>\r\n" +
+            "\r\n" +
+            "delivered to many mailboxes\r\n").getBytes();
+        ParsedMessage pm = new ParsedMessage(raw, false);
+        ParsedMessage copy = pm.copyForDelivery();
+        Assert.assertNotSame(pm, copy);
+        Assert.assertSame("the parsed structure is shared", pm.getMessageParts(), copy.getMessageParts());
+        Assert.assertSame(pm.getMimeMessage(), copy.getMimeMessage());
+        Assert.assertSame("the content is not copied", raw, copy.getRawData());
+        Assert.assertEquals("delivered to many mailboxes", copy.getFragment(null));
+        Assert.assertEquals("<copy@example.com>", copy.getMessageID());
+        Assert.assertFalse(copy.isAttachmentIndexingEnabled());
+
+        // per-recipient state is the copy's own
+        copy.setDefaultCharset("utf-8");
+        Assert.assertEquals("shared", copy.getNormalizedSubject());
+        Assert.assertTrue(copy.isReply());
+        Assert.assertEquals("Re: shared", pm.getSubject());
+        Assert.assertEquals(1, copy.getLuceneDocuments().size());
+        Assert.assertEquals(1, pm.getLuceneDocuments().size());
+    }
 }
@@ -14,6 +14,11 @@ import org.junit.rules.TemporaryFolder;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class  FileLogWriterTest {
     @Rule public TemporaryFolder folder = new TemporaryFolder();
@@ -67,6 +72,73 @@ public class  FileLogWriterTest {
         Assert.assertEquals(sequence, logWriter.getSequence());
     }
 
+    @Test
+    public void groupCommit() throws Exception {
+        logWriter.open();
+        final RedoableOp op = EasyMock.createMockBuilder(RedoableOp.class)
+                                  .withConstructor(MailboxOperation.Preview)
+                                  .createMock();
+
+        int numThreads = 8;
+        final int opsPerThread = 25;
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>(numThreads);
+        for (int i = 0; i < numThreads; i++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < opsPerThread; j++) {
+                            logWriter.log(op, new ByteArrayInputStream("some bytes".getBytes()),
+                                          true /* synchronous */);
+                        }
+                    } catch (Throwable t) {
+                        failure.set(t);
+                    }
+                }
+            });
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join(30000);
+        }
+        Assert.assertNull("synchronous log failed", failure.get());
+        Assert.assertEquals("file size incorrect.",
+                            FileHeader.HEADER_LEN + numThreads * opsPerThread * 10, logWriter.getSize());
+        logWriter.close();
+    }
+
+    @Test
+    public void largeOp() throws Exception {
+        logWriter.open();
+        RedoableOp op = EasyMock.createMockBuilder(RedoableOp.class)
+                            .withConstructor(MailboxOperation.Preview)
+                            .createMock();
+
+        // larger than the part of an op that is read before taking the lock
+        byte[] data = new byte[200 * 1024 + 7];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        logWriter.log(op, new ByteArrayInputStream(data), true /* synchronous */);
+        logWriter.log(op, new ByteArrayInputStream("some bytes".getBytes()), true /* synchronous */);
+        Assert.assertEquals("file size incorrect.",
+                            FileHeader.HEADER_LEN + data.length + 10, logWriter.getSize());
+        logWriter.close();
+
+        RandomAccessFile raf = new RandomAccessFile(logWriter.getAbsolutePath(), "r");
+        try {
+            byte[] written = new byte[data.length];
+            raf.seek(FileHeader.HEADER_LEN);
+            raf.readFully(written);
+            Assert.assertTrue("op bytes differ", Arrays.equals(data, written));
+        } finally {
+            raf.close();
+        }
+    }
+
     @Test(expected = IOException.class)
     public void logBeforeOpen() throws Exception {
         logWriter.log(null, null, false);
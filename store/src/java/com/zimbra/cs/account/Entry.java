@@ -24,12 +24,17 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -37,6 +42,7 @@ import org.json.JSONException;
 
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.TreeMultimap;
 import com.zimbra.client.ToZJSONObject;
@@ -94,8 +100,9 @@ public abstract class Entry implements ToZJSONObject {
     private Map<String,Object> mSecondaryDefaults;
     private Map<String, Object> overrideDefaults;
     private Map<String, Object> mData;
-    private Map<String, Set<String>> mMultiAttrSetCache;
-    private Map<String, Set<byte[]>> mMultiBinaryAttrSetCache;
+    private volatile ParsedAttrs parsedAttrs;
+    private static final AtomicReferenceFieldUpdater<Entry, ParsedAttrs> parsedAttrsUpdater =
+            AtomicReferenceFieldUpdater.newUpdater(Entry.class, ParsedAttrs.class, "parsedAttrs");
     private Locale mLocale;
     private final Provisioning mProvisioning;
     private AttributeManager mAttrMgr;
@@ -103,6 +110,112 @@ public abstract class Entry implements ToZJSONObject {
     protected static String[] sEmptyMulti = new String[0];
     protected static List<byte[]> sEmptyListMulti = new ArrayList<byte[]>();
 
+    /**
+     * Generation of each inherited-defaults map, bumped whenever its owner refills it in place (see
+     * {@link #getDefaults}).  That changes the effective values of every entry using the map as its defaults, and
+     * of those entries only.  Keys are weak and compared by identity.
+     */
+    private static final ConcurrentMap<Map<String, Object>, AtomicInteger> defaultsGenerations =
+            new MapMaker().weakKeys().makeMap();
+
+    private static final Object NOT_SET = new Object();
+
+    /** How the typed getters parse a single attribute value. */
+    private static enum ParsedType {
+        BOOLEAN {
+            @Override
+            Object parse(String v) {
+                return ProvisioningConstants.TRUE.equals(v) ? Boolean.TRUE : Boolean.FALSE;
+            }
+        },
+        INT {
+            @Override
+            Object parse(String v) {
+                try {
+                    return Integer.valueOf(v);
+                } catch (NumberFormatException e) {
+                    return NOT_SET;
+                }
+            }
+        },
+        LONG {
+            @Override
+            Object parse(String v) {
+                try {
+                    if (MemoryUnitUtil.isMemoryUnit(v)) {
+                        return new MemoryUnitUtil(1024).convertToBytes(v);
+                    }
+                    return Long.valueOf(v);
+                } catch (NumberFormatException e) {
+                    return NOT_SET;
+                }
+            }
+        },
+        TIME_INTERVAL {
+            @Override
+            Object parse(String v) {
+                long interval = DateUtil.getTimeInterval(v, Long.MIN_VALUE);
+                return interval == Long.MIN_VALUE ? NOT_SET : Long.valueOf(interval);
+            }
+        };
+
+        /** @return the parsed value, or {@link Entry#NOT_SET} if the caller's default applies */
+        abstract Object parse(String v);
+    }
+
+    /**
+     * Attribute values as seen through the typed getters, resolved against the override, primary and secondary
+     * defaults and parsed on first read.  Never updated in place once a value is cached: modifying the entry or
+     * any inherited-defaults map replaces the whole instance.
+     */
+    private static final class ParsedAttrs {
+        /** generation counters of the defaults maps the values were resolved against, and their values at the time */
+        final AtomicInteger[] sources;
+        final int[] generations;
+        final Map<ParsedType, ConcurrentMap<String, Object>> scalars =
+                new EnumMap<ParsedType, ConcurrentMap<String, Object>>(ParsedType.class);
+        final ConcurrentMap<String, String[]> multi = new ConcurrentHashMap<String, String[]>();
+        final ConcurrentMap<String, Set<String>> multiSets = new ConcurrentHashMap<String, Set<String>>();
+        final ConcurrentMap<String, Set<byte[]>> multiBinarySets = new ConcurrentHashMap<String, Set<byte[]>>();
+
+        @SafeVarargs
+        ParsedAttrs(Map<String, Object>... defaults) {
+            sources = new AtomicInteger[defaults.length];
+            generations = new int[defaults.length];
+            for (int i = 0; i < defaults.length; i++) {
+                if (defaults[i] != null) {
+                    sources[i] = defaultsGeneration(defaults[i]);
+                    generations[i] = sources[i].get();
+                }
+            }
+            for (ParsedType type : ParsedType.values()) {
+                scalars.put(type, new ConcurrentHashMap<String, Object>());
+            }
+        }
+
+        /** @return {@code false} if any of the defaults maps has been refilled since the values were resolved */
+        boolean isCurrent() {
+            for (int i = 0; i < sources.length; i++) {
+                if (sources[i] != null && sources[i].get() != generations[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static AtomicInteger defaultsGeneration(Map<String, Object> defaults) {
+        AtomicInteger generation = defaultsGenerations.get(defaults);
+        if (generation == null) {
+            generation = new AtomicInteger();
+            AtomicInteger existing = defaultsGenerations.putIfAbsent(defaults, generation);
+            if (existing != null) {
+                generation = existing;
+            }
+        }
+        return generation;
+    }
+
     public EntryType getEntryType() {
         return EntryType.ENTRY;
     }
@@ -112,6 +225,7 @@ public abstract class Entry implements ToZJSONObject {
     	mProvisioning = provisioning;
     	mAttrs = attrs;
         mDefaults = defaults;
+        parsedAttrs = newParsedAttrs();
         setAttributeManager();
     }
 
@@ -121,6 +235,7 @@ public abstract class Entry implements ToZJSONObject {
     	mAttrs = attrs;
         mDefaults = defaults;
         mSecondaryDefaults = secondaryDefaults;
+        parsedAttrs = newParsedAttrs();
         setAttributeManager();
     }
 
@@ -130,6 +245,7 @@ public abstract class Entry implements ToZJSONObject {
         mAttrs = attrs;
         mDefaults = defaults;
         mSecondaryDefaults = secondaryDefaults;
+        parsedAttrs = newParsedAttrs();
         setAttributeManager();
     }
 
@@ -193,8 +309,7 @@ public abstract class Entry implements ToZJSONObject {
 
     protected synchronized void resetData()
     {
-        if (mMultiAttrSetCache != null)
-            mMultiAttrSetCache.clear();
+        parsedAttrs = newParsedAttrs();
         if (mData != null)
             mData.clear();
         mLocale = null;
@@ -333,10 +448,19 @@ public abstract class Entry implements ToZJSONObject {
         return v == null ? defaultValue : v;
     }
 
+    /**
+     * The returned map may be modified by the caller, which must then call {@link #attrsChanged} so that the typed
+     * getters don't keep serving values parsed before the change.
+     */
     protected Map<String, Object> getRawAttrs() {
         return mAttrs;
     }
 
+    /** Discards the parsed attribute values after the map returned by {@link #getRawAttrs} has been modified. */
+    protected void attrsChanged() {
+        parsedAttrs = newParsedAttrs();
+    }
+
     public Map<String, Object> getAttrs() {
         return getAttrs(true);
     }
@@ -378,7 +502,8 @@ public abstract class Entry implements ToZJSONObject {
             attrs.putAll(mAttrs);
             return attrs;
         } else {
-            return mAttrs;
+            // a copy, so that modifying the result can't bypass the parsed values; use setAttrs to apply changes
+            return new HashMap<String, Object>(mAttrs);
         }
     }
 
@@ -446,6 +571,10 @@ public abstract class Entry implements ToZJSONObject {
     }
 
     protected boolean getBooleanAttr(String name, boolean defaultValue, boolean skipEphemeralCheck) {
+        if (skipEphemeralCheck || !mAttrMgr.isEphemeral(name)) {
+            Object v = getParsedAttr(ParsedType.BOOLEAN, name);
+            return v == NOT_SET ? defaultValue : (Boolean) v;
+        }
         String v = getAttr(name, true, skipEphemeralCheck);
         return v == null ? defaultValue : ProvisioningConstants.TRUE.equals(v);
     }
@@ -488,6 +617,10 @@ public abstract class Entry implements ToZJSONObject {
     }
 
     protected int getIntAttr(String name, int defaultValue, boolean skipEphemeralCheck) {
+        if (skipEphemeralCheck || !mAttrMgr.isEphemeral(name)) {
+            Object v = getParsedAttr(ParsedType.INT, name);
+            return v == NOT_SET ? defaultValue : (Integer) v;
+        }
         String v = getAttr(name, true, skipEphemeralCheck);
         try {
             return v == null ? defaultValue : Integer.parseInt(v);
@@ -523,6 +656,10 @@ public abstract class Entry implements ToZJSONObject {
     }
 
     protected long getLongAttr(String name, long defaultValue, boolean skipEphemeralCheck) {
+        if (skipEphemeralCheck || !mAttrMgr.isEphemeral(name)) {
+            Object v = getParsedAttr(ParsedType.LONG, name);
+            return v == NOT_SET ? defaultValue : (Long) v;
+        }
         String v = getAttr(name, true, skipEphemeralCheck);
         try {
             if (MemoryUnitUtil.isMemoryUnit(v))
@@ -622,6 +759,14 @@ public abstract class Entry implements ToZJSONObject {
                     return sEmptyMulti;
                 }
             }
+        } else if (applyDefaults) {
+            ParsedAttrs parsed = getParsedAttrs();
+            String[] values = parsed.multi.get(name);
+            if (values == null) {
+                values = objectToStringArray(getObject(name, true));
+                parsed.multi.put(name, values);
+            }
+            return values;
         } else {
             Object v = getObject(name, applyDefaults);
             return objectToStringArray(v);
@@ -646,28 +791,60 @@ public abstract class Entry implements ToZJSONObject {
      * set if no values are defined.
      */
     public Set<String> getMultiAttrSet(String name) {
-        if (mMultiAttrSetCache == null)
-            mMultiAttrSetCache = new HashMap<String, Set<String>>();
-        Set<String> result = mMultiAttrSetCache.get(name);
+        ConcurrentMap<String, Set<String>> cache = getParsedAttrs().multiSets;
+        Set<String> result = cache.get(name);
         if (result == null) {
             result = new HashSet<String>(Arrays.asList(getMultiAttr(name)));
-            mMultiAttrSetCache.put(name, result);
+            cache.put(name, result);
         }
         return result;
     }
 
 
     public Set<byte[]> getMultiBinaryAttrSet(String name) {
-        if (mMultiBinaryAttrSetCache == null)
-            mMultiBinaryAttrSetCache = new HashMap<String, Set<byte[]>>();
-        Set<byte[]> result = mMultiBinaryAttrSetCache.get(name);
+        ConcurrentMap<String, Set<byte[]>> cache = getParsedAttrs().multiBinarySets;
+        Set<byte[]> result = cache.get(name);
         if (result == null) {
             result = new HashSet<byte[]>(getMultiBinaryAttr(name));
-            mMultiBinaryAttrSetCache.put(name, result);
+            cache.put(name, result);
         }
         return result;
     }
 
+    /**
+     * Returns the current parsed-value snapshot, replacing it first if one of this entry's inherited-defaults maps
+     * has been refilled since it was created.  Callers must fetch the snapshot before reading the attribute maps, so
+     * that a value computed from stale maps can only land in a snapshot that has already been replaced.
+     */
+    private ParsedAttrs getParsedAttrs() {
+        ParsedAttrs parsed = parsedAttrs;
+        while (!parsed.isCurrent()) {
+            // only replace the stale snapshot itself: if the entry was modified meanwhile, use the one it installed
+            ParsedAttrs fresh = newParsedAttrs();
+            if (parsedAttrsUpdater.compareAndSet(this, parsed, fresh)) {
+                return fresh;
+            }
+            parsed = parsedAttrs;
+        }
+        return parsed;
+    }
+
+    private ParsedAttrs newParsedAttrs() {
+        return new ParsedAttrs(overrideDefaults, mDefaults, mSecondaryDefaults);
+    }
+
+    /** @return the attribute's parsed value with defaults applied, or {@link #NOT_SET} */
+    private Object getParsedAttr(ParsedType type, String name) {
+        ConcurrentMap<String, Object> cache = getParsedAttrs().scalars.get(type);
+        Object v = cache.get(name);
+        if (v == null) {
+            String raw = objectToString(getObject(name, true));
+            v = raw == null ? NOT_SET : type.parse(raw);
+            cache.put(name, v);
+        }
+        return v;
+    }
+
     /**
      * get a time interval, which is a number, optional followed by a character denoting the units
      * (d = days, h = hours, m = minutes, s = seconds. If no character unit is specified, the default is
@@ -684,6 +861,10 @@ public abstract class Entry implements ToZJSONObject {
     }
 
     protected long getTimeInterval(String name, long defaultValue, boolean skipEphemeralCheck) {
+        if (skipEphemeralCheck || !mAttrMgr.isEphemeral(name)) {
+            Object v = getParsedAttr(ParsedType.TIME_INTERVAL, name);
+            return v == NOT_SET ? defaultValue : (Long) v;
+        }
         String v = getAttr(name, true, skipEphemeralCheck);
         return DateUtil.getTimeInterval(v, defaultValue);
     }
@@ -770,6 +951,7 @@ public abstract class Entry implements ToZJSONObject {
             Object obj = getObject(a, true);
             if (obj != null) defaults.put(a, obj);
         }
+        defaultsGeneration(defaults).incrementAndGet();
         //return Collections.unmodifiableMap(defaults);
     }
 
@@ -47,6 +47,7 @@ public class Identity extends AccountProperty implements Comparable {
     public void setId(String id) {
         mId = id;
         getRawAttrs().put(Provisioning.A_zimbraPrefIdentityId, id);
+        attrsChanged();
     }
 
     public InternetAddress getFriendlyEmailAddress() {
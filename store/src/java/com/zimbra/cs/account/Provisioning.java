@@ -1076,6 +1076,27 @@ public abstract class Provisioning extends ZAttrProvisioning {
      */
     public abstract Account get(AccountBy keyType, String key) throws ServiceException;
 
+    /**
+     * Looks up a batch of accounts by the specified key type.  Implementations backed by a directory resolve the
+     * keys with as few searches as possible; this default just calls {@link #get(AccountBy, String)} for each key.
+     *
+     * @return the accounts found, keyed by the key as passed in.  Keys with no matching <code>Account</code> are
+     * absent from the map.
+     * @throws ServiceException if any key is malformed or the lookup fails
+     */
+    public Map<String, Account> getAccounts(AccountBy keyType, Collection<String> keys) throws ServiceException {
+        Map<String, Account> result = new HashMap<String, Account>();
+        for (String key : keys) {
+            if (key != null && !result.containsKey(key)) {
+                Account acct = get(keyType, key);
+                if (acct != null) {
+                    result.put(key, acct);
+                }
+            }
+        }
+        return result;
+    }
+
     public Account get(AccountSelector acctSel)
     throws ServiceException {
         return get(acctSel.getBy().toKeyAccountBy(), acctSel.getKey());
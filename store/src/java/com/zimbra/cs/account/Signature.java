@@ -49,6 +49,7 @@ public class Signature extends AccountProperty implements Comparable {
     public void setId(String id) {
         mId = id;
         getRawAttrs().put(Provisioning.A_zimbraSignatureId, id);
+        attrsChanged();
     }
 
     public static class SignatureContent {
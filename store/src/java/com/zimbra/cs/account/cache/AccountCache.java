@@ -24,26 +24,35 @@
 package com.zimbra.cs.account.cache;
 
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import com.zimbra.common.util.MapUtil;
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
 import com.zimbra.common.stats.Counter;
 import com.zimbra.common.stats.HitRateCounter;
 import com.zimbra.cs.account.Account;
 import com.zimbra.cs.account.Provisioning;
+import com.zimbra.cs.stats.ZimbraPerf;
 
+/**
+ * Lookups are lock-free; updates are serialized so that the name, id, alias and foreign principal maps stay
+ * consistent with each other.  Hits on entries close to expiry trigger a background reload, see {@link EntryRefresher}.
+ */
 public class AccountCache implements IAccountCache {
-    
+
     private Map<String, CacheEntry> mNameCache;
     private Map<String, CacheEntry> mIdCache;
     private Map<String, CacheEntry> mAliasCache;
     private Map<String, CacheEntry> mForeignPrincipalCache;
     private Counter mHitRate = new HitRateCounter();
+    private final ZimbraPerf.LdapCacheStats mStats;
 
     private long mRefreshTTL;
+    private long mRefreshAhead;
 
     static class CacheEntry {
-        long mLifetime;
-        Account mEntry;
+        final long mLifetime;
+        final Account mEntry;
+        final AtomicBoolean mRefreshPending = new AtomicBoolean();
         CacheEntry(Account entry, long expires) {
             mEntry = entry;
             mLifetime = System.currentTimeMillis() + expires;
@@ -52,6 +61,15 @@ public class AccountCache implements IAccountCache {
         boolean isStale() {
             return mLifetime < System.currentTimeMillis();
         }
+
+        boolean isExpiringWithin(long millis) {
+            return mLifetime - millis < System.currentTimeMillis();
+        }
+    }
+
+    private static Map<String, CacheEntry> newMap(int maxItems) {
+        return new ConcurrentLinkedHashMap.Builder<String, CacheEntry>()
+            .maximumWeightedCapacity(Math.max(maxItems, 1)).build();
     }
     
 /**
@@ -59,12 +77,18 @@ public class AccountCache implements IAccountCache {
  * @param refreshTTL
  */
     public AccountCache(int maxItems, long refreshTTL) {
-        mNameCache = MapUtil.newLruMap(maxItems);
-        mIdCache = MapUtil.newLruMap(maxItems);
-        mAliasCache = MapUtil.newLruMap(maxItems); 
-        mForeignPrincipalCache = MapUtil.newLruMap(maxItems);  
+        this(maxItems, refreshTTL, new ZimbraPerf.LdapCacheStats(null));
+    }
+
+    public AccountCache(int maxItems, long refreshTTL, ZimbraPerf.LdapCacheStats stats) {
+        mNameCache = newMap(maxItems);
+        mIdCache = newMap(maxItems);
+        mAliasCache = newMap(maxItems);
+        mForeignPrincipalCache = newMap(maxItems);
         
         mRefreshTTL = refreshTTL;
+        mRefreshAhead = EntryRefresher.window(refreshTTL);
+        mStats = stats;
     }
 
     @Override
@@ -118,30 +142,51 @@ public class AccountCache implements IAccountCache {
         put(entry);
     }
 
-    private Account get(String key, Map cache) {
-        CacheEntry ce = (CacheEntry) cache.get(key);
+    /**
+     * Re-puts an entry that was reloaded in the background, unless it was removed or replaced while reloading.
+     */
+    synchronized void refreshed(CacheEntry ce) {
+        if (mIdCache.get(ce.mEntry.getId()) == ce) {
+            replace(ce.mEntry);
+        }
+    }
+
+    private Account get(String key, Map<String, CacheEntry> cache) {
+        CacheEntry ce = cache.get(key);
         if (ce != null) {
             if (mRefreshTTL != 0 && ce.isStale()) {
                 remove(ce.mEntry);
                 mHitRate.increment(0);
+                mStats.misses.increment();
                 return null;
             } else {
+                if (mRefreshAhead != 0 && ce.isExpiringWithin(mRefreshAhead)) {
+                    final CacheEntry refreshing = ce;
+                    EntryRefresher.refresh(ce.mEntry, ce.mRefreshPending, mStats.loads, new Runnable() {
+                        @Override
+                        public void run() {
+                            refreshed(refreshing);
+                        }
+                    });
+                }
                 mHitRate.increment(100);
+                mStats.hits.increment();
                 return ce.mEntry;
             }
         } else {
             mHitRate.increment(0);
+            mStats.misses.increment();
             return null;
         }
     }
     
     @Override
-    public synchronized Account getById(String key) {
+    public Account getById(String key) {
         return get(key, mIdCache);
     }
     
     @Override
-    public synchronized Account getByName(String key) {
+    public Account getByName(String key) {
         Account acct = get(key.toLowerCase(), mNameCache);
         if (acct != null) {
             return acct;
@@ -151,12 +196,12 @@ public class AccountCache implements IAccountCache {
     }
     
     @Override
-    public synchronized Account getByForeignPrincipal(String key) {
+    public Account getByForeignPrincipal(String key) {
         return get(key, mForeignPrincipalCache);
     }
     
     @Override
-    public synchronized int getSize() {
+    public int getSize() {
         return mIdCache.size();
     }
     
@@ -164,7 +209,7 @@ public class AccountCache implements IAccountCache {
      * Returns the cache hit rate as a value between 0 and 100.
      */
     @Override
-    public synchronized double getHitRate() {
+    public double getHitRate() {
     	 return mHitRate.getAverage();
     }
 }
@@ -24,15 +24,20 @@
 package com.zimbra.cs.account.cache;
 
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import com.zimbra.common.util.MapUtil;
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
 import com.zimbra.common.account.Key.DomainBy;
 import com.zimbra.common.stats.Counter;
 import com.zimbra.common.stats.HitRateCounter;
 import com.zimbra.cs.account.Domain;
 import com.zimbra.cs.account.Provisioning;
+import com.zimbra.cs.stats.ZimbraPerf;
 
 /**
+ * Lookups are lock-free; updates are serialized so that the maps for the various keys stay consistent with each
+ * other.  Hits on entries close to expiry trigger a background reload, see {@link EntryRefresher}.
+ *
  * @author schemers
  **/
 public class DomainCache implements IDomainCache {
@@ -44,7 +49,9 @@ public class DomainCache implements IDomainCache {
     private Map mKrb5RealmCache;
     
     private long mRefreshTTL;
+    private long mRefreshAhead;
     private Counter mHitRate = new HitRateCounter();
+    private final ZimbraPerf.LdapCacheStats mStats;
 
     
     public enum GetFromDomainCacheOption {
@@ -62,8 +69,9 @@ public class DomainCache implements IDomainCache {
     private NegativeCache mNegativeCache;
 
     static class CacheEntry {
-        long mLifetime;
-        Domain mEntry;
+        final long mLifetime;
+        final Domain mEntry;
+        final AtomicBoolean mRefreshPending = new AtomicBoolean();
         CacheEntry(Domain entry, long expires) {
             mEntry = entry;
             mLifetime = System.currentTimeMillis() + expires;
@@ -72,6 +80,15 @@ public class DomainCache implements IDomainCache {
         boolean isStale() {
             return mLifetime < System.currentTimeMillis();
         }
+
+        boolean isExpiringWithin(long millis) {
+            return mLifetime - millis < System.currentTimeMillis();
+        }
+    }
+
+    private static <V> Map<String, V> newMap(int maxItems) {
+        return new ConcurrentLinkedHashMap.Builder<String, V>()
+            .maximumWeightedCapacity(Math.max(maxItems, 1)).build();
     }
     
     public static class NonExistingDomain extends Domain {
@@ -97,11 +114,11 @@ public class DomainCache implements IDomainCache {
         private boolean mEnabled = true;
         
         private NegativeCache(int maxItems, long refreshTTL) {
-            mNegativeNameCache = MapUtil.newLruMap(maxItems);
-            mNegativeIdCache = MapUtil.newLruMap(maxItems);
-            mNegativeVirtualHostnameCache = MapUtil.newLruMap(maxItems);  
-            mNegativeForeignNameCache = MapUtil.newLruMap(maxItems);  
-            mNegativeKrb5RealmCache = MapUtil.newLruMap(maxItems);   
+            mNegativeNameCache = newMap(maxItems);
+            mNegativeIdCache = newMap(maxItems);
+            mNegativeVirtualHostnameCache = newMap(maxItems);
+            mNegativeForeignNameCache = newMap(maxItems);
+            mNegativeKrb5RealmCache = newMap(maxItems);
             mNERefreshTTL = refreshTTL;
         }
         
@@ -204,12 +221,19 @@ public class DomainCache implements IDomainCache {
  * @param refreshTTL
  */
     public DomainCache(int maxItems, long refreshTTL, int maxItemsNegative, long refreshTTLNegative) {
-        mNameCache = MapUtil.newLruMap(maxItems);
-        mIdCache = MapUtil.newLruMap(maxItems);
-        mVirtualHostnameCache = MapUtil.newLruMap(maxItems);  
-        mForeignNameCache = MapUtil.newLruMap(maxItems); 
-        mKrb5RealmCache = MapUtil.newLruMap(maxItems);   
+        this(maxItems, refreshTTL, maxItemsNegative, refreshTTLNegative, new ZimbraPerf.LdapCacheStats(null));
+    }
+
+    public DomainCache(int maxItems, long refreshTTL, int maxItemsNegative, long refreshTTLNegative,
+            ZimbraPerf.LdapCacheStats stats) {
+        mNameCache = newMap(maxItems);
+        mIdCache = newMap(maxItems);
+        mVirtualHostnameCache = newMap(maxItems);
+        mForeignNameCache = newMap(maxItems);
+        mKrb5RealmCache = newMap(maxItems);
         mRefreshTTL = refreshTTL;
+        mRefreshAhead = EntryRefresher.window(refreshTTL);
+        mStats = stats;
         
         mNegativeCache = new NegativeCache(maxItemsNegative, refreshTTLNegative);
     }
@@ -250,6 +274,15 @@ public class DomainCache implements IDomainCache {
         remove(entry);
         put(DomainBy.id, entry.getId(), entry);
     }
+
+    /**
+     * Re-puts an entry that was reloaded in the background, unless it was removed or replaced while reloading.
+     */
+    synchronized void refreshed(CacheEntry ce) {
+        if (mIdCache.get(ce.mEntry.getId()) == ce) {
+            replace(ce.mEntry);
+        }
+    }
     
     @Override
     public synchronized void removeFromNegativeCache(DomainBy domainBy, String key) {
@@ -288,19 +321,31 @@ public class DomainCache implements IDomainCache {
             if (mRefreshTTL != 0 && ce.isStale()) {
                 remove(ce.mEntry);
                 mHitRate.increment(0);
+                mStats.misses.increment();
                 return null;
             } else {
+                if (mRefreshAhead != 0 && ce.isExpiringWithin(mRefreshAhead)) {
+                    final CacheEntry refreshing = ce;
+                    EntryRefresher.refresh(ce.mEntry, ce.mRefreshPending, mStats.loads, new Runnable() {
+                        @Override
+                        public void run() {
+                            refreshed(refreshing);
+                        }
+                    });
+                }
                 mHitRate.increment(100);
+                mStats.hits.increment();
                 return ce.mEntry;
             }
         } else {
             mHitRate.increment(0);
+            mStats.misses.increment();
             return null;
         }
     }
     
     @Override
-    public synchronized Domain getById(String key, GetFromDomainCacheOption option) {
+    public Domain getById(String key, GetFromDomainCacheOption option) {
         
         switch (option) {
         case POSITIVE:
@@ -318,7 +363,7 @@ public class DomainCache implements IDomainCache {
     }
     
     @Override
-    public synchronized Domain getByName(String key, GetFromDomainCacheOption option) {
+    public Domain getByName(String key, GetFromDomainCacheOption option) {
         
         switch (option) {
         case POSITIVE:
@@ -336,7 +381,7 @@ public class DomainCache implements IDomainCache {
     }
     
     @Override
-    public synchronized Domain getByVirtualHostname(String key, GetFromDomainCacheOption option) {
+    public Domain getByVirtualHostname(String key, GetFromDomainCacheOption option) {
         
         switch (option) {
         case POSITIVE:
@@ -354,7 +399,7 @@ public class DomainCache implements IDomainCache {
     }
     
     @Override
-    public synchronized Domain getByForeignName(String key, GetFromDomainCacheOption option) {
+    public Domain getByForeignName(String key, GetFromDomainCacheOption option) {
         
         switch (option) {
         case POSITIVE:
@@ -372,7 +417,7 @@ public class DomainCache implements IDomainCache {
     }
     
     @Override
-    public synchronized Domain getByKrb5Realm(String key, GetFromDomainCacheOption option) {
+    public Domain getByKrb5Realm(String key, GetFromDomainCacheOption option) {
         
         switch (option) {
         case POSITIVE:
@@ -390,7 +435,7 @@ public class DomainCache implements IDomainCache {
     }
 
     @Override
-    public synchronized int getSize() {
+    public int getSize() {
         return mIdCache.size();
     }
     
@@ -398,7 +443,7 @@ public class DomainCache implements IDomainCache {
      * Returns the cache hit rate as a value between 0 and 100.<br />
      */
     @Override
-    public synchronized double getHitRate() {
+    public double getHitRate() {
     	 return mHitRate.getAverage();
     }
 }
@@ -0,0 +1,112 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.account.cache;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.zimbra.common.localconfig.LC;
+import com.zimbra.common.service.ServiceException;
+import com.zimbra.common.stats.StopWatch;
+import com.zimbra.common.util.ZimbraLog;
+import com.zimbra.cs.account.Entry;
+import com.zimbra.cs.stats.ZimbraPerf;
+
+/**
+ * Refresh-ahead for the LDAP entry caches.  A cache hit on an entry that is within
+ * {@code ldap_cache_refresh_ahead_percent} of its max age still returns the cached entry, but also queues a background
+ * reload of it; when the reload succeeds the cache re-puts the entry with a fresh lifetime, unless the entry was
+ * removed or replaced in the meantime.  Entries that are read regularly therefore never expire on a request thread,
+ * while idle ones still age out.
+ * <p>
+ * Reloads go through the {@link Reloader} installed by the provisioning layer.  If none is installed, or the queue is
+ * full, entries simply expire as before.
+ */
+public final class EntryRefresher {
+
+    /** Re-reads an entry's attributes from the directory, updating the entry object in place. */
+    public interface Reloader {
+        void reload(Entry entry) throws ServiceException;
+    }
+
+    private static final int PERCENT = Math.max(0, Math.min(100, LC.ldap_cache_refresh_ahead_percent.intValue()));
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(
+            Math.max(1, LC.ldap_cache_refresh_threads.intValue()), Math.max(1, LC.ldap_cache_refresh_threads.intValue()),
+            60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(1000),
+            new ThreadFactoryBuilder().setNameFormat("LdapCacheRefresh-%d").setDaemon(true).build());
+    static {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private static volatile Reloader reloader;
+
+    private EntryRefresher() {
+    }
+
+    public static void setReloader(Reloader value) {
+        reloader = value;
+    }
+
+    /**
+     * @param ttl the cache's max age in millis
+     * @return the lifetime remaining below which a hit triggers a reload, or 0 if refresh-ahead is disabled
+     */
+    static long window(long ttl) {
+        return ttl * PERCENT / 100;
+    }
+
+    /**
+     * Queues a reload of {@code entry} unless one is already pending for it, and runs {@code onSuccess} afterwards.
+     *
+     * @param pending the cache entry's pending flag; cleared when the reload finishes either way
+     * @param timer the cache's own reload timer, stopped after {@code onSuccess}
+     */
+    static void refresh(final Entry entry, final AtomicBoolean pending, final StopWatch timer,
+            final Runnable onSuccess) {
+        final Reloader r = reloader;
+        if (r == null || !pending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long start = ZimbraPerf.STOPWATCH_LDAP_CACHE_REFRESH.start();
+                    try {
+                        r.reload(entry);
+                        onSuccess.run();
+                    } catch (ServiceException e) {
+                        ZimbraLog.account.debug("unable to refresh cached entry %s; leaving it to expire", entry.getLabel(), e);
+                    } catch (RuntimeException e) {
+                        ZimbraLog.account.warn("unable to refresh cached entry %s", entry.getLabel(), e);
+                    } finally {
+                        pending.set(false);
+                        ZimbraPerf.STOPWATCH_LDAP_CACHE_REFRESH.stop(start);
+                        timer.stop(start);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // queue full; the entry will expire normally
+            pending.set(false);
+        }
+    }
+}
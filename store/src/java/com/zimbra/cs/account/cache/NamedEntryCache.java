@@ -25,27 +25,35 @@ package com.zimbra.cs.account.cache;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import com.zimbra.common.util.MapUtil;
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
 import com.zimbra.common.stats.Counter;
 import com.zimbra.common.stats.HitRateCounter;
 import com.zimbra.cs.account.NamedEntry;
+import com.zimbra.cs.stats.ZimbraPerf;
 
 /**
+ * Lookups are lock-free; updates are serialized so that the name and id maps stay consistent with each other.  Hits
+ * on entries close to expiry trigger a background reload, see {@link EntryRefresher}.
+ *
  * @author schemers
  **/
 public class NamedEntryCache<E extends NamedEntry> implements INamedEntryCache<E> {
     
-    private Map mNameCache;
-    private Map mIdCache;
+    private Map<String, CacheEntry<E>> mNameCache;
+    private Map<String, CacheEntry<E>> mIdCache;
     
     private long mRefreshTTL;
+    private long mRefreshAhead;
     private Counter mHitRate = new HitRateCounter();
+    private final ZimbraPerf.LdapCacheStats mStats;
    
 
     static class CacheEntry<E extends NamedEntry> {
-        long mLifetime;
-        E mEntry;
+        final long mLifetime;
+        final E mEntry;
+        final AtomicBoolean mRefreshPending = new AtomicBoolean();
         CacheEntry(E entry, long expires) {
             mEntry = entry;
             mLifetime = System.currentTimeMillis() + expires;
@@ -54,6 +62,15 @@ public class NamedEntryCache<E extends NamedEntry> implements INamedEntryCache<E
         boolean isStale() {
             return mLifetime < System.currentTimeMillis();
         }
+
+        boolean isExpiringWithin(long millis) {
+            return mLifetime - millis < System.currentTimeMillis();
+        }
+    }
+
+    private static <E extends NamedEntry> Map<String, CacheEntry<E>> newMap(int maxItems) {
+        return new ConcurrentLinkedHashMap.Builder<String, CacheEntry<E>>()
+            .maximumWeightedCapacity(Math.max(maxItems, 1)).build();
     }
     
 /**
@@ -61,9 +78,15 @@ public class NamedEntryCache<E extends NamedEntry> implements INamedEntryCache<E
  * @param refreshTTL
  */
     public NamedEntryCache(int maxItems, long refreshTTL) {
-        mNameCache = MapUtil.newLruMap(maxItems);
-        mIdCache = MapUtil.newLruMap(maxItems);
+        this(maxItems, refreshTTL, new ZimbraPerf.LdapCacheStats(null));
+    }
+
+    public NamedEntryCache(int maxItems, long refreshTTL, ZimbraPerf.LdapCacheStats stats) {
+        mNameCache = newMap(maxItems);
+        mIdCache = newMap(maxItems);
         mRefreshTTL = refreshTTL;
+        mRefreshAhead = EntryRefresher.window(refreshTTL);
+        mStats = stats;
     }
 
     @Override
@@ -101,6 +124,15 @@ public class NamedEntryCache<E extends NamedEntry> implements INamedEntryCache<E
         put(entry);
     }
 
+    /**
+     * Re-puts an entry that was reloaded in the background, unless it was removed or replaced while reloading.
+     */
+    synchronized void refreshed(CacheEntry<E> ce) {
+        if (mIdCache.get(ce.mEntry.getId()) == ce) {
+            replace(ce.mEntry);
+        }
+    }
+
     @Override
     public synchronized void put(List<E> entries, boolean clear) {
         if (entries != null) {
@@ -110,36 +142,47 @@ public class NamedEntryCache<E extends NamedEntry> implements INamedEntryCache<E
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private E get(String key, Map cache) {
-        CacheEntry<E> ce = (CacheEntry<E>) cache.get(key);
+    private E get(String key, Map<String, CacheEntry<E>> cache) {
+        CacheEntry<E> ce = cache.get(key);
         if (ce != null) {
             if (mRefreshTTL != 0 && ce.isStale()) {
                 remove(ce.mEntry);
                 mHitRate.increment(0);
+                mStats.misses.increment();
                 return null;
             } else {
+                if (mRefreshAhead != 0 && ce.isExpiringWithin(mRefreshAhead)) {
+                    final CacheEntry<E> refreshing = ce;
+                    EntryRefresher.refresh(ce.mEntry, ce.mRefreshPending, mStats.loads, new Runnable() {
+                        @Override
+                        public void run() {
+                            refreshed(refreshing);
+                        }
+                    });
+                }
                 mHitRate.increment(100);
+                mStats.hits.increment();
                 return ce.mEntry;
             }
         } else {
             mHitRate.increment(0);
+            mStats.misses.increment();
             return null;
         }
     }
     
     @Override
-    public synchronized E getById(String key) {
+    public E getById(String key) {
         return get(key, mIdCache);
     }
     
     @Override
-    public synchronized E getByName(String key) {
+    public E getByName(String key) {
         return get(key.toLowerCase(), mNameCache);
     }
     
     @Override
-    public synchronized int getSize() {
+    public int getSize() {
         return mIdCache.size();
     }
     
@@ -148,7 +191,7 @@ public class NamedEntryCache<E extends NamedEntry> implements INamedEntryCache<E
      * Returns the cache hit rate as a value between 0 and 100.
      */
     @Override
-    public synchronized double getHitRate() {
+    public double getHitRate() {
         return mHitRate.getAverage();
     }
 }
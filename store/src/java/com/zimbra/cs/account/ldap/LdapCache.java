@@ -45,6 +45,7 @@ import com.zimbra.cs.account.cache.NamedEntryCache;
 import com.zimbra.cs.account.ldap.entry.LdapCos;
 import com.zimbra.cs.account.ldap.entry.LdapZimlet;
 import com.zimbra.cs.mime.MimeTypeInfo;
+import com.zimbra.cs.stats.ZimbraPerf;
 
 /**
  * @author pshao
@@ -72,12 +73,14 @@ abstract class LdapCache {
         private final IAccountCache accountCache =
             new AccountCache(
                     LC.ldap_cache_account_maxsize.intValue(),
-                    LC.ldap_cache_account_maxage.intValue() * Constants.MILLIS_PER_MINUTE);
+                    LC.ldap_cache_account_maxage.intValue() * Constants.MILLIS_PER_MINUTE,
+                    ZimbraPerf.LDAP_ACCOUNT_CACHE);
 
         private final INamedEntryCache<LdapCos> cosCache =
             new NamedEntryCache<LdapCos>(
                     LC.ldap_cache_cos_maxsize.intValue(),
-                    LC.ldap_cache_cos_maxage.intValue() * Constants.MILLIS_PER_MINUTE);
+                    LC.ldap_cache_cos_maxage.intValue() * Constants.MILLIS_PER_MINUTE,
+                    ZimbraPerf.LDAP_COS_CACHE);
 
         private final INamedEntryCache<ShareLocator> shareLocatorCache =
                 new NamedEntryCache<ShareLocator>(
@@ -89,35 +92,41 @@ abstract class LdapCache {
                     LC.ldap_cache_domain_maxsize.intValue(),
                     LC.ldap_cache_domain_maxage.intValue() * Constants.MILLIS_PER_MINUTE,
                     LC.ldap_cache_external_domain_maxsize.intValue(),
-                    LC.ldap_cache_external_domain_maxage.intValue() * Constants.MILLIS_PER_MINUTE);
+                    LC.ldap_cache_external_domain_maxage.intValue() * Constants.MILLIS_PER_MINUTE,
+                    ZimbraPerf.LDAP_DOMAIN_CACHE);
 
         private final IMimeTypeCache mimeTypeCache = new LdapMimeTypeCache();
 
         private final INamedEntryCache<Server> serverCache =
             new NamedEntryCache<Server>(
                     LC.ldap_cache_server_maxsize.intValue(),
-                    LC.ldap_cache_server_maxage.intValue() * Constants.MILLIS_PER_MINUTE);
+                    LC.ldap_cache_server_maxage.intValue() * Constants.MILLIS_PER_MINUTE,
+                    ZimbraPerf.LDAP_SERVER_CACHE);
 
         private final INamedEntryCache<UCService> ucServiceCache =
             new NamedEntryCache<UCService>(
                     LC.ldap_cache_ucservice_maxsize.intValue(),
-                    LC.ldap_cache_ucservice_maxage.intValue() * Constants.MILLIS_PER_MINUTE);
+                    LC.ldap_cache_ucservice_maxage.intValue() * Constants.MILLIS_PER_MINUTE,
+                    ZimbraPerf.LDAP_UCSERVICE_CACHE);
 
         private final INamedEntryCache<LdapZimlet> zimletCache =
             new NamedEntryCache<LdapZimlet>(
                     LC.ldap_cache_zimlet_maxsize.intValue(),
-                    LC.ldap_cache_zimlet_maxage.intValue() * Constants.MILLIS_PER_MINUTE);
+                    LC.ldap_cache_zimlet_maxage.intValue() * Constants.MILLIS_PER_MINUTE,
+                    ZimbraPerf.LDAP_ZIMLET_CACHE);
 
 
         private final INamedEntryCache<Group> groupCache =
             new NamedEntryCache<Group>(
                     LC.ldap_cache_group_maxsize.intValue(),
-                    LC.ldap_cache_group_maxage.intValue() * Constants.MILLIS_PER_MINUTE);
+                    LC.ldap_cache_group_maxage.intValue() * Constants.MILLIS_PER_MINUTE,
+                    ZimbraPerf.LDAP_GROUP_CACHE);
 
         private final INamedEntryCache<XMPPComponent> xmppComponentCache =
             new NamedEntryCache<XMPPComponent>(
                     LC.ldap_cache_xmppcomponent_maxsize.intValue(),
-                    LC.ldap_cache_xmppcomponent_maxage.intValue() * Constants.MILLIS_PER_MINUTE);
+                    LC.ldap_cache_xmppcomponent_maxage.intValue() * Constants.MILLIS_PER_MINUTE,
+                    ZimbraPerf.LDAP_XMPP_CACHE);
 
         private final INamedEntryCache<AlwaysOnCluster> alwaysOnClusterCache =
                 new NamedEntryCache<AlwaysOnCluster>(
@@ -122,6 +122,7 @@ import com.zimbra.cs.account.auth.AuthMechanism.AuthMech;
 import com.zimbra.cs.account.auth.PasswordUtil;
 import com.zimbra.cs.account.cache.DomainCache;
 import com.zimbra.cs.account.cache.DomainCache.GetFromDomainCacheOption;
+import com.zimbra.cs.account.cache.EntryRefresher;
 import com.zimbra.cs.account.cache.IAccountCache;
 import com.zimbra.cs.account.cache.IDomainCache;
 import com.zimbra.cs.account.cache.IMimeTypeCache;
@@ -286,6 +287,12 @@ public class LdapProvisioning extends LdapProv implements CacheAwareProvisioning
 
         if (this.useCache) {
             cache = new LdapCache.LRUMapCache();
+            EntryRefresher.setReloader(new EntryRefresher.Reloader() {
+                @Override
+                public void reload(Entry entry) throws ServiceException {
+                    LdapProvisioning.this.reload(entry, false);
+                }
+            });
         } else {
             cache = new LdapCache.NoopCache();
         }
@@ -1012,6 +1019,120 @@ public class LdapProvisioning extends LdapProv implements CacheAwareProvisioning
         }
     }
 
+    /**
+     * Resolves ids and names with chunked OR-filter searches ({@code ldap_account_bulk_lookup_batch_size} keys per
+     * search) instead of one search per key, and caches everything found.  Other key types, and names that are
+     * matched by more than one account, go through {@link #get(AccountBy, String)} one by one.
+     */
+    @Override
+    public Map<String, Account> getAccounts(AccountBy keyType, Collection<String> keys) throws ServiceException {
+        if (keyType != AccountBy.id && keyType != AccountBy.name) {
+            return super.getAccounts(keyType, keys);
+        }
+        boolean byId = keyType == AccountBy.id;
+        Map<String, Account> result = new HashMap<String, Account>();
+
+        // normalized key (id, or lower-cased ASCII address) => keys as passed in
+        Map<String, List<String>> misses = new HashMap<String, List<String>>();
+        for (String key : keys) {
+            if (key == null || result.containsKey(key)) {
+                continue;
+            }
+            String normalized = byId ? key : fixupAccountName(key).toLowerCase();
+            Account acct = byId ? accountCache.getById(normalized) : accountCache.getByName(normalized);
+            if (acct != null) {
+                result.put(key, acct);
+                continue;
+            }
+            List<String> originals = misses.get(normalized);
+            if (originals == null) {
+                originals = new ArrayList<String>(1);
+                misses.put(normalized, originals);
+            }
+            originals.add(key);
+        }
+        if (misses.isEmpty()) {
+            return result;
+        }
+
+        Map<String, Account> found = new HashMap<String, Account>();
+        Set<String> ambiguous = new HashSet<String>();
+        searchAccountsInBatches(mDIT.mailBranchBaseDN(), byId, misses.keySet(), found, ambiguous);
+        if (byId && found.size() < misses.size() && !mDIT.isUnder(mDIT.mailBranchBaseDN(), mDIT.adminBaseDN())) {
+            // same fallback as getAccountById
+            Set<String> remaining = new HashSet<String>(misses.keySet());
+            remaining.removeAll(found.keySet());
+            searchAccountsInBatches(mDIT.adminBaseDN(), byId, remaining, found, ambiguous);
+        }
+
+        for (Map.Entry<String, List<String>> miss : misses.entrySet()) {
+            String normalized = miss.getKey();
+            Account acct;
+            if (ambiguous.contains(normalized)) {
+                acct = get(keyType, miss.getValue().get(0));  // throws MULTIPLE_ACCOUNTS_MATCHED
+            } else {
+                acct = found.get(normalized);
+                if (acct == null && !byId) {
+                    // same fallback as getAccountByName
+                    String addrByDomainAlias = getEmailAddrByDomainAlias(normalized);
+                    if (addrByDomainAlias != null) {
+                        acct = getAccountByNameInternal(addrByDomainAlias, false);
+                    }
+                }
+            }
+            if (acct != null) {
+                for (String key : miss.getValue()) {
+                    result.put(key, acct);
+                }
+            }
+        }
+        return result;
+    }
+
+    private void searchAccountsInBatches(String base, boolean byId, Collection<String> keys,
+            Map<String, Account> found, Set<String> ambiguous)
+    throws ServiceException {
+        int batchSize = Math.max(1, LC.ldap_account_bulk_lookup_batch_size.intValue());
+        List<String> pending = new ArrayList<String>(keys);
+        for (int i = 0; i < pending.size(); i += batchSize) {
+            List<String> batch = pending.subList(i, Math.min(i + batchSize, pending.size()));
+            Set<String> wanted = new HashSet<String>(batch);
+            ZLdapFilter filter = byId ? filterFactory.accountsByIds(batch) : filterFactory.accountsByNames(batch);
+            try {
+                ZSearchResultEnumeration ne = helper.searchDir(base, filter, ZSearchControls.SEARCH_CTLS_SUBTREE());
+                try {
+                    while (ne.hasMore()) {
+                        ZSearchResultEntry sr = ne.next();
+                        Account acct = makeAccount(sr.getDN(), sr.getAttributes());
+                        accountCache.put(acct);
+                        if (byId) {
+                            found.put(acct.getId(), acct);
+                            continue;
+                        }
+                        Set<String> addrs = new HashSet<String>();
+                        String deliveryAddr = acct.getAttr(Provisioning.A_zimbraMailDeliveryAddress);
+                        if (deliveryAddr != null) {
+                            addrs.add(deliveryAddr.toLowerCase());
+                        }
+                        for (String alias : acct.getMultiAttr(Provisioning.A_zimbraMailAlias)) {
+                            addrs.add(alias.toLowerCase());
+                        }
+                        for (String addr : addrs) {
+                            if (wanted.contains(addr) && found.put(addr, acct) != null) {
+                                ambiguous.add(addr);
+                            }
+                        }
+                    }
+                } finally {
+                    ne.close();
+                }
+            } catch (ServiceException e) {
+                throw ServiceException.FAILURE("unable to lookup accounts via query: " +
+                        filter.toFilterString() + " message: " + e.getMessage(), e);
+            }
+        }
+    }
+
     public Account getFromCache(AccountBy keyType, String key) throws ServiceException {
         switch(keyType) {
         case adminName:
@@ -10136,12 +10257,15 @@ public class LdapProvisioning extends LdapProv implements CacheAwareProvisioning
         List<Account> accts = new ArrayList<Account>();
         List<String> externalAddrs = new ArrayList<String>();
 
-        // check for errors, and put valid accts to the queue
+        List<String> memberNames = new ArrayList<String>(members.length);
         for (String member : members) {
-            String memberName = member.toLowerCase();
-            memberName = IDNUtil.toAsciiEmail(memberName);
+            memberNames.add(IDNUtil.toAsciiEmail(member.toLowerCase()));
+        }
+        Map<String, Account> memberAccts = getAccounts(AccountBy.name, memberNames);
 
-            Account acct = get(AccountBy.name, memberName);
+        // check for errors, and put valid accts to the queue
+        for (String memberName : memberNames) {
+            Account acct = memberAccts.get(memberName);
             if (acct == null) {
                 // addr is not an account (could still be a group or group unit address
                 // on the system), will check by addressExists.
@@ -53,6 +53,7 @@ class SoapDistributionList extends DistributionList implements SoapEntry {
                 new HashMap<String,Object>(), prov);
         // DistributionListMembershipInfo does not supply membership info
         addDlm(new ArrayList<String>(), getRawAttrs());
+        attrsChanged();
     }
 
     SoapDistributionList(DistributionListInfo dlInfo, Provisioning prov)
@@ -60,6 +61,7 @@ class SoapDistributionList extends DistributionList implements SoapEntry {
         super(dlInfo.getName(), dlInfo.getId(), 
                 Attr.collectionToMap(dlInfo.getAttrList()), prov);
         addDlm(dlInfo.getMembers(), getRawAttrs());
+        attrsChanged();
     }
 
     SoapDistributionList(DLInfo dlInfo, Provisioning prov)
@@ -73,6 +75,7 @@ class SoapDistributionList extends DistributionList implements SoapEntry {
         
         // DLInfo does not supply membership info
         addDlm(new ArrayList<String>(), getRawAttrs());
+        attrsChanged();
     }
 
     SoapDistributionList(Element e, Provisioning prov) throws ServiceException {
@@ -80,6 +83,7 @@ class SoapDistributionList extends DistributionList implements SoapEntry {
                 e.getAttribute(AdminConstants.A_ID), 
                 SoapProvisioning.getAttrs(e), prov);
         addDlm(e, getRawAttrs());
+        attrsChanged();
     }
 
     private void addDlm(List <String> members, Map<String, Object> attrs) {
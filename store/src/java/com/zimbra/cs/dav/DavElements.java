@@ -134,6 +134,7 @@ public class DavElements {
     public static final String P_IS_NOT_DEFINED = "is-not-defined";
 
     public static final String P_LAST_NAME = "last-name";
+    public static final String P_LIMIT = "limit";
     public static final String P_LIMIT_FREEBUSY_SET = "limit-freebusy-set";
     public static final String P_LIMIT_RECURRENCE_SET = "limit-recurrence-set";
     public static final String P_LOCKINFO = "lockinfo";
@@ -164,6 +165,7 @@ public class DavElements {
     public static final String P_NO_INVERT = "no-invert";
     public static final String P_NOVALUE = "novalue";
     public static final String P_NO_UID_CONFLICT = "no-uid-conflict";
+    public static final String P_NRESULTS = "nresults";
 
     public static final String P_OWNER = "owner";
 
@@ -226,6 +228,9 @@ public class DavElements {
     public static final String P_SUPPORTEDLOCK = "supportedlock";
     public static final String P_START = "start";
     public static final String P_STATUS = "status";
+    public static final String P_SYNC_COLLECTION = "sync-collection";
+    public static final String P_SYNC_LEVEL = "sync-level";
+    public static final String P_SYNC_TOKEN = "sync-token";
 
     public static final String P_TEXT_MATCH = "text-match";
     public static final String P_TIME_RANGE = "time-range";
@@ -328,6 +333,7 @@ public class DavElements {
     public static final QName E_IS_NOT_DEFINED = QName.get(P_IS_NOT_DEFINED, CALDAV_NS);
 
     public static final QName E_LAST_NAME = QName.get(P_LAST_NAME, CS_NS);
+    public static final QName E_LIMIT = QName.get(P_LIMIT, WEBDAV_NS);
     public static final QName E_LOCKDISCOVERY = QName.get(P_LOCKDISCOVERY, WEBDAV_NS);
     public static final QName E_LOCKSCOPE = QName.get(P_LOCKSCOPE, WEBDAV_NS);
     public static final QName E_LOCKTOKEN = QName.get(P_LOCKTOKEN, WEBDAV_NS);
@@ -341,6 +347,7 @@ public class DavElements {
 
     public static final QName E_NEED_PRIVILEGES = QName.get(P_NEED_PRIVILEGES, WEBDAV_NS);
     public static final QName E_NO_INVERT = QName.get(P_NO_INVERT, WEBDAV_NS);
+    public static final QName E_NRESULTS = QName.get(P_NRESULTS, WEBDAV_NS);
 
     public static final QName E_OWNER = QName.get(P_OWNER, WEBDAV_NS);
 
@@ -400,6 +407,9 @@ public class DavElements {
     public static final QName E_SUPPORTED_REPORT = QName.get(P_SUPPORTED_REPORT, WEBDAV_NS);
     public static final QName E_SUPPORTED_REPORT_SET = QName.get(P_SUPPORTED_REPORT_SET, WEBDAV_NS);
     public static final QName E_SUPPORTEDLOCK = QName.get(P_SUPPORTEDLOCK, WEBDAV_NS);
+    public static final QName E_SYNC_COLLECTION = QName.get(P_SYNC_COLLECTION, WEBDAV_NS);
+    public static final QName E_SYNC_LEVEL = QName.get(P_SYNC_LEVEL, WEBDAV_NS);
+    public static final QName E_SYNC_TOKEN = QName.get(P_SYNC_TOKEN, WEBDAV_NS);
 
     public static final QName E_TEXT_MATCH = QName.get(P_TEXT_MATCH, CALDAV_NS);
     public static final QName E_TIME_RANGE = QName.get(P_TIME_RANGE, CALDAV_NS);
@@ -421,6 +431,8 @@ public class DavElements {
     public static final QName E_VALID_CALENDAR_DATA = QName.get(P_VALID_CALENDAR_DATA, CALDAV_NS);
     public static final QName E_VALID_CALENDAR_OBJECT_RESOURCE = QName.get(P_VALID_CALENDAR_OBJECT_RESOURCE, CALDAV_NS);
     public static final QName E_NO_UID_CONFLICT = QName.get(P_NO_UID_CONFLICT, CALDAV_NS);
+    public static final QName E_VALID_SYNC_TOKEN = QName.get("valid-sync-token", WEBDAV_NS);
+    public static final QName E_NUMBER_OF_MATCHES_WITHIN_LIMITS = QName.get("number-of-matches-within-limits", WEBDAV_NS);
 
     public static class CardDav {
         public static final QName E_ADDRESS_DATA = QName.get(P_ADDRESS_DATA, CARDDAV_NS);
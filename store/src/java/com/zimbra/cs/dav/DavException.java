@@ -159,6 +159,26 @@ public class DavException extends Exception {
         }
     }
 
+    /**
+     * Associated with http://tools.ietf.org/html/rfc6578 DAV:valid-sync-token Precondition
+     */
+    public static class InvalidSyncToken extends DavExceptionWithErrorMessage {
+        public InvalidSyncToken(String token) {
+            super("sync token " + token + " is not valid", HttpServletResponse.SC_FORBIDDEN);
+            setError(DavElements.E_VALID_SYNC_TOKEN);
+        }
+    }
+
+    /**
+     * Associated with http://tools.ietf.org/html/rfc6578 DAV:number-of-matches-within-limits Postcondition
+     */
+    public static class TooManyMatches extends DavExceptionWithErrorMessage {
+        public TooManyMatches(int limit) {
+            super("more than " + limit + " changes to report", DavProtocol.STATUS_INSUFFICIENT_STORAGE);
+            setError(DavElements.E_NUMBER_OF_MATCHES_WITHIN_LIMITS);
+        }
+    }
+
     public static class REPORTwithDisallowedDepthException extends DavException {
         public REPORTwithDisallowedDepthException(String reportName, Depth depth) {
             super(String.format("%s REPORT with %s depth is not allowed (only 0 is allowed)",
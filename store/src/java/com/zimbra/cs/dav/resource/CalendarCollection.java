@@ -69,6 +69,7 @@ import com.zimbra.cs.mailbox.DavNames;
 import com.zimbra.cs.mailbox.DavNames.DavName;
 import com.zimbra.cs.mailbox.Folder;
 import com.zimbra.cs.mailbox.MailItem;
+import com.zimbra.cs.mailbox.MailServiceException;
 import com.zimbra.cs.mailbox.Mailbox;
 import com.zimbra.cs.mailbox.Mailbox.SetCalendarItemData;
 import com.zimbra.cs.mailbox.MailboxManager;
@@ -115,6 +116,13 @@ public class CalendarCollection extends Collection {
 
         mCtag = CtagInfo.makeCtag(f);
         setProperty(DavElements.E_GETCTAG, mCtag);
+        // the scheduling inbox and outbox don't support DAV:sync-collection, so they have no sync token either
+        if (!(this instanceof ScheduleInbox) && !(this instanceof ScheduleOutbox)) {
+            ResourceProperty syncToken = new ResourceProperty(DavElements.E_SYNC_TOKEN);
+            syncToken.setProtected(true);
+            syncToken.setStringValue(CollectionSyncIndex.toToken(f.getId(), f.getMailbox().getLastChangeID()));
+            addProperty(syncToken);
+        }
 
         addProperty(getIcalColorProperty());
         setProperty(DavElements.E_ALTERNATE_URI_SET, null, true);
@@ -134,7 +142,8 @@ public class CalendarCollection extends Collection {
             DavElements.E_PRINCIPAL_MATCH,
             DavElements.E_PRINCIPAL_PROPERTY_SEARCH,
             DavElements.E_PRINCIPAL_SEARCH_PROPERTY_SET,
-            DavElements.E_EXPAND_PROPERTY
+            DavElements.E_EXPAND_PROPERTY,
+            DavElements.E_SYNC_COLLECTION
     };
 
     @Override
@@ -241,6 +250,58 @@ public class CalendarCollection extends Collection {
         return appts;
     }
 
+    /** Members of a calendar collection that changed or went away since a sync token, per RFC 6578. */
+    public static class SyncChanges {
+        public final String syncToken;
+        public final List<DavResource> changed;
+        public final List<DavResource> removed;
+
+        SyncChanges(String syncToken, List<DavResource> changed, List<DavResource> removed) {
+            this.syncToken = syncToken;
+            this.changed = changed;
+            this.removed = removed;
+        }
+    }
+
+    /*
+     * Returns the appointments changed since the sync token and the now invalid resources for the ones that were
+     * removed, or all of the appointments if the token is empty.  Only the changed items are loaded.
+     */
+    public SyncChanges getChangesSince(DavContext ctxt, String syncToken) throws ServiceException, DavException {
+        Mailbox mbox = getCalendarMailbox(ctxt);
+        Folder folder = mbox.getFolderById(ctxt.getOperationContext(), getId());
+        CollectionSyncIndex.Delta delta = CollectionSyncIndex.getInstance().getDelta(mbox, folder, syncToken);
+        if (delta == null) {
+            throw new DavException.InvalidSyncToken(syncToken);
+        }
+
+        ctxt.setCollectionPath(getUri());
+        ArrayList<DavResource> changed = new ArrayList<DavResource>(delta.changed.size());
+        if (needCalendarData(ctxt)) {
+            for (CalendarItem.CalendarMetadata md : delta.changed) {
+                try {
+                    MailItem item = mbox.getItemById(ctxt.getOperationContext(), md.itemId, MailItem.Type.UNKNOWN);
+                    if (item instanceof CalendarItem) {
+                        changed.add(new CalendarObject.LocalCalendarObject(ctxt, (CalendarItem) item));
+                    }
+                } catch (MailServiceException.NoSuchItemException e) {
+                    // deleted since the index was brought up to date; the next sync will report it
+                }
+            }
+        } else {
+            for (CalendarItem.CalendarMetadata md : delta.changed) {
+                changed.add(new CalendarObject.LightWeightCalendarObject(getUri(), getOwner(), md));
+            }
+        }
+        ArrayList<DavResource> removed = new ArrayList<DavResource>(delta.removed.size());
+        for (CollectionSyncIndex.Removal removal : delta.removed) {
+            String path = CalendarObject.CalendarPath.generate(ctxt, getUri(), removal.uid, mMailboxId,
+                    removal.itemId, -1);
+            removed.add(new DavResource.InvalidResource(path, getOwner()));
+        }
+        return new SyncChanges(delta.token, changed, removed);
+    }
+
     public java.util.Collection<DavResource> getAppointmentsByUids(DavContext ctxt, List<String> hrefs) throws ServiceException, DavException {
         Map<String,String> uidmap = getUidToHrefMap(hrefs);
         Mailbox mbox = getCalendarMailbox(ctxt);
@@ -0,0 +1,273 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.dav.resource;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.Weigher;
+import com.zimbra.common.localconfig.LC;
+import com.zimbra.common.service.ServiceException;
+import com.zimbra.common.util.Pair;
+import com.zimbra.common.util.ZimbraLog;
+import com.zimbra.cs.mailbox.CalendarItem;
+import com.zimbra.cs.mailbox.Folder;
+import com.zimbra.cs.mailbox.MailItem;
+import com.zimbra.cs.mailbox.Mailbox;
+import com.zimbra.cs.mailbox.util.TypedIdList;
+
+/**
+ * Membership index backing the RFC 6578 {@code sync-collection} REPORT on calendar collections.
+ * <p>
+ * For each collection it remembers the calendar metadata of every member as of some mailbox change number, plus the
+ * members that have left the collection since the index was built.  Bringing an index up to date only looks at the
+ * items modified since its change number ({@link Mailbox#getModifiedItems}) and at the tombstones, so answering a
+ * poll doesn't enumerate the collection.  Tombstones carry item ids but not the iCalendar UIDs that hrefs are made
+ * of, which is why the members have to be remembered here.
+ * <p>
+ * A sync token is only honored if it is no older than the index, so tokens issued before a restart or an eviction
+ * are rejected and the client falls back to a full sync.  All indexes share a single LRU bounded by the number of
+ * entries they hold ({@code caldav_sync_index_max_entries}).
+ */
+final class CollectionSyncIndex {
+
+    private static final String TOKEN_PREFIX = "data:,";
+    private static final int MAX_REMOVALS = 10000;
+
+    private static final CollectionSyncIndex INSTANCE = new CollectionSyncIndex(LC.caldav_sync_index_max_entries.intValue());
+
+    private final ConcurrentLinkedHashMap<String, Index> indexes;
+    private final boolean enabled;
+
+    @VisibleForTesting
+    CollectionSyncIndex(int capacity) {
+        enabled = capacity > 0;
+        indexes = new ConcurrentLinkedHashMap.Builder<String, Index>()
+            .maximumWeightedCapacity(Math.max(capacity, 1))
+            .weigher(new Weigher<Index>() {
+                @Override
+                public int weightOf(Index value) {
+                    return value.weight;
+                }
+            })
+            .build();
+    }
+
+    static CollectionSyncIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /** A member that has left the collection. */
+    static final class Removal {
+        final int changeId;
+        final int itemId;
+        final String uid;
+
+        Removal(int changeId, int itemId, String uid) {
+            this.changeId = changeId;
+            this.itemId = itemId;
+            this.uid = uid;
+        }
+    }
+
+    /** Changes to a collection between a sync token and {@link #token}. */
+    static final class Delta {
+        final String token;
+        final List<CalendarItem.CalendarMetadata> changed;
+        final List<Removal> removed;
+
+        Delta(String token, List<CalendarItem.CalendarMetadata> changed, List<Removal> removed) {
+            this.token = token;
+            this.changed = changed;
+            this.removed = removed;
+        }
+    }
+
+    private static final class Index {
+        Map<Integer, CalendarItem.CalendarMetadata> members;
+        final ArrayDeque<Removal> removals = new ArrayDeque<Removal>();
+        /** the oldest change number a token can name and still be answered */
+        int floor;
+        /** the change number the members are current as of */
+        int asOf;
+        int weight = 1;
+
+        Index(int changeId, Map<Integer, CalendarItem.CalendarMetadata> members) {
+            this.floor = changeId;
+            this.asOf = changeId;
+            this.members = members;
+        }
+    }
+
+    static String toToken(int folderId, int changeId) {
+        return TOKEN_PREFIX + folderId + "-" + changeId;
+    }
+
+    /** Returns the change number named by the token, or -1 if it isn't one of ours for this folder. */
+    static int parseToken(String token, int folderId) {
+        String prefix = TOKEN_PREFIX + folderId + "-";
+        if (token == null || !token.startsWith(prefix)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(token.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the changes to the calendar folder since {@code syncToken}, or all of its members if the token is
+     * empty.  Returns {@code null} if the token can't be answered, in which case the client needs to start over with
+     * an empty token.
+     */
+    Delta getDelta(Mailbox mbox, Folder folder, String syncToken) throws ServiceException {
+        int since = -1;
+        if (!Strings.isNullOrEmpty(syncToken)) {
+            since = parseToken(syncToken, folder.getId());
+            if (since < 0) {
+                return null;
+            }
+        }
+
+        String key = mbox.getId() + ":" + folder.getId();
+        int changeId = mbox.getLastChangeID();
+        Index idx = enabled ? indexes.get(key) : null;
+        if (idx == null) {
+            idx = new Index(changeId, load(mbox, folder));
+        }
+
+        Delta delta;
+        synchronized (idx) {
+            if (idx.asOf < changeId) {
+                catchUp(mbox, folder, idx, changeId);
+            }
+            if (since >= 0 && (since < idx.floor || since > idx.asOf)) {
+                ZimbraLog.dav.debug("sync token %s for folder %d predates index (floor %d)", syncToken,
+                        folder.getId(), idx.floor);
+                delta = null;
+            } else {
+                delta = diff(idx, since, folder.getId());
+            }
+            idx.weight = idx.members.size() + idx.removals.size() + 1;
+        }
+        if (enabled) {
+            // re-put so the LRU picks up the new weight
+            indexes.put(key, idx);
+        }
+        return delta;
+    }
+
+    private static Map<Integer, CalendarItem.CalendarMetadata> load(Mailbox mbox, Folder folder)
+            throws ServiceException {
+        Map<Integer, CalendarItem.CalendarMetadata> members = new HashMap<Integer, CalendarItem.CalendarMetadata>();
+        for (CalendarItem.CalendarMetadata md : mbox.getCalendarItemMetadata(folder.getId(), -1, -1)) {
+            members.put(md.itemId, md);
+        }
+        return members;
+    }
+
+    /**
+     * Brings the index up to {@code changeId}.  Every token handed out so far is at most {@code idx.asOf}, so
+     * recording removals at {@code idx.asOf + 1} reports them to all of those clients.
+     */
+    private static void catchUp(Mailbox mbox, Folder folder, Index idx, int changeId) throws ServiceException {
+        int removedAt = idx.asOf + 1;
+        MailItem.Type type = folder.getDefaultView();
+        try {
+            Pair<List<Integer>, TypedIdList> modified =
+                    mbox.getModifiedItems(null, idx.asOf, type, Collections.singleton(folder.getId()));
+            List<Integer> gone = new ArrayList<Integer>(modified.getSecond().getAllIds());
+            gone.addAll(mbox.getTombstones(idx.asOf, EnumSet.of(type)));
+            Map<Integer, CalendarItem.CalendarMetadata> changed = new HashMap<Integer, CalendarItem.CalendarMetadata>();
+            if (!modified.getFirst().isEmpty()) {
+                for (MailItem item : mbox.getItemById(null, modified.getFirst(), type)) {
+                    if (item instanceof CalendarItem) {
+                        changed.put(item.getId(), toMetadata((CalendarItem) item));
+                    }
+                }
+            }
+            for (Integer id : gone) {
+                CalendarItem.CalendarMetadata md = idx.members.remove(id);
+                if (md != null) {
+                    addRemoval(idx, new Removal(removedAt, md.itemId, md.uid));
+                }
+            }
+            idx.members.putAll(changed);
+        } catch (ServiceException e) {
+            // no tombstones (sync not tracked, or expired) or an item went away under us: compare full listings
+            ZimbraLog.dav.debug("reconciling sync index for folder %d: %s", folder.getId(), e.getMessage());
+            Map<Integer, CalendarItem.CalendarMetadata> current = load(mbox, folder);
+            for (CalendarItem.CalendarMetadata md : idx.members.values()) {
+                if (!current.containsKey(md.itemId)) {
+                    addRemoval(idx, new Removal(removedAt, md.itemId, md.uid));
+                }
+            }
+            idx.members = current;
+        }
+        idx.asOf = changeId;
+    }
+
+    private static void addRemoval(Index idx, Removal removal) {
+        idx.removals.addLast(removal);
+        while (idx.removals.size() > MAX_REMOVALS) {
+            idx.floor = Math.max(idx.floor, idx.removals.removeFirst().changeId);
+        }
+    }
+
+    private static Delta diff(Index idx, int since, int folderId) {
+        List<CalendarItem.CalendarMetadata> changed = new ArrayList<CalendarItem.CalendarMetadata>();
+        Set<String> uids = new HashSet<String>();
+        for (CalendarItem.CalendarMetadata md : idx.members.values()) {
+            if (md.mod_metadata > since) {
+                changed.add(md);
+            }
+            uids.add(md.uid);
+        }
+        Map<String, Removal> removed = new LinkedHashMap<String, Removal>();
+        if (since >= 0) {
+            for (Iterator<Removal> it = idx.removals.descendingIterator(); it.hasNext(); ) {
+                Removal removal = it.next();
+                if (removal.changeId <= since) {
+                    break;
+                }
+                // a UID that's still (or again) in the collection is reported as changed, not removed
+                if (!uids.contains(removal.uid) && !removed.containsKey(removal.uid)) {
+                    removed.put(removal.uid, removal);
+                }
+            }
+        }
+        return new Delta(toToken(folderId, idx.asOf), changed, new ArrayList<Removal>(removed.values()));
+    }
+
+    private static CalendarItem.CalendarMetadata toMetadata(CalendarItem calItem) {
+        return new CalendarItem.CalendarMetadata(calItem.getMailboxId(), calItem.getId(), calItem.getUid(),
+                calItem.getModifiedSequence(), calItem.getSavedSequence(), calItem.getStartTime(), calItem.getEndTime());
+    }
+}
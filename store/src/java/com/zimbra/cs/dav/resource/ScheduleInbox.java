@@ -72,6 +72,8 @@ public class ScheduleInbox extends CalendarCollection {
              *  to the scheduling outbox
              */
             reportList.remove(DavElements.E_FREE_BUSY_QUERY);
+            // the inbox holds scheduling messages rather than calendar items
+            reportList.remove(DavElements.E_SYNC_COLLECTION);
             supportedInboxReports = reportList.toArray(new QName[reportList.size()]);
         }
         return supportedInboxReports;
@@ -33,8 +33,10 @@ import javax.mail.internet.MimeMessage;
 import javax.servlet.http.HttpServletResponse;
 
 import org.dom4j.Element;
+import org.dom4j.QName;
 
 import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.common.io.Closeables;
 import com.zimbra.common.account.Key.AccountBy;
@@ -79,6 +81,19 @@ public class ScheduleOutbox extends CalendarCollection {
         addResourceType(DavElements.E_SCHEDULE_OUTBOX);
     }
 
+    private QName supportedOutboxReports[] = null;
+
+    @Override
+    protected QName[] getSupportedReports() {
+        if (supportedOutboxReports == null) {
+            List<QName> reportList = Lists.newArrayList(super.getSupportedReports());
+            // the outbox is only POSTed to; it has no items to synchronize
+            reportList.remove(DavElements.E_SYNC_COLLECTION);
+            supportedOutboxReports = reportList.toArray(new QName[reportList.size()]);
+        }
+        return supportedOutboxReports;
+    }
+
     @Override
     public void handlePost(DavContext ctxt) throws DavException, IOException, ServiceException {
         DelegationInfo delegationInfo = new DelegationInfo(ctxt.getRequest().getHeader(DavProtocol.HEADER_ORIGINATOR));
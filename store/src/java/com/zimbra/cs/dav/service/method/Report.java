@@ -51,6 +51,7 @@ public class Report extends DavMethod {
         sReports.put(DavElements.E_PRINCIPAL_MATCH, new AclReports());
         sReports.put(DavElements.E_PRINCIPAL_SEARCH_PROPERTY_SET, new AclReports());
         sReports.put(DavElements.E_EXPAND_PROPERTY, new ExpandProperty());
+        sReports.put(DavElements.E_SYNC_COLLECTION, new SyncCollection());
         sReports.put(DavElements.CardDav.E_ADDRESSBOOK_QUERY, new AddressbookQuery());
         sReports.put(DavElements.CardDav.E_ADDRESSBOOK_MULTIGET, new AddressbookMultiget());
     }
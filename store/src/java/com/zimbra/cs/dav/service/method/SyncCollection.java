@@ -0,0 +1,132 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.dav.service.method;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.dom4j.io.OutputFormat;
+import org.dom4j.io.XMLWriter;
+
+import com.google.common.base.Charsets;
+import com.zimbra.common.service.ServiceException;
+import com.zimbra.common.util.ZimbraLog;
+import com.zimbra.cs.dav.DavContext;
+import com.zimbra.cs.dav.DavContext.RequestProp;
+import com.zimbra.cs.dav.DavElements;
+import com.zimbra.cs.dav.DavException;
+import com.zimbra.cs.dav.DavProtocol;
+import com.zimbra.cs.dav.resource.CalendarCollection;
+import com.zimbra.cs.dav.resource.DavResource;
+import com.zimbra.cs.dav.resource.ScheduleInbox;
+import com.zimbra.cs.dav.resource.ScheduleOutbox;
+import com.zimbra.cs.dav.service.DavResponse;
+
+/*
+ * RFC 6578 section 3.2
+ *
+ *     <!ELEMENT sync-collection (sync-token, sync-level, limit?, prop)>
+ *
+ * Only the members changed or removed since the sync token are reported, so a client polling an unchanged
+ * calendar gets back little more than the token.  The multistatus is streamed to the client one response at a
+ * time rather than built up as a single document.
+ */
+public class SyncCollection extends Report {
+    @Override
+    public void handle(DavContext ctxt) throws ServiceException, DavException, IOException {
+        Element query = ctxt.getRequestMessage().getRootElement();
+        if (!query.getQName().equals(DavElements.E_SYNC_COLLECTION)) {
+            throw new DavException("msg " + query.getName() + " is not sync-collection",
+                    HttpServletResponse.SC_BAD_REQUEST, null);
+        }
+        if (ctxt.getDepth() != DavContext.Depth.zero) {
+            throw new DavException.REPORTwithDisallowedDepthException(query.getQName().getName(), ctxt.getDepth());
+        }
+        Element tokenElem = query.element(DavElements.E_SYNC_TOKEN);
+        if (tokenElem == null) {
+            throw new DavException("missing sync-token", HttpServletResponse.SC_BAD_REQUEST, null);
+        }
+        // calendar collections have no child collections, so sync-level 1 and infinite mean the same thing
+        int limit = -1;
+        Element limitElem = query.element(DavElements.E_LIMIT);
+        if (limitElem != null) {
+            try {
+                limit = Integer.parseInt(limitElem.elementTextTrim(DavElements.E_NRESULTS));
+            } catch (NumberFormatException e) {
+                throw new DavException("invalid nresults in limit", HttpServletResponse.SC_BAD_REQUEST, e);
+            }
+        }
+
+        DavResource reqResource = ctxt.getRequestedResource();
+        if (!(reqResource instanceof CalendarCollection) ||
+                reqResource instanceof ScheduleInbox || reqResource instanceof ScheduleOutbox) {
+            throw new DavException.UnsupportedReport(DavElements.E_SYNC_COLLECTION);
+        }
+        CalendarCollection calResource = (CalendarCollection) reqResource;
+        long start = System.currentTimeMillis();
+        CalendarCollection.SyncChanges changes = calResource.getChangesSince(ctxt, tokenElem.getTextTrim());
+        if (limit >= 0 && changes.changed.size() + changes.removed.size() > limit) {
+            throw new DavException.TooManyMatches(limit);
+        }
+        writeResponse(ctxt, calResource, changes, ctxt.getRequestProp());
+        ZimbraLog.dav.debug("sync-collection: %d changed, %d removed in %dms", changes.changed.size(),
+                changes.removed.size(), System.currentTimeMillis() - start);
+    }
+
+    private static void writeResponse(DavContext ctxt, CalendarCollection calResource,
+            CalendarCollection.SyncChanges changes, RequestProp reqProp) throws IOException, DavException {
+        HttpServletResponse resp = ctxt.getResponse();
+        ctxt.setStatus(DavProtocol.STATUS_MULTI_STATUS);
+        resp.setStatus(DavProtocol.STATUS_MULTI_STATUS);
+        setResponseHeader(resp, DavProtocol.HEADER_DAV, DavProtocol.getComplianceString(calResource.getComplianceList()));
+        resp.setContentType(DavProtocol.DAV_CONTENT_TYPE);
+
+        Writer out = new BufferedWriter(new OutputStreamWriter(resp.getOutputStream(), Charsets.UTF_8));
+        XMLWriter writer = new XMLWriter(out, new OutputFormat());
+        String d = DavElements.WEBDAV_NS.getPrefix();
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.write("<" + d + ":" + DavElements.P_MULTISTATUS + " xmlns:" + d + "=\"" + DavElements.WEBDAV_NS_STRING + "\">");
+        for (DavResource rs : changes.changed) {
+            DavResponse single = new DavResponse();
+            single.addResourceTo(ctxt, rs, reqProp, false);
+            Element response = single.getTop(DavElements.E_MULTISTATUS).element(DavElements.E_RESPONSE);
+            if (response != null) {
+                writer.write(response);
+            }
+        }
+        String notFound = DavResponse.sStatusTextMap.get(HttpServletResponse.SC_NOT_FOUND);
+        for (DavResource rs : changes.removed) {
+            Element response = DocumentHelper.createElement(DavElements.E_RESPONSE);
+            response.addElement(DavElements.E_HREF).setText(rs.getHref());
+            response.addElement(DavElements.E_STATUS).setText(notFound);
+            writer.write(response);
+        }
+        Element token = DocumentHelper.createElement(DavElements.E_SYNC_TOKEN);
+        token.setText(changes.syncToken);
+        writer.write(token);
+        writer.flush();
+        out.write("</" + d + ":" + DavElements.P_MULTISTATUS + ">");
+        out.flush();
+        ctxt.responseSent();
+    }
+}
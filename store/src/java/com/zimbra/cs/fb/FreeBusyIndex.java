@@ -0,0 +1,281 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.fb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.zimbra.common.localconfig.LC;
+import com.zimbra.common.service.ServiceException;
+import com.zimbra.common.util.ZimbraLog;
+import com.zimbra.cs.fb.FreeBusy.FBInstance;
+import com.zimbra.cs.fb.FreeBusy.Interval;
+import com.zimbra.cs.fb.FreeBusy.IntervalList;
+import com.zimbra.cs.mailbox.MailItem;
+import com.zimbra.cs.mailbox.Mailbox;
+import com.zimbra.cs.mailbox.calendar.IcalXmlStrMap;
+import com.zimbra.cs.mailbox.calendar.cache.CalSummaryCache.CalendarDataResult;
+import com.zimbra.cs.mailbox.calendar.cache.CalendarData;
+import com.zimbra.cs.mailbox.calendar.cache.CalendarItemData;
+import com.zimbra.cs.mailbox.calendar.cache.FullInstanceData;
+import com.zimbra.cs.mailbox.calendar.cache.InstanceData;
+
+/**
+ * Per-account index of the busy intervals of all calendar folders over a rolling window of
+ * {@code freebusy_index_window_days} days, so that free/busy queries inside the window are answered by scanning a few
+ * primitive arrays instead of walking every calendar item's instances.
+ * <p>
+ * Only the parts of a free/busy computation that don't depend on the requester are indexed.  Folder flags and access
+ * rights, and the appointment to exclude, are still applied per query by {@link LocalFreeBusyProvider}.  An account's
+ * index is dropped by {@link FreeBusyProvider.Listener} whenever one of its appointments or folders changes, and is
+ * rebuilt by the next query.
+ * <p>
+ * Lookups don't hold the mailbox lock while they build an index.  Instead each account has a generation counter that
+ * every invalidation bumps, and a build only installs its result if the generation is unchanged since the build began,
+ * so an index that read the mailbox before a change can't replace one dropped because of it.  Listeners are notified
+ * in registration order, so the calendar summary cache has seen a change before this index is invalidated for it.
+ */
+final class FreeBusyIndex {
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private static final FreeBusyIndex INSTANCE = new FreeBusyIndex(LC.freebusy_index_max_accounts.intValue(),
+            LC.freebusy_index_window_days.intValue());
+
+    private final ConcurrentLinkedHashMap<String, Slot> slots;
+    private final int windowDays;
+    private final boolean enabled;
+
+    /** An account's index, and a counter of the changes that have invalidated it.  Guarded by itself. */
+    private static final class Slot {
+        int generation;
+        Index index;
+    }
+
+    private static final class Index {
+        final int mailboxId;
+        final long windowStart;
+        final long windowEnd;
+        final List<FolderIntervals> folders;
+
+        Index(int mailboxId, long windowStart, long windowEnd, List<FolderIntervals> folders) {
+            this.mailboxId = mailboxId;
+            this.windowStart = windowStart;
+            this.windowEnd = windowEnd;
+            this.folders = folders;
+        }
+
+        boolean covers(Mailbox mbox, long start, long end) {
+            return mailboxId == mbox.getId() && start >= windowStart && end <= windowEnd;
+        }
+    }
+
+    FreeBusyIndex(int maxAccounts, int windowDays) {
+        this.enabled = maxAccounts > 0 && windowDays > 0;
+        this.windowDays = windowDays;
+        this.slots = new ConcurrentLinkedHashMap.Builder<String, Slot>()
+            .maximumWeightedCapacity(Math.max(maxAccounts, 1))
+            .build();
+    }
+
+    static FreeBusyIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the busy intervals of all of {@code mbox}'s calendar folders, in the order in which the calendar summary
+     * cache lists folders and items, for a query over {@code [start, end)}.  Builds the index if needed.
+     *
+     * @return null if the range is outside the index window or the index is disabled
+     */
+    List<FolderIntervals> lookup(Mailbox mbox, long start, long end) throws ServiceException {
+        if (!enabled) {
+            return null;
+        }
+        String accountId = mbox.getAccountId();
+        Slot slot = slots.get(accountId);
+        if (slot == null) {
+            Slot existing = slots.putIfAbsent(accountId, slot = new Slot());
+            if (existing != null) {
+                slot = existing;
+            }
+        }
+        int generation;
+        synchronized (slot) {
+            if (slot.index != null && slot.index.covers(mbox, start, end)) {
+                return slot.index.folders;
+            }
+            generation = slot.generation;
+        }
+
+        long windowStart = (System.currentTimeMillis() / MILLIS_PER_DAY - 1) * MILLIS_PER_DAY;
+        long windowEnd = windowStart + (windowDays + 1) * MILLIS_PER_DAY;
+        if (start < windowStart || end > windowEnd) {
+            return null;
+        }
+        List<CalendarDataResult> results = mbox.getAllCalendarsSummaryForRange(null, MailItem.Type.APPOINTMENT,
+                windowStart, windowEnd);
+        List<FolderIntervals> folders = new ArrayList<FolderIntervals>(results.size());
+        for (CalendarDataResult result : results) {
+            folders.add(FolderIntervals.of(result.data));
+        }
+        folders = Collections.unmodifiableList(folders);
+        synchronized (slot) {
+            // don't install an index that a change notification has already made stale
+            if (slot.generation == generation) {
+                slot.index = new Index(mbox.getId(), windowStart, windowEnd, folders);
+            }
+        }
+        ZimbraLog.fb.debug("built free/busy index for %s over %d folders", accountId, folders.size());
+        return folders;
+    }
+
+    @VisibleForTesting
+    boolean isIndexed(String accountId) {
+        Slot slot = slots.get(accountId);
+        if (slot == null) {
+            return false;
+        }
+        synchronized (slot) {
+            return slot.index != null;
+        }
+    }
+
+    /** Drops the account's index.  Called when its appointments or calendar folders change. */
+    void invalidate(String accountId) {
+        Slot slot = slots.get(accountId);
+        if (slot != null) {
+            synchronized (slot) {
+                slot.generation++;
+                slot.index = null;
+            }
+        }
+    }
+
+    /**
+     * Busy intervals of one calendar folder, stored column-wise in the order the instances were listed by the calendar
+     * summary cache.  Instances that never contribute to free/busy (transparent, free, or without duration) are
+     * left out.
+     */
+    static final class FolderIntervals {
+        private final int folderId;
+        private final int size;
+        private final long[] starts;
+        private final long[] ends;
+        private final String[] freeBusy;
+        private final int[] calItemIds;
+        private final long[] recurIds;
+
+        private FolderIntervals(int folderId, int size, long[] starts, long[] ends, String[] freeBusy,
+                int[] calItemIds, long[] recurIds) {
+            this.folderId = folderId;
+            this.size = size;
+            this.starts = starts;
+            this.ends = ends;
+            this.freeBusy = freeBusy;
+            this.calItemIds = calItemIds;
+            this.recurIds = recurIds;
+        }
+
+        static FolderIntervals of(CalendarData data) {
+            int capacity = 16;
+            long[] starts = new long[capacity];
+            long[] ends = new long[capacity];
+            String[] freeBusy = new String[capacity];
+            int[] calItemIds = new int[capacity];
+            long[] recurIds = new long[capacity];
+            int size = 0;
+
+            for (Iterator<CalendarItemData> iter = data.calendarItemIterator(); iter.hasNext(); ) {
+                CalendarItemData appt = iter.next();
+                FullInstanceData defaultInstance = appt.getDefaultData();
+                if (defaultInstance == null)
+                    continue;
+                boolean isTransparent = IcalXmlStrMap.TRANSP_TRANSPARENT.equals(defaultInstance.getTransparency());
+                long defaultDuration = 0;
+                if (defaultInstance.getDuration() != null)
+                    defaultDuration = defaultInstance.getDuration().longValue();
+                String defaultFreeBusy = defaultInstance.getFreeBusyActual();
+                for (Iterator<InstanceData> instIter = appt.instanceIterator(); instIter.hasNext(); ) {
+                    InstanceData instance = instIter.next();
+                    long instStart = instance.getDtStart() != null ? instance.getDtStart().longValue() : 0;
+                    long dur = defaultDuration;
+                    if (instance.getDuration() != null)
+                        dur = instance.getDuration().longValue();
+                    if (dur <= 0)  // Only consider instances with non-zero, positive duration.
+                        continue;
+
+                    long recurIdDt = 0;
+                    // Skip if instance is TRANSPARENT to free/busy searches.
+                    if (instance instanceof FullInstanceData) {
+                        FullInstanceData fullInst = (FullInstanceData) instance;
+                        recurIdDt = fullInst.getRecurrenceId();
+                        if (IcalXmlStrMap.TRANSP_TRANSPARENT.equals(fullInst.getTransparency()))
+                            continue;
+                    } else if (isTransparent) {
+                        continue;
+                    }
+
+                    String fb = instance.getFreeBusyActual();
+                    if (fb == null)
+                        fb = defaultFreeBusy;
+                    if (IcalXmlStrMap.FBTYPE_FREE.equals(fb))
+                        continue;
+
+                    if (size == capacity) {
+                        capacity *= 2;
+                        starts = Arrays.copyOf(starts, capacity);
+                        ends = Arrays.copyOf(ends, capacity);
+                        freeBusy = Arrays.copyOf(freeBusy, capacity);
+                        calItemIds = Arrays.copyOf(calItemIds, capacity);
+                        recurIds = Arrays.copyOf(recurIds, capacity);
+                    }
+                    starts[size] = instStart;
+                    ends[size] = instStart + dur;
+                    freeBusy[size] = fb;
+                    calItemIds[size] = appt.getCalItemId();
+                    recurIds[size] = recurIdDt;
+                    size++;
+                }
+            }
+            return new FolderIntervals(data.getFolderId(), size, starts, ends, freeBusy, calItemIds, recurIds);
+        }
+
+        int getFolderId() {
+            return folderId;
+        }
+
+        /**
+         * Adds the intervals overlapping {@code [start, end)} to {@code intervals}.
+         *
+         * @param exApptId calendar item to leave out, or -1
+         */
+        void addTo(IntervalList intervals, long start, long end, int exApptId) {
+            for (int i = 0; i < size; i++) {
+                if (starts[i] >= end || ends[i] <= start || calItemIds[i] == exApptId) {
+                    continue;
+                }
+                FBInstance fbInst = new FBInstance(freeBusy[i], starts[i], ends[i], calItemIds[i], recurIds[i]);
+                intervals.addInterval(new Interval(starts[i], ends[i], freeBusy[i], fbInst));
+            }
+        }
+    }
+}
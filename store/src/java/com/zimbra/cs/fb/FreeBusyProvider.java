@@ -33,6 +33,7 @@ import java.util.Map;
 import java.util.Set;
 
 import com.zimbra.common.account.Key;
+import com.zimbra.common.mailbox.BaseItemInfo;
 import com.zimbra.common.localconfig.LC;
 import com.zimbra.common.service.ServiceException;
 import com.zimbra.common.soap.Element;
@@ -40,6 +41,7 @@ import com.zimbra.common.util.ByteUtil;
 import com.zimbra.common.util.ZimbraLog;
 import com.zimbra.cs.account.Account;
 import com.zimbra.cs.account.Provisioning;
+import com.zimbra.cs.mailbox.Folder;
 import com.zimbra.cs.mailbox.MailItem;
 import com.zimbra.cs.mailbox.MailItem.Type;
 import com.zimbra.cs.mailbox.Mailbox;
@@ -47,6 +49,8 @@ import com.zimbra.cs.mailbox.MailboxListener;
 import com.zimbra.cs.mailbox.MailboxManager;
 import com.zimbra.cs.mailbox.calendar.IcalXmlStrMap;
 import com.zimbra.cs.service.mail.ToXML;
+import com.zimbra.cs.session.PendingLocalModifications;
+import com.zimbra.cs.session.PendingModifications.Change;
 
 public abstract class FreeBusyProvider {
 
@@ -54,10 +58,60 @@ public abstract class FreeBusyProvider {
 
         @Override
         public void notify(ChangeNotification notification) {
-            FreeBusyProvider.mailboxChanged(notification.mailboxAccount.getId(), notification.mods.changedTypes);
+            String accountId = notification.mailboxAccount.getId();
+            if (affectsFreeBusyIndex(notification.mods)) {
+                FreeBusyIndex.getInstance().invalidate(accountId);
+            }
+            if (notification.mods.changedTypes.contains(MailItem.Type.APPOINTMENT)) {
+                FreeBusyProvider.mailboxChanged(accountId, notification.mods.changedTypes);
+            }
+        }
+
+        /**
+         * Returns whether the changes can alter an account's busy intervals: any appointment change, and folder
+         * changes that add, remove, move or hide a calendar.  Folder size and unread count changes, which every
+         * delivery and read makes, don't.
+         */
+        static boolean affectsFreeBusyIndex(PendingLocalModifications mods) {
+            if (mods.changedTypes.contains(MailItem.Type.APPOINTMENT)) {
+                return true;
+            }
+            if (mods.created != null) {
+                for (BaseItemInfo item : mods.created.values()) {
+                    if (item instanceof Folder && ((Folder) item).getDefaultView() == MailItem.Type.APPOINTMENT) {
+                        return true;
+                    }
+                }
+            }
+            if (mods.modified != null) {
+                for (Change change : mods.modified.values()) {
+                    if (!(change.what instanceof Folder)) {
+                        continue;
+                    }
+                    // a move can take a whole subtree of calendars into or out of the trash
+                    if ((change.why & (Change.FOLDER | Change.PARENT | Change.VIEW)) != 0) {
+                        return true;
+                    }
+                    if ((change.why & Change.FLAGS) != 0 &&
+                            ((Folder) change.what).getDefaultView() == MailItem.Type.APPOINTMENT) {
+                        return true;
+                    }
+                }
+            }
+            if (mods.deleted != null) {
+                for (Change change : mods.deleted.values()) {
+                    if (change.what instanceof Folder || change.what == MailItem.Type.FOLDER ||
+                            change.what == MailItem.Type.MOUNTPOINT) {
+                        return true;
+                    }
+                }
+            }
+            return false;
         }
 
-        private static final Set<Type> TYPES = EnumSet.of(MailItem.Type.APPOINTMENT);
+        // folder changes can add, remove or hide whole calendars in the free/busy index
+        private static final Set<Type> TYPES = EnumSet.of(MailItem.Type.APPOINTMENT, MailItem.Type.FOLDER,
+                MailItem.Type.MOUNTPOINT);
 
         @Override
         public Set<Type> registerForItemTypes() {
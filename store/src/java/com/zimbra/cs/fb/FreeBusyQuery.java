@@ -18,7 +18,10 @@ package com.zimbra.cs.fb;
 
 import java.util.Collection;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -46,6 +49,7 @@ public class FreeBusyQuery {
 	private String mExApptUid;
 	
 	private HashMap<String,Account> mTargets;
+	private HashMap<String, AccountBy> mTargetBy;     // how each target is looked up; resolved in bulk
 	private HashMap<String, Integer> mTargetFolder;  // optional calendar folder id for each target
 	
 	// needed for proxying to another mailbox server
@@ -64,56 +68,61 @@ public class FreeBusyQuery {
 		mEnd = end;
 		mExApptUid = exApptUid;
 		mTargets = new HashMap<String,Account>();
+		mTargetBy = new HashMap<String, AccountBy>();
 		mTargetFolder = new HashMap<String, Integer>();
 	}
 	
 	public void addAccountId(String accountId, int calFolderId) {
-		addUser(accountId, getAccountFromId(accountId), calFolderId);
+		addUser(accountId, AccountBy.id, calFolderId);
 	}
 	
 	public void addEmailAddress(String emailAddr, int calFolderId) {
-		addUser(emailAddr, getAccountFromName(emailAddr), calFolderId);
+		addUser(emailAddr, AccountBy.name, calFolderId);
 	}
 	
 	public void addId(String id, int calFolderId) {
-		addUser(id, getAccountFromUid(id), calFolderId);
+		addUser(id, Provisioning.isUUID(id) ? AccountBy.id : AccountBy.name, calFolderId);
 	}
 	
-	private void addUser(String id, Account acct, int calFolderId) {
-		mTargets.put(id, acct);
+	private void addUser(String id, AccountBy by, int calFolderId) {
+		mTargetBy.put(id, by);
 		mTargetFolder.put(id, calFolderId);
 	}
 	
-    private Account getAccountFromUid(String uid) {
-    	Provisioning prov = Provisioning.getInstance();
-    	Account acct = null;
-    	try {
-    		if (Provisioning.isUUID(uid))
-    			acct = prov.get(AccountBy.id, uid);
-    		else
-    			acct = prov.get(AccountBy.name, uid);
-    	} catch (ServiceException e) {
-    		acct = null;
-    	}
-    	return acct;
-    }
-    private Account getAccountFromId(String id) {
-    	try {
-    		return Provisioning.getInstance().get(AccountBy.id, id);
-    	} catch (ServiceException e) {
-    	}
-    	return null;
-    }
-    private Account getAccountFromName(String name) {
-    	try {
-    		return Provisioning.getInstance().get(AccountBy.name, name);
-    	} catch (ServiceException e) {
-    	}
-    	return null;
+    /**
+     * Looks up all targets with one bulk lookup per key type, so that a request for a large group of attendees
+     * doesn't cost one LDAP search each.  Targets that can't be resolved are left null and treated as external.
+     */
+    private void resolveTargets() {
+        Map<AccountBy, List<String>> keysByType = new EnumMap<AccountBy, List<String>>(AccountBy.class);
+        for (Map.Entry<String, AccountBy> target : mTargetBy.entrySet()) {
+            List<String> keys = keysByType.get(target.getValue());
+            if (keys == null) {
+                keys = new ArrayList<String>();
+                keysByType.put(target.getValue(), keys);
+            }
+            keys.add(target.getKey());
+        }
+        Provisioning prov = Provisioning.getInstance();
+        mTargets.clear();
+        for (Map.Entry<AccountBy, List<String>> entry : keysByType.entrySet()) {
+            try {
+                mTargets.putAll(prov.getAccounts(entry.getKey(), entry.getValue()));
+            } catch (ServiceException e) {
+                // one bad key fails the whole batch; fall back to looking each one up on its own
+                for (String key : entry.getValue()) {
+                    try {
+                        mTargets.put(key, prov.get(entry.getKey(), key));
+                    } catch (ServiceException e2) {
+                    }
+                }
+            }
+        }
     }
     
     private void prepareRequests(ArrayList<FreeBusy> local, RemoteFreeBusyProvider remote, ArrayList<String> external) {
-    	for (String id : mTargets.keySet()) {
+    	resolveTargets();
+    	for (String id : mTargetFolder.keySet()) {
     		Account acct = mTargets.get(id);
     		try {
     		    if (acct == null || acct.isAccountExternal() ||
@@ -17,7 +17,7 @@
 package com.zimbra.cs.fb;
 
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.List;
 
 import com.zimbra.common.localconfig.LC;
@@ -26,9 +26,9 @@ import com.zimbra.common.util.ZimbraLog;
 import com.zimbra.cs.account.AccessManager;
 import com.zimbra.cs.account.Account;
 import com.zimbra.cs.account.accesscontrol.Rights.User;
-import com.zimbra.cs.fb.FreeBusy.FBInstance;
 import com.zimbra.cs.fb.FreeBusy.Interval;
 import com.zimbra.cs.fb.FreeBusy.IntervalList;
+import com.zimbra.cs.fb.FreeBusyIndex.FolderIntervals;
 import com.zimbra.cs.mailbox.Appointment;
 import com.zimbra.cs.mailbox.CalendarItem;
 import com.zimbra.cs.mailbox.Flag;
@@ -38,9 +38,6 @@ import com.zimbra.cs.mailbox.Mailbox;
 import com.zimbra.cs.mailbox.MailboxManager;
 import com.zimbra.cs.mailbox.calendar.IcalXmlStrMap;
 import com.zimbra.cs.mailbox.calendar.cache.CalSummaryCache.CalendarDataResult;
-import com.zimbra.cs.mailbox.calendar.cache.CalendarItemData;
-import com.zimbra.cs.mailbox.calendar.cache.FullInstanceData;
-import com.zimbra.cs.mailbox.calendar.cache.InstanceData;
 
 public class LocalFreeBusyProvider {
 
@@ -66,15 +63,32 @@ public class LocalFreeBusyProvider {
 
         IntervalList intervals = new IntervalList(start, end);
 
-        List<CalendarDataResult> calDataResultList;
-        if (folder == FreeBusyQuery.CALENDAR_FOLDER_ALL) {
-            calDataResultList = mbox.getAllCalendarsSummaryForRange(null, MailItem.Type.APPOINTMENT, start, end);
-        } else {
-            calDataResultList = new ArrayList<CalendarDataResult>(1);
-            calDataResultList.add(mbox.getCalendarSummaryForRange(null, folder, MailItem.Type.APPOINTMENT, start, end));
+        List<FolderIntervals> folders = FreeBusyIndex.getInstance().lookup(mbox, start, end);
+        if (folders != null && folder != FreeBusyQuery.CALENDAR_FOLDER_ALL) {
+            List<FolderIntervals> selected = null;
+            for (FolderIntervals fi : folders) {
+                if (fi.getFolderId() == folder) {
+                    selected = Collections.singletonList(fi);
+                    break;
+                }
+            }
+            folders = selected;  // not an indexed calendar folder; get it from the summary cache below
+        }
+        if (folders == null) {
+            List<CalendarDataResult> calDataResultList;
+            if (folder == FreeBusyQuery.CALENDAR_FOLDER_ALL) {
+                calDataResultList = mbox.getAllCalendarsSummaryForRange(null, MailItem.Type.APPOINTMENT, start, end);
+            } else {
+                calDataResultList = new ArrayList<CalendarDataResult>(1);
+                calDataResultList.add(mbox.getCalendarSummaryForRange(null, folder, MailItem.Type.APPOINTMENT, start, end));
+            }
+            folders = new ArrayList<FolderIntervals>(calDataResultList.size());
+            for (CalendarDataResult result : calDataResultList) {
+                folders.add(FolderIntervals.of(result.data));
+            }
         }
-        for (CalendarDataResult result : calDataResultList) {
-            int folderId = result.data.getFolderId();
+        for (FolderIntervals fi : folders) {
+            int folderId = fi.getFolderId();
             Folder f = mbox.getFolderById(null, folderId);
             if ((f.getFlagBitmask() & Flag.BITMASK_EXCLUDE_FREEBUSY) != 0) {
                 ZimbraLog.fb.debug("Calendar '%s' id=%s ignored - has EXCLUDE_FREEBUSY flag set", f.getName(), folderId);
@@ -89,56 +103,7 @@ public class LocalFreeBusyProvider {
                         f.getName(), folderId, folderFBAllowed, accountAceAllowed);
                 continue;
             }
-            for (Iterator<CalendarItemData> iter = result.data.calendarItemIterator(); iter.hasNext(); ) {
-                CalendarItemData appt = iter.next();
-                int apptId = appt.getCalItemId();
-                if (apptId == exApptId)
-                    continue;
-                FullInstanceData defaultInstance = appt.getDefaultData();
-                if (defaultInstance == null)
-                    continue;
-                boolean isTransparent = false;
-                String transp = defaultInstance.getTransparency();
-                isTransparent = IcalXmlStrMap.TRANSP_TRANSPARENT.equals(transp);
-                long defaultDuration = 0;
-                if (defaultInstance.getDuration() != null)
-                    defaultDuration = defaultInstance.getDuration().longValue();
-                String defaultFreeBusy = defaultInstance.getFreeBusyActual();
-                for (Iterator<InstanceData> instIter = appt.instanceIterator(); instIter.hasNext(); ) {
-                    InstanceData instance = instIter.next();
-                    long instStart = instance.getDtStart() != null ? instance.getDtStart().longValue() : 0;
-                    // Skip instances that are outside the time range but were returned due to alarm being in range.
-                    if (instStart >= end)
-                        continue;
-                    long dur = defaultDuration;
-                    if (instance.getDuration() != null)
-                        dur = instance.getDuration().longValue();
-                    if (dur <= 0)  // Only consider instances with non-zero, positive duration.
-                        continue;
-                    long instEnd = instStart + dur;
-
-                    long recurIdDt = 0;
-                    // Skip if instance is TRANSPARENT to free/busy searches.
-                    if (instance instanceof FullInstanceData) {
-                        FullInstanceData fullInst = (FullInstanceData) instance;
-                        String transpInst = fullInst.getTransparency();
-                        recurIdDt = fullInst.getRecurrenceId();
-                        if (IcalXmlStrMap.TRANSP_TRANSPARENT.equals(transpInst))
-                            continue;
-                    } else if (isTransparent) {
-                        continue;
-                    }
-
-                    String freeBusy = instance.getFreeBusyActual();
-                    if (freeBusy == null)
-                        freeBusy = defaultFreeBusy;
-                    if (!IcalXmlStrMap.FBTYPE_FREE.equals(freeBusy)) {
-                        FBInstance fbInst = new FBInstance(freeBusy, instStart, instEnd, apptId, recurIdDt);
-                        Interval ival = new Interval(instStart, instEnd, freeBusy, fbInst);
-                        intervals.addInterval(ival);
-                    }
-                }
-            }
+            fi.addTo(intervals, start, end, exApptId);
         }
         if (!accountAceAllowed && numAllowedFolders == 0 && !LC.freebusy_disable_nodata_status.booleanValue()) {
             Interval nodata = new Interval(start, end, IcalXmlStrMap.FBTYPE_NODATA);
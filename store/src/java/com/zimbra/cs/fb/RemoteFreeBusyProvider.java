@@ -26,6 +26,14 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -34,11 +42,13 @@ import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpMethod;
 import org.apache.commons.httpclient.methods.GetMethod;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.zimbra.common.calendar.ZCalendar.ICalTok;
 import com.zimbra.common.calendar.ZCalendar.ZCalendarBuilder;
 import com.zimbra.common.calendar.ZCalendar.ZComponent;
 import com.zimbra.common.calendar.ZCalendar.ZVCalendar;
 import com.zimbra.common.httpclient.HttpClientUtil;
+import com.zimbra.common.localconfig.LC;
 import com.zimbra.common.service.ServiceException;
 import com.zimbra.common.soap.Element;
 import com.zimbra.common.soap.MailConstants;
@@ -62,6 +72,18 @@ import com.zimbra.soap.ZimbraSoapContext;
 
 public class RemoteFreeBusyProvider extends FreeBusyProvider {
 
+    private static final int LOOKUP_QUEUE_PER_THREAD = 16;
+    private static final ThreadPoolExecutor sLookupExecutor = new ThreadPoolExecutor(
+            Math.max(1, LC.freebusy_remote_lookup_threads.intValue()),
+            Math.max(1, LC.freebusy_remote_lookup_threads.intValue()),
+            60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(Math.max(1, LC.freebusy_remote_lookup_threads.intValue()) *
+                    LOOKUP_QUEUE_PER_THREAD),
+            new ThreadFactoryBuilder().setNameFormat("FreeBusyLookup-%d").setDaemon(true).build());
+    static {
+        sLookupExecutor.allowCoreThreadTimeOut(true);
+    }
+
     public RemoteFreeBusyProvider(HttpServletRequest httpReq, ZimbraSoapContext zsc,
                                   long start, long end, String exApptUid) {
         mRemoteAccountMap = new HashMap<String,StringBuilder>();
@@ -103,63 +125,105 @@ public class RemoteFreeBusyProvider extends FreeBusyProvider {
         addFreeBusyRequest(req);
     }
 
+    /**
+     * Fetches the free/busy of each requested account from its mailbox server.  The fetches run in parallel on a
+     * shared pool of {@code freebusy_remote_lookup_threads} threads, which bounds the number of concurrent remote
+     * lookups across all requests.  Once the pool's queue is full, the requesting thread fetches the rest itself.
+     */
     @Override
     public List<FreeBusy> getResults() {
         ArrayList<FreeBusy> fbList = new ArrayList<FreeBusy>();
-        for (Request req : mRequestList) {
-            HttpMethod method = null;
-            Account acct = (Account)req.data;
+        if (mRequestList.size() <= 1) {
+            for (Request req : mRequestList) {
+                fbList.addAll(fetchFreeBusy(req));
+            }
+            return fbList;
+        }
+        List<Future<List<FreeBusy>>> futures = new ArrayList<Future<List<FreeBusy>>>(mRequestList.size());
+        for (final Request req : mRequestList) {
+            FutureTask<List<FreeBusy>> task = new FutureTask<List<FreeBusy>>(new Callable<List<FreeBusy>>() {
+                @Override
+                public List<FreeBusy> call() {
+                    return fetchFreeBusy(req);
+                }
+            });
             try {
-                StringBuilder targetUrl = new StringBuilder();
-                targetUrl.append(UserServlet.getRestUrl(acct));
-                targetUrl.append("/Calendar?fmt=ifb");
-                targetUrl.append("&start=").append(mStart);
-                targetUrl.append("&end=").append(mEnd);
-                if (req.folder != FreeBusyQuery.CALENDAR_FOLDER_ALL)
-                    targetUrl.append("&").append(UserServlet.QP_FREEBUSY_CALENDAR).append("=").append(req.folder);
-                try {
-                    if (mExApptUid != null)
-                        targetUrl.append("&").append(UserServlet.QP_EXUID).append("=").append(URLEncoder.encode(mExApptUid, "UTF-8"));
-                } catch (UnsupportedEncodingException e) {}
-                String authToken = null;
-                try {
-                    if (mSoapCtxt != null)
-                        authToken = mSoapCtxt.getAuthToken().getEncoded();
-                } catch (AuthTokenException e) {}
-                if (authToken != null) {
-                    targetUrl.append("&").append(ZimbraServlet.QP_ZAUTHTOKEN).append("=");
-                    try {
-                        targetUrl.append(URLEncoder.encode(authToken, "UTF-8"));
-                    } catch (UnsupportedEncodingException e) {}
+                sLookupExecutor.execute(task);
+            } catch (RejectedExecutionException e) {
+                task.run();
+            }
+            futures.add(task);
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                fbList.addAll(futures.get(i).get());
+            } catch (ExecutionException e) {
+                ZimbraLog.fb.warn("can't get free/busy information for " + mRequestList.get(i).email, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (int j = i; j < futures.size(); j++) {
+                    futures.get(j).cancel(true);
                 }
-                HttpClient client = ZimbraHttpConnectionManager.getInternalHttpConnMgr().newHttpClient();
-                HttpProxyUtil.configureProxy(client);
-                method = new GetMethod(targetUrl.toString());
-                String fbMsg;
+                break;
+            }
+        }
+        return fbList;
+    }
+
+    private List<FreeBusy> fetchFreeBusy(Request req) {
+        ArrayList<FreeBusy> fbList = new ArrayList<FreeBusy>();
+        HttpMethod method = null;
+        Account acct = (Account)req.data;
+        try {
+            StringBuilder targetUrl = new StringBuilder();
+            targetUrl.append(UserServlet.getRestUrl(acct));
+            targetUrl.append("/Calendar?fmt=ifb");
+            targetUrl.append("&start=").append(mStart);
+            targetUrl.append("&end=").append(mEnd);
+            if (req.folder != FreeBusyQuery.CALENDAR_FOLDER_ALL)
+                targetUrl.append("&").append(UserServlet.QP_FREEBUSY_CALENDAR).append("=").append(req.folder);
+            try {
+                if (mExApptUid != null)
+                    targetUrl.append("&").append(UserServlet.QP_EXUID).append("=").append(URLEncoder.encode(mExApptUid, "UTF-8"));
+            } catch (UnsupportedEncodingException e) {}
+            String authToken = null;
+            try {
+                if (mSoapCtxt != null)
+                    authToken = mSoapCtxt.getAuthToken().getEncoded();
+            } catch (AuthTokenException e) {}
+            if (authToken != null) {
+                targetUrl.append("&").append(ZimbraServlet.QP_ZAUTHTOKEN).append("=");
                 try {
-                    HttpClientUtil.executeMethod(client, method);
-                    byte[] buf = ByteUtil.getContent(method.getResponseBodyAsStream(), 0);
-                    fbMsg = new String(buf, "UTF-8");
-                } catch (IOException ex) {
-                    // ignore this recipient and go on
-                    fbMsg = null;
-                }
-                if (fbMsg != null) {
-                    ZVCalendar cal = ZCalendarBuilder.build(fbMsg);
-                    for (Iterator<ZComponent> compIter = cal.getComponentIterator(); compIter.hasNext(); ) {
-                        ZComponent comp = compIter.next();
-                        if (ICalTok.VFREEBUSY.equals(comp.getTok())) {
-                            FreeBusy fb = FreeBusy.parse(comp);
-                            fbList.add(fb);
-                        }
+                    targetUrl.append(URLEncoder.encode(authToken, "UTF-8"));
+                } catch (UnsupportedEncodingException e) {}
+            }
+            HttpClient client = ZimbraHttpConnectionManager.getInternalHttpConnMgr().newHttpClient();
+            HttpProxyUtil.configureProxy(client);
+            method = new GetMethod(targetUrl.toString());
+            String fbMsg;
+            try {
+                HttpClientUtil.executeMethod(client, method);
+                byte[] buf = ByteUtil.getContent(method.getResponseBodyAsStream(), 0);
+                fbMsg = new String(buf, "UTF-8");
+            } catch (IOException ex) {
+                // ignore this recipient and go on
+                fbMsg = null;
+            }
+            if (fbMsg != null) {
+                ZVCalendar cal = ZCalendarBuilder.build(fbMsg);
+                for (Iterator<ZComponent> compIter = cal.getComponentIterator(); compIter.hasNext(); ) {
+                    ZComponent comp = compIter.next();
+                    if (ICalTok.VFREEBUSY.equals(comp.getTok())) {
+                        FreeBusy fb = FreeBusy.parse(comp);
+                        fbList.add(fb);
                     }
                 }
-            } catch (ServiceException e) {
-                ZimbraLog.fb.warn("can't get free/busy information for "+req.email, e);
-            } finally {
-                if (method != null)
-                    method.releaseConnection();
             }
+        } catch (ServiceException e) {
+            ZimbraLog.fb.warn("can't get free/busy information for "+req.email, e);
+        } finally {
+            if (method != null)
+                method.releaseConnection();
         }
         return fbList;
     }
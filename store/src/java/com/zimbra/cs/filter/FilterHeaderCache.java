@@ -0,0 +1,73 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.filter;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.mail.internet.MimeMessage;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.zimbra.cs.mime.Mime;
+
+/**
+ * Decoded header values of the messages currently going through the filters.
+ * <p>
+ * When a message is delivered to many recipients, every recipient's filters run against the same
+ * {@link MimeMessage}, and each header test would otherwise decode and unfold the same headers again.  Values are
+ * decoded the first time a header is asked for and kept for as long as the message is reachable; a message whose
+ * headers are edited by a filter must be {@link #invalidate invalidated}.
+ */
+final class FilterHeaderCache {
+
+    private static final Cache<MimeMessage, ConcurrentMap<String, String[]>> MESSAGES =
+            CacheBuilder.newBuilder().weakKeys().build();
+
+    private FilterHeaderCache() {
+    }
+
+    /**
+     * Returns the decoded values of the header, or an empty array.  The array is shared and must not be modified.
+     *
+     * @see Mime#getHeaders(javax.mail.internet.MimePart, String)
+     */
+    static String[] getHeaders(MimeMessage msg, String name) {
+        ConcurrentMap<String, String[]> headers = MESSAGES.getIfPresent(msg);
+        if (headers == null) {
+            headers = new ConcurrentHashMap<String, String[]>();
+            ConcurrentMap<String, String[]> prev = MESSAGES.asMap().putIfAbsent(msg, headers);
+            if (prev != null) {
+                headers = prev;
+            }
+        }
+        String key = name.toLowerCase();
+        String[] values = headers.get(key);
+        if (values == null) {
+            values = Mime.getHeaders(msg, name);
+            headers.put(key, values);
+        }
+        return values;
+    }
+
+    /** Forgets the decoded headers of a message whose headers have been changed. */
+    static void invalidate(MimeMessage msg) {
+        if (msg != null) {
+            MESSAGES.invalidate(msg);
+        }
+    }
+}
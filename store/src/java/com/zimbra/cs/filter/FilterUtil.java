@@ -31,6 +31,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import javax.mail.Address;
 import javax.mail.Header;
@@ -46,6 +47,7 @@ import org.apache.jsieve.exception.SyntaxException;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Sets;
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
 import com.sun.mail.smtp.SMTPMessage;
 import com.zimbra.client.ZFolder;
 import com.zimbra.client.ZMailbox;
@@ -998,6 +1000,28 @@ public final class FilterUtil {
 		return processedStr;
 	}
 
+    private static final ConcurrentLinkedHashMap<Pair<String, Integer>, Pattern> SIEVE_PATTERNS =
+            new ConcurrentLinkedHashMap.Builder<Pair<String, Integer>, Pattern>()
+                .maximumWeightedCapacity(Math.max(LC.filter_pattern_cache_size.intValue(), 1))
+                .build();
+
+    /**
+     * Returns the compiled java regex for a Sieve pattern.  The same rules are evaluated for every message
+     * delivered, so each pattern is only converted and compiled the first time it's seen with a given set of flags.
+     *
+     * @see #sieveToJavaRegex(String)
+     * @throws PatternSyntaxException if the resulting regex is invalid
+     */
+    public static Pattern compileSievePattern(String pattern, int flags) {
+        Pair<String, Integer> key = new Pair<String, Integer>(pattern, flags);
+        Pattern compiled = SIEVE_PATTERNS.get(key);
+        if (compiled == null) {
+            compiled = Pattern.compile(sieveToJavaRegex(pattern), flags);
+            SIEVE_PATTERNS.put(key, compiled);
+        }
+        return compiled;
+    }
+
     /**
      * Converts a Sieve pattern in a java regex pattern
      */
@@ -17,6 +17,8 @@
 
 package com.zimbra.cs.filter;
 
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.zimbra.common.localconfig.LC;
 import com.zimbra.common.service.DeliveryServiceException;
 import com.zimbra.common.service.ServiceException;
 import com.zimbra.common.util.Pair;
@@ -93,6 +95,12 @@ public final class RuleManager {
 
     private static SieveFactory SIEVE_FACTORY = createSieveFactory();
 
+    private static final boolean SHARE_PARSED_SCRIPTS = LC.filter_shared_script_cache_size.intValue() > 0;
+    private static final ConcurrentLinkedHashMap<String, Node> SHARED_NODES =
+            new ConcurrentLinkedHashMap.Builder<String, Node>()
+                .maximumWeightedCapacity(Math.max(LC.filter_shared_script_cache_size.intValue(), 1))
+                .build();
+
     private RuleManager() {
     }
 
@@ -223,7 +231,7 @@ public final class RuleManager {
 
             ZimbraLog.filter.debug("attrName[%s] rule[%s]", sieveScriptAttrName, script);
 
-            node = parse(script);
+            node = getSharedNode(script);
             account.setCachedData(rulesCacheKey, node);
         }
         return node;
@@ -559,6 +567,27 @@ public final class RuleManager {
         return handler.filtered();
     }
 
+    /**
+     * Returns the parsed node tree for a script, shared with every other account whose script has the same text.
+     * Admin scripts are usually inherited from a COS or domain, and many users have identical rules, so a delivery
+     * to thousands of recipients only parses each distinct script once.  The tree is only ever evaluated or visited
+     * read-only; callers that rewrite a script must {@link #parse} their own copy.
+     */
+    private static Node getSharedNode(String script) throws ParseException {
+        if (!SHARE_PARSED_SCRIPTS) {
+            return parse(script);
+        }
+        Node node = SHARED_NODES.get(script);
+        if (node == null) {
+            node = parse(script);
+            Node prev = SHARED_NODES.putIfAbsent(script, node);
+            if (prev != null) {
+                node = prev;
+            }
+        }
+        return node;
+    }
+
     /**
      * Parses the sieve script and returns the root to the resulting node tree.
      */
@@ -849,7 +878,7 @@ public final class RuleManager {
                 adminRule = "";
             }
             ZimbraLog.filter.debug("filterType[%s] rule[%s]", filterType == FilterType.INCOMING ? "incoming" : "outgoing", adminRule);
-            node = parse(adminRule);
+            node = getSharedNode(adminRule);
             entry.setCachedData(rulesCacheKey, node);
         }
         return node;
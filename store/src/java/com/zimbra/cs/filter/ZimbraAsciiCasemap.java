@@ -64,8 +64,8 @@ public class ZimbraAsciiCasemap extends AsciiCasemap implements ZimbraComparator
     public boolean matches(String string, String glob)
             throws SievePatternException {
         try {
-            String regex = FilterUtil.sieveToJavaRegex(glob.toUpperCase());
-            final Matcher matcher = Pattern.compile(regex, Pattern.CASE_INSENSITIVE | Pattern.DOTALL).matcher(string.toUpperCase());
+            Pattern pattern = FilterUtil.compileSievePattern(glob.toUpperCase(), Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+            final Matcher matcher = pattern.matcher(string.toUpperCase());
             return matcher.matches();
         } catch (PatternSyntaxException e) {
             throw new SievePatternException(e.getMessage());
@@ -682,7 +682,7 @@ public class ZimbraMailAdapter implements MailAdapter, EnvelopeAccessors {
             return Collections.emptyList();
         }
 
-        String[] headers = Mime.getHeaders(msg, name);
+        String[] headers = FilterHeaderCache.getHeaders(msg, name);
         if (headers == null) {
             return Collections.emptyList();
         }
@@ -690,7 +690,7 @@ public class ZimbraMailAdapter implements MailAdapter, EnvelopeAccessors {
         if (addrHdrs.contains(name.toLowerCase()))
             return handleIDN(name, headers);
         else
-            return Arrays.asList(headers);
+            return Arrays.asList(headers.clone());
     }
 
     @Override
@@ -919,6 +919,12 @@ public class ZimbraMailAdapter implements MailAdapter, EnvelopeAccessors {
     }
 
     public void updateIncomingBlob() {
+        try {
+            // the headers were just edited
+            FilterHeaderCache.invalidate(handler.getMimeMessage());
+        } catch (ServiceException e) {
+            ZimbraLog.filter.debug("Unable to get MimeMessage.", e);
+        }
         DeliveryContext ctxt = handler.getDeliveryContext();
         if (ctxt != null) {
             StoreManager sm = StoreManager.getInstance();
@@ -0,0 +1,109 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.html;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.Weigher;
+import com.zimbra.common.localconfig.LC;
+import com.zimbra.cs.servlet.ZThreadLocal;
+
+/**
+ * LRU cache of defanged message bodies, so that opening the same message again doesn't re-parse
+ * and re-sanitize its HTML.  Entries are keyed by the blob digest and part of the message plus
+ * everything else that affects the output; the whole cache is bounded by
+ * {@code zimbra_defang_cache_size_kb}.
+ */
+public final class DefangCache {
+
+    private static final DefangCache INSTANCE = new DefangCache(LC.zimbra_defang_cache_size_kb.longValue() * 1024);
+
+    public static final class Entry {
+        private final String content;
+        private final boolean truncated;
+
+        Entry(String content, boolean truncated) {
+            this.content = content;
+            this.truncated = truncated;
+        }
+
+        /** Returns the defanged content, which may be longer than the requested limit if truncated. */
+        public String getContent() {
+            return content;
+        }
+
+        public boolean isTruncated() {
+            return truncated;
+        }
+    }
+
+    private final ConcurrentLinkedHashMap<String, Entry> cache;
+
+    DefangCache(long capacityBytes) {
+        if (capacityBytes > 0) {
+            // Java strings cost two bytes a character
+            cache = new ConcurrentLinkedHashMap.Builder<String, Entry>()
+                .maximumWeightedCapacity((int) Math.min(capacityBytes / 2, Integer.MAX_VALUE))
+                .weigher(new Weigher<Entry>() {
+                    @Override
+                    public int weightOf(Entry value) {
+                        return Math.max(value.content.length(), 1);
+                    }
+                })
+                .build();
+        } else {
+            cache = null;
+        }
+    }
+
+    public static DefangCache getInstance() {
+        return INSTANCE;
+    }
+
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * Returns the cache key for a message body part.  The request's virtual host is part of the
+     * key because {@link DefangFilter} checks form actions against it.
+     *
+     * @param digest the digest of the message blob
+     * @param part the part name, relative to the top of the blob
+     */
+    public static String getKey(String digest, String part, boolean neuterImages, int maxChars,
+            String defaultCharset) {
+        String vhost = ZThreadLocal.getRequestContext() == null ? null :
+            ZThreadLocal.getRequestContext().getVirtualHost();
+        return new StringBuilder(digest).append('/').append(part).append('/').append(neuterImages)
+            .append('/').append(maxChars).append('/').append(defaultCharset).append('/').append(vhost)
+            .toString();
+    }
+
+    public Entry get(String key) {
+        return cache == null ? null : cache.get(key);
+    }
+
+    public void put(String key, String content, boolean truncated) {
+        if (cache != null && content != null) {
+            cache.put(key, new Entry(content, truncated));
+        }
+    }
+
+    int size() {
+        return cache == null ? 0 : cache.size();
+    }
+}
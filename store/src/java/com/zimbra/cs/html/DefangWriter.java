@@ -17,16 +17,29 @@
 
 
 package com.zimbra.cs.html;
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XMLString;
+import org.apache.xerces.xni.XNIException;
 import org.cyberneko.html.filters.Writer;
 
+import com.zimbra.common.util.TruncatingWriter;
+
 /**
  * extend Writer to override printEntity behavior. IE doesn't like "apos" entities, so write
  * out #39 instead.
+ * <p>
+ * When writing to a {@link TruncatingWriter}, throws {@link OutputLimitReached} as soon as the
+ * output is truncated so that the parser doesn't go on sanitizing content nobody will see.
  */
 public class DefangWriter extends Writer {
+    private final TruncatingWriter limit;
+
     /** Print entity. */
     public DefangWriter(java.io.Writer writer, String encoding) {
         super(writer, encoding);
+        limit = writer instanceof TruncatingWriter ? (TruncatingWriter) writer : null;
     }
     
     protected void printEntity(String name) {
@@ -38,4 +51,37 @@ public class DefangWriter extends Writer {
         fPrinter.print(';');
         fPrinter.flush();
     }
+
+    @Override
+    public void startElement(QName element, XMLAttributes attrs, Augmentations augs) throws XNIException {
+        super.startElement(element, attrs, augs);
+        checkLimit();
+    }
+
+    @Override
+    public void emptyElement(QName element, XMLAttributes attrs, Augmentations augs) throws XNIException {
+        super.emptyElement(element, attrs, augs);
+        checkLimit();
+    }
+
+    @Override
+    public void characters(XMLString text, Augmentations augs) throws XNIException {
+        super.characters(text, augs);
+        checkLimit();
+    }
+
+    private void checkLimit() {
+        if (limit != null && limit.wasTruncated()) {
+            throw new OutputLimitReached();
+        }
+    }
+
+    /** Stops the parse once the output has reached its size limit. */
+    static final class OutputLimitReached extends XNIException {
+        private static final long serialVersionUID = 1L;
+
+        OutputLimitReached() {
+            super("output limit reached");
+        }
+    }
 }
@@ -82,8 +82,11 @@ public class HtmlDefang extends AbstractDefang
         parser.setFeature("http://cyberneko.org/html/features/balance-tags", false);
         parser.setFeature("http://xml.org/sax/features/namespaces", false);
         // parse document
-
-        parser.parse(source);
+        try {
+            parser.parse(source);
+        } catch (DefangWriter.OutputLimitReached e) {
+            // the output is already as long as the caller will take it
+        }
     }
 
     public static void main(String[] args) throws IOException {
@@ -0,0 +1,197 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.imap;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.zimbra.cs.mailbox.MailItem;
+
+/**
+ * Codec for the message list of {@link ImapFolder} in the IMAP session caches.  Only the cached form is columnar, one
+ * primitive array per {@link ImapMessage} field; a folder that is loaded from the cache gets its {@link ImapMessage}
+ * objects back.  Distinct tag sets are stored once in a side table and referenced by index, since a folder rarely has
+ * more than a handful of them.
+ * <p>
+ * The binary encoding writes UIDs as varint deltas (the list is in UID order) and item ids relative to their UIDs
+ * (usually identical), so a message typically costs 4-6 bytes in the cache rather than a full serialized object.
+ */
+final class ImapMessageColumns {
+    private static final byte VERSION = 1;
+
+    private final int size;
+    private final int[] uids;
+    private final int[] ids;
+    private final int[] flags;
+    private final short[] sflags;
+    private final int[] tagsets;
+    private final String[][] tagTable;
+
+    private ImapMessageColumns(int size, int[] uids, int[] ids, int[] flags, short[] sflags, int[] tagsets,
+            String[][] tagTable) {
+        this.size = size;
+        this.uids = uids;
+        this.ids = ids;
+        this.flags = flags;
+        this.sflags = sflags;
+        this.tagsets = tagsets;
+        this.tagTable = tagTable;
+    }
+
+    /** Builds the columns from a message list in sequence order.  Message sequence numbers are implied by position. */
+    static ImapMessageColumns of(List<ImapMessage> messages) {
+        int size = messages.size();
+        int[] uids = new int[size];
+        int[] ids = new int[size];
+        int[] flags = new int[size];
+        short[] sflags = new short[size];
+        int[] tagsets = new int[size];
+        List<String[]> tagTable = new ArrayList<String[]>();
+        Map<List<String>, Integer> tagIndex = new HashMap<List<String>, Integer>();
+        tagTable.add(null);  // tag set 0 is "no tags"
+
+        for (int i = 0; i < size; i++) {
+            ImapMessage i4msg = messages.get(i);
+            uids[i] = i4msg.imapUid;
+            ids[i] = i4msg.msgId;
+            flags[i] = i4msg.flags;
+            sflags[i] = i4msg.sflags;
+            if (i4msg.tags != null && i4msg.tags.length > 0) {
+                List<String> key = Arrays.asList(i4msg.tags);
+                Integer idx = tagIndex.get(key);
+                if (idx == null) {
+                    idx = tagTable.size();
+                    tagIndex.put(key, idx);
+                    tagTable.add(i4msg.tags);
+                }
+                tagsets[i] = idx;
+            }
+        }
+        return new ImapMessageColumns(size, uids, ids, flags, sflags, tagsets,
+                tagTable.toArray(new String[tagTable.size()][]));
+    }
+
+    /** Materializes the message at the given 0-based index. */
+    private ImapMessage get(int index) {
+        MailItem.Type type = (sflags[index] & ImapMessage.FLAG_IS_CONTACT) != 0 ?
+                MailItem.Type.CONTACT : MailItem.Type.MESSAGE;
+        ImapMessage i4msg = new ImapMessage(ids[index], type, uids[index], flags[index], tagTable[tagsets[index]]);
+        i4msg.sflags = sflags[index];
+        i4msg.sequence = index + 1;
+        return i4msg;
+    }
+
+    /** Materializes all messages in sequence order. */
+    List<ImapMessage> toMessages() {
+        List<ImapMessage> messages = new ArrayList<ImapMessage>(size);
+        for (int i = 0; i < size; i++) {
+            messages.add(get(i));
+        }
+        return messages;
+    }
+
+    void encode(DataOutput out) throws IOException {
+        out.writeByte(VERSION);
+        writeVarInt(out, tagTable.length - 1);
+        for (int t = 1; t < tagTable.length; t++) {
+            writeVarInt(out, tagTable[t].length);
+            for (String tag : tagTable[t]) {
+                out.writeUTF(tag);
+            }
+        }
+        writeVarInt(out, size);
+        int prevUid = 0;
+        for (int i = 0; i < size; i++) {
+            writeVarInt(out, zigzag(uids[i] - prevUid));
+            writeVarInt(out, zigzag(ids[i] - uids[i]));
+            writeVarInt(out, flags[i]);
+            writeVarInt(out, sflags[i] & 0xFFFF);
+            writeVarInt(out, tagsets[i]);
+            prevUid = uids[i];
+        }
+    }
+
+    static ImapMessageColumns decode(DataInput in) throws IOException {
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new InvalidObjectException("unsupported IMAP message list encoding version " + version);
+        }
+        int tagsetCount = readVarInt(in);
+        String[][] tagTable = new String[tagsetCount + 1][];
+        for (int t = 1; t <= tagsetCount; t++) {
+            String[] tags = new String[readVarInt(in)];
+            for (int j = 0; j < tags.length; j++) {
+                tags[j] = in.readUTF();
+            }
+            tagTable[t] = tags;
+        }
+        int size = readVarInt(in);
+        int[] uids = new int[size];
+        int[] ids = new int[size];
+        int[] flags = new int[size];
+        short[] sflags = new short[size];
+        int[] tagsets = new int[size];
+        int prevUid = 0;
+        for (int i = 0; i < size; i++) {
+            uids[i] = prevUid + unzigzag(readVarInt(in));
+            ids[i] = uids[i] + unzigzag(readVarInt(in));
+            flags[i] = readVarInt(in);
+            sflags[i] = (short) readVarInt(in);
+            tagsets[i] = readVarInt(in);
+            if (tagsets[i] < 0 || tagsets[i] > tagsetCount) {
+                throw new InvalidObjectException("invalid tag set reference " + tagsets[i]);
+            }
+            prevUid = uids[i];
+        }
+        return new ImapMessageColumns(size, uids, ids, flags, sflags, tagsets, tagTable);
+    }
+
+    private static int zigzag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    private static int unzigzag(int n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    private static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new InvalidObjectException("malformed varint");
+    }
+}
@@ -18,10 +18,12 @@ package com.zimbra.cs.imap;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.channels.FileChannel;
 import java.util.Enumeration;
 import java.util.List;
 
@@ -30,6 +32,7 @@ import javax.mail.internet.MimeBodyPart;
 import javax.mail.internet.MimeMessage;
 import javax.mail.internet.MimePart;
 
+import com.zimbra.common.localconfig.LC;
 import com.zimbra.common.mailbox.ZimbraMailItem;
 import com.zimbra.common.service.ServiceException;
 import com.zimbra.common.util.ByteUtil;
@@ -37,7 +40,12 @@ import com.zimbra.common.util.InputStreamWithSize;
 import com.zimbra.common.util.StartOutOfBoundsException;
 import com.zimbra.common.util.StringUtil;
 import com.zimbra.common.util.ZimbraLog;
+import com.zimbra.cs.mailbox.Message;
 import com.zimbra.cs.mime.Mime;
+import com.zimbra.cs.server.FileRegionOutput;
+import com.zimbra.cs.store.Blob;
+import com.zimbra.cs.store.MailboxBlob;
+import com.zimbra.cs.store.file.VolumeBlob;
 
 class ImapPartSpecifier {
     static class BinaryDecodingException extends Exception {
@@ -182,9 +190,63 @@ class ImapPartSpecifier {
 
     void write(PrintStream ps, OutputStream os, ZimbraMailItem zmi)
     throws IOException, BinaryDecodingException, ServiceException {
+        if (writeFileRegion(ps, os, zmi)) {
+            return;
+        }
         write(ps, os, new ZimbraMailItemGettableInputStreamWithSize(zmi));
     }
 
+    /**
+     * Sends an entire message straight from its blob file to the socket, bypassing the heap buffers of the stream
+     * copy.  Only possible for <tt>BODY[]</tt> and <tt>RFC822</tt> without a partial range, on a local uncompressed
+     * blob, over a connection that isn't encrypted.
+     * @return {@code false} if nothing was written and the caller should fall back to the stream copy
+     */
+    private boolean writeFileRegion(PrintStream ps, OutputStream os, ZimbraMailItem zmi)
+    throws IOException, ServiceException {
+        if (!(os instanceof FileRegionOutput) || !(zmi instanceof Message) || !isEntireMessage() || octetStart >= 0 ||
+                !(command.equals("BODY") || command.equals("RFC822")) || !LC.imap_zero_copy_fetch.booleanValue()) {
+            return false;
+        }
+        FileRegionOutput out = (FileRegionOutput) os;
+        if (!out.isFileRegionSupported()) {
+            return false;
+        }
+        MailboxBlob mblob = ((Message) zmi).getBlob();
+        Blob blob = mblob == null ? null : mblob.getLocalBlob();
+        if (!(blob instanceof VolumeBlob) || blob.isCompressed()) {
+            return false;
+        }
+        long length = zmi.getSize();
+        FileInputStream fis;
+        try {
+            fis = new FileInputStream(blob.getFile());
+        } catch (IOException e) {
+            // let the regular path report the missing blob
+            return false;
+        }
+        boolean handedOff = false;
+        try {
+            FileChannel fc = fis.getChannel();
+            if (fc.size() != length) {
+                return false;
+            }
+            ps.print(this);
+            ps.print(" {");
+            ps.print(length);
+            ps.write('}');   /* } added to fix vim buggy brace matching code */
+            os.write(ImapHandler.LINE_SEPARATOR_BYTES);
+            // the output closes the file once it has been sent
+            handedOff = true;
+            out.writeFileRegion(fc, 0, length);
+            return true;
+        } finally {
+            if (!handedOff) {
+                ByteUtil.closeStream(fis);
+            }
+        }
+    }
+
     void write(PrintStream ps, OutputStream os, MimeMessage mimeMsg)
     throws IOException, BinaryDecodingException, ServiceException {
         write(ps, os, new MimeMessageGettableInputStreamWithSize(mimeMsg));
@@ -74,6 +74,7 @@ final class ImapSessionManager {
 
     private static final boolean TERMINATE_ON_CLOSE = DebugConfig.imapTerminateSessionOnClose;
     private static final boolean SERIALIZE_ON_CLOSE = DebugConfig.imapSerializeSessionOnClose;
+    private static final boolean PRELOAD_ON_SELECT = DebugConfig.imapPreloadFolderOnSelect;
 
     /**
      * ConcurrentLinkedHashMap is used because it has good concurrency attributes, offers fast access by key and
@@ -290,11 +291,15 @@ final class ImapSessionManager {
         OperationContext octxt = handler.getCredentials().getContext();
 
         List<ImapMessage> i4list = null;
+        FolderPreload preload = null;
         // *always* recalculate the contents of search folders
         if (folder instanceof SearchFolderStore) {
             i4list = loadVirtualFolder(octxt, (SearchFolderStore) folder);
         } else {
             waitForWaitSetNotifications(imapStore, folder);
+            if (PRELOAD_ON_SELECT && imapStore instanceof LocalImapMailboxStore) {
+                preload = preloadFolder(octxt, imapStore, folder, folderId);
+            }
         }
 
         mbox.lock(true);
@@ -313,9 +318,14 @@ final class ImapSessionManager {
                 // first option is to duplicate an existing registered session
                 //   (could try to just activate an inactive session, but this logic is simpler for now)
                 i4list = duplicateExistingSession(folderId, listners);
-                // no matching session means we next check for serialized folder data
+                // no matching session means we next check for the data loaded before taking the lock, as long as
+                //   nothing has changed since then; failing that, we check for serialized folder data
                 if (i4list == null) {
-                    i4list = duplicateSerializedFolder(folder);
+                    if (preload != null && preload.isCurrent(folder)) {
+                        i4list = preload.i4list;
+                    } else {
+                        i4list = duplicateSerializedFolder(folder);
+                    }
                 } else if (CONSISTENCY_CHECK) {
                     Collections.sort(i4list);
                     //sort only if using list from duplicated session which may be out of order
@@ -549,7 +559,10 @@ final class ImapSessionManager {
     }
 
     private List<ImapMessage> duplicateSerializedFolder(FolderStore folder) {
-        ImapFolder i4folder = getCache(folder);
+        return duplicateSerializedFolder(folder, getCache(folder));
+    }
+
+    private static List<ImapMessage> duplicateSerializedFolder(FolderStore folder, ImapFolder i4folder) {
         if (i4folder == null) { // cache miss
             return null;
         }
@@ -568,6 +581,79 @@ final class ImapSessionManager {
         return i4list;
     }
 
+    /**
+     * Message list for a folder being SELECTed, loaded before {@link #openFolder} takes the mailbox write lock.
+     * Deserializing a cached folder or reading every row of a large folder from the database is the slow part of a
+     * cold SELECT, and doing it under the write lock stalls delivery and every other session on the mailbox.
+     */
+    final class FolderPreload {
+        final List<ImapMessage> i4list;
+        /** cache key the list was found under, or {@code null} if it was read from the database */
+        final String cacheKey;
+        /** IMAP MODSEQ of the folder before the database read */
+        final int modseq;
+        /** IMAP UIDNEXT of the folder before the database read */
+        final int uidnext;
+
+        FolderPreload(List<ImapMessage> i4list, String cacheKey, int modseq, int uidnext) {
+            this.i4list = i4list;
+            this.cacheKey = cacheKey;
+            this.modseq = modseq;
+            this.uidnext = uidnext;
+        }
+
+        /**
+         * Returns whether the list still reflects the folder.  Must be called with the mailbox lock held.  A list
+         * from the serialized session cache is exactly what we'd get by looking the folder up again now, provided
+         * the cache key is unchanged; a list read from the database is only valid if the folder's MODSEQ and UIDNEXT
+         * are unchanged since, so changes elsewhere in the mailbox don't discard it.
+         */
+        boolean isCurrent(FolderStore folder) {
+            if (cacheKey != null) {
+                return cacheKey.equals(cacheKey(folder, false));
+            }
+            return folder.getImapMODSEQ() == modseq && folder.getImapUIDNEXT() == uidnext;
+        }
+    }
+
+    FolderPreload preloadFolder(OperationContext octxt, ImapMailboxStore imapStore, FolderStore folder,
+            int folderId) {
+        try {
+            MailboxStore mbox = folder.getMailboxStore();
+            if (!(folder instanceof ZSharedFolder)) {
+                folder = mbox.getFolderById(octxt, folder.getFolderIdAsString());
+                if (folder == null) {
+                    return null;
+                }
+            }
+            // an existing session will be duplicated under the lock, which is cheap
+            if (getSessionForFolder(folderId, imapStore.getListeners(folder)) != null) {
+                return null;
+            }
+            String cacheKey = cacheKey(folder, false);
+            List<ImapMessage> i4list = duplicateSerializedFolder(folder, getCache(folder));
+            if (i4list != null) {
+                return new FolderPreload(i4list, cacheKey, -1, -1);
+            }
+            // no lock held here, so a change to the folder committed after this point makes the snapshot stale;
+            //   Mailbox.openImapFolder holds the mailbox read lock while it reads, so nothing can commit mid-read.
+            //   Adding an item raises UIDNEXT and MODSEQ; removing one or changing its flags or tags raises MODSEQ
+            int modseq = folder.getImapMODSEQ();
+            int uidnext = folder.getImapUIDNEXT();
+            ItemIdentifier ident;
+            if (folder instanceof MountpointStore) {
+                ident = ((MountpointStore) folder).getTargetItemIdentifier();
+            } else {
+                ident = folder.getFolderItemIdentifier();
+            }
+            return new FolderPreload(imapStore.openImapFolder(octxt, ident), null, modseq, uidnext);
+        } catch (ServiceException e) {
+            // the load will be retried (and any error reported) under the mailbox lock
+            ZimbraLog.imap.debug("unable to preload folder %s", folder.getPath(), e);
+            return null;
+        }
+    }
+
     private List<ImapMessage> consistencyCheck(
             List<ImapMessage> i4list, ImapMailboxStore imapStore, OperationContext octxt, FolderStore folder) {
         if (i4list == null) {
@@ -634,13 +720,20 @@ final class ImapSessionManager {
 
     private static void renumberMessages(OperationContext octxt, MailboxStore mbox, List<ImapMessage> i4sorted)
     throws ServiceException {
-        List<ImapMessage> unnumbered = new ArrayList<ImapMessage>();
-        List<Integer> renumber = new ArrayList<Integer>();
-        while (!i4sorted.isEmpty() && i4sorted.get(0).imapUid <= 0) {
-            ImapMessage i4msg = i4sorted.remove(0);
-            unnumbered.add(i4msg);  renumber.add(i4msg.msgId);
-        }
-        if (!renumber.isEmpty()) {
+        // the list is sorted, so any unnumbered messages are all at the front
+        int count = 0;
+        while (count < i4sorted.size() && i4sorted.get(count).imapUid <= 0) {
+            count++;
+        }
+        if (count > 0) {
+            // remove them in one go rather than one at a time from the head of the list
+            List<ImapMessage> head = i4sorted.subList(0, count);
+            List<ImapMessage> unnumbered = new ArrayList<ImapMessage>(head);
+            head.clear();
+            List<Integer> renumber = new ArrayList<Integer>(count);
+            for (ImapMessage i4msg : unnumbered) {
+                renumber.add(i4msg.msgId);
+            }
             List<Integer> newIds = mbox.resetImapUid(octxt, renumber);
             for (int i = 0; i < newIds.size(); i++) {
                 unnumbered.get(i).imapUid = newIds.get(i);
@@ -0,0 +1,214 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.index;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.zimbra.common.service.ServiceException;
+import com.zimbra.common.util.ZimbraLog;
+import com.zimbra.cs.mailbox.Mailbox;
+
+/**
+ * Replays the hits of a {@link SearchResultCache} entry, then runs the query to read past the end of it.  Hits read
+ * from the query are recorded, and the longer entry is put back in the cache on {@link #close()}.
+ */
+final class CachedQueryResults extends ZimbraQueryResultsImpl {
+
+    private final SearchResultCache cache;
+    private final String key;
+    private final int changeId;
+    private final SearchResultCache.Entry entry;
+    private final ZimbraQuery query;
+    private final Mailbox mailbox;
+    /** hits read from the query, past the end of the entry */
+    private final List<ZimbraHit> extra = new ArrayList<ZimbraHit>();
+    private int position = 0;
+    private ZimbraQueryResults live;
+    private SearchResultCache.Recorder recorder;
+    private boolean liveDone = false;
+
+    CachedQueryResults(SearchResultCache cache, String key, int changeId, SearchResultCache.Entry entry,
+            ZimbraQuery query) {
+        super(query.getParams().getTypes(), query.getParams().getSortBy(), query.getParams().getFetchMode());
+        this.cache = cache;
+        this.key = key;
+        this.changeId = changeId;
+        this.entry = entry;
+        this.query = query;
+        this.mailbox = query.getMailbox();
+    }
+
+    @Override
+    public void resetIterator() {
+        position = 0;
+    }
+
+    @Override
+    public ZimbraHit getNext() throws ServiceException {
+        ZimbraHit hit = getHit(position);
+        if (hit != null) {
+            position++;
+        }
+        return hit;
+    }
+
+    @Override
+    public ZimbraHit peekNext() throws ServiceException {
+        return getHit(position);
+    }
+
+    @Override
+    public ZimbraHit skipToHit(int hitNo) throws ServiceException {
+        position = hitNo;
+        return getNext();
+    }
+
+    @Override
+    public List<QueryInfo> getResultInfo() {
+        return live != null ? live.getResultInfo() : entry.info;
+    }
+
+    /**
+     * Hits are always replayed from the top of the results, even when the request has a cursor.
+     */
+    @Override
+    public long getCursorOffset() {
+        return 0;
+    }
+
+    private ZimbraHit getHit(int hitNo) throws ServiceException {
+        if (hitNo < entry.size) {
+            return toHit(hitNo);
+        }
+        if (entry.complete) {
+            return null;
+        }
+        while (extra.size() <= hitNo - entry.size) {
+            ZimbraHit hit = readLive();
+            if (hit == null) {
+                return null;
+            }
+            extra.add(hit);
+        }
+        return extra.get(hitNo - entry.size);
+    }
+
+    private ZimbraHit readLive() throws ServiceException {
+        if (liveDone) {
+            return null;
+        }
+        if (live == null) {
+            openLive();
+            if (liveDone) {
+                return null;
+            }
+        }
+        ZimbraHit hit = live.getNext();
+        if (hit == null) {
+            liveDone = true;
+            recorder.setComplete();
+        } else {
+            recorder.add(hit);
+        }
+        return hit;
+    }
+
+    /**
+     * Runs the query and skips the hits the entry already has.  A request with a cursor runs the query again without
+     * it, since the entry holds the results from the top; only cursors that point into the entry get here, so this
+     * reads at most the length of the entry.
+     */
+    private void openLive() throws ServiceException {
+        recorder = new SearchResultCache.Recorder(entry, getSortBy(), cache.getMaxEntryHits());
+        if (query.getParams().getCursor() == null) {
+            live = query.execute();
+        } else {
+            SearchParams params = (SearchParams) query.getParams().clone();
+            params.setCursor(null);
+            live = new ZimbraQuery(query.getOperationContext(), query.getResponseProtocol(), mailbox, params).execute();
+        }
+        if (entry.size > 0 && live.skipToHit(entry.size - 1) == null) {
+            // the mailbox changed under us; don't record results from two different states
+            ZimbraLog.search.debug("SearchResultCache entry is longer than the results key=%s", key);
+            liveDone = true;
+            recorder = null;
+        }
+    }
+
+    private ZimbraHit toHit(int hitNo) {
+        int id = entry.ids[hitNo];
+        Object sortValue;
+        if (entry.numericSorts != null) {
+            long value = entry.numericSorts[hitNo];
+            sortValue = getSortBy().getKey() == SortBy.Key.ID ? Integer.valueOf((int) value) : Long.valueOf(value);
+        } else {
+            sortValue = entry.stringSorts[hitNo];
+        }
+        switch (entry.kinds[hitNo]) {
+            case SearchResultCache.CONVERSATION:
+                ConversationHit conv = getConversationHit(mailbox, id, sortValue);
+                for (int msgId : entry.conversationMessages[hitNo]) {
+                    conv.addMessageHit(getMessageHit(mailbox, msgId, null, null, sortValue));
+                }
+                return conv;
+            case SearchResultCache.MESSAGE:
+                return getMessageHit(mailbox, id, null, null, sortValue);
+            case SearchResultCache.CONTACT:
+                return getContactHit(mailbox, id, null, sortValue);
+            case SearchResultCache.NOTE:
+                return getNoteHit(mailbox, id, null, sortValue);
+            case SearchResultCache.APPOINTMENT:
+                return getAppointmentHit(mailbox, id, null, sortValue);
+            case SearchResultCache.TASK:
+                return getTaskHit(mailbox, id, null, sortValue);
+            default:
+                throw new IllegalStateException("unknown hit kind " + entry.kinds[hitNo]);
+        }
+    }
+
+    /**
+     * Reads ahead of the caller so that the next page is cached too, then puts the longer entry in the cache.
+     */
+    @Override
+    public void close() throws IOException {
+        if (live == null) {
+            return;
+        }
+        try {
+            if (recorder != null) {
+                int target = Math.min(Math.max(position * 2, position + 1), cache.getMaxEntryHits());
+                while (recorder.isActive() && recorder.size() < target) {
+                    ZimbraHit hit = live.getNext();
+                    if (hit == null) {
+                        recorder.setComplete();
+                    } else {
+                        recorder.add(hit);
+                    }
+                }
+                if (mailbox.getLastChangeID() == changeId) {
+                    cache.put(key, recorder.toEntry(live.getResultInfo()));
+                }
+            }
+        } catch (ServiceException e) {
+            ZimbraLog.search.warn("Failed to fill search result cache key=%s", key, e);
+        } finally {
+            live.close();
+        }
+    }
+}
@@ -38,6 +38,7 @@ import com.zimbra.cs.db.Db;
 import com.zimbra.cs.db.DbPool;
 import com.zimbra.cs.db.DbPool.DbConnection;
 import com.zimbra.cs.db.DbSearch;
+import com.zimbra.cs.mailbox.Flag;
 import com.zimbra.cs.mailbox.Folder;
 import com.zimbra.cs.mailbox.MailItem;
 import com.zimbra.cs.mailbox.MailServiceException;
@@ -247,6 +248,64 @@ public class DBQueryOperation extends QueryOperation {
         return allResultsQuery;
     }
 
+    @Override
+    long estimateHitCount(Mailbox mbox) {
+        if (hasNoResults()) {
+            return 0;
+        }
+        return includeIsLocalFolders || includeIsRemoteFolders ? -1 : estimateHitCount(constraints);
+    }
+
+    /**
+     * Estimates how many rows match the constraints from the in-memory folder and tag counts: the item count of the
+     * target folders (or their unread count if the search is restricted to unread items), the count of any tag ANDed
+     * in, or the number of item IDs given.  Flags other than unread aren't counted, so they don't contribute.
+     */
+    private static long estimateHitCount(DbSearchConstraints node) {
+        if (node instanceof DbSearchConstraints.Leaf) {
+            DbSearchConstraints.Leaf leaf = (DbSearchConstraints.Leaf) node;
+            if (leaf.noResults) {
+                return 0;
+            }
+            long estimate = leaf.itemIds.isEmpty() ? -1 : leaf.itemIds.size();
+            boolean unread = false;
+            for (Tag tag : leaf.tags) {
+                if (tag.getId() == Flag.ID_UNREAD) {
+                    unread = true;
+                } else if (!(tag instanceof Flag)) {
+                    estimate = minEstimate(estimate, tag.getItemCount());
+                }
+            }
+            if (!leaf.folders.isEmpty()) {
+                long count = 0;
+                for (Folder folder : leaf.folders) {
+                    if (folder instanceof Mountpoint) {
+                        return estimate;
+                    }
+                    count += unread ? folder.getUnreadCount() : folder.getItemCount();
+                }
+                estimate = minEstimate(estimate, count);
+            }
+            return estimate;
+        } else if (node instanceof DbSearchConstraints.Intersection) {
+            long estimate = -1;
+            for (DbSearchConstraints child : node.getChildren()) {
+                estimate = minEstimate(estimate, estimateHitCount(child));
+            }
+            return estimate;
+        } else {
+            long total = 0;
+            for (DbSearchConstraints child : node.getChildren()) {
+                long count = estimateHitCount(child);
+                if (count < 0) {
+                    return -1;
+                }
+                total += count;
+            }
+            return total;
+        }
+    }
+
     @Override
     Set<QueryTarget> getQueryTargets() {
         return ImmutableSet.of(queryTarget);
@@ -520,6 +579,11 @@ public class DBQueryOperation extends QueryOperation {
                         } else {
                             executeMode = QueryExecuteMode.LUCENE_FIRST;
                         }
+                        if (context.getParams().isExplain()) {
+                            queryInfo.add(new ExplainQueryInfo(toQueryString(), executeMode.name(),
+                                    estimateHitCount(context.getMailbox()),
+                                    luceneOp != null ? luceneOp.getEstimatedHitCount() : -1));
+                        }
                     }
 
                     getNextChunk();
@@ -0,0 +1,63 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.index;
+
+import com.zimbra.common.soap.Element;
+import com.zimbra.common.soap.MailConstants;
+
+/**
+ * How one part of a search was executed, returned when the search is run with {@code explain="1"}.  Parts are listed
+ * in the order they were run; within an intersection the first one drives the others.
+ */
+public final class ExplainQueryInfo implements QueryInfo {
+    private final String query;
+    private final String mode;
+    private final long estimate;
+    private final long luceneEstimate;
+
+    /**
+     * @param query the part of the query string this operation handles
+     * @param mode how it was executed, e.g. {@code DB_FIRST}
+     * @param estimate the estimated number of DB hits, or -1 if unknown
+     * @param luceneEstimate the estimated number of Lucene hits, or -1 if unknown
+     */
+    public ExplainQueryInfo(String query, String mode, long estimate, long luceneEstimate) {
+        this.query = query;
+        this.mode = mode;
+        this.estimate = estimate;
+        this.luceneEstimate = luceneEstimate;
+    }
+
+    @Override
+    public Element toXml(Element parent) {
+        Element explain = parent.addElement(MailConstants.E_EXPLAIN);
+        explain.addAttribute("mode", mode);
+        if (estimate >= 0) {
+            explain.addAttribute("estimate", estimate);
+        }
+        if (luceneEstimate >= 0) {
+            explain.addAttribute("luceneEstimate", luceneEstimate);
+        }
+        explain.setText(query);
+        return explain;
+    }
+
+    @Override
+    public String toString() {
+        return "EXPLAIN(" + mode + "," + estimate + "," + luceneEstimate + "," + query + ")";
+    }
+}
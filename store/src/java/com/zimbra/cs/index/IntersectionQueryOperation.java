@@ -18,8 +18,12 @@ package com.zimbra.cs.index;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import com.google.common.collect.Sets;
@@ -639,9 +643,33 @@ public final class IntersectionQueryOperation extends CombiningQueryOperation {
             return operations.get(0);
         }
 
+        // Step 4: put the operation we expect to return the fewest hits first.  It drives the intersection -- the
+        // others are only stepped forward to the hits it returns -- and it is the first one begin() runs, so if it
+        // turns out to be empty we stop before running the rest.  Operations we can't estimate go last.
+        final Map<QueryOperation, Long> estimates = new IdentityHashMap<QueryOperation, Long>();
+        for (QueryOperation op : operations) {
+            long estimate = op.estimateHitCount(mbox);
+            estimates.put(op, estimate < 0 ? Long.MAX_VALUE : estimate);
+        }
+        Collections.sort(operations, new Comparator<QueryOperation>() {
+            @Override
+            public int compare(QueryOperation o1, QueryOperation o2) {
+                return Long.compare(estimates.get(o1), estimates.get(o2));
+            }
+        });
+
         return this;
     }
 
+    @Override
+    long estimateHitCount(Mailbox mbox) {
+        long estimate = -1;
+        for (QueryOperation op : operations) {
+            estimate = minEstimate(estimate, op.estimateHitCount(mbox));
+        }
+        return estimate;
+    }
+
     @Override
     String toQueryString() {
         StringBuilder ret = new StringBuilder("(");
@@ -48,6 +48,7 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.NoSuchDirectoryException;
 import org.apache.lucene.util.Version;
 
@@ -291,6 +292,43 @@ public final class LuceneIndex extends IndexStore {
         }
     }
 
+    /**
+     * Reopens the cached searcher, if any, from the writer. Only the segments that changed are opened.  If the writer
+     * has been closed meanwhile, the searcher is evicted instead, so that the next search opens the directory.
+     */
+    void refreshSearcher(IndexWriter indexWriter) throws IOException {
+        ZimbraIndexSearcher searcher = null;
+        if (mailbox.isGalSyncMailbox()) {
+            searcher = GAL_SEARCHER_CACHE.get(mailbox.getId());
+        } else {
+            searcher = SEARCHER_CACHE.getIfPresent(mailbox.getId());
+        }
+        if (searcher != null) {
+            ZimbraLuceneIndexReader ndxReader = (ZimbraLuceneIndexReader)searcher.getIndexReader();
+            IndexReader newReader;
+            try {
+                newReader = IndexReader.openIfChanged(ndxReader.getLuceneReader(), indexWriter, true);
+            } catch (AlreadyClosedException e) {
+                // the commit failed and the writer was closed; an NRT reader can't reopen without it either
+                ZimbraLog.index.debug("IndexWriter closed before the searcher could be refreshed; evicting it");
+                evict();
+                return;
+            }
+            if (newReader != null) {
+                if (mailbox.isGalSyncMailbox()) {
+                    //make sure that we close the previous value associated with the key
+                    IOUtil.closeQuietly(GAL_SEARCHER_CACHE.put(mailbox.getId(), new IndexSearcherImpl(newReader)));
+                } else {
+                    // Bug: 69870
+                    // No need to close the previous value associated with the key here.
+                    // CacheBuilder sends a callback using removalListener onRemoval(..)
+                    // which eventually closes IndexSearcher
+                    SEARCHER_CACHE.asMap().put(mailbox.getId(), new IndexSearcherImpl(newReader));
+                }
+            }
+        }
+    }
+
     private IndexReader openIndexReader(boolean tryRepair) throws IOException {
         try {
             return IndexReader.open(luceneDirectory, null, true, LC.zimbra_index_lucene_term_index_divisor.intValue());
@@ -389,7 +427,8 @@ public final class LuceneIndex extends IndexStore {
         READER_THROTTLE.acquireUninterruptibly();
         long start = System.currentTimeMillis();
         try {
-            searcher = new IndexSearcherImpl(openIndexReader(true));
+            IndexReader reader = openNearRealTimeReader();
+            searcher = new IndexSearcherImpl(reader != null ? reader : openIndexReader(true));
         } catch (IOException e) {
             // Handle the special case of trying to open a not-yet-created index, by opening for write and immediately
             // closing. Index directory should get initialized as a result.
@@ -418,6 +457,28 @@ public final class LuceneIndex extends IndexStore {
         return searcher;
     }
 
+    /**
+     * Opens a near-real-time reader from the live {@link IndexWriter}, if there is one. It shares the segment readers
+     * the writer already has open, so it's much cheaper than opening the directory, and it sees everything the writer
+     * has added.
+     *
+     * @return the reader, or null if no writer is open
+     */
+    private synchronized IndexReader openNearRealTimeReader() throws IOException {
+        IndexWriterRef ref = writerInfo.getWriterRef();
+        if (ref == null) {
+            return null;
+        }
+        ref.inc();
+        try {
+            return IndexReader.open(ref.get(), true);
+        } catch (AlreadyClosedException e) {
+            return null;
+        } finally {
+            ref.dec();
+        }
+    }
+
     /**
      * Check to see if it is OK for us to create an index in the specified directory.
      *
@@ -679,6 +740,9 @@ public final class LuceneIndex extends IndexStore {
         config.setMergeScheduler(new MergeScheduler());
         config.setMaxBufferedDocs(LC.zimbra_index_lucene_max_buffered_docs.intValue());
         config.setRAMBufferSizeMB(LC.zimbra_index_lucene_ram_buffer_size_kb.intValue() / 1024.0);
+        // keep segment readers open in the writer, so near-real-time readers can share them
+        config.setReaderPooling(true);
+        config.setReaderTermsIndexDivisor(LC.zimbra_index_lucene_term_index_divisor.intValue());
         if (LC.zimbra_index_lucene_merge_policy.booleanValue()) {
             LogDocMergePolicy policy = new LogDocMergePolicy();
             config.setMergePolicy(policy);
@@ -796,30 +860,13 @@ public final class LuceneIndex extends IndexStore {
 
         @Override
         public void close() throws IOException {
-            writer.index.commitWriter();
-            ZimbraIndexSearcher searcher = null;
-            if (writer.getIndex().mailbox.isGalSyncMailbox()) {
-                searcher = GAL_SEARCHER_CACHE.get(writer.getIndex().mailbox.getId());
-            } else {
-                searcher = SEARCHER_CACHE.getIfPresent(writer.getIndex().mailbox.getId());
-            }
-            if (searcher != null) {
-                ZimbraLuceneIndexReader ndxReader = (ZimbraLuceneIndexReader)searcher.getIndexReader();
-                IndexReader newReader = IndexReader.openIfChanged(ndxReader.getLuceneReader(), true);
-                if (newReader != null) {
-                    if (writer.getIndex().mailbox.isGalSyncMailbox()) {
-                        //make sure that we close the previous value associated with the key
-                        IOUtil.closeQuietly(GAL_SEARCHER_CACHE.put(writer.getIndex().mailbox.getId(),
-                                new IndexSearcherImpl(newReader)));
-                    } else {
-                        // Bug: 69870
-                        // No need to close the previous value associated with the key here.
-                        // CacheBuilder sends a callback using removalListener onRemoval(..)
-                        // which eventually closes IndexSearcher
-                        SEARCHER_CACHE.asMap().put(writer.getIndex().mailbox.getId(),
-                            new IndexSearcherImpl(newReader));
-                    }
-                }
+            // hold our own reference so the merge task can't close the writer while we refresh from it
+            writer.inc();
+            try {
+                writer.index.commitWriter();
+                writer.index.refreshSearcher(writer.get());
+            } finally {
+                writer.dec();
             }
         }
 
@@ -90,6 +90,7 @@ public final class LuceneQueryOperation extends QueryOperation {
     private int topDocsChunkSize = 2000; // how many hits to fetch per step in Lucene
     private ZimbraIndexSearcher searcher;
     private Sort sort;
+    private long estimatedHitCount = -1;
 
     /**
      * Adds the specified text clause at the top level.
@@ -228,26 +229,34 @@ public final class LuceneQueryOperation extends QueryOperation {
             return true;
         }
 
+        long start = System.currentTimeMillis();
+        try {
+            estimatedHitCount = estimateDocFreq(luceneQuery);
+        } catch (IOException e) {
+            return false;
+        }
         if (luceneQuery instanceof TermQuery) {
-            TermQuery query = (TermQuery) luceneQuery;
-            Term term = query.getTerm();
-            long start = System.currentTimeMillis();
-            try {
-                int freq = searcher.docFreq(term);
-                int docsCutoff = (int) (searcher.getIndexReader().numDocs() * DB_FIRST_TERM_FREQ_PERC);
-                ZimbraLog.search.debug("LuceneDocFreq freq=%d,cutoff=%d(%d%%),elapsed=%d",
-                        freq, docsCutoff, (int) (100 * DB_FIRST_TERM_FREQ_PERC), System.currentTimeMillis() - start);
-                if (freq > docsCutoff) {
-                    return true;
-                }
-            } catch (IOException e) {
-                return false;
+            int docsCutoff = (int) (searcher.getIndexReader().numDocs() * DB_FIRST_TERM_FREQ_PERC);
+            ZimbraLog.search.debug("LuceneDocFreq freq=%d,cutoff=%d(%d%%),elapsed=%d", estimatedHitCount,
+                    docsCutoff, (int) (100 * DB_FIRST_TERM_FREQ_PERC), System.currentTimeMillis() - start);
+            if (estimatedHitCount > docsCutoff) {
+                return true;
+            }
+        }
+        if (estimatedHitCount > 1000) {
+            // the DB side can be estimated from in-memory folder and tag counts, so try that before running the
+            // Lucene search and a DB count below
+            long dbEstimate = dbOp.estimateHitCount(context.getMailbox());
+            ZimbraLog.search.debug("EstimatedHits lucene<=%d,db<=%d", estimatedHitCount, dbEstimate);
+            if (dbEstimate >= 0 && dbEstimate < estimatedHitCount) {
+                return true; // run DB-FIRST
             }
         }
 
         try {
             //TODO count results using TotalHitCountCollector
             fetchFirstResults(1000); // some arbitrarily large initial size to fetch
+            estimatedHitCount = getTotalHitCount();
             if (getTotalHitCount() > 1000) { // also arbitrary, just to make very small searches run w/o extra DB check
                 //Bug: 68630
                 //Let's try to avoid the additional D/B lookup;
@@ -273,6 +282,34 @@ public final class LuceneQueryOperation extends QueryOperation {
         }
     }
 
+    /**
+     * Estimates the number of documents matching the query from the index term statistics: the document frequency
+     * of a single term, or of the rarest required clause of a boolean query.
+     *
+     * @return the estimate, or -1 for queries that can't be estimated this way
+     */
+    private long estimateDocFreq(Query query) throws IOException {
+        if (query instanceof TermQuery) {
+            return searcher.docFreq(((TermQuery) query).getTerm());
+        } else if (query instanceof BooleanQuery) {
+            long estimate = -1;
+            for (BooleanClause clause : ((BooleanQuery) query).clauses()) {
+                if (clause.getOccur() == Occur.MUST) {
+                    estimate = minEstimate(estimate, estimateDocFreq(clause.getQuery()));
+                }
+            }
+            return estimate;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the hit count estimated or counted by {@link #shouldExecuteDbFirst()}, or -1 if it has none.
+     */
+    long getEstimatedHitCount() {
+        return estimatedHitCount;
+    }
+
     private long getTotalItemCount(Set<Folder> folders) {
         long total = 0;
         for (Folder f : folders)
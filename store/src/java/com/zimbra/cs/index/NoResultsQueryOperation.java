@@ -122,6 +122,11 @@ public final class NoResultsQueryOperation extends QueryOperation {
         return this;
     }
 
+    @Override
+    long estimateHitCount(Mailbox mbox) {
+        return 0;
+    }
+
     @Override
     protected QueryOperation combineOps(QueryOperation other, boolean union) {
         return null;
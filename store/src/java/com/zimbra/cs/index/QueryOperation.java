@@ -267,6 +267,30 @@ public abstract class QueryOperation implements Cloneable, ZimbraQueryResults {
      */
     abstract QueryOperation optimize(Mailbox mbox) throws ServiceException;
 
+    /**
+     * Returns a rough estimate of the number of hits this operation can return, worked out from the folder and tag
+     * counts the mailbox already keeps in memory, so it costs no DB or index lookup.  Used by the optimizer to decide
+     * which operation drives an intersection.
+     *
+     * @return the estimate, or -1 if there's no cheap way to tell
+     */
+    long estimateHitCount(Mailbox mbox) {
+        return -1;
+    }
+
+    /**
+     * Returns the smaller of two {@link #estimateHitCount(Mailbox)} results, ignoring an unknown one.
+     */
+    static long minEstimate(long a, long b) {
+        if (a < 0) {
+            return b;
+        } else if (b < 0) {
+            return a;
+        } else {
+            return Math.min(a, b);
+        }
+    }
+
     /**
      * Called when optimize()ing a UNION or INTERSECTION -- see if two Ops can be expressed as one (e.g.
      * is:unread and in:inbox can both be expressed via one DBQueryOperation)
@@ -119,6 +119,7 @@ public final class SearchParams implements Cloneable, ZimbraSearchParams {
     private boolean prefetch = true;
     private Fetch fetch = Fetch.NORMAL;
     private boolean quick = false; // whether or not to skip the catch-up index prior to search
+    private boolean explain = false; // whether or not to return the query plan with the results
 
     public boolean isQuick() {
         return quick;
@@ -128,6 +129,14 @@ public final class SearchParams implements Cloneable, ZimbraSearchParams {
         quick = value;
     }
 
+    public boolean isExplain() {
+        return explain;
+    }
+
+    public void setExplain(boolean value) {
+        explain = value;
+    }
+
     public ZimbraSoapContext getRequestContext() {
         return requestContext;
     }
@@ -520,6 +529,9 @@ public final class SearchParams implements Cloneable, ZimbraSearchParams {
         if (quick) {
             el.addAttribute(MailConstants.A_QUICK, quick);
         }
+        if (explain) {
+            el.addAttribute(MailConstants.A_EXPLAIN, explain);
+        }
 
         if (getWantContent() != null) {
             el.addAttribute(MailConstants.A_WANT_CONTENT, getWantContent().toString());
@@ -550,6 +562,7 @@ public final class SearchParams implements Cloneable, ZimbraSearchParams {
         params.setQueryString(query);
         params.setInDumpster(MoreObjects.firstNonNull(soapParams.getInDumpster(), false));
         params.setQuick(MoreObjects.firstNonNull(soapParams.getQuick(), false));
+        params.setExplain(MoreObjects.firstNonNull(soapParams.getExplain(), false));
         String types = soapParams.getSearchTypes() == null ? soapParams.getGroupBy() : soapParams.getSearchTypes();
         if (Strings.isNullOrEmpty(types)) {
             params.setTypes(EnumSet.of(params.isQuick() ? MailItem.Type.MESSAGE : MailItem.Type.CONVERSATION));
@@ -653,6 +666,7 @@ public final class SearchParams implements Cloneable, ZimbraSearchParams {
         params.setQueryString(query);
         params.setInDumpster(request.getAttributeBool(MailConstants.A_IN_DUMPSTER, false));
         params.setQuick(request.getAttributeBool(MailConstants.A_QUICK, false));
+        params.setExplain(request.getAttributeBool(MailConstants.A_EXPLAIN, false));
         String types = request.getAttribute(MailConstants.A_SEARCH_TYPES, request.getAttribute(MailConstants.A_GROUPBY, null));
         if (Strings.isNullOrEmpty(types)) {
             params.setTypes(EnumSet.of(params.isQuick() ? MailItem.Type.MESSAGE : MailItem.Type.CONVERSATION));
@@ -876,6 +890,7 @@ public final class SearchParams implements Cloneable, ZimbraSearchParams {
             result.cursor = new Cursor(cursor);
         }
         result.inDumpster = inDumpster;
+        result.explain = explain;
         return result;
     }
 
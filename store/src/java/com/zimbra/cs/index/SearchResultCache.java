@@ -0,0 +1,371 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.index;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.Weigher;
+import com.zimbra.common.service.ServiceException;
+import com.zimbra.common.util.ZimbraLog;
+import com.zimbra.cs.account.Account;
+import com.zimbra.cs.mailbox.Mailbox;
+import com.zimbra.cs.mailbox.OperationContext;
+
+/**
+ * Per-mailbox cache of the sorted hit lists of recent searches, so that fetching the next page of a search, or
+ * running the same search again from another client, doesn't re-run the query.
+ * <p>
+ * Each entry holds the item IDs and sort values of a prefix of the results in compact arrays, keyed by the parsed
+ * query, everything else in {@link SearchParams} that changes which hits come back, and the mailbox change ID the
+ * search ran at.  The mailbox clears the cache on every committed change.  Reading past the end of a prefix runs
+ * the query and extends the entry, up to a quarter of the cache's capacity.  A request whose cursor points past the
+ * end of the entry runs the query with the cursor instead, since its range constraint reads only the next page.
+ * <p>
+ * Only searches by the mailbox owner over local items are cached, and text searches only once the index has caught
+ * up with the mailbox.  Anything whose hits can't be rebuilt from an item ID and sort value (remote hits, document
+ * revisions, matched MIME parts) ends the cached prefix.
+ */
+public final class SearchResultCache {
+
+    private final ConcurrentLinkedHashMap<String, Entry> cache;
+    /** hits a single entry may hold, so that one search can't take the whole cache */
+    private final int maxEntryHits;
+
+    public SearchResultCache(int maxHits) {
+        this.maxEntryHits = Math.max(maxHits / 4, 1);
+        if (maxHits > 0) {
+            cache = new ConcurrentLinkedHashMap.Builder<String, Entry>()
+                .maximumWeightedCapacity(maxHits)
+                .weigher(new Weigher<Entry>() {
+                    @Override
+                    public int weightOf(Entry value) {
+                        return Math.max(value.size, 1);
+                    }
+                })
+                .build();
+        } else {
+            cache = null;
+        }
+    }
+
+    /**
+     * Runs the query, or replays its results from the cache.
+     *
+     * @param changeId the mailbox change ID the search runs at
+     * @param indexCurrent whether every item in the mailbox has been indexed, so text searches can be cached
+     */
+    public ZimbraQueryResults search(ZimbraQuery query, int changeId, boolean indexCurrent) throws ServiceException {
+        String key = getKey(query, changeId, indexCurrent);
+        if (key == null) {
+            return query.execute();
+        }
+        SearchParams params = query.getParams();
+        Entry entry = cache.get(key);
+        if (entry == null) {
+            if (params.getCursor() != null) {
+                // a cursor narrows the query to a range of the results, so they can't be recorded from the top
+                return query.execute();
+            }
+            entry = Entry.EMPTY;
+        } else if (params.getCursor() != null &&
+                (params.getCursor().getEndSortValue() != null || entry.stopped || !isInside(entry, params))) {
+            // the replayed results would run past the end of the cursor range, or the page lies past what the entry
+            //   holds, and reading up to it from the top costs more than the cursor's range constraint
+            return query.execute();
+        }
+        ZimbraLog.search.debug("SearchResultCache %s key=%s,hits=%d,complete=%b",
+                entry == Entry.EMPTY ? "miss" : "hit", key, entry.size, entry.complete);
+        return new CachedQueryResults(this, key, changeId, entry, query);
+    }
+
+    /**
+     * Returns whether the cursor points into the entry, i.e. it sorts no later than the last hit of the entry.
+     */
+    private static boolean isInside(Entry entry, SearchParams params) throws ServiceException {
+        SearchParams.Cursor cursor = params.getCursor();
+        if (entry.size == 0 || cursor.getSortValue() == null) {
+            return false;
+        }
+        SortBy sort = params.getSortBy();
+        int last = entry.size - 1;
+        int cursorId = cursor.getItemId().getId();
+        String lastSortValue = entry.numericSorts != null ?
+                String.valueOf(entry.numericSorts[last]) : entry.stringSorts[last];
+        ZimbraQueryResults results = new EmptyQueryResults(params.getTypes(), sort, params.getFetchMode());
+        int comp;
+        try {
+            comp = new ResultsPager.CursorHit(results, cursor.getSortValue(), cursorId).compareTo(sort,
+                    new ResultsPager.CursorHit(results, lastSortValue, entry.ids[last]));
+        } catch (IllegalArgumentException e) { // malformed sort value, or a sort we can't compare here
+            return false;
+        }
+        if (comp != 0) {
+            return comp < 0;
+        }
+        // same sort value, so the item ID decides, as in ResultsPager
+        return sort.getDirection() == SortBy.Direction.DESC ? cursorId >= entry.ids[last] : cursorId <= entry.ids[last];
+    }
+
+    /**
+     * Returns the cache key for the query, or null if its results can't be cached.
+     */
+    private String getKey(ZimbraQuery query, int changeId, boolean indexCurrent) throws ServiceException {
+        if (cache == null) {
+            return null;
+        }
+        SearchParams params = query.getParams();
+        switch (params.getFetchMode()) {
+            case NORMAL:
+            case IDS:
+                break;
+            default: // the hits carry IMAP or modseq data we don't keep
+                return null;
+        }
+        if (params.isExplain() || (params.isQuick() && query.hasTextOperation()) ||
+                (!indexCurrent && query.hasTextOperation())) {
+            return null;
+        }
+        OperationContext octxt = query.getOperationContext();
+        Account authuser = octxt == null ? null : octxt.getAuthenticatedUser();
+        Mailbox mbox = query.getMailbox();
+        if (authuser != null && !authuser.getId().equals(mbox.getAccountId())) {
+            return null;
+        }
+        return new StringBuilder(query.toString())
+            .append('|').append(params.getTypes())
+            .append('|').append(params.getSortBy())
+            .append('|').append(params.getFetchMode())
+            .append('|').append(params.inDumpster())
+            .append('|').append(params.getIncludeTagDeleted())
+            .append('|').append(params.getIncludeTagMuted())
+            .append('|').append(params.getAllowableTaskStatuses())
+            .append('|').append(params.getCalItemExpandStart())
+            .append('|').append(params.getCalItemExpandEnd())
+            .append('|').append(changeId)
+            .toString();
+    }
+
+    void put(String key, Entry entry) {
+        if (entry.size > 0 || entry.complete) {
+            cache.put(key, entry);
+        }
+    }
+
+    int getMaxEntryHits() {
+        return maxEntryHits;
+    }
+
+    /**
+     * Drops all entries; called when the mailbox changes.
+     */
+    public void clear() {
+        if (cache != null && !cache.isEmpty()) {
+            cache.clear();
+        }
+    }
+
+    int size() {
+        return cache == null ? 0 : cache.size();
+    }
+
+    /**
+     * Immutable prefix of the results of a search.  Each hit is a kind, an item ID and a sort value; conversation
+     * hits also keep the IDs of the messages that matched.  Sort values are kept as longs for numeric sorts and as
+     * strings for the others.
+     */
+    static final class Entry {
+        static final Entry EMPTY = new Entry(new byte[0], new int[0], null, null, null, 0, false, false,
+                Collections.<QueryInfo>emptyList());
+
+        final byte[] kinds;
+        final int[] ids;
+        final long[] numericSorts;
+        final String[] stringSorts;
+        final int[][] conversationMessages;
+        final int size;
+        final boolean complete;
+        /** whether recording stopped before the end of the results, so the entry won't grow any further */
+        final boolean stopped;
+        final List<QueryInfo> info;
+
+        Entry(byte[] kinds, int[] ids, long[] numericSorts, String[] stringSorts, int[][] conversationMessages,
+                int size, boolean complete, boolean stopped, List<QueryInfo> info) {
+            this.kinds = kinds;
+            this.ids = ids;
+            this.numericSorts = numericSorts;
+            this.stringSorts = stringSorts;
+            this.conversationMessages = conversationMessages;
+            this.size = size;
+            this.complete = complete;
+            this.stopped = stopped;
+            this.info = info;
+        }
+    }
+
+    static final byte CONVERSATION = 1;
+    static final byte MESSAGE = 2;
+    static final byte CONTACT = 3;
+    static final byte NOTE = 4;
+    static final byte APPOINTMENT = 5;
+    static final byte TASK = 6;
+
+    /**
+     * Appends hits to a copy of an entry, until it reaches the size limit or meets a hit it can't keep.
+     */
+    static final class Recorder {
+        private final boolean numeric;
+        private final int limit;
+        private byte[] kinds;
+        private int[] ids;
+        private long[] numericSorts;
+        private String[] stringSorts;
+        private int[][] conversationMessages;
+        private int size;
+        private boolean complete = false;
+        private boolean stopped = false;
+
+        Recorder(Entry base, SortBy sort, int limit) {
+            this.limit = limit;
+            numeric = isNumeric(sort);
+            int capacity = Math.max(base.size * 2, 64);
+            size = base.size;
+            kinds = Arrays.copyOf(base.kinds, capacity);
+            ids = Arrays.copyOf(base.ids, capacity);
+            if (numeric) {
+                numericSorts = base.numericSorts == null ? new long[capacity] :
+                    Arrays.copyOf(base.numericSorts, capacity);
+            } else {
+                stringSorts = base.stringSorts == null ? new String[capacity] :
+                    Arrays.copyOf(base.stringSorts, capacity);
+            }
+            if (base.conversationMessages != null) {
+                conversationMessages = Arrays.copyOf(base.conversationMessages, capacity);
+            }
+        }
+
+        static boolean isNumeric(SortBy sort) {
+            switch (sort.getKey()) {
+                case ID:
+                case UNREAD:
+                case DATE:
+                case SIZE:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean isActive() {
+            return !stopped && !complete;
+        }
+
+        void setComplete() {
+            if (!stopped) {
+                complete = true;
+            }
+        }
+
+        /**
+         * Records the next hit, or stops recording if it can't be kept.
+         */
+        void add(ZimbraHit hit) throws ServiceException {
+            if (!isActive()) {
+                return;
+            }
+            if (size >= limit) {
+                stopped = true;
+                return;
+            }
+            byte kind;
+            int[] messages = null;
+            if (hit instanceof ConversationHit) {
+                kind = CONVERSATION;
+                Collection<MessageHit> msgHits = ((ConversationHit) hit).getMessageHits();
+                messages = new int[msgHits.size()];
+                int i = 0;
+                for (MessageHit msgHit : msgHits) {
+                    if (msgHit.getMatchedMimePartNames() != null) {
+                        stopped = true;
+                        return;
+                    }
+                    messages[i++] = msgHit.getItemId();
+                }
+            } else if (hit instanceof MessageHit) {
+                if (((MessageHit) hit).getMatchedMimePartNames() != null) {
+                    stopped = true;
+                    return;
+                }
+                kind = MESSAGE;
+            } else if (hit instanceof ContactHit) {
+                kind = CONTACT;
+            } else if (hit instanceof NoteHit) {
+                kind = NOTE;
+            } else if (hit instanceof TaskHit) {
+                kind = TASK;
+            } else if (hit instanceof CalendarItemHit) {
+                kind = APPOINTMENT;
+            } else {
+                stopped = true;
+                return;
+            }
+
+            if (size == ids.length) {
+                int capacity = size * 2;
+                kinds = Arrays.copyOf(kinds, capacity);
+                ids = Arrays.copyOf(ids, capacity);
+                if (numeric) {
+                    numericSorts = Arrays.copyOf(numericSorts, capacity);
+                } else {
+                    stringSorts = Arrays.copyOf(stringSorts, capacity);
+                }
+                if (conversationMessages != null) {
+                    conversationMessages = Arrays.copyOf(conversationMessages, capacity);
+                }
+            }
+            kinds[size] = kind;
+            ids[size] = hit.getItemId();
+            if (numeric) {
+                numericSorts[size] = ((Number) hit.sortValue).longValue();
+            } else {
+                stringSorts[size] = (String) hit.sortValue;
+            }
+            if (messages != null) {
+                if (conversationMessages == null) {
+                    conversationMessages = new int[ids.length][];
+                }
+                conversationMessages[size] = messages;
+            }
+            size++;
+        }
+
+        Entry toEntry(List<QueryInfo> info) {
+            return new Entry(Arrays.copyOf(kinds, size), Arrays.copyOf(ids, size),
+                    numeric ? Arrays.copyOf(numericSorts, size) : null,
+                    numeric ? null : Arrays.copyOf(stringSorts, size),
+                    conversationMessages == null ? null : Arrays.copyOf(conversationMessages, size),
+                    size, complete, stopped, info);
+        }
+    }
+}
@@ -331,6 +331,19 @@ public final class UnionQueryOperation extends CombiningQueryOperation {
         internalGetNext();
     }
 
+    @Override
+    long estimateHitCount(Mailbox mbox) {
+        long total = 0;
+        for (QueryOperation op : operations) {
+            long count = op.estimateHitCount(mbox);
+            if (count < 0) {
+                return -1;
+            }
+            total += count;
+        }
+        return total;
+    }
+
     @Override
     public List<QueryInfo> getResultInfo() {
         List<QueryInfo> result = new ArrayList<QueryInfo>();
@@ -752,6 +752,18 @@ public final class ZimbraQuery {
         return params;
     }
 
+    Mailbox getMailbox() {
+        return mailbox;
+    }
+
+    OperationContext getOperationContext() {
+        return octxt;
+    }
+
+    SoapProtocol getResponseProtocol() {
+        return protocol;
+    }
+
     /**
      * Runs the search and gets an open result set.
      *
@@ -48,6 +48,8 @@ public abstract class ZLdapFilterFactory extends ZLdapElement {
         ACCOUNT_BY_FOREIGN_PRINCIPAL(SINGLETON.accountByForeignPrincipal("{FOREIGN-PRINCIPAL}")),
         ACCOUNT_BY_MEMBEROF(SINGLETON.accountByMemberOf("{DYNAMIC-GROUP-ID}")),
         ACCOUNT_BY_NAME(SINGLETON.accountByName("{ACCOUNT-NAME}")),
+        ACCOUNTS_BY_IDS(SINGLETON.accountsByIds(Lists.newArrayList("{ACCOUNT-ID-1}", "{ACCOUNT-ID-2}", "..."))),
+        ACCOUNTS_BY_NAMES(SINGLETON.accountsByNames(Lists.newArrayList("{ACCOUNT-NAME-1}", "{ACCOUNT-NAME-2}", "..."))),
         ACCOUNTS_BY_GRANTS(SINGLETON.accountsByGrants(Lists.newArrayList("{GRANTEE-ID-1}", "{GRANTEE-ID-2}", "..."), true, true)),
         ACCOUNTS_HOMED_ON_SERVER(SINGLETON.accountsHomedOnServer("{SERVER-SERVICE-HOSTNAME}")),
         ACCOUNTS_HOMED_ON_SERVER_ACCOUNTS_ONLY(SINGLETON.accountsHomedOnServerAccountsOnly("{SERVER-SERVICE-HOSTNAME}")),
@@ -333,6 +335,8 @@ public abstract class ZLdapFilterFactory extends ZLdapElement {
     public abstract ZLdapFilter accountById(String id);
     public abstract ZLdapFilter accountByMemberOf(String dynGroupId);
     public abstract ZLdapFilter accountByName(String name);
+    public abstract ZLdapFilter accountsByIds(Collection<String> ids);
+    public abstract ZLdapFilter accountsByNames(Collection<String> names);
     public abstract ZLdapFilter adminAccountByRDN(String namingRdnAttr, String name);
 
     public abstract ZLdapFilter accountsHomedOnServer(String serverServiceHostname);
@@ -461,6 +461,33 @@ public class UBIDLdapFilterFactory extends ZLdapFilterFactory {
                         FILTER_ALL_ACCOUNTS));
     }
 
+    @Override
+    public ZLdapFilter accountsByIds(Collection<String> ids) {
+        List<Filter> filters = Lists.newArrayList();
+        for (String id : ids) {
+            filters.add(Filter.createEqualityFilter(Provisioning.A_zimbraId, id));
+        }
+        return new UBIDLdapFilter(
+                FilterId.ACCOUNTS_BY_IDS,
+                Filter.createANDFilter(
+                        Filter.createORFilter(filters),
+                        FILTER_ALL_ACCOUNTS));
+    }
+
+    @Override
+    public ZLdapFilter accountsByNames(Collection<String> names) {
+        List<Filter> filters = Lists.newArrayList();
+        for (String name : names) {
+            filters.add(Filter.createEqualityFilter(Provisioning.A_zimbraMailDeliveryAddress, name));
+            filters.add(Filter.createEqualityFilter(Provisioning.A_zimbraMailAlias, name));
+        }
+        return new UBIDLdapFilter(
+                FilterId.ACCOUNTS_BY_NAMES,
+                Filter.createANDFilter(
+                        Filter.createORFilter(filters),
+                        FILTER_ALL_ACCOUNTS));
+    }
+
     @Override
     public ZLdapFilter adminAccountByRDN(String namingRdnAttr, String name) {
         return new UBIDLdapFilter(
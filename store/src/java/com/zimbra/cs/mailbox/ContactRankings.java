@@ -156,9 +156,9 @@ public class ContactRankings {
             config = new Metadata();
             mbox.setConfig(null, CONFIG_KEY_CONTACT_RANKINGS, config);
         }
-        for (Map.Entry<Object, Object> entry : config.map.entrySet()) {
-            if (entry.getValue() instanceof Map) {
-                Map<?, ?> m = (Map<?, ?>) entry.getValue();
+        for (Map.Entry<String, ?> entry : config.asMap().entrySet()) {
+            if (entry.getValue() instanceof Metadata) {
+                Map<?, ?> m = ((Metadata) entry.getValue()).map;
                 ContactEntry contact = new ContactEntry();
                 contact.mEmail = ((String) entry.getKey()).toLowerCase();
                 Long num = (Long) m.get(KEY_RANKING);
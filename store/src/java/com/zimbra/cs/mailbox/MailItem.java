@@ -452,6 +452,7 @@ public abstract class MailItem implements Comparable<MailItem>, ScheduledTaskRes
         private static final String FN_MOD_METADATA = "modm";
         private static final String FN_MOD_CONTENT  = "modc";
         private static final String FN_DATE_CHANGED = "dc";
+        private static final String FN_UUID         = "uuid";
 
         Metadata serialize() {
             Metadata meta = new Metadata();
@@ -475,6 +476,7 @@ public abstract class MailItem implements Comparable<MailItem>, ScheduledTaskRes
             meta.put(FN_MOD_METADATA, modMetadata);
             meta.put(FN_MOD_CONTENT, modContent);
             meta.put(FN_DATE_CHANGED, dateChanged);
+            meta.put(FN_UUID, uuid);
             return meta;
         }
 
@@ -500,6 +502,7 @@ public abstract class MailItem implements Comparable<MailItem>, ScheduledTaskRes
             this.modMetadata = (int) meta.getLong(FN_MOD_METADATA, 0);
             this.modContent = (int) meta.getLong(FN_MOD_CONTENT, 0);
             this.dateChanged = (int) meta.getLong(FN_DATE_CHANGED, 0);
+            this.uuid = meta.get(FN_UUID, null);
         }
 
         @Override
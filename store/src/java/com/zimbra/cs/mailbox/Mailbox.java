@@ -21,7 +21,6 @@ import java.io.InputStream;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
-import java.lang.ref.SoftReference;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -57,6 +56,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
 import com.zimbra.client.ZFolder;
 import com.zimbra.client.ZMailbox;
 import com.zimbra.client.ZMailbox.Options;
@@ -597,16 +597,37 @@ public class Mailbox implements MailboxStore {
         }
     }
 
+    /**
+     * Two-tier cache of the mailbox's non-folder, non-tag items.  The first tier holds live
+     * {@code MailItem}s on the heap and is kept to a bounded size by {@link Mailbox#trimItemCache()};
+     * items trimmed from it are spilled into the {@link OffHeapItemCache} shared by all mailboxes,
+     * and are rebuilt from there (rather than from the database) the next time they're requested.
+     * An item is only ever present in one of the two tiers.
+     */
     private static class ItemCache {
         private final Map<Integer /* id */, MailItem> mapById;
         private final Map<String /* uuid */, Integer /* id */> uuid2id;
         private final Mailbox mbox;
+        private final OffHeapItemCache offHeap;
+        private volatile int generation;
         private boolean isAlwaysOn = false;
 
         public ItemCache(Mailbox mbox) {
-            mapById = new ConcurrentLinkedHashMap.Builder<Integer, MailItem>().maximumWeightedCapacity(
-                            MAX_ITEM_CACHE_WITH_LISTENERS).build();
+            this.offHeap = OffHeapItemCache.getInstance();
+            this.generation = offHeap.newGeneration();
             uuid2id = new ConcurrentHashMap<String, Integer>(MAX_ITEM_CACHE_WITH_LISTENERS);
+            mapById = new ConcurrentLinkedHashMap.Builder<Integer, MailItem>().maximumWeightedCapacity(
+                            MAX_ITEM_CACHE_WITH_LISTENERS).listener(new EvictionListener<Integer, MailItem>() {
+                                @Override
+                                public void onEviction(Integer id, MailItem item) {
+                                    // LRU overflow of the on-heap tier goes to the off-heap tier as well
+                                    String uuid = item.getUuid();
+                                    if (uuid != null) {
+                                        uuid2id.remove(uuid);
+                                    }
+                                    offHeap.put(generation, item);
+                                }
+                            }).build();
             this.mbox = mbox;
             this.isAlwaysOn = Zimbra.isAlwaysOn();
         }
@@ -621,6 +642,7 @@ public class Mailbox implements MailboxStore {
             } else {
                 int id = item.getId();
                 mapById.put(id, item);
+                offHeap.remove(generation, id);
                 String uuid = item.getUuid();
                 if (uuid != null) {
                     uuid2id.put(uuid, id);
@@ -638,7 +660,14 @@ public class Mailbox implements MailboxStore {
                 }
                 return item;
             } else {
-                return mapById.get(id);
+                MailItem item = mapById.get(id);
+                if (item == null) {
+                    item = offHeap.take(generation, mbox, id);
+                    if (item != null) {
+                        put(item);
+                    }
+                }
+                return item;
             }
         }
 
@@ -672,6 +701,7 @@ public class Mailbox implements MailboxStore {
                 }
                 return removed;
             } else {
+                offHeap.remove(generation, id);
                 MailItem removed = mapById.remove(id);
                 if (removed != null) {
                     String uuid = removed.getUuid();
@@ -683,6 +713,38 @@ public class Mailbox implements MailboxStore {
             }
         }
 
+        /**
+         * Moves the item from the on-heap tier to the shared off-heap tier.  Spilled items are
+         * only found again by id; lookups by uuid fall through to the database.
+         */
+        public void spill(MailItem item) {
+            if (isAlwaysOn || !offHeap.isEnabled()) {
+                remove(item);
+                return;
+            }
+            MailItem removed = mapById.remove(item.getId());
+            if (removed != null) {
+                String uuid = removed.getUuid();
+                if (uuid != null) {
+                    uuid2id.remove(uuid);
+                }
+                offHeap.put(generation, removed);
+            }
+        }
+
+        /**
+         * Removes the children of {@code parentId} from the off-heap tier; the ones in the on-heap
+         * tier are left to the caller.
+         *
+         * @return the ids of the removed items
+         */
+        public List<Integer> removeSpilledChildren(int parentId) {
+            if (isAlwaysOn) {
+                return Collections.emptyList();
+            }
+            return offHeap.removeChildren(generation, parentId);
+        }
+
         public boolean contains(MailItem item) {
             if (isAlwaysOn) {
                 try {
@@ -696,6 +758,7 @@ public class Mailbox implements MailboxStore {
             }
         }
 
+        /** Returns the items in the on-heap tier. */
         public Collection<MailItem> values() {
             if (isAlwaysOn) {
                 // return empty list
@@ -705,6 +768,7 @@ public class Mailbox implements MailboxStore {
             }
         }
 
+        /** Returns the number of items in the on-heap tier. */
         public int size() {
             if (isAlwaysOn) {
                 return 0;
@@ -714,6 +778,8 @@ public class Mailbox implements MailboxStore {
         }
 
         public void clear() {
+            // abandon everything in the off-heap tier; those entries will age out of the LRU
+            generation = offHeap.newGeneration();
             mapById.clear();
             uuid2id.clear();
         }
@@ -743,7 +809,7 @@ public class Mailbox implements MailboxStore {
 
     private FolderCache mFolderCache;
     private Map<Object, Tag> mTagCache;
-    private SoftReference<ItemCache> mItemCache = new SoftReference<ItemCache>(null);
+    private volatile ItemCache mItemCache;
     private final Map<String, Integer> mConvHashes = new ConcurrentLinkedHashMap.Builder<String, Integer>()
                     .maximumWeightedCapacity(MAX_MSGID_CACHE).build();
     private final Map<String, Integer> mSentMessageIDs = new ConcurrentLinkedHashMap.Builder<String, Integer>()
@@ -1815,11 +1881,10 @@ public class Mailbox implements MailboxStore {
             recorder.setChangeId(getOperationChangeID());
         }
 
-        // keep a hard reference to the item cache to avoid having it GCed during the op
-        ItemCache cache = mItemCache.get();
+        ItemCache cache = mItemCache;
         if (cache == null) {
             cache = new ItemCache(this);
-            mItemCache = new SoftReference<ItemCache>(cache);
+            mItemCache = cache;
             ZimbraLog.cache.debug("created a new MailItem cache for mailbox " + getId());
         }
         currentChange().itemCache = cache;
@@ -1984,7 +2049,7 @@ public class Mailbox implements MailboxStore {
     private void clearItemCache() {
         if (currentChange().isActive()) {
             currentChange().itemCache.clear();
-        } else {
+        } else if (mItemCache != null) {
             mItemCache.clear();
         }
         try {
@@ -2071,6 +2136,10 @@ public class Mailbox implements MailboxStore {
 
         Collection<? extends MailItem> cached;
         if (!(parent instanceof Folder)) {
+            // children spilled to the off-heap tier aren't in values()
+            for (Integer id : getItemCache().removeSpilledChildren(parent.getId())) {
+                MessageCache.purge(this, id);
+            }
             cached = getItemCache().values();
         } else if (mFolderCache != null) {
             cached = mFolderCache.values();
@@ -2787,7 +2856,7 @@ public class Mailbox implements MailboxStore {
         }
         assert (currentChange().depth == 0);
 
-        ItemCache cache = mItemCache.get();
+        ItemCache cache = mItemCache;
         FolderCache folders = mFolderCache == null || Collections.disjoint(pms.changedTypes, FOLDER_TYPES) ? mFolderCache
                         : snapshotFolders();
 
@@ -2875,6 +2944,12 @@ public class Mailbox implements MailboxStore {
 
     public MailItem getItemById(OperationContext octxt, int id, MailItem.Type type, boolean fromDumpster)
                     throws ServiceException {
+        if (!fromDumpster) {
+            MailItem item = getCachedItemOptimistically(octxt, id, type);
+            if (item != null) {
+                return item;
+            }
+        }
         boolean success = false;
         try {
             // tag/folder caches are populated in beginTransaction...
@@ -2891,6 +2966,37 @@ public class Mailbox implements MailboxStore {
         return getItemById(id, type, false);
     }
 
+    /**
+     * Looks up a folder or tag without taking the mailbox lock, validating against {@link MailboxLock#validate(long)}
+     * that no writer got in while we were reading.  Only the owner's own lookups (or those with no authenticated user)
+     * are served this way, since they need no ACL check.
+     *
+     * @return the cached item, or {@code null} if the caller must fall back to a locked read transaction
+     */
+    private MailItem getCachedItemOptimistically(OperationContext octxt, int id, MailItem.Type type) {
+        if (!isCachedType(type) || id < 0 || currentChange().isActive()) {
+            return null;
+        }
+        Account authuser = octxt == null ? null : octxt.getAuthenticatedUser();
+        if (authuser != null && !authuser.getId().equals(getAccountId())) {
+            return null;
+        }
+        long stamp = lock.tryOptimisticRead();
+        if (stamp == 0L) {
+            return null;
+        }
+        MailItem item = null;
+        FolderCache folders = mFolderCache;
+        Map<Object, Tag> tags = mTagCache;
+        if (maintenance == null && !requiresWriteLock() && folders != null && tags != null) {
+            item = type == MailItem.Type.TAG ? tags.get(id) : folders.get(id);
+            if (item != null && !MailItem.isAcceptableType(type, MailItem.Type.of(item.mData.type))) {
+                item = null;
+            }
+        }
+        return lock.validate(stamp) ? item : null;
+    }
+
     // Returns true if the item in dumpster is visible to the user.
     // Item is hidden from non-admin user if it is too old or is a spam.
     private boolean isVisibleInDumpster(MailItem item) throws ServiceException {
@@ -3628,7 +3734,7 @@ public class Mailbox implements MailboxStore {
     public Pair<List<ImapMessage>, Boolean> openImapFolder(OperationContext octxt, int folderId, Integer limit, Integer cursorId) throws ServiceException {
         boolean success = false;
         try {
-            beginTransaction("openImapFolder", octxt);
+            beginReadTransaction("openImapFolder", octxt);
             Folder folder = getFolderById(folderId);
             Pair<List<ImapMessage>, Boolean> i4list = DbMailItem.loadImapFolder(folder, limit, cursorId);
             success = true;
@@ -9909,6 +10015,7 @@ public class Mailbox implements MailboxStore {
             if (change.changeId != MailboxChange.NO_CHANGE && change.changeId > mData.lastChangeId) {
                 mData.lastChangeId = change.changeId;
                 mData.lastChangeDate = change.timestamp;
+                index.clearSearchResultCache();
             }
             if (change.accessed != MailboxChange.NO_CHANGE) {
                 mData.lastWriteDate = change.accessed;
@@ -10017,6 +10124,24 @@ public class Mailbox implements MailboxStore {
         }
     }
 
+    /** Moves an item and its cached children from the on-heap item cache to the off-heap tier. */
+    private void spill(ItemCache cache, MailItem item) {
+        cache.spill(item);
+        if (item.canHaveChildren()) {
+            int parentId = item.getId();
+            List<MailItem> children = new ArrayList<MailItem>();
+            for (MailItem cached : cache.values()) {
+                if (cached.getParentId() == parentId) {
+                    children.add(cached);
+                }
+            }
+            for (MailItem child : children) {
+                spill(cache, child);
+            }
+        }
+        ZimbraLog.cache.debug("spilled %s %d in mailbox %d", item.getType(), item.getId(), getId());
+    }
+
     private void trimItemCache() {
         try {
             int sizeTarget = mListeners.isEmpty() ? MAX_ITEM_CACHE_WITHOUT_LISTENERS : MAX_ITEM_CACHE_WITH_LISTENERS;
@@ -10043,16 +10168,12 @@ public class Mailbox implements MailboxStore {
                     break;
                 }
             }
-            // trim the excess; note that "uncache" can cascade and take out child items
+            // trim the excess into the off-heap tier; note that this cascades and takes out child items
             while (--i >= 0) {
                 if (cache.size() <= sizeTarget) {
                     return;
                 }
-
-                try {
-                    uncache(overflow[i]);
-                } catch (ServiceException e) {
-                }
+                spill(cache, overflow[i]);
             }
         } catch (RuntimeException e) {
             ZimbraLog.mailbox.error("ignoring error during item cache trim", e);
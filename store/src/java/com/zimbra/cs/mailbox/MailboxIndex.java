@@ -18,15 +18,23 @@ package com.zimbra.cs.mailbox;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.SynchronousQueue;
@@ -65,6 +73,7 @@ import com.zimbra.cs.index.LuceneFields;
 import com.zimbra.cs.index.LuceneIndex;
 import com.zimbra.cs.index.ReSortingQueryResults;
 import com.zimbra.cs.index.SearchParams;
+import com.zimbra.cs.index.SearchResultCache;
 import com.zimbra.cs.index.SortBy;
 import com.zimbra.cs.index.ZimbraAnalyzer;
 import com.zimbra.cs.index.ZimbraIndexReader.TermFieldEnumeration;
@@ -95,6 +104,13 @@ public final class MailboxIndex {
     private static final ExecutorService REINDEX_EXECUTOR = new ThreadPoolExecutor(
             0, LC.zimbra_reindex_threads.intValue(), 0L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
             new ThreadFactoryBuilder().setNameFormat("ReIndex-%d").setDaemon(true).build());
+    // Fetching an item and generating its index documents (MIME parsing, text extraction) is the bulk of the cost of
+    // batch indexing, so it's spread over a pool shared by all mailboxes. Null if tokenizing is done inline.
+    private static final ExecutorService TOKENIZER_EXECUTOR = LC.zimbra_index_tokenizer_threads.intValue() > 0 ?
+            Executors.newFixedThreadPool(LC.zimbra_index_tokenizer_threads.intValue(),
+                    new ThreadFactoryBuilder().setNameFormat("IndexTokenizer-%d").setDaemon(true).build()) : null;
+    // items each batch keeps in flight on the tokenizer pool; enough to keep the pool busy while one chunk commits
+    private static final int TOKENIZER_LOOKAHEAD = LC.zimbra_index_tokenizer_threads.intValue() * 2;
 
     private volatile long lastFailedTime = -1;
     // Only one thread may run index at a time.
@@ -107,6 +123,7 @@ public final class MailboxIndex {
     // current compact-indexing operation for this mailbox, or NULL if a compact-index is not in progress.
     private volatile CompactIndexTask compactIndex;
     private volatile SetMultimap<MailItem.Type, Integer> deferredIds; // guarded by IndexHelper
+    private final SearchResultCache resultCache = new SearchResultCache(LC.search_result_cache_hits.intValue());
     boolean indexingSuspended = false;
     int numMaybeIndexDeferredItemsCalls = 0;
 
@@ -162,6 +179,8 @@ public final class MailboxIndex {
         assert(mailbox.lock.isUnlocked());
         assert(octx != null);
 
+        // read before the search runs, so that the cached results are never newer than their key
+        int changeId = mailbox.getLastChangeID();
         ZimbraQuery query = new ZimbraQuery(octx, proto, mailbox, params);
         Set<MailItem.Type> types = toIndexTypes(params.getTypes());
         // no need to index if the search doesn't involve Lucene
@@ -173,7 +192,8 @@ public final class MailboxIndex {
                 ZimbraLog.index.error("Failed to index deferred items", e);
             }
         }
-        return search(query);
+        boolean indexCurrent = !query.hasTextOperation() || (!isReIndexInProgress() && getDeferredCount(types) == 0);
+        return search(query, changeId, indexCurrent);
     }
 
     public ZimbraQueryResults search(OperationContext octxt, String queryString, Set<MailItem.Type> types,
@@ -200,7 +220,7 @@ public final class MailboxIndex {
         return search(octxt, queryString, types, sortBy, chunkSize, false);
     }
 
-    private ZimbraQueryResults search(ZimbraQuery zq) throws ServiceException {
+    private ZimbraQueryResults search(ZimbraQuery zq, int changeId, boolean indexCurrent) throws ServiceException {
         SearchParams params = zq.getParams();
         ZimbraLog.search.debug("query: %s", params.getQueryString());
         ZimbraLog.searchstat.debug("query: %s", zq.toSanitizedtring());
@@ -243,7 +263,7 @@ public final class MailboxIndex {
                 break;
         }
 
-        ZimbraQueryResults results = zq.execute();
+        ZimbraQueryResults results = resultCache.search(zq, changeId, indexCurrent);
         if (isTaskSort) {
             results = new ReSortingQueryResults(results, originalSort, null);
         }
@@ -253,6 +273,13 @@ public final class MailboxIndex {
         return results;
     }
 
+    /**
+     * Drops the cached results of earlier searches; called whenever the mailbox changes.
+     */
+    void clearSearchResultCache() {
+        resultCache.clear();
+    }
+
     /**
      * Returns true if any of the specified email addresses exists in contacts, otherwise false.
      */
@@ -400,6 +427,17 @@ public final class MailboxIndex {
             long start = System.currentTimeMillis();
             Collection<Integer> ids = getDeferredIds(types);
             indexItemList(ids, status);
+            // Items deferred while we were busy would otherwise wait for the next trigger, which is skipped as long as
+            // this pass holds the lock. Coalesce them into this pass while it keeps making progress.
+            int succeeded = status.getProcessed() - status.getFailed();
+            while (!wait && !indexingSuspended && lastFailedTime < 0 && succeeded > 0 &&
+                    getDeferredCount(types) >= getBatchThreshold()) {
+                int before = status.getProcessed() - status.getFailed();
+                ids = getDeferredIds(types);
+                status.setTotal(status.getTotal() + ids.size());
+                indexItemList(ids, status, false);
+                succeeded = status.getProcessed() - status.getFailed() - before;
+            }
 
             long elapsed = System.currentTimeMillis() - start;
             ZimbraLog.index.info("Batch complete processed=%d,failed=%d,elapsed=%d (%.2f items/sec)",
@@ -714,9 +752,15 @@ public final class MailboxIndex {
      * @throws ServiceException {@link ServiceException#INTERRUPTED} if {@link #cancelReIndex()} is called
      */
     private void indexItemList(Collection<Integer> ids, BatchStatus status) throws ServiceException {
+        indexItemList(ids, status, true);
+    }
+
+    private void indexItemList(Collection<Integer> ids, BatchStatus status, boolean setTotal) throws ServiceException {
         assert(mailbox.lock.isUnlocked());
 
-        status.setTotal(ids.size());
+        if (setTotal) {
+            status.setTotal(ids.size());
+        }
         if (ids.isEmpty()) {
             return;
         }
@@ -725,81 +769,212 @@ public final class MailboxIndex {
         List<Mailbox.IndexItemEntry> chunk = new ArrayList<Mailbox.IndexItemEntry>();
         long chunkByteSize = 0;
         int i = 0;
-        for (int id : ids) {
-            i++;
-            status.addProcessed(1);
-
-            // Fetch the item and generate the list of Lucene documents to index. Do this without holding the Mailbox
-            // lock. Once we've accumulated a "chunk" of items, do a mailbox transaction to actually add them to the
-            // index.
-            ZimbraLog.index.debug("Tokenizing id=%d", id);
-            MailItem item = null;
-            try {
-                mailbox.beginReadTransaction("IndexItemList-Fetch", null);
-                item = mailbox.getItemById(id, MailItem.Type.UNKNOWN, false);
-            } catch (MailServiceException.NoSuchItemException e) { // fallback to dumpster
-                try {
-                    item = mailbox.getItemById(id, MailItem.Type.UNKNOWN, true);
-                } catch (MailServiceException.NoSuchItemException again) { // The item has just been deleted.
-                    ZimbraLog.index.debug("deferred item no longer exist id=%d", id);
-                    removeDeferredId(id);
-                    continue;
+        // Fetch the items and generate their Lucene documents in parallel on the tokenizer pool, without holding the
+        // Mailbox lock, a few items ahead of the one being added to the chunk. Once we've accumulated a "chunk" of
+        // items, do a mailbox transaction to actually add them to the index.
+        OrderedWindow<Tokenized> window = new OrderedWindow<Tokenized>(TOKENIZER_EXECUTOR, TOKENIZER_LOOKAHEAD);
+        Iterator<Integer> it = ids.iterator();
+        try {
+            while (it.hasNext() || !window.isEmpty()) {
+                while (it.hasNext() && !window.isFull()) {
+                    window.submit(tokenizeTask(it.next()));
                 }
-            } catch (MailServiceException e) {
-                // fetch without metadata because reindex will regenerate metadata
-                if (MailServiceException.INVALID_METADATA.equals(e.getCode()) && isReIndexInProgress()) {
-                    UnderlyingData ud = DbMailItem.getById(mailbox, id, MailItem.Type.UNKNOWN, false);
-                    ud.metadata = null; // ignore corrupted metadata
-                    item = mailbox.getItem(ud);
-                } else {
-                    throw e;
+                Tokenized tokenized = nextTokenized(window);
+                i++;
+                status.addProcessed(1);
+                if (tokenized.failed) {
+                    status.addFailed(1);
+                } else if (tokenized.entry != null) {
+                    chunk.add(tokenized.entry);
+                    chunkByteSize += tokenized.entry.item.getSize();
                 }
-            } catch (Exception e) {
-                ZimbraLog.index.warn("Failed to fetch deferred item id=%d", id, e);
-                status.addFailed(1);
-                continue;
-            } finally {
-                mailbox.endTransaction(item != null);
-            }
-            try {
-                chunk.add(new Mailbox.IndexItemEntry(item, item.generateIndexData()));
-            } catch (MailItem.TemporaryIndexingException e) {
-                ZimbraLog.index.warn("Temporary index failure id=%d", id, e);
-                lastFailedTime = System.currentTimeMillis();
-                status.addFailed(1);
-                continue;
-            }
-            chunkByteSize += item.getSize();
 
-            if (i == ids.size() || chunkByteSize > MAX_TX_BYTES || chunk.size() >= MAX_TX_ITEMS) {
-                // we have a chunk of items and their corresponding index data -- add them to the index
-                try {
-                    ZimbraLog.index.debug("Batch progress %d/%d", i, ids.size());
+                if (!chunk.isEmpty() &&
+                        (i == ids.size() || chunkByteSize > MAX_TX_BYTES || chunk.size() >= MAX_TX_ITEMS)) {
+                    // we have a chunk of items and their corresponding index data -- add them to the index
+                    try {
+                        ZimbraLog.index.debug("Batch progress %d/%d", i, ids.size());
 
-                    if (status.isCancelled()) {
-                        throw ServiceException.INTERRUPTED("cancelled");
-                    }
+                        if (status.isCancelled()) {
+                            throw ServiceException.INTERRUPTED("cancelled");
+                        }
 
-                    try {
-                        boolean success = false;
                         try {
-                            mailbox.beginTransaction("IndexItemList-Commit", null);
-                            for (Mailbox.IndexItemEntry entry : chunk) {
-                                mailbox.addIndexItemToCurrentChange(entry);
+                            boolean success = false;
+                            try {
+                                mailbox.beginTransaction("IndexItemList-Commit", null);
+                                for (Mailbox.IndexItemEntry entry : chunk) {
+                                    mailbox.addIndexItemToCurrentChange(entry);
+                                }
+                                success = true;
+                            } finally {
+                                mailbox.endTransaction(success);
                             }
-                            success = true;
-                        } finally {
-                            mailbox.endTransaction(success);
+                        } catch (ServiceException e) {
+                            ZimbraLog.index.warn("Failed to index chunk=%s", chunk, e);
+                            status.addFailed(chunk.size());
                         }
-                    } catch (ServiceException e) {
-                        ZimbraLog.index.warn("Failed to index chunk=%s", chunk, e);
-                        status.addFailed(chunk.size());
+                    } finally {
+                        chunk.clear();
+                        chunkByteSize = 0;
                     }
+                }
+            }
+        } finally {
+            window.cancel();
+        }
+    }
+
+    /**
+     * Outcome of fetching one item and generating its index data.
+     */
+    private static final class Tokenized {
+        static final Tokenized SKIPPED = new Tokenized(null, false);
+        static final Tokenized FAILED = new Tokenized(null, true);
+
+        final Mailbox.IndexItemEntry entry;
+        final boolean failed;
+
+        Tokenized(Mailbox.IndexItemEntry entry, boolean failed) {
+            this.entry = entry;
+            this.failed = failed;
+        }
+    }
+
+    private Callable<Tokenized> tokenizeTask(final int id) {
+        return new Callable<Tokenized>() {
+            @Override
+            public Tokenized call() throws ServiceException {
+                ZimbraLog.addMboxToContext(mailbox.getId());
+                try {
+                    return tokenize(id);
                 } finally {
-                    chunk.clear();
-                    chunkByteSize = 0;
+                    ZimbraLog.clearContext();
                 }
             }
+        };
+    }
+
+    /**
+     * Waits for the next item of the window, in the order the items were submitted.
+     *
+     * @return {@link Tokenized#FAILED} if tokenizing the item threw anything but a {@link ServiceException}
+     */
+    private static Tokenized nextTokenized(OrderedWindow<Tokenized> window) throws ServiceException {
+        try {
+            return window.next();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ServiceException) {
+                throw (ServiceException) cause;
+            } else if (cause instanceof OutOfMemoryError) {
+                Zimbra.halt("out of memory", cause);
+            }
+            ZimbraLog.index.warn("Failed to tokenize deferred item", cause);
+            return Tokenized.FAILED;
+        } catch (InterruptedException e) {
+            throw ServiceException.INTERRUPTED("tokenizing deferred items");
+        }
+    }
+
+    /**
+     * Runs tasks on an executor, or inline if there is none, with at most a fixed number outstanding, and hands their
+     * results back in the order the tasks were submitted.  Bounds the number of results, such as the Lucene documents
+     * of whole messages, that are held between being computed and being consumed.  Not thread safe.
+     */
+    static final class OrderedWindow<T> {
+        private final ExecutorService executor;
+        private final int limit;
+        private final Deque<Future<T>> pending = new ArrayDeque<Future<T>>();
+
+        OrderedWindow(ExecutorService executor, int limit) {
+            this.executor = executor;
+            this.limit = executor == null ? 1 : Math.max(limit, 1);
+        }
+
+        boolean isFull() {
+            return pending.size() >= limit;
+        }
+
+        boolean isEmpty() {
+            return pending.isEmpty();
+        }
+
+        void submit(Callable<T> task) {
+            assert !isFull();
+            if (executor == null) {
+                FutureTask<T> future = new FutureTask<T>(task);
+                future.run();
+                pending.add(future);
+            } else {
+                pending.add(executor.submit(task));
+            }
+        }
+
+        /**
+         * Removes and returns the result of the oldest task, waiting for it if needed.
+         *
+         * @throws ExecutionException if that task failed; later tasks are unaffected
+         */
+        T next() throws ExecutionException, InterruptedException {
+            Future<T> future = pending.remove();
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                future.cancel(false);
+                throw e;
+            }
+        }
+
+        /** Cancels every task still outstanding.  Tasks already running are left to finish. */
+        void cancel() {
+            for (Future<T> future : pending) {
+                future.cancel(false);
+            }
+            pending.clear();
+        }
+    }
+
+    /**
+     * Fetches an item and generates its index data.  Safe to call from any thread that doesn't hold the mailbox lock.
+     *
+     * @return {@link Tokenized#SKIPPED} if the item no longer exists
+     */
+    private Tokenized tokenize(int id) throws ServiceException {
+        ZimbraLog.index.debug("Tokenizing id=%d", id);
+        MailItem item = null;
+        try {
+            mailbox.beginReadTransaction("IndexItemList-Fetch", null);
+            item = mailbox.getItemById(id, MailItem.Type.UNKNOWN, false);
+        } catch (MailServiceException.NoSuchItemException e) { // fallback to dumpster
+            try {
+                item = mailbox.getItemById(id, MailItem.Type.UNKNOWN, true);
+            } catch (MailServiceException.NoSuchItemException again) { // The item has just been deleted.
+                ZimbraLog.index.debug("deferred item no longer exist id=%d", id);
+                removeDeferredId(id);
+                return Tokenized.SKIPPED;
+            }
+        } catch (MailServiceException e) {
+            // fetch without metadata because reindex will regenerate metadata
+            if (MailServiceException.INVALID_METADATA.equals(e.getCode()) && isReIndexInProgress()) {
+                UnderlyingData ud = DbMailItem.getById(mailbox, id, MailItem.Type.UNKNOWN, false);
+                ud.metadata = null; // ignore corrupted metadata
+                item = mailbox.getItem(ud);
+            } else {
+                throw e;
+            }
+        } catch (Exception e) {
+            ZimbraLog.index.warn("Failed to fetch deferred item id=%d", id, e);
+            return Tokenized.FAILED;
+        } finally {
+            mailbox.endTransaction(item != null);
+        }
+        try {
+            return new Tokenized(new Mailbox.IndexItemEntry(item, item.generateIndexData()), false);
+        } catch (MailItem.TemporaryIndexingException e) {
+            ZimbraLog.index.warn("Temporary index failure id=%d", id, e);
+            lastFailedTime = System.currentTimeMillis();
+            return Tokenized.FAILED;
         }
     }
 
@@ -18,7 +18,7 @@ package com.zimbra.cs.mailbox;
 
 import java.util.Collections;
 import java.util.EnumSet;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -78,10 +78,12 @@ public abstract class MailboxListener {
         return ALL_ITEM_TYPES;
     }
 
-    private static final HashSet<MailboxListener> sListeners;
+    // listeners are notified in registration order; FreeBusyProvider.Listener relies on the calendar caches, which
+    // MemcachedCacheManager updates, hearing about a change first
+    private static final LinkedHashSet<MailboxListener> sListeners;
 
     static {
-        sListeners = new HashSet<MailboxListener>();
+        sListeners = new LinkedHashSet<MailboxListener>();
         reset();
     }
 
@@ -19,6 +19,7 @@ package com.zimbra.cs.mailbox;
 import java.util.EmptyStackException;
 import java.util.Stack;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
 
 import org.apache.curator.framework.recipes.locks.InterProcessSemaphoreMutex;
 
@@ -43,6 +44,8 @@ import com.zimbra.cs.zookeeper.CuratorManager;
  */
 public final class MailboxLock {
     private final ZLock zLock = DebugConfig.debugMailboxLock ? new DebugZLock() : new ZLock();
+    private final StampedLock writeStamps = new StampedLock();
+    private long writeStamp = 0L;
     private InterProcessSemaphoreMutex dLock = null;
     private final Stack<Boolean> lockStack = new Stack<Boolean>();
     private Mailbox mbox;
@@ -92,6 +95,34 @@ public final class MailboxLock {
         return !isWriteLockedByCurrentThread() && zLock.getReadHoldCount() == 0;
     }
 
+    /**
+     * Returns a stamp for an optimistic, lock-free read of mailbox state, or zero if the mailbox is currently
+     * write-locked or optimistic reads are disabled via {@code zimbra_mailbox_lock_optimistic_read}.
+     */
+    public long tryOptimisticRead() {
+        if (!LC.zimbra_mailbox_lock_optimistic_read.booleanValue() || dLock != null) {
+            return 0L;
+        }
+        return writeStamps.tryOptimisticRead();
+    }
+
+    /**
+     * Returns true if no writer has held the mailbox lock since the given stamp was issued by
+     * {@link #tryOptimisticRead()}. Always false for a zero stamp.
+     */
+    public boolean validate(long stamp) {
+        return stamp != 0L && writeStamps.validate(stamp);
+    }
+
+    private void onLocked(boolean write) {
+        lockStack.push(write);
+        if (write && zLock.getWriteHoldCount() == 1) {
+            // outermost write hold; invalidates all outstanding optimistic reads. No other thread can hold writeStamps
+            // since we own the write lock, and nobody ever read-locks it, so this never blocks.
+            writeStamp = writeStamps.writeLock();
+        }
+    }
+
     /**
      * Acquires the lock.
      *
@@ -168,7 +199,7 @@ public final class MailboxLock {
                     promote();
                     return;
                 }
-                lockStack.push(write);
+                onLocked(write);
                 try {
                     acquireDistributedLock(write);
                 } catch (ServiceException e) {
@@ -197,7 +228,7 @@ public final class MailboxLock {
                     promote();
                     return;
                 }
-                lockStack.push(write);
+                onLocked(write);
                 try {
                     acquireDistributedLock(write);
                 } catch (ServiceException e) {
@@ -236,6 +267,10 @@ public final class MailboxLock {
         releaseDistributedLock(write);
         if (write) {
             assert(zLock.getWriteHoldCount() > 0);
+            if (zLock.getWriteHoldCount() == 1) {
+                writeStamps.unlockWrite(writeStamp);
+                writeStamp = 0L;
+            }
             zLock.writeLock().unlock();
         } else {
             zLock.readLock().unlock();
@@ -98,11 +98,14 @@ public class MemcachedItemCache {
 
         @Override
         public Object serialize(Metadata value) {
-            return value.toString();
+            return MetadataCodec.isEnabled() ? value.encode() : value.toString();
         }
 
         @Override
         public Metadata deserialize(Object obj) throws ServiceException {
+            if (obj instanceof byte[]) {
+                return new Metadata((byte[]) obj, null);
+            }
             return new Metadata((String) obj);
         }
     }
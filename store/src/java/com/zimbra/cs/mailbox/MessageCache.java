@@ -411,4 +411,14 @@ public class MessageCache {
         }
         return null;
     }
+
+    /** Returns whether the item's stored content is encrypted, in which case what the
+     *  expanded message shows depends on who is reading it. */
+    public static boolean isEncrypted(MailItem item) throws ServiceException {
+        try {
+            return Mime.isEncrypted(getMimeMessage(item, false).getContentType());
+        } catch (MessagingException e) {
+            return true;
+        }
+    }
 }
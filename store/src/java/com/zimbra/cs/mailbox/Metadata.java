@@ -147,6 +147,14 @@ public final class Metadata {
             map = new HashMap<Object, Object>();
             return;
         }
+        if (MetadataCodec.isEncodedString(encoded)) {
+            try {
+                map = (Map) MetadataCodec.decodeString(encoded);
+                return;
+            } catch (IllegalArgumentException | ClassCastException e) {
+                throw MailServiceException.INVALID_METADATA(encoded, e);
+            }
+        }
         try {
             try {
                 map = (Map) BEncoding.decode(encoded);
@@ -183,6 +191,16 @@ public final class Metadata {
         }
     }
 
+    /** Decodes metadata written by {@link #encode()}. */
+    Metadata(byte[] encoded, Integer associatedItemId) throws MailServiceException {
+        this.associatedItemId = associatedItemId;
+        try {
+            map = (Map) MetadataCodec.decode(encoded);
+        } catch (IllegalArgumentException | ClassCastException e) {
+            throw MailServiceException.INVALID_METADATA("<" + encoded.length + " bytes>", e);
+        }
+    }
+
     public boolean containsKey(String key) {
         return map.containsKey(key);
     }
@@ -206,7 +224,7 @@ public final class Metadata {
         Map<String, Object> result = new HashMap<String, Object>();
         for (Map.Entry<Object, Object> entry : map.entrySet()) {
             Object key = entry.getKey();
-            Object value = entry.getValue();
+            Object value = resolve(entry);
             if (key == null || value == null) {
                 continue;
             } else if (value instanceof Map) {
@@ -284,7 +302,7 @@ public final class Metadata {
     }
 
     public String get(String key, String defaultValue) {
-        Object value = map.get(key);
+        Object value = resolve(key);
         return value == null ? defaultValue : value.toString();
     }
 
@@ -318,7 +336,7 @@ public final class Metadata {
     }
 
     public MetadataList getList(String key, boolean nullOK) throws ServiceException {
-        Object value = map.get(key);
+        Object value = resolve(key);
         if (nullOK && value == null) {
             return null;
         }
@@ -335,7 +353,7 @@ public final class Metadata {
     }
 
     public Metadata getMap(String key, boolean nullable) throws ServiceException {
-        Object value = map.get(key);
+        Object value = resolve(key);
         if (nullable && value == null) {
             return null;
         }
@@ -347,8 +365,39 @@ public final class Metadata {
         throw ServiceException.INVALID_REQUEST("invalid/missing value for attribute: " + key, null);
     }
 
+    /**
+     * Returns the value for the key, first decoding it in place if it's a nested map or list that hasn't been read since
+     * the binary encoding was decoded.
+     */
+    private Object resolve(String key) {
+        Object value = map.get(key);
+        if (value instanceof MetadataCodec.Encoded) {
+            value = ((MetadataCodec.Encoded) value).decode();
+            map.put(key, value);
+        }
+        return value;
+    }
+
+    private static Object resolve(Map.Entry<Object, Object> entry) {
+        Object value = entry.getValue();
+        if (value instanceof MetadataCodec.Encoded) {
+            value = ((MetadataCodec.Encoded) value).decode();
+            entry.setValue(value);
+        }
+        return value;
+    }
+
+    /** Encodes in the binary format regardless of {@code zimbra_mailbox_metadata_binary_encoding}. */
+    byte[] encode() {
+        return MetadataCodec.encode(map);
+    }
+
     @Override
     public String toString() {
+        if (MetadataCodec.isEnabled()) {
+            return MetadataCodec.encodeToString(map);
+        }
+        MetadataCodec.expand(map);
         put(FN_MD_VERSION, LEGACY_METADATA_VERSION);
         String result = BEncoding.encode(map);
         map.remove(FN_MD_VERSION);
@@ -357,6 +406,7 @@ public final class Metadata {
 
     public String prettyPrint() {
         StringBuilder sb = new StringBuilder(2048);
+        MetadataCodec.expand(map);
         prettyEncode(sb, map, 0);
         sb.setLength(sb.length() - 1);  // Remove the last newline.
         return sb.toString();
@@ -0,0 +1,420 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.mailbox;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.codec.binary.Base64;
+
+import com.zimbra.common.localconfig.LC;
+
+/**
+ * Binary encoding of {@link Metadata} and {@link MetadataList}, read side by side with the legacy BEncoding format.
+ * <p>
+ * An encoding is a version byte followed by a map or list body.  Every value is a one-byte tag followed by its data:
+ * integers as zigzag varints, strings as a varint byte count and UTF-8, and nested maps and lists as a varint byte
+ * count and their body.  Map keys that appear in {@link #FIELDS} are written as their 1-based index in that table;
+ * other keys as a 0 followed by the string.
+ * <p>
+ * Because nested containers are length-prefixed, decoding a map or list leaves its nested containers as
+ * {@link Encoded} slices, which are only decoded when first read and are copied verbatim when re-encoded.  As with
+ * BEncoding, anything that isn't an integer, map or list is stored as its string form, so a decoded value has the same
+ * type whichever format it came from.
+ * <p>
+ * Where the encoding has to be a {@code String} (the {@code metadata} column, redo logs) it is {@link #STRING_PREFIX}
+ * followed by the Base64 of the bytes.  The prefix can't start a BEncoded value or a {@code BlobMetaData} string.
+ */
+final class MetadataCodec {
+
+    static final char STRING_PREFIX = '#';
+    private static final byte VERSION = 1;
+
+    private static final byte T_STRING = 1;
+    private static final byte T_LONG = 2;
+    private static final byte T_MAP = 3;
+    private static final byte T_LIST = 4;
+
+    /** Well-known map keys.  Append only: a key's position is its id in every encoding ever written. */
+    private static final String[] FIELDS = {
+        // Metadata.FN_*
+        "a", "acl", "aclm", "ad", "aid", "ais", "ape", "aps", "att", "c", "cif", "comp", "cr", "ct", "d", "das",
+        "wosd", "de", "dee", "do", "dt", "ast", "en", "f", "fld", "i4d", "i4du", "i4l", "i4r", "id", "idnt", "inv",
+        "l", "ld", "lo", "lst", "lt", "mseq", "nc", "no", "p", "prt", "q", "r", "rd", "rev", "rid", "rl", "rp", "rs",
+        "rt", "ruuid", "s", "sd", "sg", "rem", "sz", "t", "tzm", "u", "ua", "unxt", "url", "v", "mdver", "ver", "vt",
+        "ww", "X", "xd",
+        // MailItem.UnderlyingData
+        "tp", "pid", "fid", "pfid", "idx", "imap", "loc", "dgst", "uc", "fg", "tg", "sbj", "nm", "meta", "modm",
+        "modc", "dc", "uuid",
+        // ACL grants and participants
+        "g", "e", "n", "pw", "exp"
+    };
+    private static final Map<String, Integer> FIELD_IDS = new HashMap<String, Integer>(FIELDS.length * 2);
+    static {
+        for (int i = 0; i < FIELDS.length; i++) {
+            if (FIELD_IDS.put(FIELDS[i], i + 1) != null) {
+                throw new IllegalStateException("duplicate metadata field " + FIELDS[i]);
+            }
+        }
+    }
+
+    private MetadataCodec() {
+    }
+
+    /** Whether {@link Metadata#toString()} writes this format rather than BEncoding. */
+    static boolean isEnabled() {
+        return LC.zimbra_mailbox_metadata_binary_encoding.booleanValue();
+    }
+
+    static boolean isEncodedString(String encoded) {
+        return encoded != null && !encoded.isEmpty() && encoded.charAt(0) == STRING_PREFIX;
+    }
+
+    static boolean isEncoded(byte[] encoded) {
+        return encoded != null && encoded.length > 1 && encoded[0] == VERSION;
+    }
+
+    static String encodeToString(Object container) {
+        return STRING_PREFIX + Base64.encodeBase64String(encode(container));
+    }
+
+    static byte[] encode(Object container) {
+        Output out = new Output(256);
+        out.write(VERSION);
+        if (container instanceof Map) {
+            out.write(T_MAP);
+            writeMapBody(out, (Map<?, ?>) container);
+        } else {
+            out.write(T_LIST);
+            writeListBody(out, (List<?>) container);
+        }
+        return out.toByteArray();
+    }
+
+    /** Decodes the top level of a map or list written by {@link #encodeToString}. */
+    static Object decodeString(String encoded) throws IllegalArgumentException {
+        return decode(Base64.decodeBase64(encoded.substring(1)));
+    }
+
+    /** Decodes the top level of a map or list written by {@link #encode}. */
+    static Object decode(byte[] encoded) throws IllegalArgumentException {
+        if (!isEncoded(encoded)) {
+            throw new IllegalArgumentException("unsupported metadata encoding");
+        }
+        byte tag = encoded[1];
+        if (tag != T_MAP && tag != T_LIST) {
+            throw new IllegalArgumentException("metadata encoding is not a map or list");
+        }
+        return new Encoded(encoded, 2, encoded.length - 2, tag == T_MAP).decode();
+    }
+
+    /** Returns the value itself, or the decoded map or list if it is an {@link Encoded} slice. */
+    static Object resolve(Object value) {
+        return value instanceof Encoded ? ((Encoded) value).decode() : value;
+    }
+
+    /**
+     * Decodes, in place, every {@link Encoded} slice reachable from the map or list.  Needed before the container is
+     * handed to code that walks raw maps and lists, such as BEncoding.
+     */
+    @SuppressWarnings("unchecked")
+    static void expand(Object container) {
+        if (container instanceof Map) {
+            for (Map.Entry<Object, Object> entry : ((Map<Object, Object>) container).entrySet()) {
+                Object value = resolve(entry.getValue());
+                if (value != entry.getValue()) {
+                    entry.setValue(value);
+                }
+                expand(value);
+            }
+        } else if (container instanceof List) {
+            List<Object> list = (List<Object>) container;
+            for (int i = 0; i < list.size(); i++) {
+                Object value = resolve(list.get(i));
+                if (value != list.get(i)) {
+                    list.set(i, value);
+                }
+                expand(value);
+            }
+        }
+    }
+
+    private static void writeValue(Output out, Object value) {
+        if (value instanceof Encoded) {
+            Encoded slice = (Encoded) value;
+            out.write(slice.isMap ? T_MAP : T_LIST);
+            out.writeVarLong(slice.length);
+            out.write(slice.buf, slice.offset, slice.length);
+        } else if (value instanceof Map) {
+            out.write(T_MAP);
+            int start = out.size();
+            writeMapBody(out, (Map<?, ?>) value);
+            out.insertLength(start);
+        } else if (value instanceof List) {
+            out.write(T_LIST);
+            int start = out.size();
+            writeListBody(out, (List<?>) value);
+            out.insertLength(start);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.write(T_LONG);
+            long n = ((Number) value).longValue();
+            out.writeVarLong((n << 1) ^ (n >> 63));
+        } else {
+            out.write(T_STRING);
+            writeString(out, value.toString());
+        }
+    }
+
+    private static void writeMapBody(Output out, Map<?, ?> map) {
+        int count = 0;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (entry.getKey() != null && entry.getValue() != null) {
+                count++;
+            }
+        }
+        out.writeVarLong(count);
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (entry.getKey() != null && entry.getValue() != null) {
+                String key = entry.getKey().toString();
+                Integer id = FIELD_IDS.get(key);
+                if (id != null) {
+                    out.writeVarLong(id);
+                } else {
+                    out.writeVarLong(0);
+                    writeString(out, key);
+                }
+                writeValue(out, entry.getValue());
+            }
+        }
+    }
+
+    private static void writeListBody(Output out, List<?> list) {
+        int count = 0;
+        for (Object value : list) {
+            if (value != null) {
+                count++;
+            }
+        }
+        out.writeVarLong(count);
+        for (Object value : list) {
+            if (value != null) {
+                writeValue(out, value);
+            }
+        }
+    }
+
+    private static void writeString(Output out, String value) {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeVarLong(utf8.length);
+        out.write(utf8, 0, utf8.length);
+    }
+
+    /**
+     * An undecoded nested map or list: the body of the container within the buffer it was read from.  The buffer is
+     * never modified, so slices may be shared between copies of a {@link Metadata}.
+     */
+    static final class Encoded {
+        final byte[] buf;
+        final int offset;
+        final int length;
+        final boolean isMap;
+
+        Encoded(byte[] buf, int offset, int length, boolean isMap) {
+            this.buf = buf;
+            this.offset = offset;
+            this.length = length;
+            this.isMap = isMap;
+        }
+
+        /** Decodes this container's own entries; its nested containers stay encoded. */
+        Object decode() throws IllegalArgumentException {
+            Input in = new Input(buf, offset, offset + length);
+            try {
+                int count = in.readCount();
+                Object result;
+                if (isMap) {
+                    Map<Object, Object> map = new HashMap<Object, Object>(Math.max(count * 4 / 3 + 1, 16));
+                    for (int i = 0; i < count; i++) {
+                        String key;
+                        long id = in.readVarLong();
+                        if (id == 0) {
+                            key = in.readString();
+                        } else if (id > 0 && id <= FIELDS.length) {
+                            key = FIELDS[(int) id - 1];
+                        } else {
+                            throw new IllegalArgumentException("unknown metadata field id " + id);
+                        }
+                        map.put(key, in.readValue());
+                    }
+                    result = map;
+                } else {
+                    List<Object> list = new ArrayList<Object>(count);
+                    for (int i = 0; i < count; i++) {
+                        list.add(in.readValue());
+                    }
+                    result = list;
+                }
+                if (in.pos != in.end) {
+                    throw new IllegalArgumentException("extra bytes at end of encoded metadata");
+                }
+                return result;
+            } catch (ArrayIndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("truncated metadata encoding", e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return decode().toString();
+        }
+    }
+
+    private static final class Input {
+        private final byte[] buf;
+        private final int end;
+        private int pos;
+
+        Input(byte[] buf, int pos, int end) {
+            this.buf = buf;
+            this.pos = pos;
+            this.end = end;
+        }
+
+        Object readValue() {
+            byte tag = readByte();
+            switch (tag) {
+                case T_STRING:
+                    return readString();
+                case T_LONG:
+                    long n = readVarLong();
+                    return Long.valueOf((n >>> 1) ^ -(n & 1));
+                case T_MAP:
+                case T_LIST:
+                    int length = readCount();
+                    checkAvailable(length);
+                    Encoded slice = new Encoded(buf, pos, length, tag == T_MAP);
+                    pos += length;
+                    return slice;
+                default:
+                    throw new IllegalArgumentException("unknown metadata value tag " + tag);
+            }
+        }
+
+        String readString() {
+            int length = readCount();
+            checkAvailable(length);
+            String value = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return value;
+        }
+
+        int readCount() {
+            long n = readVarLong();
+            if (n < 0 || n > end - pos) {
+                throw new IllegalArgumentException("invalid length in metadata encoding: " + n);
+            }
+            return (int) n;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("malformed varint in metadata encoding");
+        }
+
+        private byte readByte() {
+            if (pos >= end) {
+                throw new IllegalArgumentException("truncated metadata encoding");
+            }
+            return buf[pos++];
+        }
+
+        private void checkAvailable(int length) {
+            if (length > end - pos) {
+                throw new IllegalArgumentException("truncated metadata encoding");
+            }
+        }
+    }
+
+    private static final class Output {
+        private byte[] buf;
+        private int count;
+
+        Output(int capacity) {
+            buf = new byte[capacity];
+        }
+
+        int size() {
+            return count;
+        }
+
+        void write(int b) {
+            ensureCapacity(1);
+            buf[count++] = (byte) b;
+        }
+
+        void write(byte[] b, int off, int len) {
+            ensureCapacity(len);
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[count++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[count++] = (byte) value;
+        }
+
+        /** Inserts the varint length of everything written since {@code start} at {@code start}. */
+        void insertLength(int start) {
+            int length = count - start;
+            int width = 1;
+            for (int n = length >>> 7; n != 0; n >>>= 7) {
+                width++;
+            }
+            ensureCapacity(width);
+            System.arraycopy(buf, start, buf, start + width, length);
+            int end = count + width;
+            count = start;
+            writeVarLong(length);
+            count = end;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (count + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + extra));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, count);
+        }
+    }
+}
@@ -39,7 +39,16 @@ public class MetadataList {
         this.list = new ArrayList<Object>(list);
     }
 
+    @SuppressWarnings("unchecked")
     public MetadataList(String encoded) throws ServiceException {
+        if (MetadataCodec.isEncodedString(encoded)) {
+            try {
+                list = (List<Object>) MetadataCodec.decodeString(encoded);
+                return;
+            } catch (IllegalArgumentException | ClassCastException e) {
+                throw ServiceException.FAILURE("error decoding list metadata: " + encoded, e);
+            }
+        }
         try {
             list = BEncoding.decode(encoded);
         } catch (BEncodingException e) {
@@ -67,7 +76,8 @@ public class MetadataList {
     @SuppressWarnings("unchecked")
     public <T> List<T> asList() {
         List<T> result = new ArrayList<T>();
-        for (Object obj : list) {
+        for (int i = 0; i < list.size(); i++) {
+            Object obj = resolve(i);
             if (obj == null) {
                 continue;
             } else if (obj instanceof Map) {
@@ -132,7 +142,7 @@ public class MetadataList {
     }
 
     public String get(int index) throws ServiceException {
-        Object obj = list.get(index);
+        Object obj = resolve(index);
         return checkNull(index, obj).toString();
     }
 
@@ -153,7 +163,7 @@ public class MetadataList {
     }
 
     public MetadataList getList(int index) throws ServiceException {
-        Object value = list.get(index);
+        Object value = resolve(index);
         if (value instanceof List)  {
             return new MetadataList((List<?>) value);
         }
@@ -161,7 +171,7 @@ public class MetadataList {
     }
 
     public Metadata getMap(int index) throws ServiceException {
-        Object value = list.get(index);
+        Object value = resolve(index);
         if (value instanceof Map) {
             @SuppressWarnings("unchecked")
             Map<String, ?> cast = (Map<String, ?>) value;
@@ -170,6 +180,16 @@ public class MetadataList {
         throw ServiceException.INVALID_REQUEST("invalid/null value for attribute: " + index, null);
     }
 
+    /** Returns the element, first decoding it in place if it's a nested map or list still in binary form. */
+    private Object resolve(int index) {
+        Object value = list.get(index);
+        if (value instanceof MetadataCodec.Encoded) {
+            value = ((MetadataCodec.Encoded) value).decode();
+            list.set(index, value);
+        }
+        return value;
+    }
+
     private static Object checkNull(int index, Object value) throws ServiceException {
         if (value == null)
             throw ServiceException.INVALID_REQUEST("null element in list: " + index, null);
@@ -213,6 +233,10 @@ public class MetadataList {
 
     @Override
     public String toString() {
+        if (MetadataCodec.isEnabled()) {
+            return MetadataCodec.encodeToString(list);
+        }
+        MetadataCodec.expand(list);
         return BEncoding.encode(list);
     }
 }
@@ -0,0 +1,287 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.mailbox;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.collect.Lists;
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
+import com.googlecode.concurrentlinkedhashmap.Weigher;
+import com.zimbra.common.localconfig.LC;
+import com.zimbra.common.service.ServiceException;
+import com.zimbra.common.util.ZimbraLog;
+
+/**
+ * Second tier of the {@link Mailbox} item cache, shared by all loaded mailboxes.
+ * <p>
+ * Items trimmed from a mailbox's on-heap cache are kept here as their encoded
+ * {@link MailItem.UnderlyingData} in direct buffers, so that a subsequent lookup can rebuild
+ * the {@code MailItem} without a trip to the database.  The whole tier is bounded by a single
+ * byte budget ({@code zimbra_mailbox_offheap_cache_size_kb}) and evicts in LRU order.
+ * <p>
+ * Direct buffers are costly to allocate and are only freed by the collector, so buffers come in
+ * sizes that are multiples of {@link #BUFFER_UNIT}, and the ones dropped from the tier are pooled
+ * for reuse by later spills.
+ * <p>
+ * Entries are keyed by a per-{@code ItemCache} generation rather than by mailbox id: clearing a
+ * mailbox's cache simply moves it to a new generation, and the stale entries age out.  Each buffer
+ * starts with the item's parent id, and the ids of the items spilled for a parent are indexed so
+ * that uncaching a parent can drop its children from this tier as well.
+ */
+final class OffHeapItemCache {
+
+    private static final OffHeapItemCache INSTANCE = new OffHeapItemCache(LC.zimbra_mailbox_offheap_cache_size_kb.longValue() * 1024);
+
+    private static final int BUFFER_UNIT = 128;
+    /** Larger buffers are left to the collector once they're dropped. */
+    private static final int MAX_POOLED_BUFFER = 16 * 1024;
+
+    private final AtomicInteger generations = new AtomicInteger();
+    private final ConcurrentLinkedHashMap<Long, ByteBuffer> buffers;
+    /** (generation, parent id) to the ids of its children in {@link #buffers}; guarded by itself. */
+    private final Map<Long, Set<Integer>> children = new HashMap<Long, Set<Integer>>();
+    /** free buffers by size, {@link #BUFFER_UNIT} bytes apart */
+    private final List<Queue<ByteBuffer>> pool;
+    private final AtomicLong pooledBytes = new AtomicLong();
+    private final long maxPooledBytes;
+    private final boolean enabled;
+
+    OffHeapItemCache(long capacityBytes) {
+        enabled = capacityBytes > 0;
+        maxPooledBytes = capacityBytes / 16;
+        pool = new ArrayList<Queue<ByteBuffer>>(MAX_POOLED_BUFFER / BUFFER_UNIT);
+        for (int i = 0; i < MAX_POOLED_BUFFER / BUFFER_UNIT; i++) {
+            pool.add(new ConcurrentLinkedQueue<ByteBuffer>());
+        }
+        buffers = new ConcurrentLinkedHashMap.Builder<Long, ByteBuffer>()
+            .maximumWeightedCapacity((int) Math.min(Math.max(capacityBytes, 1), Integer.MAX_VALUE))
+            .weigher(new Weigher<ByteBuffer>() {
+                @Override
+                public int weightOf(ByteBuffer value) {
+                    return value.capacity();
+                }
+            })
+            .listener(new EvictionListener<Long, ByteBuffer>() {
+                @Override
+                public void onEviction(Long key, ByteBuffer buf) {
+                    synchronized (children) {
+                        unindex(key, buf);
+                    }
+                    release(buf);
+                }
+            })
+            .build();
+    }
+
+    static OffHeapItemCache getInstance() {
+        return INSTANCE;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Returns a generation number that has never been handed out before. */
+    int newGeneration() {
+        return generations.incrementAndGet();
+    }
+
+    private static Long key(int generation, int itemId) {
+        return ((long) generation << 32) | (itemId & 0xFFFFFFFFL);
+    }
+
+    /** Returns a buffer of at least {@code size} bytes, reusing a pooled one if possible. */
+    private ByteBuffer allocate(int size) {
+        int capacity = (size + BUFFER_UNIT - 1) / BUFFER_UNIT * BUFFER_UNIT;
+        if (capacity <= MAX_POOLED_BUFFER) {
+            ByteBuffer buf = pool.get(capacity / BUFFER_UNIT - 1).poll();
+            if (buf != null) {
+                pooledBytes.addAndGet(-capacity);
+                buf.clear();
+                return buf;
+            }
+        }
+        return ByteBuffer.allocateDirect(capacity);
+    }
+
+    /** Returns a buffer that is no longer in the tier to the pool. */
+    private void release(ByteBuffer buf) {
+        int capacity = buf.capacity();
+        if (capacity <= MAX_POOLED_BUFFER && pooledBytes.get() + capacity <= maxPooledBytes) {
+            pooledBytes.addAndGet(capacity);
+            pool.get(capacity / BUFFER_UNIT - 1).offer(buf);
+        }
+    }
+
+    /** Returns the key of the parent of the item stored under {@code key} in {@code buf}. */
+    private static Long parentKey(Long key, ByteBuffer buf) {
+        return (key & 0xFFFFFFFF00000000L) | (buf.getInt(0) & 0xFFFFFFFFL);
+    }
+
+    /** Must be called with the {@link #children} lock held. */
+    private void index(Long key, ByteBuffer buf) {
+        if (buf.getInt(0) <= 0) {
+            return;
+        }
+        Long parent = parentKey(key, buf);
+        Set<Integer> ids = children.get(parent);
+        if (ids == null) {
+            ids = new HashSet<Integer>();
+            children.put(parent, ids);
+        }
+        ids.add(key.intValue());
+    }
+
+    /** Must be called with the {@link #children} lock held. */
+    private void unindex(Long key, ByteBuffer buf) {
+        if (buf.getInt(0) <= 0) {
+            return;
+        }
+        Long parent = parentKey(key, buf);
+        Set<Integer> ids = children.get(parent);
+        if (ids != null && ids.remove(key.intValue()) && ids.isEmpty()) {
+            children.remove(parent);
+        }
+    }
+
+    void put(int generation, MailItem item) {
+        if (!enabled) {
+            return;
+        }
+        byte[] encoded = item.serializeUnderlyingData().encode();
+        ByteBuffer buf = allocate(4 + encoded.length);
+        buf.putInt(item.getParentId()).put(encoded).flip();
+        Long key = key(generation, item.getId());
+        ByteBuffer old;
+        synchronized (children) {
+            old = buffers.put(key, buf);
+            if (old != null) {
+                unindex(key, old);
+            }
+            index(key, buf);
+        }
+        if (old != null) {
+            release(old);
+        }
+    }
+
+    /** Removes the entry; the caller owns the returned buffer and must {@link #release} it. */
+    private ByteBuffer remove(Long key) {
+        // every put into an on-heap cache gets here, and mostly finds nothing spilled, so don't
+        //   contend for the index lock, which is shared by all mailboxes, in that case
+        if (!buffers.containsKey(key)) {
+            return null;
+        }
+        synchronized (children) {
+            ByteBuffer buf = buffers.remove(key);
+            if (buf != null) {
+                unindex(key, buf);
+            }
+            return buf;
+        }
+    }
+
+    /**
+     * Removes the item from the off-heap tier and rebuilds it for {@code mbox}.  The returned item
+     * has not been added to the mailbox's on-heap cache; that's the caller's job.
+     */
+    MailItem take(int generation, Mailbox mbox, int itemId) {
+        if (!enabled) {
+            return null;
+        }
+        ByteBuffer buf = remove(key(generation, itemId));
+        if (buf == null) {
+            return null;
+        }
+        ByteBuffer content = buf.duplicate();
+        content.position(4);
+        byte[] encoded = new byte[content.remaining()];
+        content.get(encoded);
+        release(buf);
+        try {
+            MailItem.UnderlyingData data = new MailItem.UnderlyingData();
+            data.deserialize(new Metadata(encoded, itemId));
+            return MailItem.constructItem(mbox, data, true);
+        } catch (ServiceException e) {
+            ZimbraLog.cache.warn("unable to decode off-heap cached item %d in mailbox %d", itemId, mbox.getId(), e);
+            return null;
+        }
+    }
+
+    void remove(int generation, int itemId) {
+        if (enabled) {
+            ByteBuffer buf = remove(key(generation, itemId));
+            if (buf != null) {
+                release(buf);
+            }
+        }
+    }
+
+    /**
+     * Removes the children of {@code parentId} from the off-heap tier.
+     *
+     * @return the ids of the removed items
+     */
+    List<Integer> removeChildren(int generation, int parentId) {
+        if (!enabled) {
+            return Collections.emptyList();
+        }
+        List<ByteBuffer> removed = new ArrayList<ByteBuffer>();
+        List<Integer> ids;
+        synchronized (children) {
+            Set<Integer> childIds = children.remove(key(generation, parentId));
+            if (childIds == null) {
+                return Collections.emptyList();
+            }
+            for (Integer id : childIds) {
+                ByteBuffer buf = buffers.remove(key(generation, id));
+                if (buf != null) {
+                    removed.add(buf);
+                }
+            }
+            ids = Lists.newArrayList(childIds);
+        }
+        for (ByteBuffer buf : removed) {
+            release(buf);
+        }
+        return ids;
+    }
+
+    int size() {
+        return buffers.size();
+    }
+
+    long weightedSize() {
+        return buffers.weightedSize();
+    }
+
+    long pooledBytes() {
+        return pooledBytes.get();
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.mailbox.calendar;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.TimeZone;
+
+import com.zimbra.cs.mailbox.calendar.ZRecur.Frequency;
+import com.zimbra.cs.mailbox.calendar.ZRecur.ZWeekDayNum;
+
+/**
+ * Fast expansion of the common recurrence shapes: DAILY (optionally filtered by a day-of-week mask) and
+ * WEEKLY (optionally expanded over a list of week days), with no other BY* parts.
+ * <p>
+ * Instances are generated as epoch millis by stepping over local day numbers and converting wall-clock time to UTC
+ * with the time zone's offsets, instead of cloning and normalizing a {@code GregorianCalendar} per instance.  The
+ * result is identical to {@link ZRecur}'s general expansion, including COUNT, hard limit and invalid-rule handling.
+ * Where a generated instance falls into the hour skipped or repeated by a DST transition the general expansion's
+ * handling is not reproduced; {@link #expand} returns null and the caller falls back to it.
+ */
+final class CompiledRecur {
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+    /** Returned by {@link #toUtc} for a wall-clock time that doesn't map to exactly one instant. */
+    private static final long AMBIGUOUS = Long.MIN_VALUE;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final boolean weekly;
+    private final int interval;
+    /** WEEKLY: {@code Calendar} day of week of each BYDAY entry, in rule order.  Null if there is no BYDAY. */
+    private final int[] weekDays;
+    /** DAILY: bit {@code 1 << dayOfWeek} set for each BYDAY entry.  0 if there is no BYDAY. */
+    private final int dayMask;
+
+    private CompiledRecur(boolean weekly, int interval, int[] weekDays, int dayMask) {
+        this.weekly = weekly;
+        this.interval = interval;
+        this.weekDays = weekDays;
+        this.dayMask = dayMask;
+    }
+
+    /**
+     * Compiles a rule whose only BY* part, if any, is BYDAY.  Returns null if the frequency is not supported.
+     */
+    static CompiledRecur compile(Frequency freq, int interval, List<ZWeekDayNum> byDayList) {
+        if (interval <= 0) {
+            interval = 1;
+        }
+        if (freq == Frequency.WEEKLY) {
+            int[] weekDays = null;
+            if (!byDayList.isEmpty()) {
+                weekDays = new int[byDayList.size()];
+                for (int i = 0; i < weekDays.length; i++) {
+                    weekDays[i] = byDayList.get(i).mDay.getCalendarDay();
+                }
+            }
+            return new CompiledRecur(true, interval, weekDays, 0);
+        } else if (freq == Frequency.DAILY) {
+            int mask = 0;
+            if (!byDayList.isEmpty()) {
+                // the general expansion skips ahead to the next listed day without honoring INTERVAL
+                if (interval != 1) {
+                    return null;
+                }
+                for (ZWeekDayNum day : byDayList) {
+                    mask |= 1 << day.mDay.getCalendarDay();
+                }
+            }
+            return new CompiledRecur(false, interval, null, mask);
+        }
+        return null;
+    }
+
+    /**
+     * Expands the rule from {@code start} (DTSTART, in its time zone).  Same contract as
+     * {@link ZRecur#expandRecurrenceOverRange}, with the range already narrowed to {@code [earliest, rangeEnd]}
+     * (both inclusive).
+     *
+     * @param maxInstances maximum number of instances to expand counting DTSTART, or 0 for no limit
+     * @return instance start times in expansion order, or null if the caller must use the general expansion
+     */
+    long[] expand(GregorianCalendar start, long earliest, long rangeEnd, int maxInstances) {
+        if (start.get(Calendar.ERA) != GregorianCalendar.AD || start.get(Calendar.YEAR) <= 1582) {
+            return null;  // Julian calendar days
+        }
+        int firstDayOfWeek = start.getFirstDayOfWeek();
+        if (dayMask != 0 && firstDayOfWeek != Calendar.SUNDAY) {
+            // The general expansion moves to the next listed day within a calendar week.  Only with weeks starting
+            // on Sunday does that amount to a plain day-of-week filter.
+            return null;
+        }
+        TimeZone tz = start.getTimeZone();
+        long dtStart = start.getTimeInMillis();
+        long startDay = epochDay(start.get(Calendar.YEAR), start.get(Calendar.MONTH) + 1,
+                start.get(Calendar.DAY_OF_MONTH));
+        long timeOfDay = ((start.get(Calendar.HOUR_OF_DAY) * 60L + start.get(Calendar.MINUTE)) * 60L +
+                start.get(Calendar.SECOND)) * 1000L + start.get(Calendar.MILLISECOND);
+        if (toUtc(tz, startDay * MILLIS_PER_DAY + timeOfDay) != dtStart) {
+            return null;
+        }
+        long stepDays = weekly ? 7L * interval : interval;
+
+        long[] result = new long[INITIAL_CAPACITY];
+        int size = 0;
+        if (dtStart >= earliest && dtStart <= rangeEnd) {
+            result[size++] = dtStart;
+        }
+        int numExpanded = 1;  // DTSTART is always included
+        int numWithoutInstance = 0;
+        boolean pastEnd = false;
+        for (long day = startDay; !pastEnd && (maxInstances <= 0 || numExpanded < maxInstances); day += stepDays) {
+            long cur = toUtc(tz, day * MILLIS_PER_DAY + timeOfDay);
+            if (cur == AMBIGUOUS) {
+                return null;
+            }
+            if (dayMask != 0 && (dayMask & (1 << dayOfWeek(day))) == 0) {
+                continue;  // no iteration as far as COUNT and invalid rule detection are concerned
+            }
+            boolean noInstance = true;
+            boolean instancePastEnd = false;
+            int numDays = weekDays != null ? weekDays.length : 1;
+            long weekStart = weekDays != null ? day - Math.floorMod(dayOfWeek(day) - firstDayOfWeek, 7) : day;
+            for (int i = 0; i < numDays; i++) {
+                long instance = cur;
+                if (weekDays != null) {
+                    instance = toUtc(tz, (weekStart + Math.floorMod(weekDays[i] - firstDayOfWeek, 7)) *
+                            MILLIS_PER_DAY + timeOfDay);
+                    if (instance == AMBIGUOUS) {
+                        return null;
+                    }
+                }
+                if (instance == dtStart) {
+                    noInstance = false;
+                    continue;
+                }
+                if (instance > dtStart) {
+                    numExpanded++;
+                }
+                if (instance <= rangeEnd) {
+                    if (instance >= earliest) {
+                        if (size == result.length) {
+                            result = Arrays.copyOf(result, size * 2);
+                        }
+                        result[size++] = instance;
+                        noInstance = false;
+                    }
+                } else {
+                    instancePastEnd = true;
+                    break;
+                }
+                if (maxInstances > 0 && numExpanded >= maxInstances) {
+                    break;
+                }
+            }
+            if (cur >= earliest) {
+                numWithoutInstance = noInstance ? numWithoutInstance + 1 : 0;
+                if (numWithoutInstance >= 4) {
+                    break;  // invalid rule
+                }
+            }
+            pastEnd = instancePastEnd || (noInstance && cur > rangeEnd);
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Converts a local wall-clock time, in millis since the local epoch, to UTC.
+     *
+     * @return UTC millis, or {@link #AMBIGUOUS} if the time is skipped or repeated by a DST transition
+     */
+    private static long toUtc(TimeZone tz, long local) {
+        int offset = tz.getOffset(local - tz.getRawOffset());
+        long utc = local - offset;
+        int actual = tz.getOffset(utc);
+        if (actual != offset) {
+            utc = local - actual;
+            if (tz.getOffset(utc) != actual) {
+                return AMBIGUOUS;
+            }
+            offset = actual;
+        }
+        // GregorianCalendar resolves a repeated time to either offset depending on how it got there
+        int before = tz.getOffset(utc - MILLIS_PER_DAY);
+        int after = tz.getOffset(utc + MILLIS_PER_DAY);
+        if ((before != offset && tz.getOffset(local - before) == before) ||
+                (after != offset && tz.getOffset(local - after) == after)) {
+            return AMBIGUOUS;
+        }
+        return utc;
+    }
+
+    /** {@code Calendar.SUNDAY} through {@code Calendar.SATURDAY}. */
+    private static int dayOfWeek(long epochDay) {
+        return (int) Math.floorMod(epochDay + 4, 7L) + 1;  // 1970-01-01 was a Thursday
+    }
+
+    /** Days since 1970-01-01 of a proleptic Gregorian date. */
+    static long epochDay(int year, int month, int dayOfMonth) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + dayOfMonth - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+}
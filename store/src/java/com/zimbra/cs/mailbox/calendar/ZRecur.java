@@ -28,13 +28,19 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.TimeZone;
 
 import org.apache.commons.httpclient.util.DateUtil;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.Weigher;
 import com.zimbra.common.calendar.ICalTimeZone;
 import com.zimbra.common.calendar.ParsedDateTime;
 import com.zimbra.common.calendar.TimeZoneMap;
 import com.zimbra.common.calendar.ZWeekDay;
+import com.zimbra.common.localconfig.LC;
 import com.zimbra.common.service.ServiceException;
 import com.zimbra.common.util.ZimbraLog;
 import com.zimbra.cs.account.Provisioning;
@@ -113,6 +119,70 @@ public class ZRecur implements Cloneable {
         }
     }
 
+    private static final boolean sCompiledExpansion = LC.calendar_recurrence_compiled_expansion.booleanValue();
+
+    /**
+     * Memo of recent expansions, keyed by series and range and bounded by the total number of instances held.
+     * Null if disabled.
+     */
+    private static final ConcurrentLinkedHashMap<ExpansionKey, long[]> sExpansionMemo;
+    static {
+        int maxInstances = LC.calendar_recurrence_expansion_memo_instances.intValue();
+        if (maxInstances > 0) {
+            sExpansionMemo = new ConcurrentLinkedHashMap.Builder<ExpansionKey, long[]>()
+                .maximumWeightedCapacity(maxInstances)
+                .weigher(new Weigher<long[]>() {
+                    @Override
+                    public int weightOf(long[] value) {
+                        return value.length + 1;
+                    }
+                })
+                .build();
+        } else {
+            sExpansionMemo = null;
+        }
+    }
+
+    private static final class ExpansionKey {
+        private final String rule;
+        private final long dtStart;
+        private final TimeZone tz;
+        private final int firstDayOfWeek;
+        private final int minimalDaysInFirstWeek;
+        private final long earliest;
+        private final long rangeEnd;
+        private final int maxInstances;
+
+        ExpansionKey(String rule, ParsedDateTime dtStart, long earliest, long rangeEnd, int maxInstances) {
+            this.rule = rule;
+            this.dtStart = dtStart.getUtcTime();
+            GregorianCalendar cal = dtStart.getCalendarCopy();
+            this.tz = cal.getTimeZone();
+            this.firstDayOfWeek = cal.getFirstDayOfWeek();
+            this.minimalDaysInFirstWeek = cal.getMinimalDaysInFirstWeek();
+            this.earliest = earliest;
+            this.rangeEnd = rangeEnd;
+            this.maxInstances = maxInstances;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ExpansionKey)) {
+                return false;
+            }
+            ExpansionKey other = (ExpansionKey) obj;
+            return dtStart == other.dtStart && earliest == other.earliest && rangeEnd == other.rangeEnd &&
+                    maxInstances == other.maxInstances && firstDayOfWeek == other.firstDayOfWeek &&
+                    minimalDaysInFirstWeek == other.minimalDaysInFirstWeek && rule.equals(other.rule) &&
+                    tz.getID().equals(other.tz.getID()) && tz.hasSameRules(other.tz);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(rule, dtStart, tz.getID(), earliest, rangeEnd);
+        }
+    }
+
     private Date estimateEndTimeByUntilAndHardLimits(ParsedDateTime dtStart) throws ServiceException {
         boolean forever = false;
         Calendar hardEnd = dtStart.getCalendarCopy();
@@ -585,6 +655,17 @@ public class ZRecur implements Cloneable {
         ParsedDateTime dtStart,
         long rangeStart,
         long rangeEnd)
+    throws ServiceException {
+        return expandRecurrenceOverRange(dtStart, rangeStart, rangeEnd, sCompiledExpansion, true);
+    }
+
+    /**
+     * @param useCompiled use {@link CompiledRecur} if the rule allows
+     * @param useMemo look up and store the result in the expansion memo, if it is enabled
+     */
+    @VisibleForTesting
+    List<Date> expandRecurrenceOverRange(ParsedDateTime dtStart, long rangeStart, long rangeEnd,
+            boolean useCompiled, boolean useMemo)
     throws ServiceException {
         List<Date> toRet = new LinkedList<Date>();
 
@@ -616,7 +697,6 @@ public class ZRecur implements Cloneable {
             maxInstancesExpanded = maxInstancesFromConfig;
         else
             maxInstancesExpanded = Math.min(mCount, maxInstancesFromConfig);
-        int numInstancesExpanded = 1;  // initially 1 rather than 0 because DTSTART is always included
 
         // Set hard limit of expansion time range.  (bug 21989)
         ParsedDateTime earliestDateTime = ParsedDateTime.fromUTCTime(earliestDate.getTime());
@@ -630,6 +710,67 @@ public class ZRecur implements Cloneable {
             return toRet;
         }
 
+        ExpansionKey key = null;
+        if (useMemo && sExpansionMemo != null) {
+            key = new ExpansionKey(toString(), dtStart, earliestDate.getTime(), rangeEndDate.getTime(),
+                    maxInstancesExpanded);
+            long[] memo = sExpansionMemo.get(key);
+            if (memo != null) {
+                return toDates(memo);
+            }
+        }
+        long[] instances = null;
+        CompiledRecur compiled = useCompiled ? compile() : null;
+        if (compiled != null) {
+            instances = compiled.expand(dtStart.getCalendarCopy(), earliestDate.getTime(), rangeEndDate.getTime(),
+                    maxInstancesExpanded);
+        }
+        if (instances == null) {
+            toRet = expandGeneral(dtStart, earliestDate, rangeEndDate, maxInstancesExpanded);
+            if (key == null) {
+                return toRet;
+            }
+            instances = new long[toRet.size()];
+            int i = 0;
+            for (Date date : toRet) {
+                instances[i++] = date.getTime();
+            }
+        }
+        if (key != null) {
+            sExpansionMemo.put(key, instances);
+        }
+        return toDates(instances);
+    }
+
+    /**
+     * Returns a compiled form of this rule if it is one of the shapes {@link CompiledRecur} handles, else null.
+     */
+    private CompiledRecur compile() {
+        if (mFreq == null || !mByHourList.isEmpty() || !mByMinuteList.isEmpty() || !mByMonthDayList.isEmpty() ||
+                !mByMonthList.isEmpty() || !mBySecondList.isEmpty() || !mBySetPosList.isEmpty() ||
+                !mByWeekNoList.isEmpty() || !mByYearDayList.isEmpty()) {
+            return null;
+        }
+        return CompiledRecur.compile(mFreq, mInterval, mByDayList);
+    }
+
+    private static List<Date> toDates(long[] instances) {
+        List<Date> dates = new ArrayList<Date>(instances.length);
+        for (long instance : instances) {
+            dates.add(new Date(instance));
+        }
+        return dates;
+    }
+
+    /**
+     * General expansion, for any rule, over the range {@code [earliestDate, rangeEndDate]} (both inclusive).
+     */
+    private List<Date> expandGeneral(ParsedDateTime dtStart, Date earliestDate, Date rangeEndDate,
+            int maxInstancesExpanded) {
+        List<Date> toRet = new LinkedList<Date>();
+        Date dtStartDate = new Date(dtStart.getUtcTime());
+        int numInstancesExpanded = 1;  // initially 1 rather than 0 because DTSTART is always included
+
         GregorianCalendar cur = dtStart.getCalendarCopy();
         int baseMonthDay = cur.get(Calendar.DAY_OF_MONTH);
         boolean baseIsLeapDay = ((baseMonthDay == 29) && (cur.get(Calendar.MONTH) == Calendar.FEBRUARY));
@@ -21,10 +21,17 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
-
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
 import com.zimbra.common.account.Key.AccountBy;
 import com.zimbra.common.calendar.ParsedDateTime;
 import com.zimbra.common.localconfig.LC;
@@ -345,14 +352,41 @@ public class CalSummaryCache {
         return calData;  // return a non-null object even if there are no items in the range
     }
 
+    /**
+     * Extends up-to-date cached data to cover the requested range.  Only the calendar items with instances in the
+     * uncovered slices before and after the cached range are expanded, over those slices, and the results are merged
+     * into a copy of the cached data.
+     *
+     * @return the extended data, or null if the combined range would exceed {@code calendar_search_max_days}
+     */
+    private static CalendarData extendCalendarData(OperationContext octxt, Mailbox mbox, int folderId,
+            MailItem.Type type, CalendarData calData, long rangeStart, long rangeEnd) throws ServiceException {
+        long newStart = Math.min(rangeStart, calData.getRangeStart());
+        long newEnd = Math.max(rangeEnd, calData.getRangeEnd());
+        if ((newEnd - newStart) / MSEC_PER_DAY > sMaxSearchDays)
+            return null;
+        CalendarData extended = calData;
+        if (newStart < calData.getRangeStart()) {
+            extended = extended.extend(reloadCalendarOverRangeWithFolderScan(octxt, mbox, folderId, type,
+                    newStart, calData.getRangeStart(), null));
+        }
+        if (newEnd > calData.getRangeEnd()) {
+            extended = extended.extend(reloadCalendarOverRangeWithFolderScan(octxt, mbox, folderId, type,
+                    calData.getRangeEnd(), newEnd, null));
+        }
+        return extended;
+    }
 
     private static final int sRangeMonthFrom;
     private static final int sRangeNumMonths;
     private static final int sMaxStaleItems;
     private static final int sMaxStaleItemsBeforeInvalidatingCalendar;
     private static final int sMaxSearchDays;
+    private static final boolean sApplyChanges;
 
     private static final long MSEC_PER_DAY = 1000 * 60 * 60 * 24;
+    // changes queued for background application before further ones are left for lookups to reload
+    private static final int MAX_PENDING_CHANGES = 10000;
 
     static {
         sRangeMonthFrom = LC.calendar_cache_range_month_from.intValue();
@@ -360,11 +394,16 @@ public class CalSummaryCache {
         sMaxStaleItems = LC.calendar_cache_max_stale_items.intValue();
         sMaxStaleItemsBeforeInvalidatingCalendar = 100;
         sMaxSearchDays = LC.calendar_search_max_days.intValueWithinRange(0, 3660);
+        sApplyChanges = LC.calendar_cache_apply_changes.booleanValue();
     }
 
-    @SuppressWarnings("serial")
-    private static class SummaryLRU extends LinkedHashMap<CalSummaryKey, CalendarData> {
-        private final int mMaxAllowed;
+    /**
+     * Heap tier of the summary cache.  Lookups don't lock; unlike an access-ordered {@code LinkedHashMap}, a get on
+     * a {@code ConcurrentLinkedHashMap} is not a structural write.  Writes, and the eviction listener that maintains
+     * the account => folders index, are serialized on this object.
+     */
+    private static class SummaryLRU {
+        private final ConcurrentLinkedHashMap<CalSummaryKey, CalendarData> mMap;
 
         // map that keeps track of which calendar folders are cached for each account
         // This map is updated every time a calendar folder is added, removed, or aged out
@@ -372,49 +411,42 @@ public class CalSummaryCache {
         private final Map<String /* account id */, Set<Integer> /* folder ids */> mAccountFolders;
 
         private SummaryLRU(int capacity) {
-            super(capacity + 1, 1.0f, true);
-            mMaxAllowed = Math.max(capacity, 1);
             mAccountFolders = new HashMap<String, Set<Integer>>();
+            mMap = new ConcurrentLinkedHashMap.Builder<CalSummaryKey, CalendarData>()
+                .maximumWeightedCapacity(Math.max(capacity, 1))
+                .listener(new EvictionListener<CalSummaryKey, CalendarData>() {
+                    @Override
+                    public void onEviction(CalSummaryKey key, CalendarData value) {
+                        deregisterFromAccount(key);
+                    }
+                })
+                .build();
         }
 
-        @Override
-        public void clear() {
-            super.clear();
-            mAccountFolders.clear();
+        public CalendarData get(CalSummaryKey key) {
+            return mMap.get(key);
         }
 
-        @Override
-        public CalendarData put(CalSummaryKey key, CalendarData value) {
-            CalendarData prevVal = super.put(key, value);
-            if (prevVal == null)
-                registerWithAccount(key);
-            return prevVal;
+        public int size() {
+            return mMap.size();
         }
 
-        @Override
-        public void putAll(Map<? extends CalSummaryKey, ? extends CalendarData> t) {
-            super.putAll(t);
-            for (CalSummaryKey key : t.keySet()) {
-                registerWithAccount(key);
-            }
+        /** Caches the data only if there is none for the folder yet. */
+        public synchronized boolean putIfAbsent(CalSummaryKey key, CalendarData value) {
+            if (mMap.putIfAbsent(key, value) != null)
+                return false;
+            registerWithAccount(key);
+            return true;
         }
 
-        @Override
-        public CalendarData remove(Object key) {
-            CalendarData prevVal = super.remove(key);
-            if (prevVal != null && key instanceof CalSummaryKey) {
-                CalSummaryKey k = (CalSummaryKey) key;
-                deregisterFromAccount(k);
-            }
-            return prevVal;
+        /** Replaces the cached data only if it is still {@code oldValue}. */
+        public synchronized boolean replace(CalSummaryKey key, CalendarData oldValue, CalendarData newValue) {
+            return mMap.replace(key, oldValue, newValue);
         }
 
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<CalSummaryKey, CalendarData> eldest) {
-            boolean remove = size() > mMaxAllowed;
-            if (remove)
-                deregisterFromAccount(eldest.getKey());
-            return remove;
+        public synchronized void remove(CalSummaryKey key) {
+            if (mMap.remove(key) != null)
+                deregisterFromAccount(key);
         }
 
         private void registerWithAccount(CalSummaryKey key) {
@@ -428,7 +460,10 @@ public class CalSummaryCache {
             folders.add(folderId);
         }
 
-        private void deregisterFromAccount(CalSummaryKey key) {
+        private synchronized void deregisterFromAccount(CalSummaryKey key) {
+            // An evicted key may have been put back before the listener ran.
+            if (mMap.containsKey(key))
+                return;
             String accountId = key.getAccountId();
             int folderId = key.getFolderId();
             Set<Integer> folders = mAccountFolders.get(accountId);
@@ -442,13 +477,13 @@ public class CalSummaryCache {
 
         public static final int FOLDER_NOT_FOUND = -1;
 
-        public int getFolderForItem(String accountId, int itemId) {
+        public synchronized int getFolderForItem(String accountId, int itemId) {
             int retval = FOLDER_NOT_FOUND;
             Set<Integer> folders = mAccountFolders.get(accountId);
             if (folders != null) {
                 for (int folderId : folders) {
                     CalSummaryKey key = new CalSummaryKey(accountId, folderId);
-                    CalendarData calData = get(key);
+                    CalendarData calData = mMap.get(key);
                     if (calData != null) {
                         CalendarItemData ci = calData.getCalendarItemData(itemId);
                         if (ci != null) {
@@ -465,7 +500,7 @@ public class CalSummaryCache {
          * Toss all folders of the account from the LRU.
          * @param mboxId
          */
-        public void removeAccount(String accountId) {
+        public synchronized void removeAccount(String accountId) {
             Set<Integer> folders = mAccountFolders.get(accountId);
             if (folders != null) {
                 // Get a copy of the folder list to avoid ConcurrentModificationException on mMboxFolders.
@@ -478,8 +513,15 @@ public class CalSummaryCache {
         }
     }
 
+    // applies committed calendar item changes to cached summaries off the commit path; null if disabled
+    private static final ThreadPoolExecutor DELTA_EXECUTOR = sApplyChanges ?
+            new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(MAX_PENDING_CHANGES),
+                    new ThreadFactoryBuilder().setNameFormat("CalSummaryDelta-%d").setDaemon(true).build()) : null;
+
     // LRU cache containing range-limited calendar summary by calendar folder
     private final SummaryLRU mSummaryCache;
+    // account:folder:item of the changes queued on DELTA_EXECUTOR
+    private final Set<String> mPendingChanges = Sets.newConcurrentHashSet();
     private final int mLRUCapacity;
     private final CalSummaryMemcachedCache mMemcachedCache;
 
@@ -575,12 +617,13 @@ public class CalSummaryCache {
         OperationContext ownerOctxt = new OperationContext(targetAcct);
         int currentModSeq = folder.getImapMODSEQ();
 
-        // Lookup from heap LRU.
-            synchronized (mSummaryCache) {
-                if (mLRUCapacity > 0) {
-                    calData = mSummaryCache.get(key);
-                    lruSize = mSummaryCache.size();
-                }
+        // Lookup from heap LRU.  Remember what was there, so that data computed from it only replaces that
+        // instance and never a newer one published in the meantime.
+        CalendarData cachedCalData = null;
+            if (mLRUCapacity > 0) {
+                calData = mSummaryCache.get(key);
+                cachedCalData = calData;
+                lruSize = mSummaryCache.size();
             }
             if (calData != null) {
                 // Sanity check: Cached data can't be newer than the backend data.
@@ -601,10 +644,9 @@ public class CalSummaryCache {
                     // If data is up to date, add to LRU.
                     if (calData.getModSeq() == currentModSeq) {
                         if (mLRUCapacity > 0) {
-                            synchronized (mSummaryCache) {
-                                mSummaryCache.put(key, calData);
-                                lruSize = mSummaryCache.size();
-                            }
+                            if (cacheCalendarData(key, cachedCalData, calData))
+                                cachedCalData = calData;
+                            lruSize = mSummaryCache.size();
                         }
                     } else {
                         // Data loaded from file doesn't have stale items list.  It can't be refreshed incrementally.
@@ -630,13 +672,34 @@ public class CalSummaryCache {
                     reusableCalData = calData;
                 calData = null;  // force recompute further down
             } else if (rangeStart < calData.getRangeStart() || rangeEnd > calData.getRangeEnd()) {
-                // Requested range is not within cached range.  Recompute cached range in the hope
-                // that the new range will cover the requested range.
-                defaultRange = Util.getMonthsRange(System.currentTimeMillis(),
-                                                   sRangeMonthFrom, sRangeNumMonths);
-                if (calData.getRangeStart() != defaultRange.getFirst() ||
-                    calData.getRangeEnd() != defaultRange.getSecond()) {
-                    calData = null;
+                // Requested range is not within cached range.  The cached data is current, so extend it by
+                // expanding just the uncovered part of the requested range.
+                CalendarData extended = extendCalendarData(ownerOctxt, mbox, folderId, type, calData,
+                        rangeStart, rangeEnd);
+                if (extended != null) {
+                    if (mLRUCapacity > 0) {
+                        if (cacheCalendarData(key, cachedCalData, extended) && cachedCalData != null) {
+                            // a commit may have marked an item stale in the old instance after it was copied
+                            extended.markItemsStale(cachedCalData);
+                        }
+                        lruSize = mSummaryCache.size();
+                    }
+                    try {
+                        FileStore.saveCalendarData(mbox.getId(), extended);
+                    } catch (ServiceException e) {
+                        ZimbraLog.calendar.warn("Error persisting calendar summary cache", e);
+                    }
+                    calData = extended;
+                    dataFrom = CacheLevel.Miss;
+                } else {
+                    // Extended range would be too large.  Recompute cached range in the hope
+                    // that the new range will cover the requested range.
+                    defaultRange = Util.getMonthsRange(System.currentTimeMillis(),
+                                                       sRangeMonthFrom, sRangeNumMonths);
+                    if (calData.getRangeStart() != defaultRange.getFirst() ||
+                        calData.getRangeEnd() != defaultRange.getSecond()) {
+                        calData = null;
+                    }
                 }
             }
         }
@@ -646,13 +709,19 @@ public class CalSummaryCache {
             if (defaultRange == null)
                 defaultRange = Util.getMonthsRange(System.currentTimeMillis(),
                                                    sRangeMonthFrom, sRangeNumMonths);
+            long reloadStart = defaultRange.getFirst();
+            long reloadEnd = defaultRange.getSecond();
+            if (reusableCalData != null &&
+                reusableCalData.getRangeStart() <= reloadStart && reusableCalData.getRangeEnd() >= reloadEnd) {
+                // Keep a previously extended range so that its items can still be reused.
+                reloadStart = reusableCalData.getRangeStart();
+                reloadEnd = reusableCalData.getRangeEnd();
+            }
             calData = reloadCalendarOverRange(ownerOctxt, mbox, folderId, type,
-                    defaultRange.getFirst(), defaultRange.getSecond(), reusableCalData, incrementalUpdate);
-            synchronized (mSummaryCache) {
-                if (mLRUCapacity > 0) {
-                    mSummaryCache.put(key, calData);
-                    lruSize = mSummaryCache.size();
-                }
+                    reloadStart, reloadEnd, reusableCalData, incrementalUpdate);
+            if (mLRUCapacity > 0) {
+                cacheCalendarData(key, cachedCalData, calData);
+                lruSize = mSummaryCache.size();
             }
             dataFrom = CacheLevel.Miss;
 
@@ -717,9 +786,7 @@ public class CalSummaryCache {
             return;
         int mboxId = mbox.getId();
         CalSummaryKey key = new CalSummaryKey(mbox.getAccountId(), folderId);
-        synchronized (mSummaryCache) {
-            mSummaryCache.remove(key);
-        }
+        mSummaryCache.remove(key);
         try {
             FileStore.deleteCalendarData(mboxId, folderId);
         } catch (ServiceException e) {
@@ -727,23 +794,86 @@ public class CalSummaryCache {
         }
     }
 
-    private void invalidateItem(Mailbox mbox, int folderId, int calItemId) {
+    /**
+     * Caches {@code calData} in place of {@code expected}, the instance it was computed from, or only if nothing is
+     * cached when {@code expected} is null.  Returns false, leaving the cache alone, if a committed change has
+     * published newer data in the meantime.
+     */
+    private boolean cacheCalendarData(CalSummaryKey key, CalendarData expected, CalendarData calData) {
+        if (expected != null)
+            return mSummaryCache.replace(key, expected, calData);
+        return mSummaryCache.putIfAbsent(key, calData);
+    }
+
+    /**
+     * Marks the item stale in the cached summary of the folder.  Returns false if the folder isn't cached, or was
+     * dropped from the cache because it has too many stale items.
+     */
+    private boolean invalidateItem(Mailbox mbox, int folderId, int calItemId) {
         if (!LC.calendar_cache_enabled.booleanValue())
-            return;
+            return false;
         CalSummaryKey key = new CalSummaryKey(mbox.getAccountId(), folderId);
         CalendarData calData = null;
-        synchronized (mSummaryCache) {
-            if (mLRUCapacity > 0) {
-                calData = mSummaryCache.get(key);
-            }
+        if (mLRUCapacity > 0) {
+            calData = mSummaryCache.get(key);
         }
         // Invalidate the item from the calendar.
-        if (calData != null) {
+        while (calData != null) {
             int numStaleItems = calData.markItemStale(calItemId);
             // If there are too many stale items, purge the calendar from cache to avoid accumulating
             // too many stale item ids.
-            if (numStaleItems > sMaxStaleItemsBeforeInvalidatingCalendar)
+            if (numStaleItems > sMaxStaleItemsBeforeInvalidatingCalendar) {
                 invalidateSummary(mbox, folderId);
+                return false;
+            }
+            // A lookup may have replaced the data meanwhile.  If it did so before the mark, mark its copy too.
+            CalendarData current = mSummaryCache.get(key);
+            if (current == calData) {
+                return true;
+            }
+            calData = current;
+        }
+        return false;
+    }
+
+    /**
+     * Handles a committed change to a calendar item in a cached folder.  The item is marked stale right away, so
+     * that a lookup that already holds the cached data reloads it instead of reusing it; that is all the commit
+     * path does.  The item is then re-expanded over the cached range on a background thread, and a copy of the
+     * cached data with the new item replaces the old one unless a lookup has replaced it first.
+     */
+    private void applyItemChange(final Mailbox mbox, final int folderId, final int calItemId) {
+        if (!invalidateItem(mbox, folderId, calItemId) || DELTA_EXECUTOR == null)
+            return;
+        final String pendingKey = mbox.getAccountId() + ":" + folderId + ":" + calItemId;
+        if (!mPendingChanges.add(pendingKey))
+            return;  // already queued; the queued task reads the item's latest state
+        try {
+            DELTA_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    mPendingChanges.remove(pendingKey);
+                    applyItemDelta(mbox, folderId, calItemId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The item stays stale and is reloaded by the next lookup.
+            mPendingChanges.remove(pendingKey);
+        }
+    }
+
+    private void applyItemDelta(Mailbox mbox, int folderId, int calItemId) {
+        CalSummaryKey key = new CalSummaryKey(mbox.getAccountId(), folderId);
+        CalendarData calData = mSummaryCache.get(key);
+        if (calData == null)
+            return;
+        try {
+            CalendarItemData calItemData = fetchCalendarItemData(new OperationContext(mbox), mbox, folderId,
+                    calItemId, calData.getRangeStart(), calData.getRangeEnd());
+            mSummaryCache.replace(key, calData, calData.withItem(calItemId, calItemData));
+        } catch (ServiceException e) {
+            ZimbraLog.calendar.debug("unable to update cached summary of calendar item %d; leaving it stale",
+                    calItemId, e);
         }
     }
 
@@ -754,7 +884,7 @@ public class CalSummaryCache {
                 if (item instanceof CalendarItem) {
                     CalendarItem calItem = (CalendarItem) item;
                     int folderId = calItem.getFolderId();
-                    invalidateItem(calItem.getMailbox(), folderId, calItem.getId());
+                    applyItemChange(calItem.getMailbox(), folderId, calItem.getId());
                 }
             }
         }
@@ -767,17 +897,14 @@ public class CalSummaryCache {
                     Mailbox mbox = item.getMailbox();
                     int folderId = item.getFolderId();
                     int itemId = item.getId();
-                    invalidateItem(mbox, folderId, itemId);
+                    applyItemChange(mbox, folderId, itemId);
 
-                    // If this is a folder move, invalidate the item from the old folder too.
+                    // If this is a folder move, remove the item from the old folder too.
                     if ((change.why & Change.FOLDER) != 0) {
                         String accountId = mbox.getAccountId();
-                        int prevFolderId;
-                        synchronized (mSummaryCache) {
-                            prevFolderId = mSummaryCache.getFolderForItem(accountId, itemId);
-                        }
+                        int prevFolderId = mSummaryCache.getFolderForItem(accountId, itemId);
                         if (prevFolderId != folderId && prevFolderId != SummaryLRU.FOLDER_NOT_FOUND) {
-                            invalidateItem(mbox, prevFolderId, itemId);
+                            applyItemChange(mbox, prevFolderId, itemId);
                         }
                     }
                 }
@@ -810,12 +937,9 @@ public class CalSummaryCache {
                         lastMbox = mbox;
                         int itemId = entry.getKey().getItemId();
                         String accountId = mbox.getAccountId();
-                        int folderId;
-                        synchronized (mSummaryCache) {
-                            folderId = mSummaryCache.getFolderForItem(accountId, itemId);
-                        }
+                        int folderId = mSummaryCache.getFolderForItem(accountId, itemId);
                         if (folderId != SummaryLRU.FOLDER_NOT_FOUND) {
-                            invalidateItem(mbox, folderId, itemId);
+                            applyItemChange(mbox, folderId, itemId);
                         }
                     }
                 }
@@ -828,9 +952,7 @@ public class CalSummaryCache {
     }
 
     void purgeMailbox(Mailbox mbox) throws ServiceException {
-        synchronized (mSummaryCache) {
-            mSummaryCache.removeAccount(mbox.getAccountId());
-        }
+        mSummaryCache.removeAccount(mbox.getAccountId());
         if (MemcachedConnector.isConnected()) {
             mMemcachedCache.purgeMailbox(mbox);
         }
@@ -18,6 +18,8 @@
 package com.zimbra.cs.mailbox.calendar.cache;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -28,6 +30,11 @@ import java.util.Set;
 import com.zimbra.common.service.ServiceException;
 import com.zimbra.cs.mailbox.Metadata;
 
+/**
+ * Summary of the calendar items in one folder over a time range.  Once an instance is published to
+ * {@link CalSummaryCache} its item list is never modified; changes produce a new instance via
+ * {@link #withItem(int, CalendarItemData)} or {@link #extend(CalendarData)}.  Only the stale item set is mutable.
+ */
 public class CalendarData {
     private int mFolderId;
     private int mModSeq;  // last-modified sequence of the folder
@@ -36,6 +43,7 @@ public class CalendarData {
     private List<CalendarItemData> mCalendarItems;
     private Map<Integer, CalendarItemData> mCalendarItemsMap;
     private Set<Integer> mStaleItemIds;
+    private volatile IntervalIndex mIndex;  // built on the first sub-range lookup
 
     CalendarData(int folderId, int modSeq, long rangeStart, long rangeEnd) {
         mFolderId = folderId;
@@ -68,8 +76,8 @@ public class CalendarData {
         if (rangeStart <= mRangeStart && rangeEnd >= mRangeEnd)
             return this;
         CalendarData calData = new CalendarData(mFolderId, mModSeq, rangeStart, rangeEnd);
-        for (CalendarItemData calItemData : mCalendarItems) {
-            CalendarItemData itemSubRange = calItemData.getSubRange(rangeStart, rangeEnd);
+        for (int pos : getIndex().overlapping(rangeStart, rangeEnd)) {
+            CalendarItemData itemSubRange = mCalendarItems.get(pos).getSubRange(rangeStart, rangeEnd);
             if (itemSubRange != null) {
                 calData.addCalendarItem(itemSubRange);
                 int itemId = itemSubRange.getCalItemId();
@@ -80,6 +88,138 @@ public class CalendarData {
         return calData;
     }
 
+    /**
+     * Returns a copy of this data with the given item replaced, added, or (if {@code calItemData} is null) removed.
+     * The item is no longer considered stale in the copy.
+     */
+    CalendarData withItem(int calItemId, CalendarItemData calItemData) {
+        CalendarData calData = new CalendarData(mFolderId, mModSeq, mRangeStart, mRangeEnd);
+        boolean replaced = false;
+        for (CalendarItemData existing : mCalendarItems) {
+            if (existing.getCalItemId() != calItemId) {
+                calData.addCalendarItem(existing);
+            } else if (calItemData != null && !replaced) {
+                calData.addCalendarItem(calItemData);
+                replaced = true;
+            }
+        }
+        if (calItemData != null && !replaced) {
+            calData.addCalendarItem(calItemData);
+        }
+        synchronized (this) {
+            calData.mStaleItemIds.addAll(mStaleItemIds);
+        }
+        calData.mStaleItemIds.remove(calItemId);
+        return calData;
+    }
+
+    /**
+     * Returns the union of this data and {@code extension}, which must have been computed from the same folder
+     * state over an adjacent range.  Items present in both have their instance lists merged.  Items stale in either
+     * are stale in the union.
+     */
+    CalendarData extend(CalendarData extension) {
+        CalendarData calData = new CalendarData(mFolderId, mModSeq,
+                Math.min(mRangeStart, extension.mRangeStart), Math.max(mRangeEnd, extension.mRangeEnd));
+        for (CalendarItemData existing : mCalendarItems) {
+            CalendarItemData added = extension.getCalendarItemData(existing.getCalItemId());
+            calData.addCalendarItem(added != null ? existing.mergeInstances(added) : existing);
+        }
+        for (CalendarItemData added : extension.mCalendarItems) {
+            if (!mCalendarItemsMap.containsKey(added.getCalItemId())) {
+                calData.addCalendarItem(added);
+            }
+        }
+        copyStaleItemIdsTo(calData.mStaleItemIds);
+        extension.copyStaleItemIdsTo(calData.mStaleItemIds);
+        return calData;
+    }
+
+    private IntervalIndex getIndex() {
+        IntervalIndex index = mIndex;
+        if (index == null) {
+            mIndex = index = new IntervalIndex(mCalendarItems);
+        }
+        return index;
+    }
+
+    /**
+     * Item positions sorted by the start of each item's actual range, alongside the running maximum of the range
+     * ends.  Both arrays are sorted, so the items that may overlap a window are found with two binary searches
+     * instead of a scan of the whole folder.  Items with untimed instances can't be placed and are always included.
+     */
+    private static final class IntervalIndex {
+        private final long[] mStarts;
+        private final long[] mMaxEnds;
+        private final int[] mPositions;
+        private final int[] mUntimed;
+
+        IntervalIndex(final List<CalendarItemData> items) {
+            List<Integer> timed = new ArrayList<Integer>(items.size());
+            List<Integer> untimed = new ArrayList<Integer>();
+            for (int i = 0; i < items.size(); i++) {
+                CalendarItemData item = items.get(i);
+                if (item.hasUntimedInstances() || (item.getActualRangeStart() == 0 && item.getActualRangeEnd() == 0)) {
+                    untimed.add(i);
+                } else {
+                    timed.add(i);
+                }
+            }
+            Integer[] sorted = timed.toArray(new Integer[timed.size()]);
+            Arrays.sort(sorted, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    long s1 = items.get(o1).getActualRangeStart();
+                    long s2 = items.get(o2).getActualRangeStart();
+                    return s1 < s2 ? -1 : (s1 == s2 ? 0 : 1);
+                }
+            });
+            mStarts = new long[sorted.length];
+            mMaxEnds = new long[sorted.length];
+            mPositions = new int[sorted.length];
+            long maxEnd = Long.MIN_VALUE;
+            for (int i = 0; i < sorted.length; i++) {
+                CalendarItemData item = items.get(sorted[i]);
+                mPositions[i] = sorted[i];
+                mStarts[i] = item.getActualRangeStart();
+                maxEnd = Math.max(maxEnd, item.getActualRangeEnd());
+                mMaxEnds[i] = maxEnd;
+            }
+            mUntimed = new int[untimed.size()];
+            for (int i = 0; i < mUntimed.length; i++) {
+                mUntimed[i] = untimed.get(i);
+            }
+        }
+
+        /** @return positions, in item list order, of the items that may have instances in the range */
+        int[] overlapping(long rangeStart, long rangeEnd) {
+            int lo = firstGreater(mMaxEnds, rangeStart);
+            int hi = firstGreater(mStarts, rangeEnd - 1);
+            int count = Math.max(hi - lo, 0);
+            int[] result = new int[count + mUntimed.length];
+            if (count > 0) {
+                System.arraycopy(mPositions, lo, result, 0, count);
+            }
+            System.arraycopy(mUntimed, 0, result, count, mUntimed.length);
+            Arrays.sort(result);
+            return result;
+        }
+
+        /** @return index of the first element of the sorted array that is greater than {@code value} */
+        private static int firstGreater(long[] sorted, long value) {
+            int lo = 0, hi = sorted.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (sorted[mid] > value) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+            }
+            return lo;
+        }
+    }
+
     synchronized int getNumStaleItems() {
         return mStaleItemIds.size();
     }
@@ -97,6 +237,15 @@ public class CalendarData {
         copyTo.addAll(mStaleItemIds);
     }
 
+    /** Marks every item that is stale in {@code calData} stale here too. */
+    void markItemsStale(CalendarData calData) {
+        Set<Integer> stale = new HashSet<Integer>();
+        calData.copyStaleItemIdsTo(stale);
+        synchronized (this) {
+            mStaleItemIds.addAll(stale);
+        }
+    }
+
     private static final String FN_FOLDER_ID = "fid";
     private static final String FN_MODSEQ = "modSeq";
     private static final String FN_RANGE_START = "rgStart";
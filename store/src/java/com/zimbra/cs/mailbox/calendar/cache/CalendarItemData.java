@@ -18,8 +18,10 @@
 package com.zimbra.cs.mailbox.calendar.cache;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import com.zimbra.common.service.ServiceException;
 import com.zimbra.cs.db.DbTag;
@@ -127,6 +129,44 @@ public class CalendarItemData {
         return mInstances.size();
     }
 
+    boolean hasUntimedInstances() {
+        for (InstanceData inst : mInstances) {
+            if (inst.getDtStart() == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a copy of this item with the instances of {@code other}, the same unchanged item expanded over an
+     * adjacent range, added.  Instances that straddle the boundary appear in both and are kept once.
+     */
+    CalendarItemData mergeInstances(CalendarItemData other) {
+        CalendarItemData merged = new CalendarItemData(type, mFolderId, mCalItemId, mFlags, mTags, mTagIds, mModMetadata,
+                mModContent, mDate, mChangeDate, mSize, mUid, mIsRecurring, mHasExceptions, mIsPublic, mAlarm, mDefaultData);
+        Set<String> seen = new HashSet<String>();
+        for (InstanceData inst : mInstances) {
+            seen.add(inst.getRecurIdZ() + "/" + inst.getDtStart());
+            merged.addInstance(inst);
+        }
+        for (InstanceData inst : other.mInstances) {
+            if (seen.add(inst.getRecurIdZ() + "/" + inst.getDtStart())) {
+                merged.addInstance(inst);
+            }
+        }
+        long start = mActualRangeStart, end = mActualRangeEnd;
+        if (start == 0 && end == 0) {
+            start = other.mActualRangeStart;
+            end = other.mActualRangeEnd;
+        } else if (other.mActualRangeStart != 0 || other.mActualRangeEnd != 0) {
+            start = Math.min(start, other.mActualRangeStart);
+            end = Math.max(end, other.mActualRangeEnd);
+        }
+        merged.setActualRange(start, end);
+        return merged;
+    }
+
     public CalendarItemData getSubRange(long rangeStart, long rangeEnd) {
         if (rangeStart <= mActualRangeStart && rangeEnd >= mActualRangeEnd)
             return this;
@@ -0,0 +1,283 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.mime;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.activation.DataSource;
+import javax.mail.util.ByteArrayDataSource;
+
+import com.google.common.util.concurrent.Callables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.Weigher;
+import com.zimbra.common.localconfig.LC;
+import com.zimbra.common.util.ByteUtil;
+import com.zimbra.common.util.ZimbraLog;
+import com.zimbra.cs.convert.ConversionException;
+
+/**
+ * Extracts the text of large or externally-converted MIME parts on a bounded pool of worker threads, so that one
+ * slow attachment doesn't hold up the thread delivering or indexing its message for longer than a fixed budget.
+ * <p>
+ * Extracted text is cached by the SHA-256 digest of the decoded part, so an attachment sent to many recipients, or
+ * re-indexed, is only extracted once.  Concurrent requests for the same content share a single extraction.
+ */
+final class AttachmentExtractor {
+
+    private static final AttachmentExtractor INSTANCE = new AttachmentExtractor(
+            LC.zimbra_attachment_extraction_threads.intValue(),
+            LC.zimbra_attachment_extraction_cache_size_kb.longValue() * 1024);
+
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentLinkedHashMap<String, String> cache;
+    private final ConcurrentMap<String, Extraction> pending = new ConcurrentHashMap<String, Extraction>();
+
+    AttachmentExtractor(int threads, long cacheBytes) {
+        if (threads > 0) {
+            executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(threads * 16),
+                    new ThreadFactoryBuilder().setNameFormat("AttachmentExtractor-%d").setDaemon(true).build());
+            executor.allowCoreThreadTimeOut(true);
+        } else {
+            executor = null;
+        }
+        if (cacheBytes > 0) {
+            // Java strings cost two bytes a character
+            cache = new ConcurrentLinkedHashMap.Builder<String, String>()
+                .maximumWeightedCapacity((int) Math.min(cacheBytes / 2, Integer.MAX_VALUE))
+                .weigher(new Weigher<String>() {
+                    @Override
+                    public int weightOf(String value) {
+                        return Math.max(value.length(), 1);
+                    }
+                })
+                .build();
+        } else {
+            cache = null;
+        }
+    }
+
+    static AttachmentExtractor getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns whether the handler's text should be extracted here rather than inline: handlers that run externally
+     * always are, in-process ones only for parts of at least {@code zimbra_attachment_extraction_inline_max_kb}.
+     * Parts over {@code zimbra_attachment_extraction_max_part_size_kb} never are.
+     */
+    boolean isDeferred(MimeHandler handler) {
+        if (executor == null || handler.getDataSource() == null) {
+            return false;
+        }
+        // the pool works from an in-memory copy of the part, so anything larger is extracted inline as it always was
+        long maxSize = LC.zimbra_attachment_extraction_max_part_size_kb.longValue() * 1024;
+        if (maxSize > 0 && handler.getSize() > maxSize) {
+            return false;
+        }
+        return handler.runsExternally() ||
+                handler.getSize() >= LC.zimbra_attachment_extraction_inline_max_kb.longValue() * 1024;
+    }
+
+    /**
+     * An extraction under way, shared by every caller that asked for the same content.  It is only cancelled once
+     * the last of those callers has given up waiting, so one caller running out of time doesn't fail the others.
+     */
+    final class Extraction extends FutureTask<String> {
+        private final String key;
+        private final AtomicInteger waiters = new AtomicInteger(1);
+
+        /**
+         * @param key the key the extraction is registered under while it runs, or null if it isn't
+         */
+        Extraction(Callable<String> callable, String key) {
+            super(callable);
+            this.key = key;
+        }
+
+        @Override
+        protected void done() {
+            if (key != null) {
+                pending.remove(key, this);
+            }
+        }
+
+        /** Registers another waiter, unless every waiter has already given up and the extraction is cancelled. */
+        boolean join() {
+            while (true) {
+                int n = waiters.get();
+                if (n == 0) {
+                    return false;
+                }
+                if (waiters.compareAndSet(n, n + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /** Stops waiting, cancelling the extraction if nobody else is waiting for it. */
+        void leave() {
+            if (waiters.decrementAndGet() == 0) {
+                cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Starts extracting the handler's text, or joins an extraction of the same content already under way.  The
+     * part is read once on the calling thread, into a copy that the extraction then works from, so that the pool
+     * never touches the message's MIME objects.
+     *
+     * @throws MimeHandlerException if the part can't be read or exceeds the per-part size budget, or, caused by a
+     *  temporary {@link ConversionException}, if the pool is full
+     */
+    Extraction submit(final MimeHandler handler) throws MimeHandlerException {
+        final String key = getKey(handler);
+        if (cache != null) {
+            String text = cache.get(key);
+            if (text != null) {
+                Extraction done = new Extraction(Callables.returning(text), null);
+                done.run();
+                return done;
+            }
+        }
+
+        while (true) {
+            Extraction task = new Extraction(new Callable<String>() {
+                @Override
+                public String call() throws MimeHandlerException {
+                    String text = handler.getContentImpl();
+                    if (text == null) {
+                        text = "";
+                    }
+                    if (cache != null) {
+                        cache.put(key, text);
+                    }
+                    return text;
+                }
+            }, key);
+            Extraction existing = pending.putIfAbsent(key, task);
+            if (existing != null) {
+                if (existing.join()) {
+                    return existing;
+                }
+                pending.remove(key, existing);  // cancelled as we found it; start over
+                continue;
+            }
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                task.cancel(false);  // unregisters it
+                throw temporaryFailure("text extraction pool is full; part " + handler.getPartName() +
+                        " will be indexed again later", e);
+            }
+            return task;
+        }
+    }
+
+    /**
+     * Waits up to {@code zimbra_attachment_extraction_timeout_sec} for the text of a part started with
+     * {@link #submit}.
+     *
+     * @throws MimeHandlerException if extraction failed, or, caused by a temporary {@link ConversionException}, if
+     *  it ran out of time or was cancelled
+     */
+    String await(MimeHandler handler, Extraction extraction) throws MimeHandlerException {
+        long timeout = LC.zimbra_attachment_extraction_timeout_sec.longValue();
+        try {
+            return timeout > 0 ? extraction.get(timeout, TimeUnit.SECONDS) : extraction.get();
+        } catch (TimeoutException e) {
+            extraction.leave();
+            throw temporaryFailure("text extraction of " + handler.getContentType() + " part " +
+                    handler.getPartName() + " did not finish within " + timeout + "s", e);
+        } catch (CancellationException e) {
+            throw temporaryFailure("text extraction cancelled", e);
+        } catch (InterruptedException e) {
+            extraction.leave();
+            Thread.currentThread().interrupt();
+            throw temporaryFailure("interrupted while waiting for text extraction", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof MimeHandlerException) {
+                throw (MimeHandlerException) cause;
+            }
+            throw new MimeHandlerException(cause);
+        }
+    }
+
+    /**
+     * Returns a failure that {@link ParsedMessage} reports as a temporary analysis failure, so that the item is indexed
+     * again later rather than for good without the text of the part.
+     */
+    private static MimeHandlerException temporaryFailure(String msg, Throwable cause) {
+        return new MimeHandlerException(msg, new ConversionException(msg, cause, true));
+    }
+
+    /**
+     * Reads the part into memory, pointing the handler at the copy, and builds the cache key from its digest and
+     * anything else that can change what the handler extracts from it.
+     */
+    private static String getKey(MimeHandler handler) throws MimeHandlerException {
+        long maxSize = LC.zimbra_attachment_extraction_max_part_size_kb.longValue() * 1024;
+        if (maxSize > 0 && handler.getSize() > maxSize) {
+            throw new MimeHandlerException("part " + handler.getPartName() + " exceeds the text extraction limit of " +
+                    maxSize + " bytes");
+        }
+        DataSource ds = handler.getDataSource();
+        byte[] content;
+        try {
+            InputStream is = ds.getInputStream();
+            if (is == null) {
+                throw new MimeHandlerException("no content for part " + handler.getPartName());
+            }
+            int sizeHint = (int) Math.min(handler.getSize(), Integer.MAX_VALUE);
+            content = ByteUtil.getContent(is, sizeHint, maxSize > 0 ? maxSize : -1);
+        } catch (IOException e) {
+            if (maxSize > 0) {
+                throw new MimeHandlerException("part " + handler.getPartName() +
+                        " could not be read within the text extraction limit of " + maxSize + " bytes", e);
+            }
+            throw new MimeHandlerException(e);
+        }
+        ByteArrayDataSource copy = new ByteArrayDataSource(content, ds.getContentType());
+        copy.setName(ds.getName());
+        handler.init(copy);
+        String digest = ByteUtil.getSHA256Digest(content, true);
+        ZimbraLog.index.debug("extracting %s part %s (digest %s) on the extraction pool",
+                handler.getContentType(), handler.getPartName(), digest);
+        return digest + '/' + handler.getClass().getName() + '/' + handler.getContentType() + '/' +
+                handler.getDefaultCharset();
+    }
+
+    int getCacheSize() {
+        return cache == null ? 0 : cache.size();
+    }
+}
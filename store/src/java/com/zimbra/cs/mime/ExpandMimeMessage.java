@@ -17,6 +17,8 @@
 
 package com.zimbra.cs.mime;
 
+import java.util.List;
+
 import javax.mail.MessagingException;
 import javax.mail.internet.MimeMessage;
 
@@ -29,10 +31,20 @@ public class ExpandMimeMessage {
     
     private MimeMessage mMimeMessage;
     private MimeMessage mExpandedMessage;
+    private List<MPartInfo> mParts;
     
     public ExpandMimeMessage(MimeMessage original) {
+        this(original, null);
+    }
+
+    /**
+     * @param parts the original message's parts as returned by {@link Mime#getParts},
+     *  used to skip converters that couldn't apply, or <tt>null</tt> to try them all
+     */
+    public ExpandMimeMessage(MimeMessage original, List<MPartInfo> parts) {
         mMimeMessage = original;
         mExpandedMessage = original;
+        mParts = parts;
     }
 
     /**
@@ -84,8 +96,11 @@ public class ExpandMimeMessage {
         // first, find out if *any* of the converters would be triggered (but don't change the message)
         try {
             for (Class<? extends MimeVisitor> vclass : MimeVisitor.getConverters()) {
-                if (mExpandedMessage == mMimeMessage)
-                    vclass.newInstance().setCallback(forkCallback).accept(mMimeMessage);
+                if (mExpandedMessage == mMimeMessage) {
+                    MimeVisitor visitor = vclass.newInstance();
+                    if (mParts == null || visitor.isApplicable(mParts))
+                        visitor.setCallback(forkCallback).accept(mMimeMessage);
+                }
                 // if there are attachments to be expanded, expand them in the MimeMessage *copy*
                 if (mExpandedMessage != mMimeMessage)
                     vclass.newInstance().accept(mExpandedMessage);
@@ -67,6 +67,9 @@ public abstract class MimeHandler {
     private String defaultCharset;
     private String locale;
     private String partName; // dotted-number part name
+    private String extractedContent;
+    private AttachmentExtractor.Extraction pendingContent;
+    private MimeHandlerException extractionFailure;
 
     /** Returns <tt>true</tt> if a request for the handler to perform text
      *  extraction or HTML conversion will result in an RPC to an external
@@ -136,6 +139,9 @@ public abstract class MimeHandler {
      */
     public void init(DataSource source) {
         dataSource = source;
+        extractedContent = null;
+        pendingContent = null;
+        extractionFailure = null;
     }
 
     void setPartName(String value) {
@@ -173,15 +179,48 @@ public abstract class MimeHandler {
     protected abstract void addFields(Document doc) throws MimeHandlerException;
 
     /**
-     * Gets the text content of the document.
+     * Starts extracting the text content in the background if this part goes through the
+     * {@link AttachmentExtractor}, so that it can overlap with the analysis of other parts.
+     * {@link #getContent()} picks up the result.  Must be called after {@link #init},
+     * {@link #setPartName} and {@link #setSize}.
+     */
+    void prefetchContent() throws MimeHandlerException {
+        if (extractedContent == null && pendingContent == null && extractionFailure == null &&
+                !DebugConfig.disableMimePartExtraction) {
+            AttachmentExtractor extractor = AttachmentExtractor.getInstance();
+            if (extractor.isDeferred(this)) {
+                pendingContent = extractor.submit(this);
+            }
+        }
+    }
+
+    /**
+     * Gets the text content of the document.  Large and externally-converted parts are
+     * extracted on the {@link AttachmentExtractor} pool, subject to its time and size budgets.
      */
     public final String getContent() throws MimeHandlerException {
         if (!DebugConfig.disableMimePartExtraction) {
-            String toRet = getContentImpl();
-            if (toRet == null)
-                return "";
-            else
-                return toRet;
+            if (extractedContent == null) {
+                prefetchContent();
+                String toRet;
+                if (pendingContent != null) {
+                    // wait only once; a caller that gave up must not give up on the shared extraction again
+                    AttachmentExtractor.Extraction extraction = pendingContent;
+                    pendingContent = null;
+                    try {
+                        toRet = AttachmentExtractor.getInstance().await(this, extraction);
+                    } catch (MimeHandlerException e) {
+                        extractionFailure = e;
+                        throw e;
+                    }
+                } else if (extractionFailure != null) {
+                    throw extractionFailure;
+                } else {
+                    toRet = getContentImpl();
+                }
+                extractedContent = toRet == null ? "" : toRet;
+            }
+            return extractedContent;
         } else {
             if (dataSource != null && !mDrainedContent) {
                 InputStream is = null;
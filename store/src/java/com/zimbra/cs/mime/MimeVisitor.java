@@ -148,6 +148,15 @@ public abstract class MimeVisitor {
     public ModificationCallback getCallback()  { return mCallback; }
 
 
+    /** Returns whether this visitor could possibly alter a message with the
+     *  given parts, as listed by {@link Mime#getParts}.  Converters that only
+     *  act on particular content types override this so that messages they
+     *  would leave alone are never walked.  The default is to always visit. */
+    protected boolean isApplicable(List<MPartInfo> parts) {
+        return true;
+    }
+
+
     /** The flags passed to the <code>visitXXX</code> methods before and
      *  after a node's children are visited, respectively. */
     protected enum VisitPhase { VISIT_BEGIN, VISIT_END };
@@ -124,6 +124,7 @@ public final class ParsedMessage {
     private boolean temporaryAnalysisFailure = false;
 
     private List<MPartInfo> messageParts;
+    private Set<MPartInfo> bodyParts;
     private String recipients;
     private String sender;
     private RFC822AddressTokenStream fromTokenStream;
@@ -146,6 +147,9 @@ public final class ParsedMessage {
     private CalendarPartInfo calendarPartInfo;
     private boolean wasMutated;
     private InputStream sharedStream;
+    /** The in-memory content backing {@link #sharedStream}, if there is one. */
+    private byte[] rawContent;
+    private final Map<MPartInfo, MimeHandler> prefetchedHandlers = new HashMap<MPartInfo, MimeHandler>();
     private final Map<Mailbox, Threader> threaders = new HashMap<Mailbox, Threader>();
     private String dataSourceId = null;
 
@@ -197,6 +201,60 @@ public final class ParsedMessage {
         }
     }
 
+    /** @see #copyForDelivery() */
+    private ParsedMessage(ParsedMessage source) {
+        mimeMessage = source.mimeMessage;
+        expandedMessage = source.expandedMessage;
+        parsed = source.parsed;
+        analyzedBodyParts = source.analyzedBodyParts;
+        analyzedNonBodyParts = source.analyzedNonBodyParts;
+        bodyContent = source.bodyContent;
+        filenames.addAll(source.filenames);
+        indexAttachments = source.indexAttachments;
+        numParseErrors = source.numParseErrors;
+        defaultCharset = source.defaultCharset;
+        temporaryAnalysisFailure = source.temporaryAnalysisFailure;
+        messageParts = source.messageParts;
+        bodyParts = source.bodyParts;
+        recipients = source.recipients;
+        sender = source.sender;
+        parsedSender = source.parsedSender;
+        parsedRecipients = source.parsedRecipients;
+        hasAttachments = source.hasAttachments;
+        hasTextCalendarPart = source.hasTextCalendarPart;
+        fragment = source.fragment;
+        encrypted = source.encrypted;
+        dateHeader = source.dateHeader;
+        receivedDate = source.receivedDate;
+        subject = source.subject;
+        normalizedSubject = source.normalizedSubject;
+        subjectIsReply = source.subjectIsReply;
+        hasReplyToHeader = source.hasReplyToHeader;
+        luceneDocuments.addAll(source.luceneDocuments);
+        calendarPartInfo = source.calendarPartInfo;
+        wasMutated = source.wasMutated;
+        sharedStream = source.sharedStream;
+        rawContent = source.rawContent;
+        dataSourceId = source.dataSourceId;
+        // the address token streams are consumed when indexed, so each copy builds its own
+    }
+
+    /**
+     * Returns a copy of this message for delivering it to another mailbox on another thread, instead of parsing the
+     * content again.  The MIME structure and the analysis of the body parts are done here first and then shared,
+     * so neither message changes them afterwards.  What delivery changes per recipient (the default charset, the
+     * subject decoded with it and the {@link Threader} of each mailbox) belongs to the copy alone.
+     */
+    public ParsedMessage copyForDelivery() throws ServiceException {
+        parse();
+        analyzeBodyParts();
+        if (hasTextCalendarPart) {
+            // getCalendarPartInfo() needs the attachments as well
+            analyzeFully();
+        }
+        return new ParsedMessage(this);
+    }
+
     private void initialize(MimeMessage msg, Long receivedDate, boolean indexAttachments) throws ServiceException {
         mimeMessage = msg;
         expandedMessage = msg;
@@ -207,6 +265,7 @@ public final class ParsedMessage {
         if (rawData == null || rawData.length == 0) {
             throw ServiceException.FAILURE("Message data cannot be null or empty.", null);
         }
+        rawContent = rawData;
         sharedStream = new SharedByteArrayInputStream(rawData);
         initialize(receivedDate, indexAttachments);
     }
@@ -260,8 +319,8 @@ public final class ParsedMessage {
             if (!(sharedStream instanceof SharedInputStream)) {
                 InputStream in = sharedStream;
                 sharedStream = null;
-                byte[] content = ByteUtil.getContent(in, 0);
-                sharedStream = new SharedByteArrayInputStream(content);
+                rawContent = ByteUtil.getContent(in, 0);
+                sharedStream = new SharedByteArrayInputStream(rawContent);
             }
 
             mimeMessage = expandedMessage = new Mime.FixedMimeMessage(JMSession.getSession(), sharedStream);
@@ -282,12 +341,24 @@ public final class ParsedMessage {
             mimeMessage.writeTo(buffer);
             byte[] content = buffer.toByteArray();
             ByteUtil.closeStream(sharedStream);
+            rawContent = content;
             sharedStream = new SharedByteArrayInputStream(content);
             mimeMessage = expandedMessage = null;
             mimeMessage = expandedMessage = new Mime.FixedMimeMessage(JMSession.getSession(), sharedStream);
         }
 
-        ExpandMimeMessage expand = new ExpandMimeMessage(mimeMessage);
+        // List the parts once up front.  The converters use the list to skip messages they couldn't
+        // change, and if none of them does change anything it's exactly what parse() would have built.
+        List<MPartInfo> parts = null;
+        if (MimeVisitor.anyConvertersRegistered()) {
+            try {
+                parts = Mime.getParts(mimeMessage);
+            } catch (Exception e) {
+                // leave it to parse() to report
+            }
+        }
+
+        ExpandMimeMessage expand = new ExpandMimeMessage(mimeMessage, parts);
         try {
             expand.expand();
             expandedMessage = expand.getExpanded();
@@ -296,6 +367,9 @@ public final class ParsedMessage {
             expandedMessage = mimeMessage;
             LOG.warn("exception while converting message; message will be analyzed unconverted", e);
         }
+        if (expandedMessage == mimeMessage) {
+            messageParts = parts;
+        }
 
         // must set received-date before Lucene document is initialized
         if (receivedDate == null) {
@@ -334,7 +408,9 @@ public final class ParsedMessage {
         parsed = true;
 
         try {
-            messageParts = Mime.getParts(expandedMessage);
+            if (messageParts == null) {
+                messageParts = Mime.getParts(expandedMessage);
+            }
             hasAttachments = Mime.hasAttachment(messageParts);
             hasTextCalendarPart = Mime.hasTextCalenndar(messageParts);
         } catch (Exception e) {
@@ -344,6 +420,15 @@ public final class ParsedMessage {
         return this;
     }
 
+    /** Returns the "body" (non-attachment) parts of the message, computed once and shared by
+     *  {@link #analyzeBodyParts()} and {@link #analyzeNonBodyParts()}. */
+    private Set<MPartInfo> getBodyParts() {
+        if (bodyParts == null) {
+            bodyParts = Mime.getBody(parse().messageParts, false);
+        }
+        return bodyParts;
+    }
+
     /** Applies all registered MIME mutators to the encapsulated message.
      *  The message is not forked, so both {@link #mMimeMessage} and
      *  {@link #mExpandedMessage} are affected by the changes.
@@ -389,7 +474,7 @@ public final class ParsedMessage {
         parse();
 
         try {
-            Set<MPartInfo> mpiBodies = Mime.getBody(messageParts, false);
+            Set<MPartInfo> mpiBodies = getBodyParts();
 
             // extract text from the "body" parts
             StringBuilder body = new StringBuilder();
@@ -431,7 +516,8 @@ public final class ParsedMessage {
         analyzeBodyParts();
 
         try {
-            Set<MPartInfo> mpiBodies = Mime.getBody(messageParts, false);
+            Set<MPartInfo> mpiBodies = getBodyParts();
+            prefetchAttachments(mpiBodies);
 
             // extract text from the "non-body" parts
             StringBuilder fullContent = new StringBuilder(bodyContent);
@@ -446,6 +532,7 @@ public final class ParsedMessage {
                     }
                 }
             }
+            prefetchedHandlers.clear();
 
             // requires FULL content (all parts)
             luceneDocuments.add(getMainBodyLuceneDocument(fullContent));
@@ -464,6 +551,33 @@ public final class ParsedMessage {
         }
     }
 
+    /**
+     * Starts extracting the text of all the attachments that go through the {@link AttachmentExtractor}
+     * up front, so that they are extracted side by side rather than one after the other.
+     */
+    private void prefetchAttachments(Set<MPartInfo> mpiBodies) {
+        if (!indexAttachments || (DebugConfig.disableIndexingAttachmentsTogether &&
+                DebugConfig.disableIndexingAttachmentsSeparately)) {
+            return;
+        }
+        for (MPartInfo mpi : messageParts) {
+            // calendar parts are read by analyzePart() itself, so leave them alone
+            if (mpiBodies.contains(mpi) || mpi.isMultipart() ||
+                    MimeConstants.CT_TEXT_CALENDAR.equals(mpi.getContentType())) {
+                continue;
+            }
+            try {
+                MimeHandler handler = getMimeHandler(mpi);
+                if (handler.isIndexingEnabled()) {
+                    handler.prefetchContent();
+                }
+                prefetchedHandlers.put(mpi, handler);
+            } catch (Exception e) {
+                // analyzePart() will run into the same problem and report it
+            }
+        }
+    }
+
     /**
      * Extract all indexable text from this message.  This API should *only* be called if you are
      * sure you're going to add the message to the index.  The only callsites of this API should be
@@ -488,9 +602,15 @@ public final class ParsedMessage {
     }
 
     /**
-     * Returns the raw MIME data.  Affected by mutation but not conversion.
+     * Returns the raw MIME data.  Affected by mutation but not conversion.<p>
+     *
+     * When the message is held in memory the backing array itself is returned rather than a copy,
+     * so callers must not modify it.
      */
     public byte[] getRawData() throws IOException {
+        if (rawContent != null) {
+            return rawContent;
+        }
         return ByteUtil.getContent(getRawInputStream(), 1024);
     }
 
@@ -1115,18 +1235,12 @@ public final class ParsedMessage {
                 return toRet;
             }
             String ctype = mpi.getContentType();
-            MimeHandler handler = MimeHandlerManager.getMimeHandler(ctype, mpi.getFilename());
-            assert(handler != null);
-            handler.setDefaultCharset(defaultCharset);
-
-            Mime.repairTransferEncoding(mpi.getMimePart());
+            MimeHandler handler = prefetchedHandlers.remove(mpi);
+            if (handler == null) {
+                handler = getMimeHandler(mpi);
+            }
 
             if (handler.isIndexingEnabled()) {
-                handler.init(mpi.getMimePart().getDataHandler().getDataSource());
-                handler.setPartName(mpi.getPartName());
-                handler.setFilename(mpi.getFilename());
-                handler.setSize(mpi.getSize());
-
                 // remember the first iCalendar attachment
                 if (!ignoreCalendar && calendarPartInfo == null) {
                     ZVCalendar cal = handler.getICalendar();
@@ -1198,6 +1312,25 @@ public final class ParsedMessage {
         return toRet;
     }
 
+    /**
+     * Returns a handler for the part, initialized for text extraction if indexing is enabled for its type.
+     */
+    private MimeHandler getMimeHandler(MPartInfo mpi) throws MimeHandlerException, MessagingException {
+        MimeHandler handler = MimeHandlerManager.getMimeHandler(mpi.getContentType(), mpi.getFilename());
+        assert(handler != null);
+        handler.setDefaultCharset(defaultCharset);
+
+        Mime.repairTransferEncoding(mpi.getMimePart());
+
+        if (handler.isIndexingEnabled()) {
+            handler.init(mpi.getMimePart().getDataHandler().getDataSource());
+            handler.setPartName(mpi.getPartName());
+            handler.setFilename(mpi.getFilename());
+            handler.setSize(mpi.getSize());
+        }
+        return handler;
+    }
+
     /**
      * Log the error and index minimum information.
      *
@@ -1392,13 +1525,22 @@ public final class ParsedMessage {
         return dataSourceId;
     }
 
+    /**
+     * Re-reads the message after its {@link MimeMessage} has been modified in place (e.g. by the Sieve
+     * {@code editheader} extension).  The part list and body parts describe the old message, so they are dropped
+     * and rebuilt from the new one on the next {@link #parse()}.
+     */
     public void updateMimeMessage () throws IOException, MessagingException {
             ByteArrayOutputStream buffer = new ByteArrayOutputStream();
             mimeMessage.writeTo(buffer);
             byte[] content = buffer.toByteArray();
             ByteUtil.closeStream(sharedStream);
+            rawContent = content;
             sharedStream = new SharedByteArrayInputStream(content);
             mimeMessage = expandedMessage = null;
             mimeMessage = expandedMessage = new Mime.FixedMimeMessage(JMSession.getSession(), sharedStream);
+            parsed = false;
+            messageParts = null;
+            bodyParts = null;
     }
 }
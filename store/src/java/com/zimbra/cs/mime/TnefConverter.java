@@ -82,6 +82,15 @@ import com.zimbra.cs.util.tnef.TnefToICalendar;
 public class TnefConverter extends MimeVisitor {
     private MimeMessage mMimeMessage;
 
+    @Override
+    protected boolean isApplicable(List<MPartInfo> parts) {
+        for (MPartInfo mpi : parts) {
+            if (TNEFUtils.isTNEFMimeType(mpi.getContentType()))
+                return true;
+        }
+        return false;
+    }
+
     @Override
     protected boolean visitBodyPart(MimeBodyPart bp)  { return false; }
 
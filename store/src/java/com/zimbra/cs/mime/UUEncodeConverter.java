@@ -43,6 +43,16 @@ import com.zimbra.common.zmime.ZMimeBodyPart;
 import com.zimbra.common.zmime.ZMimeMultipart;
 
 public class UUEncodeConverter extends MimeVisitor {
+    @Override
+    protected boolean isApplicable(List<MPartInfo> parts) {
+        // only a non-multipart message (top-level or attached) gets checked for uuencoded content
+        for (MPartInfo mpi : parts) {
+            if (mpi.getMimePart() instanceof MimeMessage && !mpi.isMultipart() && !mpi.isMessage())
+                return true;
+        }
+        return false;
+    }
+
     @Override
     protected boolean visitMultipart(MimeMultipart mmp, VisitPhase visitKind) {
         return false;
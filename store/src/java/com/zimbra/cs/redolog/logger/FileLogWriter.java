@@ -37,10 +37,12 @@ import com.zimbra.cs.redolog.op.CommitTxn;
 import com.zimbra.cs.redolog.op.RedoableOp;
 import com.zimbra.cs.util.Zimbra;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.channels.ClosedChannelException;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -64,13 +66,18 @@ public class FileLogWriter implements LogWriter {
         }
     }
 
+    // ops up to this size are read into memory before taking the lock; the rest of a larger op is copied under it
+    private static final int MAX_BUFFERED_OP_SIZE = 64 * 1024;
+    private static final int BUFFER_SIZE = 8 * 1024;
+
     protected RedoLogManager mRedoLogMgr;
 
     // Synchronizes access to mRAF, mFileSize, mLogSeq, mFsyncSeq, mLogCount, and mFsyncCount.
     private final Object mLock = new Object();
 
-    // wait/notify between logger threads and fsync thread
+    // wait/notify between logger threads and fsync thread; also guards mFsyncInProgress
     private final Object mFsyncCond = new Object();
+    private boolean mFsyncInProgress;   // a logger thread is fsyncing on behalf of the group
 
     private FileHeader mHeader;
     private long mFirstOpTstamp;
@@ -88,7 +95,7 @@ public class FileLogWriter implements LogWriter {
     private FsyncThread mFsyncer;   // fsync thread
 
     private int mLogSeq;            // last item logged
-    private int mFsyncSeq;          // last item fsynced
+    private volatile int mFsyncSeq; // last item fsynced
 
     // for gathering some stats; nonessential for functionality
     private int mLogCount;          // how many times log was called
@@ -254,14 +261,14 @@ public class FileLogWriter implements LogWriter {
      * action: write() only; no flush/fsync
      *
      * case 2: synchronous && fsyncInterval > 0
-     * action: write(), then wait() until notified by fsync thread
-     * Current thread only calls write() on the RandomAccessFile, and blocks to
-     * wait for the next scheduled fsync.  Fsync thread periodically flushes
-     * the output stream and fsync's the file.  After each fsync, all waiting
-     * logger threads are notified to continue.  This method batches multiple
-     * log items before each fsync, and results in greater throughput than
-     * calling fsync after each log item because fsync to physical disk is
-     * a high-latency operation.
+     * action: write(), then group commit
+     * If no fsync is in progress, the current thread fsyncs right away on
+     * behalf of everything logged so far.  Otherwise it waits for the fsync
+     * in progress; if that didn't cover its item, one of the waiting threads
+     * becomes the next leader and fsyncs for all of them.  The batch size thus
+     * adapts to the load: a lone writer pays a single fsync with no added
+     * latency, while a burst of writers shares one fsync per round trip to
+     * disk.  The fsync thread only picks up non-synchronous writes.
      *
      * case 3: synchronous && fsyncInterval <= 0
      * action: write(), then fsync() in the current thread
@@ -271,11 +278,41 @@ public class FileLogWriter implements LogWriter {
      */
     @Override public void log(RedoableOp op, InputStream data, boolean synchronous) throws IOException {
         int seq;
-        boolean sameMboxAsLastOp = false;
 
         synchronized (mLock) {
             if (mRAF == null)
                 throw new IOException("Redolog file closed");
+        }
+
+        // Read small ops in full outside the lock, so that the lock is only held for a single write().  Large ops,
+        // such as message bodies, are buffered only up to MAX_BUFFERED_OP_SIZE and the rest is streamed to the file.
+        ByteArrayOutputStream head = new ByteArrayOutputStream(1024);
+        byte[] buf = new byte[BUFFER_SIZE];
+        boolean more = true;
+        try {
+            while (head.size() < MAX_BUFFERED_OP_SIZE) {
+                int numRead = data.read(buf, 0, Math.min(buf.length, MAX_BUFFERED_OP_SIZE - head.size()));
+                if (numRead < 0) {
+                    more = false;
+                    break;
+                }
+                head.write(buf, 0, numRead);
+            }
+        } catch (IOException e) {
+            data.close();
+            throw e;
+        }
+        if (!more) {
+            data.close();
+        }
+        byte[] headBytes = head.toByteArray();
+
+        synchronized (mLock) {
+            if (mRAF == null) {
+                if (more)
+                    data.close();
+                throw new IOException("Redolog file closed");
+            }
 
             // Record first transaction in header.
             long tstamp = op.getTimestamp();
@@ -292,13 +329,19 @@ public class FileLogWriter implements LogWriter {
             mLogSeq++;
             mLogCount++;
             seq = mLogSeq;
-            int numRead;
-            byte[] buf = new byte[1024];
-            while ((numRead = data.read(buf)) >= 0) {
-                mRAF.write(buf, 0, numRead);
-                mFileSize += numRead;
+            mRAF.write(headBytes);
+            mFileSize += headBytes.length;
+            if (more) {
+                try {
+                    int numRead;
+                    while ((numRead = data.read(buf)) >= 0) {
+                        mRAF.write(buf, 0, numRead);
+                        mFileSize += numRead;
+                    }
+                } finally {
+                    data.close();
+                }
             }
-            data.close();
 
             // We do this with log writer lock held, so the commits and any
             // callbacks made on their behalf are truly in the correct order.
@@ -308,7 +351,7 @@ public class FileLogWriter implements LogWriter {
                 if (cb != null) {
                     long redoSeq = mRedoLogMgr.getRolloverManager().getCurrentSequence();
                     CommitId cid = new CommitId(redoSeq, (CommitTxn) op);
-                    Notif notif = new Notif(cb, cid);
+                    Notif notif = new Notif(cb, cid, seq);
                     // We queue it instead making the callback right away.
                     // Call it only after the commit record has been fsynced.
                     mCommitNotifyQueue.push(notif);
@@ -316,9 +359,6 @@ public class FileLogWriter implements LogWriter {
             }
 
             mLastLogTime = System.currentTimeMillis();
-
-            sameMboxAsLastOp = mLastOpMboxId == op.getMailboxId();
-            mLastOpMboxId = op.getMailboxId();
         }
 
         // cases 1 above
@@ -326,36 +366,46 @@ public class FileLogWriter implements LogWriter {
             return;
 
         if (mFsyncIntervalMS > 0) {
-            if (!sameMboxAsLastOp) {
-                // case 2
+            // case 2
+            groupCommit(seq);
+        } else {
+            // case 3
+            fsync();
+        }
+    }
+
+    // Wait until item seq is fsynced, doing the fsync ourselves if no other thread is.
+    private void groupCommit(int seq) throws IOException {
+        boolean leader = false;
+        synchronized (mFsyncCond) {
+            while (mFsyncSeq < seq) {
+                if (!mFsyncInProgress) {
+                    mFsyncInProgress = leader = true;
+                    break;
+                }
                 try {
-                    // wait for fsync thread to write this entry to disk
-                    synchronized (mFsyncCond) {
-                        mFsyncCond.wait(10000);
-                    }
+                    mFsyncCond.wait(10000);
                 } catch (InterruptedException e) {
                     ZimbraLog.redolog.info("Thread interrupted during fsync");
+                    break;
                 }
-                synchronized (mLock) {
-                    // timed out, so fsync in this thread
-                    if (seq > mFsyncSeq)
-                        fsync();
-                }
-            } else {
-                // If this op is on same mailbox as last op, let's assume there's a thread issuing
-                // many updates on a single mailbox in a loop, such as when importing a large ics file.
-                // We don't want to pause for mFsyncIntervalMS between every op (because all writes
-                // to a single mailbox are synchronized), so fsync inline and return immediately.
-                fsync();
             }
-        } else {
-            // case 3
+            if (mFsyncSeq >= seq)
+                return;
+        }
+        // fsync everything logged so far; if interrupted while waiting, do it without leading the group
+        try {
             fsync();
+        } finally {
+            if (leader) {
+                synchronized (mFsyncCond) {
+                    mFsyncInProgress = false;
+                    mFsyncCond.notifyAll();
+                }
+            }
         }
     }
 
-    private int mLastOpMboxId;
-
     @Override public void flush() throws IOException {
         fsync();
     }
@@ -450,31 +500,34 @@ public class FileLogWriter implements LogWriter {
     }
 
     // do fsync if there are items logged since last fsync
+    // The force() runs outside mLock, so that other threads can keep logging while the disk catches up.  Only items
+    // logged before it started are known to be on disk afterwards, so only their commit callbacks are made.
     private void fsync() throws IOException {
-        boolean fsyncNeeded = false;
+        RandomAccessFile raf = null;
         int seq = 0;
         synchronized (mLock) {
             if (mFsyncSeq < mLogSeq) {
                 if (mRAF == null)
                     throw new IOException("Redolog file closed");
-                fsyncNeeded = true;
+                raf = mRAF;
                 seq = mLogSeq;
                 if (!mFsyncDisabled)
                     mFsyncCount++;
             }
         }
-        if (fsyncNeeded) {
+        if (raf != null) {
             if (!mFsyncDisabled) {
-                synchronized (mLock) {
-                    if (mRAF != null)
-                        mRAF.getChannel().force(false);
-                    else
-                        throw new IOException("Redolog file closed");
-                    mCommitNotifyQueue.flush(false);
+                try {
+                    raf.getChannel().force(false);
+                } catch (ClosedChannelException e) {
+                    throw new IOException("Redolog file closed", e);
                 }
             }
             synchronized (mLock) {
-                mFsyncSeq = seq;
+                // a concurrent fsync may already have covered a later item
+                mFsyncSeq = Math.max(mFsyncSeq, seq);
+                if (!mFsyncDisabled)
+                    mCommitNotifyQueue.flushThrough(mFsyncSeq);
             }
             if (mFsyncIntervalMS > 0) {
                 synchronized (mFsyncCond) {
@@ -485,10 +538,9 @@ public class FileLogWriter implements LogWriter {
     }
 
 
-    // Thread that calls fsync() periodically.  Threads that call log()
-    // will write the log entry and wait for this thread to signal them
-    // after sync to disk has occurred.  This way, there are fewer fsyncs
-    // than there are calls to log(), resulting in improved throughput.
+    // Thread that calls fsync() periodically, so that items logged without
+    // the synchronous flag reach the disk in bounded time.  Synchronous
+    // callers don't wait for this thread; see groupCommit().
     private class FsyncThread extends Thread {
         private long mSleepMS;
         private Object mFsyncLock;  // synchronizes access to mRunning
@@ -569,13 +621,16 @@ public class FileLogWriter implements LogWriter {
     private static class Notif {
         private RedoCommitCallback mCallback;
         private CommitId mCommitId;
+        private int mSeq;   // log sequence of the commit record
 
-        public Notif(RedoCommitCallback callback, CommitId cid) {
+        public Notif(RedoCommitCallback callback, CommitId cid, int seq) {
             mCallback = callback;
             mCommitId = cid;
+            mSeq = seq;
         }
         public RedoCommitCallback getCallback() { return mCallback; }
         public CommitId getCommitId() { return mCommitId; }
+        public int getSeq() { return mSeq; }
     }
 
     private class CommitNotifyQueue {
@@ -601,9 +656,11 @@ public class FileLogWriter implements LogWriter {
             }
         }
 
-        private synchronized Notif pop() {
+        // pops the first entry if its commit record was logged at or before maxSeq
+        private synchronized Notif pop(int maxSeq) {
             if (mHead == mTail && !mFull) return null;  // queue is empty
             Notif n = mQueue[mHead];
+            if (n.getSeq() > maxSeq) return null;
             mQueue[mHead] = null;  // help with GC
             mHead++;
             mHead %= mQueue.length;
@@ -614,8 +671,13 @@ public class FileLogWriter implements LogWriter {
         public synchronized void flush(boolean fsync) throws IOException {
             if (fsync)
                 fsync();
+            flushThrough(Integer.MAX_VALUE);
+        }
+
+        // makes the callbacks of the commits logged at or before seq
+        public synchronized void flushThrough(int seq) {
             Notif notif;
-            while ((notif = pop()) != null) {
+            while ((notif = pop(seq)) != null) {
                 RedoCommitCallback cb = notif.getCallback();
                 assert(cb != null);
                 try {
@@ -0,0 +1,40 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2007, 2009, 2010, 2011, 2013, 2014, 2016 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.server;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Implemented by connection output streams that can send a region of a file to the peer without copying it through
+ * the Java heap, e.g. with {@link FileChannel#transferTo}.
+ */
+public interface FileRegionOutput {
+
+    /**
+     * Returns whether {@link #writeFileRegion} can be used right now.  This is {@code false} once the connection is
+     * encrypted by TLS or a SASL security layer, since the bytes have to pass through the cipher.
+     */
+    boolean isFileRegionSupported();
+
+    /**
+     * Writes {@code count} bytes of {@code channel} starting at {@code position}, after anything already written to
+     * the stream.  May return before the region has been sent; the output takes ownership of the channel and closes
+     * it once the region has been sent or the write has failed, so the caller must not close it.
+     */
+    void writeFileRegion(FileChannel channel, long position, long count) throws IOException;
+}
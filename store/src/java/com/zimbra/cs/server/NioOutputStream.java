@@ -19,15 +19,18 @@ package com.zimbra.cs.server;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 
 import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.file.DefaultFileRegion;
+import org.apache.mina.core.future.IoFutureListener;
 import org.apache.mina.core.future.WriteFuture;
 import org.apache.mina.core.session.IoSession;
 
 import com.google.common.base.Charsets;
 import com.zimbra.common.util.ZimbraLog;
 
-public final class NioOutputStream extends OutputStream {
+public final class NioOutputStream extends OutputStream implements FileRegionOutput {
     private final IoSession session;
     private IoBuffer buf;
     private int maxScheduledBytes;
@@ -88,20 +91,59 @@ public final class NioOutputStream extends OutputStream {
         }
     }
 
+    @Override
+    public boolean isFileRegionSupported() {
+        // SSL and SASL filters only know how to encrypt IoBuffers
+        return !session.getFilterChain().contains("ssl") && !session.getFilterChain().contains("sasl");
+    }
+
+    @Override
+    public synchronized void writeFileRegion(final FileChannel channel, long position, long count) throws IOException {
+        try {
+            flush();
+        } catch (IOException e) {
+            closeChannel(channel);
+            throw e;
+        }
+        long writeBytes = session.getScheduledWriteBytes();
+        WriteFuture future = session.write(new DefaultFileRegion(channel, position, count));
+        // the region is sent from the I/O thread, so the channel can only be closed once the write has completed
+        future.addListener(new IoFutureListener<WriteFuture>() {
+            @Override
+            public void operationComplete(WriteFuture f) {
+                closeChannel(channel);
+            }
+        });
+        if (writeBytes > maxScheduledBytes) {
+            awaitWrite(future);
+        }
+    }
+
+    private static void closeChannel(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            ZimbraLog.nio.debug("error closing file region channel", e);
+        }
+    }
+
+    private void awaitWrite(WriteFuture future) throws IOException {
+        if (maxWritePause > 0) {
+            if (!future.awaitUninterruptibly(maxWritePause)) {
+                throw new IOException("Write stalled, client may have gone away");
+            }
+        } else {
+            future.awaitUninterruptibly();
+        }
+    }
+
     private synchronized void writeToSession(Object output) throws IOException {
         long writeBytes = session.getScheduledWriteBytes();
         WriteFuture future = session.write(output);
         if (writeBytes > maxScheduledBytes) {
             ZimbraLog.nio.debug("IOSession has %d scheduled write bytes; waiting for buffer to catch up", writeBytes);
             long start = System.currentTimeMillis();
-            if (maxWritePause > 0) {
-                boolean done = future.awaitUninterruptibly(maxWritePause);
-                if (!done) {
-                    throw new IOException("Write stalled, client may have gone away");
-                }
-            } else {
-                future.awaitUninterruptibly();
-            }
+            awaitWrite(future);
             if (ZimbraLog.nio.isDebugEnabled()) {
                 ZimbraLog.nio.debug("waited %d for %d scheduled bytes", (System.currentTimeMillis()-start), writeBytes);
                 ZimbraLog.nio.debug("now have %d scheduled bytes, %d messages; %d written bytes %d messages", session.getScheduledWriteBytes(), session.getScheduledWriteMessages(), session.getWrittenBytes(), session.getWrittenMessages());
@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -156,9 +157,17 @@ public abstract class DistributionListDocumentHandler extends AccountDocumentHan
         // List<CacheEntry> localAccts = Lists.newArrayList();
         Map<String /* server name */, List<CacheEntry>> remoteAccts = Maps.newHashMap();
 
+        Map<String, Account> memberAccts = null;
+        try {
+            memberAccts = prov.getAccounts(AccountBy.name, Arrays.asList(members));
+        } catch (ServiceException e) {
+            // look them up one by one below, so that one bad address doesn't skip the rest
+            ZimbraLog.account.debug("unable to look up group members in bulk", e);
+        }
+
         for (String member : members) {
             try {
-                Account acct = prov.get(AccountBy.name, member);
+                Account acct = memberAccts != null ? memberAccts.get(member) : prov.get(AccountBy.name, member);
                 if (acct != null) {
                     if (prov.onLocalServer(acct)) {
                         // localAccts.add(new CacheEntry(CacheEntryBy.id, acct.getId()));
@@ -197,6 +197,8 @@ final class SearchResponse {
             if (includeMailbox) {
                 el.addAttribute(MailConstants.A_ID, new ItemId(hit.getAcctIdStr(), hit.getItemId()).toString());
             }
+            // the hit is complete; hold on to its serialized form rather than the element tree
+            el.compact();
         }
     }
 
@@ -101,6 +101,7 @@ import com.zimbra.cs.gal.GalGroup.GroupInfo;
 import com.zimbra.cs.gal.GalGroupInfoProvider;
 import com.zimbra.cs.gal.GalGroupMembers.ContactDLMembers;
 import com.zimbra.cs.html.BrowserDefang;
+import com.zimbra.cs.html.DefangCache;
 import com.zimbra.cs.html.DefangFactory;
 import com.zimbra.cs.html.DefangFilter;
 import com.zimbra.cs.html.HtmlDefang;
@@ -129,6 +130,7 @@ import com.zimbra.cs.mailbox.MailServiceException;
 import com.zimbra.cs.mailbox.MailServiceException.NoSuchItemException;
 import com.zimbra.cs.mailbox.Mailbox;
 import com.zimbra.cs.mailbox.Message;
+import com.zimbra.cs.mailbox.MessageCache;
 import com.zimbra.cs.mailbox.Mountpoint;
 import com.zimbra.cs.mailbox.Note;
 import com.zimbra.cs.mailbox.OperationContext;
@@ -1587,7 +1589,11 @@ public final class ToXML {
             List<MPartInfo> parts = Mime.getParts(mm, getDefaultCharset(msg));
             if (parts != null && !parts.isEmpty()) {
                 Set<MPartInfo> bodies = Mime.getBody(parts, wantHTML);
-                addParts(m, parts.get(0), bodies, part, maxSize, neuter, false, getDefaultCharset(msg), bestEffort, wantContent);
+                // what an encrypted message shows depends on the reader, so don't share its defanged body
+                String digest = DefangCache.getInstance().isEnabled() && !MessageCache.isEncrypted(msg) ?
+                        msg.getDigest() : null;
+                addParts(m, parts.get(0), bodies, part, maxSize, neuter, false, getDefaultCharset(msg), bestEffort,
+                        wantContent, digest);
             }
 
             if (wantExpandGroupInfo) {
@@ -2556,11 +2562,13 @@ public final class ToXML {
     private static void addParts(Element root, MPartInfo mpiRoot, Set<MPartInfo> bodies, String prefix, int maxSize,
         boolean neuter, boolean excludeCalendarParts, String defaultCharset, boolean swallowContentExceptions)
 throws ServiceException {
-        addParts(root, mpiRoot, bodies, prefix, maxSize, neuter, excludeCalendarParts, defaultCharset, swallowContentExceptions, MsgContent.full);
+        addParts(root, mpiRoot, bodies, prefix, maxSize, neuter, excludeCalendarParts, defaultCharset, swallowContentExceptions, MsgContent.full, null);
     }
 
+    /** @param digest the digest of the message blob if defanged bodies may be cached, or <tt>null</tt> */
     private static void addParts(Element root, MPartInfo mpiRoot, Set<MPartInfo> bodies, String prefix, int maxSize,
-            boolean neuter, boolean excludeCalendarParts, String defaultCharset, boolean swallowContentExceptions, MsgContent wantContent)
+            boolean neuter, boolean excludeCalendarParts, String defaultCharset, boolean swallowContentExceptions, MsgContent wantContent,
+            String digest)
     throws ServiceException {
         MPartInfo mpi = mpiRoot;
         LinkedList<Pair<Element, LinkedList<MPartInfo>>> queue = new LinkedList<Pair<Element, LinkedList<MPartInfo>>>();
@@ -2578,7 +2586,7 @@ throws ServiceException {
 
             mpi = parts.getFirst();
             Element child = addPart(phase, level.getFirst(), root, mpi, bodies, prefix, maxSize, neuter,
-                    excludeCalendarParts, defaultCharset, swallowContentExceptions, wantContent);
+                    excludeCalendarParts, defaultCharset, swallowContentExceptions, wantContent, digest);
             if (phase == VisitPhase.PREVISIT && child != null && mpi.hasChildren()) {
                 queue.addLast(new Pair<Element, LinkedList<MPartInfo>>(child, new LinkedList<MPartInfo>(mpi.getChildren())));
             } else {
@@ -2589,7 +2597,7 @@ throws ServiceException {
 
     private static Element addPart(VisitPhase phase, Element parent, Element root, MPartInfo mpi,
             Set<MPartInfo> bodies, String prefix, int maxSize, boolean neuter, boolean excludeCalendarParts,
-            String defaultCharset, boolean swallowContentExceptions, MsgContent wantContent)
+            String defaultCharset, boolean swallowContentExceptions, MsgContent wantContent, String digest)
     throws ServiceException {
         if (phase == VisitPhase.POSTVISIT) {
             return null;
@@ -2719,7 +2727,8 @@ throws ServiceException {
             }
 
             try {
-                addContent(el, mpi, maxSize, neuter, defaultCharset, wantContent);
+                addContent(el, mpi, maxSize, neuter, defaultCharset, wantContent,
+                        digest == null ? null : DefangCache.getKey(digest, part, neuter, maxSize, defaultCharset));
             } catch (IOException e) {
                 if (!swallowContentExceptions) {
                     throw ServiceException.FAILURE("error serializing part content", e);
@@ -2783,6 +2792,17 @@ throws ServiceException {
      * @throws IOException on error during parsing or defanging
      * @see HtmlDefang#defang(String, boolean) */
     private static void addContent(Element elt, MPartInfo mpi, int maxSize, boolean neuter, String defaultCharset, MsgContent wantContent)
+    throws IOException, MessagingException {
+        addContent(elt, mpi, maxSize, neuter, defaultCharset, wantContent, null);
+    }
+
+    /** Adds the decoded text content of a message part to the {@link Element}.
+     *  Defanged HTML is looked up in and added to the {@link DefangCache} under
+     *  <tt>cacheKey</tt>, if there is one.
+     *
+     * @see #addContent(Element, MPartInfo, int, boolean, String, MsgContent) */
+    private static void addContent(Element elt, MPartInfo mpi, int maxSize, boolean neuter, String defaultCharset,
+            MsgContent wantContent, String cacheKey)
     throws IOException, MessagingException {
         // TODO: support other parts
         String ctype = mpi.getContentType();
@@ -2806,7 +2826,14 @@ throws ServiceException {
         }
 
         boolean wasTruncated = false;
-        if (ctype.equals(MimeConstants.CT_TEXT_HTML)) {
+        DefangCache.Entry cached = cacheKey == null ? null : DefangCache.getInstance().get(cacheKey);
+        if (cached != null && ctype.equals(MimeConstants.CT_TEXT_HTML)) {
+            data = cached.getContent();
+            wasTruncated = cached.isTruncated();
+            if (wantContent.equals(MsgContent.original) || wantContent.equals(MsgContent.both)) {
+                originalContent = removeQuotedText(data, true);
+            }
+        } else if (ctype.equals(MimeConstants.CT_TEXT_HTML)) {
             String charset = mpi.getContentTypeParameter(MimeConstants.P_CHARSET);
             InputStream stream = null;
             StringWriter sw = new StringWriter();
@@ -2851,6 +2878,9 @@ throws ServiceException {
                 ByteUtil.closeStream(stream);
                 Closeables.closeQuietly(reader);
             }
+            if (cacheKey != null) {
+                DefangCache.getInstance().put(cacheKey, data, wasTruncated);
+            }
         } else if (ctype.equals(MimeConstants.CT_TEXT_ENRICHED)) {
             // Enriched text handling is a little funky because TextEnrichedHandler
             // doesn't use Reader and Writer.  As a result, we truncate
@@ -179,6 +179,15 @@ public class ZimbraPerf {
     public static final Counter COUNTER_LMTP_DLVD_BYTES = new Counter();
     public static final StopWatch STOPWATCH_DB_CONN = new StopWatch();
     public static final StopWatch STOPWATCH_LDAP_DC = new StopWatch();
+    public static final StopWatch STOPWATCH_LDAP_CACHE_REFRESH = new StopWatch();
+    public static final LdapCacheStats LDAP_ACCOUNT_CACHE = new LdapCacheStats("account");
+    public static final LdapCacheStats LDAP_COS_CACHE = new LdapCacheStats("cos");
+    public static final LdapCacheStats LDAP_DOMAIN_CACHE = new LdapCacheStats("domain");
+    public static final LdapCacheStats LDAP_SERVER_CACHE = new LdapCacheStats("server");
+    public static final LdapCacheStats LDAP_UCSERVICE_CACHE = new LdapCacheStats("ucservice");
+    public static final LdapCacheStats LDAP_ZIMLET_CACHE = new LdapCacheStats("zimlet");
+    public static final LdapCacheStats LDAP_GROUP_CACHE = new LdapCacheStats("group");
+    public static final LdapCacheStats LDAP_XMPP_CACHE = new LdapCacheStats("xmpp");
     public static final StopWatch STOPWATCH_MBOX_ADD_MSG = new StopWatch();
     public static final StopWatch STOPWATCH_MBOX_GET = new StopWatch();         // Mailbox accessor response time
     public static final Counter COUNTER_MBOX_CACHE = new Counter();           // Mailbox cache hit rate
@@ -264,6 +273,12 @@ public class ZimbraPerf {
     @Description("Average latency (ms) of getting an LDAP directory context")
     private static final String DC_LDAP_DC_MS_AVG = "ldap_dc_ms_avg";
 
+    @Description("Number of cached LDAP entries reloaded in the background ahead of expiry")
+    private static final String DC_LDAP_CACHE_REFRESH_COUNT = "ldap_cache_refresh_count";
+
+    @Description("Average latency (ms) of reloading a cached LDAP entry ahead of expiry")
+    private static final String DC_LDAP_CACHE_REFRESH_MS_AVG = "ldap_cache_refresh_ms_avg";
+
     @Description("Number of messages that were added to a mailbox")
     private static final String DC_MBOX_ADD_MSG_COUNT = "mbox_add_msg_count";
 
@@ -339,6 +354,11 @@ public class ZimbraPerf {
     @Description("Number of calendars (folders) in the calendar summary cache LRU in Java heap")
     private static final String DC_CALCACHE_LRU_SIZE = "calcache_lru_size";
 
+    private static final LdapCacheStats[] LDAP_CACHES = new LdapCacheStats[] {
+            LDAP_ACCOUNT_CACHE, LDAP_COS_CACHE, LDAP_DOMAIN_CACHE, LDAP_SERVER_CACHE,
+            LDAP_UCSERVICE_CACHE, LDAP_ZIMLET_CACHE, LDAP_GROUP_CACHE, LDAP_XMPP_CACHE
+            };
+
     private static CopyOnWriteArrayList<Accumulator> sAccumulators = null;
 
     private static final long CSV_DUMP_FREQUENCY = Constants.MILLIS_PER_MINUTE;
@@ -352,6 +372,43 @@ public class ZimbraPerf {
 
     public enum ServerID {ZIMBRA, IMAP_DAEMON};
 
+    /**
+     * Lookups and background reloads of one LDAP entry cache, reported as <tt>&lt;name&gt;_cache_hits</tt>,
+     * <tt>&lt;name&gt;_cache_misses</tt>, <tt>&lt;name&gt;_cache_load_count</tt> and
+     * <tt>&lt;name&gt;_cache_load_ms_avg</tt>.  Only the instances declared here are reported.
+     */
+    public static final class LdapCacheStats {
+        public final Counter hits = new Counter();
+        public final Counter misses = new Counter();
+        /** Time taken to reload a cached entry ahead of its expiry. */
+        public final StopWatch loads = new StopWatch();
+        private final String name;
+
+        public LdapCacheStats(String name) {
+            this.name = name;
+        }
+
+        private String statName(String suffix) {
+            return name + "_cache_" + suffix;
+        }
+
+        private void addTo(List<Accumulator> accumulators) {
+            accumulators.add(new DeltaCalculator(hits).setTotalName(statName("hits")));
+            accumulators.add(new DeltaCalculator(misses).setTotalName(statName("misses")));
+            accumulators.add(new DeltaCalculator(loads).setCountName(statName("load_count"))
+                    .setAverageName(statName("load_ms_avg")));
+        }
+
+        private void addDescriptions() {
+            descriptions.put(statName("hits"), "Number of LDAP " + name + " cache hits");
+            descriptions.put(statName("misses"), "Number of LDAP " + name + " cache misses");
+            descriptions.put(statName("load_count"),
+                    "Number of LDAP " + name + " cache entries reloaded in the background ahead of expiry");
+            descriptions.put(statName("load_ms_avg"),
+                    "Average latency (ms) of reloading an LDAP " + name + " cache entry ahead of expiry");
+        }
+    }
+
     @Target({ElementType.FIELD})
     @Retention(RetentionPolicy.RUNTIME)
     private @interface Description {
@@ -378,6 +435,9 @@ public class ZimbraPerf {
                 }
             }
         }
+        for (LdapCacheStats stats : LDAP_CACHES) {
+            stats.addDescriptions();
+        }
     }
 
     /**
@@ -473,6 +533,8 @@ public class ZimbraPerf {
                                     .setAverageName(DC_DB_CONN_MS_AVG),
                             new DeltaCalculator(STOPWATCH_LDAP_DC).setCountName(DC_LDAP_DC_COUNT)
                                     .setAverageName(DC_LDAP_DC_MS_AVG),
+                            new DeltaCalculator(STOPWATCH_LDAP_CACHE_REFRESH).setCountName(DC_LDAP_CACHE_REFRESH_COUNT)
+                                    .setAverageName(DC_LDAP_CACHE_REFRESH_MS_AVG),
                             new DeltaCalculator(STOPWATCH_MBOX_ADD_MSG).setCountName(DC_MBOX_ADD_MSG_COUNT)
                                     .setAverageName(DC_MBOX_ADD_MSG_MS_AVG),
                             new DeltaCalculator(STOPWATCH_MBOX_GET).setCountName(DC_MBOX_GET_COUNT)
@@ -506,6 +568,9 @@ public class ZimbraPerf {
                             realtimeStats
                     }
                 );
+            for (LdapCacheStats stats : LDAP_CACHES) {
+                stats.addTo(sAccumulators);
+            }
             break;
         case IMAP_DAEMON:
             realtimeStats = new RealtimeStats(imapdRealtimeStatsNames);
@@ -981,6 +981,28 @@ public class TestLdapZLdapFilter extends LdapTest {
         verify(FilterId.ACCOUNT_BY_NAME, filter, zLdapFilter);
     }
 
+    @Test
+    public void accountsByIds() throws Exception {
+        String ID1 = genUUID();
+        String ID2 = genUUID();
+
+        String filter = String.format("(&(|(zimbraId=%s)(zimbraId=%s))(objectClass=zimbraAccount))", ID1, ID2);
+        ZLdapFilter zLdapFilter = filterDactory.accountsByIds(Lists.newArrayList(ID1, ID2));
+        verify(FilterId.ACCOUNTS_BY_IDS, filter, zLdapFilter);
+    }
+
+    @Test
+    public void accountsByNames() throws Exception {
+        String NAME1 = getTestName() + "-1";
+        String NAME2 = getTestName() + "-2";
+
+        String filter = String.format("(&(|(zimbraMailDeliveryAddress=%s)(zimbraMailAlias=%s)" +
+                "(zimbraMailDeliveryAddress=%s)(zimbraMailAlias=%s))(objectClass=zimbraAccount))",
+                NAME1, NAME1, NAME2, NAME2);
+        ZLdapFilter zLdapFilter = filterDactory.accountsByNames(Lists.newArrayList(NAME1, NAME2));
+        verify(FilterId.ACCOUNTS_BY_NAMES, filter, zLdapFilter);
+    }
+
     @Test
     public void adminAccountByRDN() throws Exception {
         String NAMING_RDN_ATTR = "uid";